@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.benchmarks;
+
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups through the ContentCache and BlogService. The difference between
+ * getCachedBlogEntry and contentCacheHit is mostly the cost of cloning the
+ * cached blog entry, which is measured on its own by cloneBlogEntry.
+ * getBlogEntry cycles through every entry in the blog, so with the default
+ * cache size most of its lookups are loaded from disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlogServiceBenchmark {
+
+  private BlogService service;
+  private BlogEntry blogEntry;
+
+  @Setup(Level.Trial)
+  public void setUp(BlogState state) throws Exception {
+    service = new BlogService();
+
+    // warm the cache so that every lookup of a hot entry is a hit
+    for (String id : state.getBlogEntryIds().subList(0, Math.min(BlogState.HOT_ENTRIES, state.entries))) {
+      service.getBlogEntry(state.getBlog(), id);
+    }
+    blogEntry = service.getBlogEntry(state.getBlog(), state.getBlogEntryIds().get(0));
+  }
+
+  @Benchmark
+  public BlogEntry contentCacheHit(BlogState state, BlogState.Cursor cursor) {
+    return ContentCache.getInstance().getBlogEntry(state.getBlog(), cursor.nextHot(state));
+  }
+
+  @Benchmark
+  public BlogEntry contentCacheMiss(BlogState state) {
+    return ContentCache.getInstance().getBlogEntry(state.getBlog(), "0");
+  }
+
+  @Benchmark
+  public BlogEntry getCachedBlogEntry(BlogState state, BlogState.Cursor cursor) throws Exception {
+    return service.getBlogEntry(state.getBlog(), cursor.nextHot(state));
+  }
+
+  @Benchmark
+  public BlogEntry getBlogEntry(BlogState state, BlogState.Cursor cursor) throws Exception {
+    return service.getBlogEntry(state.getBlog(), cursor.next(state));
+  }
+
+  @Benchmark
+  public Object cloneBlogEntry() {
+    return blogEntry.clone();
+  }
+
+}
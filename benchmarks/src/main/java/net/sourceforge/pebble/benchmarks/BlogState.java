@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.benchmarks;
+
+import net.sourceforge.pebble.domain.Blog;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+
+/**
+ * Benchmark state holding a synthetic blog, shared by all threads of a
+ * trial. The size of the blog can be changed from the command line with
+ * -p entries=... and -p comments=...
+ */
+@State(Scope.Benchmark)
+public class BlogState {
+
+  /**
+   * The number of entries that fit comfortably within the content cache,
+   * which ehcache.xml limits to 20 entries per blog.
+   */
+  public static final int HOT_ENTRIES = 10;
+
+  @Param({"1000"})
+  public int entries;
+
+  @Param({"10"})
+  public int comments;
+
+  private SyntheticBlog syntheticBlog;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    syntheticBlog = SyntheticBlog.create(entries, comments);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    syntheticBlog.destroy();
+  }
+
+  public Blog getBlog() {
+    return syntheticBlog.getBlog();
+  }
+
+  public List<String> getBlogEntryIds() {
+    return syntheticBlog.getBlogEntryIds();
+  }
+
+  /**
+   * Per-thread position in the list of blog entry IDs, so that each
+   * invocation works on a different entry without calling into a shared
+   * random number generator.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      position = (int)Thread.currentThread().getId() * 7919;
+    }
+
+    /**
+     * Gets the next blog entry ID, cycling through all entries.
+     */
+    public String next(BlogState state) {
+      List<String> ids = state.getBlogEntryIds();
+      position = (position + 1) & Integer.MAX_VALUE;
+      return ids.get(position % ids.size());
+    }
+
+    /**
+     * Gets the next blog entry ID, cycling through the first few entries
+     * only so that lookups are served by the content cache.
+     */
+    public String nextHot(BlogState state) {
+      List<String> ids = state.getBlogEntryIds();
+      position = (position + 1) & Integer.MAX_VALUE;
+      return ids.get(position % Math.min(HOT_ENTRIES, ids.size()));
+    }
+
+  }
+
+}
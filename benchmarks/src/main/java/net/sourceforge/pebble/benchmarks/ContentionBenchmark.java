@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.benchmarks;
+
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.logging.CombinedLogFormatLogger;
+import net.sourceforge.pebble.search.SearchResults;
+import net.sourceforge.pebble.web.filter.UriTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same hot paths, driven by several threads at once to expose lock
+ * contention. The symmetric benchmarks run eight identical threads; the
+ * groups mix readers and writers in the proportions seen on a live blog,
+ * and report the readers' and writers' times separately.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+  private BlogService service;
+  private UriTransformer transformer;
+  private CombinedLogFormatLogger logger;
+  private HttpServletRequest request;
+
+  @Setup(Level.Trial)
+  public void setUp(BlogState state) throws Exception {
+    service = new BlogService();
+    for (String id : state.getBlogEntryIds().subList(0, Math.min(BlogState.HOT_ENTRIES, state.entries))) {
+      service.getBlogEntry(state.getBlog(), id);
+    }
+
+    transformer = new UriTransformer();
+    logger = new CombinedLogFormatLogger(state.getBlog());
+    logger.start();
+    request = Requests.get("/2010/01/01.html", "10.1.2.3");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    logger.stop();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public BlogEntry contentCacheHit(BlogState state, BlogState.Cursor cursor) {
+    return ContentCache.getInstance().getBlogEntry(state.getBlog(), cursor.nextHot(state));
+  }
+
+  @Benchmark
+  @Threads(8)
+  public BlogEntry getCachedBlogEntry(BlogState state, BlogState.Cursor cursor) throws Exception {
+    return service.getBlogEntry(state.getBlog(), cursor.nextHot(state));
+  }
+
+  @Benchmark
+  @Threads(8)
+  public String getUri(BlogState state) {
+    return transformer.getUri("/tags/tag1/", state.getBlog());
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void log() {
+    logger.log(request, 200);
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(6)
+  public BlogEntry readWrite_reader(BlogState state, BlogState.Cursor cursor) throws Exception {
+    return service.getBlogEntry(state.getBlog(), cursor.nextHot(state));
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(2)
+  public BlogEntry readWrite_writer(BlogState state, BlogState.Cursor cursor, Writer writer) throws Exception {
+    BlogEntry blogEntry = service.getBlogEntry(state.getBlog(), cursor.nextHot(state));
+    blogEntry.setTitle(writer.nextTitle());
+    service.putBlogEntry(blogEntry);
+    return blogEntry;
+  }
+
+  @Benchmark
+  @Group("searchWhileIndexing")
+  @GroupThreads(6)
+  public SearchResults searchWhileIndexing_search(BlogState state) throws Exception {
+    return state.getBlog().getSearchIndex().search("pebble AND cache");
+  }
+
+  @Benchmark
+  @Group("searchWhileIndexing")
+  @GroupThreads(2)
+  public void searchWhileIndexing_index(BlogState state, Writer writer) {
+    BlogEntry blogEntry = writer.getBlogEntry(state);
+    state.getBlog().getSearchIndex().index(blogEntry);
+    state.getBlog().getSearchIndex().unindex(blogEntry);
+  }
+
+  /**
+   * Per-thread state for writers.
+   */
+  @State(Scope.Thread)
+  public static class Writer {
+
+    private int count;
+    private BlogEntry blogEntry;
+
+    public String nextTitle() {
+      return "Title " + Thread.currentThread().getId() + "-" + (count++);
+    }
+
+    public BlogEntry getBlogEntry(BlogState state) {
+      if (blogEntry == null) {
+        int n = state.entries + (int)Thread.currentThread().getId();
+        blogEntry = SyntheticBlog.createBlogEntry(state.getBlog(), n, new Random(n));
+      }
+      return blogEntry;
+    }
+
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.benchmarks;
+
+import net.sourceforge.pebble.Constants;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Creates the minimal HttpServletRequests needed by the request logger.
+ * These are dynamic proxies, so each call made by the logger carries the
+ * small, constant overhead of a reflective dispatch.
+ */
+public final class Requests {
+
+  private Requests() {
+  }
+
+  /**
+   * Creates a GET request for the given URI, as seen after the URI has been
+   * transformed by the request filters.
+   *
+   * @param uri         the external URI
+   * @param remoteAddr  the client IP address
+   */
+  public static HttpServletRequest get(final String uri, final String remoteAddr) {
+    InvocationHandler handler = new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("getAttribute")) {
+          return Constants.EXTERNAL_URI.equals(args[0]) ? uri : null;
+        } else if (name.equals("getRemoteAddr")) {
+          return remoteAddr;
+        } else if (name.equals("getMethod")) {
+          return "GET";
+        } else if (name.equals("getRequestURI")) {
+          return uri;
+        } else if (name.equals("getHeader")) {
+          String header = (String)args[0];
+          if (header.equalsIgnoreCase("Referer")) {
+            return "http://www.google.com/search?q=pebble+blog";
+          } else if (header.equalsIgnoreCase("User-Agent")) {
+            return "Mozilla/5.0 (X11; Linux x86_64; rv:60.0) Gecko/20100101 Firefox/60.0";
+          }
+          return null;
+        } else if (name.equals("hashCode")) {
+          return System.identityHashCode(proxy);
+        } else if (name.equals("equals")) {
+          return proxy == args[0];
+        } else if (name.equals("toString")) {
+          return "GET " + uri;
+        }
+        return null;
+      }
+    };
+
+    return (HttpServletRequest)Proxy.newProxyInstance(
+        Requests.class.getClassLoader(), new Class[] {HttpServletRequest.class}, handler);
+  }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.benchmarks;
+
+import net.sourceforge.pebble.Configuration;
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.file.FileDAOFactory;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogManager;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.State;
+import net.sourceforge.pebble.util.FileUtils;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates a file based blog with a given number of blog entries, each
+ * with a given number of comments. The content is pseudo-random but
+ * deterministic, so that runs are comparable with each other.
+ */
+public class SyntheticBlog {
+
+  /** words used to build titles, bodies and comments */
+  private static final String[] WORDS = {
+      "pebble", "java", "blog", "entry", "comment", "cache", "index", "search",
+      "lucene", "servlet", "request", "response", "thread", "lock", "disk",
+      "memory", "latency", "throughput", "theme", "plugin", "decorator",
+      "permalink", "archive", "category", "feed", "atom", "rss", "spring",
+      "security", "markup", "render", "parse", "format", "calendar", "month",
+      "year", "day", "static", "page", "file", "upload", "image", "reader",
+      "writer", "stream", "buffer", "queue", "pool", "worker", "benchmark"
+  };
+
+  /** the ID of the (single) blog */
+  private static final String BLOG_ID = "default";
+
+  /** the number of distinct tags used across the blog */
+  private static final int NUMBER_OF_TAGS = 50;
+
+  private final File dataDirectory;
+  private final Blog blog;
+  private final List<String> blogEntryIds;
+
+  private SyntheticBlog(File dataDirectory, Blog blog, List<String> blogEntryIds) {
+    this.dataDirectory = dataDirectory;
+    this.blog = blog;
+    this.blogEntryIds = blogEntryIds;
+  }
+
+  /**
+   * Creates and starts a new blog in a temporary data directory.
+   *
+   * @param numberOfBlogEntries   the number of blog entries to create
+   * @param commentsPerBlogEntry  the number of comments on each blog entry
+   * @return  a SyntheticBlog instance
+   */
+  public static SyntheticBlog create(int numberOfBlogEntries, int commentsPerBlogEntry) throws Exception {
+    File dataDirectory = File.createTempFile("pebble-benchmark", "");
+    dataDirectory.delete();
+    File blogDirectory = new File(dataDirectory, "blogs/" + BLOG_ID);
+    blogDirectory.mkdirs();
+    writeBlogProperties(blogDirectory);
+
+    Configuration config = new Configuration();
+    config.setDataDirectory(dataDirectory.getAbsolutePath());
+    config.setUrl("http://www.yourdomain.com/blog/");
+    PebbleContext.getInstance().setConfiguration(config);
+    PebbleContext.getInstance().setApplicationContext(new StaticApplicationContext());
+    DAOFactory.setConfiguredFactory(new FileDAOFactory());
+
+    BlogManager blogManager = BlogManager.getInstance();
+    blogManager.setMultiBlog(false);
+    blogManager.addBlog(BLOG_ID);
+    Blog blog = blogManager.getBlog();
+
+    BlogService service = new BlogService();
+    Random random = new Random(numberOfBlogEntries * 31L + commentsPerBlogEntry);
+    List<String> blogEntryIds = new ArrayList<String>(numberOfBlogEntries);
+    for (int i = 0; i < numberOfBlogEntries; i++) {
+      BlogEntry blogEntry = createBlogEntry(blog, i, random);
+      for (int j = 0; j < commentsPerBlogEntry; j++) {
+        Date date = new Date(blogEntry.getDate().getTime() + (j + 1) * 60 * 1000L);
+        blogEntry.addComment(blogEntry.createComment(
+            "Re: " + blogEntry.getTitle(), sentence(random, 20 + random.nextInt(40)),
+            "Reader " + (j % 20), "reader" + (j % 20) + "@example.com", "",
+            null, "10.0." + (i % 250) + "." + (j % 250), date, State.APPROVED));
+      }
+      service.putBlogEntry(blogEntry);
+      blogEntryIds.add(blogEntry.getId());
+    }
+
+    return new SyntheticBlog(dataDirectory, blog, Collections.unmodifiableList(blogEntryIds));
+  }
+
+  /**
+   * Turns off the blog entry listeners that would otherwise send update
+   * pings over the network whenever a blog entry is published, and the
+   * spam listeners that would leave the generated comments pending.
+   */
+  private static void writeBlogProperties(File blogDirectory) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(Blog.BLOG_ENTRY_LISTENERS_KEY, "");
+    properties.setProperty(Blog.COMMENT_LISTENERS_KEY, "");
+    properties.setProperty(Blog.TIMEZONE_KEY, "Europe/London");
+    OutputStream out = new FileOutputStream(new File(blogDirectory, Blog.BLOG_PROPERTIES_FILE));
+    try {
+      properties.store(out, "Synthetic blog for benchmarks");
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Creates, but doesn't store, a published blog entry. Entries are an hour
+   * apart, counting forward from the start of 2010.
+   *
+   * @param blog      the owning blog
+   * @param n         the sequence number of the entry
+   * @param random    the source of content
+   * @return  a new BlogEntry instance
+   */
+  public static BlogEntry createBlogEntry(Blog blog, int n, Random random) {
+    Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("Europe/London"));
+    cal.clear();
+    cal.set(2010, Calendar.JANUARY, 1);
+    cal.add(Calendar.HOUR_OF_DAY, n);
+
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(cal.getTime());
+    blogEntry.setTitle(capitalize(sentence(random, 3 + random.nextInt(6))));
+    blogEntry.setAuthor("benchmark");
+    blogEntry.setTags(tag(random) + " " + tag(random) + " " + tag(random));
+    blogEntry.setBody(body(random));
+    blogEntry.setPublished(true);
+
+    return blogEntry;
+  }
+
+  private static String body(Random random) {
+    StringBuilder buf = new StringBuilder();
+    int paragraphs = 3 + random.nextInt(5);
+    for (int i = 0; i < paragraphs; i++) {
+      buf.append("<p>");
+      buf.append(capitalize(sentence(random, 40 + random.nextInt(80))));
+      buf.append(" See <a href=\"./").append(WORDS[random.nextInt(WORDS.length)]).append(".html\">");
+      buf.append(WORDS[random.nextInt(WORDS.length)]).append("</a> for more.</p>\n");
+      if (i == 1) {
+        buf.append("<pre>\nfor (int i = 0; i &lt; n; i++) {\n  sum += values[i];\n}\n</pre>\n");
+      }
+    }
+    return buf.toString();
+  }
+
+  private static String tag(Random random) {
+    return "tag" + random.nextInt(NUMBER_OF_TAGS);
+  }
+
+  private static String sentence(Random random, int numberOfWords) {
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < numberOfWords; i++) {
+      if (i > 0) {
+        buf.append(' ');
+      }
+      buf.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    buf.append('.');
+    return buf.toString();
+  }
+
+  private static String capitalize(String s) {
+    return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+  }
+
+  /**
+   * Creates a context suitable for decorating content for display.
+   *
+   * @param view    one of the ContentDecoratorContext view constants
+   */
+  public static ContentDecoratorContext createContext(int view) {
+    ContentDecoratorContext context = new ContentDecoratorContext();
+    context.setView(view);
+    context.setMedia(ContentDecoratorContext.HTML_PAGE);
+    return context;
+  }
+
+  /**
+   * Stops the blog and deletes its data directory.
+   */
+  public void destroy() {
+    BlogManager.getInstance().stopBlogs();
+    BlogManager.getInstance().removeAllBlogs();
+    FileUtils.deleteFile(dataDirectory);
+  }
+
+  public Blog getBlog() {
+    return blog;
+  }
+
+  public List<String> getBlogEntryIds() {
+    return blogEntryIds;
+  }
+
+}
@@ -58,8 +58,13 @@ public class Configuration {
   private boolean userThemesEnabled = true;
   private String smtpHost = "java:comp/env/mail/Session";
   private String smtpPort = "25";
+  private int mailThreads = 2;
+  private double mailRateLimit = 10;
   private long fileUploadSize = 2048;
   private long fileUploadQuota = -1;
+  private int blogStartupThreads = 4;
+  private boolean lazyBlogStartup = false;
+  private int blogPassivationTimeout = 0;
   private DAOFactory daoFactory = new FileDAOFactory();
   private SecurityRealm securityRealm;
 
@@ -126,6 +131,32 @@ public class Configuration {
     this.smtpPort = smtpPort;
   }
 
+  /**
+   * Gets the number of threads used to send e-mail.
+   *
+   * @return  the number of threads
+   */
+  public int getMailThreads() {
+    return mailThreads;
+  }
+
+  public void setMailThreads(int mailThreads) {
+    this.mailThreads = mailThreads;
+  }
+
+  /**
+   * Gets the maximum rate at which e-mail is sent.
+   *
+   * @return  a number of messages per second, 0 if unlimited
+   */
+  public double getMailRateLimit() {
+    return mailRateLimit;
+  }
+
+  public void setMailRateLimit(double mailRateLimit) {
+    this.mailRateLimit = mailRateLimit;
+  }
+
   public long getFileUploadSize() {
     return fileUploadSize;
   }
@@ -166,6 +197,46 @@ public class Configuration {
     this.multiBlog = multiBlog;
   }
 
+  /**
+   * Gets the number of threads used to start blogs in multi-blog mode.
+   *
+   * @return  the number of threads
+   */
+  public int getBlogStartupThreads() {
+    return blogStartupThreads;
+  }
+
+  public void setBlogStartupThreads(int blogStartupThreads) {
+    this.blogStartupThreads = blogStartupThreads;
+  }
+
+  /**
+   * Determines whether blogs are only started when first requested.
+   *
+   * @return  true if blogs are started lazily, false otherwise
+   */
+  public boolean isLazyBlogStartup() {
+    return lazyBlogStartup;
+  }
+
+  public void setLazyBlogStartup(boolean lazyBlogStartup) {
+    this.lazyBlogStartup = lazyBlogStartup;
+  }
+
+  /**
+   * Gets the number of minutes after which a blog that hasn't been
+   * requested is stopped.
+   *
+   * @return  a number of minutes, 0 if blogs are never stopped
+   */
+  public int getBlogPassivationTimeout() {
+    return blogPassivationTimeout;
+  }
+
+  public void setBlogPassivationTimeout(int blogPassivationTimeout) {
+    this.blogPassivationTimeout = blogPassivationTimeout;
+  }
+
 
   public boolean isVirtualHostingEnabled() {
     return virtualHostingEnabled;
@@ -52,6 +52,7 @@ public class Constants {
 
   public static final String RECENT_BLOG_ENTRIES = "recentBlogEntries";
   public static final String RECENT_RESPONSES = "recentResponses";
+  public static final String RECENT_RESPONSE_SUMMARIES = "recentResponseSummaries";
   public static final String CATEGORIES = "categories";
   public static final String TAGS = "tags";
   public static final String PLUGIN_PROPERTIES = "pluginProperties";
@@ -40,6 +40,7 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.net.URL;
 
+import net.sourceforge.pebble.metrics.Metrics;
 import net.sourceforge.pebble.util.RelativeDate;
 import net.sourceforge.pebble.domain.*;
 import net.sf.ehcache.Element;
@@ -87,6 +88,7 @@ public class ContentCache {
     if (element != null) {
       blogEntry = (BlogEntry)element.getValue(); 
     }
+    recordLookup(blog, blogEntry != null);
 
     return blogEntry;
   }
@@ -114,10 +116,15 @@ public class ContentCache {
     if (element != null) {
       staticPage = (StaticPage)element.getValue();
     }
+    recordLookup(blog, staticPage != null);
 
     return staticPage;
   }
 
+  private void recordLookup(Blog blog, boolean hit) {
+    Metrics.getInstance().counter(hit ? "contentCache.hits" : "contentCache.misses", blog.getId()).increment();
+  }
+
   public synchronized void removeStaticPage(StaticPage staticPage) {
     cache.remove(getCompositeKeyForStaticPage(staticPage));
   }
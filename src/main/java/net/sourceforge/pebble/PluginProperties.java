@@ -154,6 +154,17 @@ public class PluginProperties {
    */
   public void setProperty(String name, String value) {
     properties.setProperty(name, value);
+    clearDecorationCache();
+  }
+
+  /**
+   * Decorators are configured through plugin properties, so any cached
+   * decorations need to be thrown away when they change.
+   */
+  private void clearDecorationCache() {
+    if (blog.getContentDecoratorChain() != null) {
+      blog.getContentDecoratorChain().clearCache();
+    }
   }
 
   /**
@@ -167,6 +178,7 @@ public class PluginProperties {
         fout.flush();
         fout.close();
       }
+      clearDecorationCache();
     } catch (FileNotFoundException fnfe) {
     } catch (IOException e) {
       log.error(e.getMessage());
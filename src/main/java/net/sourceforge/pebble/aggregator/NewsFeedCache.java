@@ -32,25 +32,33 @@
 
 package net.sourceforge.pebble.aggregator;
 
-import com.rometools.rome.feed.WireFeed;
-import com.rometools.rome.feed.atom.Content;
-import com.rometools.rome.feed.atom.Entry;
-import com.rometools.rome.feed.atom.Link;
-import com.rometools.rome.feed.rss.Channel;
-import com.rometools.rome.feed.rss.Item;
-import com.rometools.rome.io.FeedException;
-import com.rometools.rome.io.WireFeedInput;
-import com.rometools.rome.io.XmlReader;
 import net.sourceforge.pebble.domain.Blog;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.IOException;
-import java.net.URL;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
- * A cache of newsfeed subscriptions and their entries.
+ * A cache of newsfeed subscriptions and their entries. Feeds are refreshed
+ * concurrently (by a small, fixed number of threads) using conditional GETs,
+ * with connect and read timeouts so that one slow source can't hold up the
+ * others. Sources that keep failing are backed off. The merged list of
+ * entries for each blog is only rebuilt when one of its sources changes.
  *
  * @author    Simon Brown
  */
@@ -58,180 +66,237 @@ public class NewsFeedCache {
 
   private static final int FEED_ENTRY_LIMIT = 20;
 
+  private static final int DEFAULT_THREADS = 4;
+  private static final int DEFAULT_CONNECT_TIMEOUT = 1000 * 10;
+  private static final int DEFAULT_READ_TIMEOUT = 1000 * 20;
+
   private static final Log log = LogFactory.getLog(NewsFeedCache.class);
-  private static final NewsFeedCache instance = new NewsFeedCache();
+  private static final NewsFeedCache instance = new NewsFeedCache(DEFAULT_THREADS);
+
+  /** blog ID -> the URLs that blog subscribes to */
+  private final ConcurrentMap<String,Set<String>> subscriptions = new ConcurrentHashMap<String,Set<String>>();
+
+  /** URL -> source */
+  private final ConcurrentMap<String, NewsFeedSource> sources = new ConcurrentHashMap<String, NewsFeedSource>();
+
+  /** blog ID -> merged entries */
+  private final ConcurrentMap<String, MergedEntries> entries = new ConcurrentHashMap<String, MergedEntries>();
+
+  /** URL -> the first fetch of a newly subscribed source, while it's running */
+  private final ConcurrentMap<String, Future<Boolean>> initialFetches = new ConcurrentHashMap<String, Future<Boolean>>();
 
-  private final Map<String,Set<String>> subscriptions = new HashMap<String,Set<String>>();
-  private final Map<String, NewsFeed> feeds = new HashMap<String, NewsFeed>();
-  private final Map<String,List<NewsFeedEntry>> entries = new HashMap<String,List<NewsFeedEntry>>();
-  
-  private NewsFeedCache() {
+  /** guards changes to the subscriptions, and the removal of unsubscribed sources */
+  private final Object subscriptionLock = new Object();
+
+  private final ExecutorService executor;
+
+  private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+  private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+
+  NewsFeedCache(int threads) {
+    executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "pebble-newsfeeds");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
   }
 
   public static NewsFeedCache getInstance() {
     return instance;
   }
 
+  /**
+   * Sets the timeouts used when fetching feeds.
+   *
+   * @param connectTimeout    the connect timeout, in milliseconds
+   * @param readTimeout       the read timeout, in milliseconds
+   */
+  void setTimeouts(int connectTimeout, int readTimeout) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
+
   public void addSubscription(Blog blog, String url) {
-    synchronized (feeds) {
-      Set<String> urls = getUrls(blog.getId());
-      urls.add(url);
+    synchronized (subscriptionLock) {
+      getUrls(blog.getId()).add(url);
+
+      if (!sources.containsKey(url)) {
+        NewsFeedSource source = new NewsFeedSource(url);
+        sources.put(url, source);
+        // the first fetch happens in the background, so everybody sees an empty feed until then
+        fetchInBackground(source);
+      }
+    }
+  }
 
-      NewsFeed feed = feeds.get(url);
-      if (feed == null) {
-        feed = updateFeed(url);
-        feeds.put(url, feed);
+  private void fetchInBackground(final NewsFeedSource source) {
+    final String url = source.getUrl();
+    FutureTask<Boolean> fetch = new FutureTask<Boolean>(new Callable<Boolean>() {
+      public Boolean call() {
+        return source.refresh(connectTimeout, readTimeout);
       }
+    }) {
+      protected void done() {
+        initialFetches.remove(url, this);
+      }
+    };
+
+    initialFetches.put(url, fetch);
+    executor.execute(fetch);
+  }
+
+  /**
+   * Waits for the first fetch of any newly subscribed sources to finish.
+   */
+  void awaitInitialFetches() throws Exception {
+    for (Future<Boolean> fetch : initialFetches.values()) {
+      fetch.get((long)(connectTimeout + readTimeout) * 2, TimeUnit.MILLISECONDS);
     }
   }
 
   public void removeAllSubscriptions(Blog blog) {
-    synchronized (feeds) {
+    synchronized (subscriptionLock) {
       Set<String> urls = getUrls(blog.getId());
       urls.clear();
     }
   }
 
   public void refreshFeeds() {
-    for (String url : feeds.keySet()) {
-      try {
-        NewsFeed updatedFeed = updateFeed(url);
-        synchronized (feeds) {
-          feeds.put(url, updatedFeed);
-        }
-      } catch (Exception e) {
-        log.warn("Couldn't update feed from " + url, e);
+    removeUnsubscribedSources();
+
+    long now = System.currentTimeMillis();
+    List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+    for (final NewsFeedSource source : sources.values()) {
+      if (source.isDue(now)) {
+        tasks.add(new Callable<Boolean>() {
+          public Boolean call() {
+            return source.refresh(connectTimeout, readTimeout);
+          }
+        });
       }
     }
 
-    for (String blogId : subscriptions.keySet()) {
-      List<NewsFeedEntry> entriesForBlog = new LinkedList<NewsFeedEntry>();
-      for (String url : getUrls(blogId)) {
-        entriesForBlog.addAll(feeds.get(url).getEntries());
-      }
-
-      Collections.sort(entriesForBlog, new NewsFeedEntryComparator());
-
-      if (entriesForBlog.size() > FEED_ENTRY_LIMIT) {
-        entriesForBlog = entriesForBlog.subList(0, FEED_ENTRY_LIMIT);
+    try {
+      // each fetch is bounded by its own timeouts, this is a backstop for servers that trickle data
+      List<Future<Boolean>> results = executor.invokeAll(tasks, (long)(connectTimeout + readTimeout) * 2, TimeUnit.MILLISECONDS);
+      int changed = 0;
+      for (Future<Boolean> result : results) {
+        if (!result.isCancelled() && Boolean.TRUE.equals(result.get())) {
+          changed++;
+        }
       }
+      log.debug("Refreshed " + tasks.size() + " of " + sources.size() + " feeds, " + changed + " changed");
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (Exception e) {
+      log.warn("Error while refreshing feeds", e);
+    }
 
-      entries.put(blogId, entriesForBlog);
+    for (String blogId : subscriptions.keySet()) {
+      getEntries(blogId);
     }
   }
 
-  private NewsFeed updateFeed(String url) {
-    NewsFeed feed = new NewsFeed(url);
-
-    try {
-      log.debug("Refreshing feed from " + url);
-
-//      SyndFeedInput input = new SyndFeedInput(true);
-//      SyndFeed sf = input.build(new XmlReader(new URL(url)));
-//
-//      feed.setTitle(sf.getTitle());
-//      feed.setLink(sf.getLink());
-//
-//        for (SyndEntry se : (List<SyndEntry>)sf.getEntries()) {
-//          log.info(se);
-//          NewsFeedEntry fe = new NewsFeedEntry(
-//              se.getLink(),
-//              se.getTitle(),
-//              se.getDescription() != null ? se.getDescription().getValue() : "",
-//              se.getAuthor(),
-//              se.getPublishedDate()
-//          );
-//          feed.add(fe);
-//          log.info(fe);
-//        }
-
-      WireFeedInput input = new WireFeedInput(true, Locale.US);
-      WireFeed wf = input.build(new XmlReader(new URL(url)));
-
-      if (wf.getFeedType() != null && wf.getFeedType().startsWith("rss")) {
-        Channel rssFeed = (Channel)wf;
-
-        feed.setTitle(rssFeed.getTitle());
-        feed.setLink(rssFeed.getLink());
-
-        for (Item item : (List<Item>)rssFeed.getItems()) {
-          NewsFeedEntry fe = new NewsFeedEntry(
-              item.getLink(),
-              item.getTitle(),
-              item.getDescription() != null ? item.getDescription().getValue() : "",
-              item.getAuthor(),
-              item.getPubDate()
-          );
-          feed.add(fe);
-        }
-      } else if (wf.getFeedType() != null && wf.getFeedType().startsWith("atom")) {
-        com.rometools.rome.feed.atom.Feed atomFeed = (com.rometools.rome.feed.atom.Feed)wf;
-        feed.setTitle(atomFeed.getTitle());
-        for (Link link : (List<Link>)atomFeed.getAlternateLinks()) {
-          if ("text/html".equals(link.getType()))
-            feed.setLink(link.getHref());
-        }
+  /**
+   * Forgets about any sources that are no longer subscribed to. This holds
+   * the subscription lock, so that a source subscribed to in the meantime
+   * is never removed.
+   */
+  private void removeUnsubscribedSources() {
+    synchronized (subscriptionLock) {
+      Set<String> subscribed = new HashSet<String>();
+      for (Set<String> urls : subscriptions.values()) {
+        subscribed.addAll(urls);
+      }
 
-        for (Entry entry : (List<Entry>)atomFeed.getEntries()) {
-          String href = "";
-          for (Link link : (List<Link>)entry.getAlternateLinks()) {
-            if ("text/html".equals(link.getType()))
-              href = link.getHref();
-          }
-          String body = null;
-          for (Content content : (List<Content>)entry.getContents()) {
-            if ("html".equals(content.getType()))
-              body = content.getValue();
-          }
-          if (body == null) {
-            for (Content content : (List<Content>)entry.getSummary()) {
-              if ("html".equals(content.getType()))
-                body = content.getValue();
-            }
-          }
-          String author = entry.getAuthors() != null && entry.getAuthors().size() > 0 ? entry.getAuthors().get(0).toString() : "";
-          NewsFeedEntry fe = new NewsFeedEntry(
-              href,
-              entry.getTitle(),
-              body,
-              author,
-              entry.getPublished()
-          );
-          feed.add(fe);
+      for (String url : sources.keySet()) {
+        if (!subscribed.contains(url)) {
+          sources.remove(url);
         }
       }
-
-      log.debug("Refreshed feed from " + url);
-    } catch (FeedException e) {
-      log.warn("Error while updating feed from " + url, e);
-    } catch (IOException e) {
-      log.warn("Error while updating feed from " + url, e);
     }
-
-    return feed;
   }
 
   public NewsFeed getFeed(String url) {
-    return feeds.get(url);
+    NewsFeedSource source = sources.get(url);
+    return source != null ? source.getFeed() : null;
   }
 
   public List<NewsFeedEntry> getNewsFeedEntries(Blog blog) {
-    List<NewsFeedEntry> list = entries.get(blog.getId());
-    if (list == null) {
-      list = new LinkedList<NewsFeedEntry>();
+    return getEntries(blog.getId());
+  }
+
+  /**
+   * Gets the merged entries for a blog, rebuilding them if any of the
+   * blog's sources have changed since they were last merged.
+   */
+  private List<NewsFeedEntry> getEntries(String blogId) {
+    Set<String> urls = subscriptions.get(blogId);
+    if (urls == null) {
+      return Collections.emptyList();
+    }
+
+    Map<String, Long> versions = new HashMap<String, Long>();
+    for (String url : urls) {
+      NewsFeedSource source = sources.get(url);
+      if (source != null) {
+        versions.put(url, source.getVersion());
+      }
+    }
+
+    MergedEntries merged = entries.get(blogId);
+    if (merged == null || !merged.versions.equals(versions)) {
+      List<NewsFeedEntry> entriesForBlog = new ArrayList<NewsFeedEntry>();
+      for (String url : versions.keySet()) {
+        NewsFeed feed = getFeed(url);
+        if (feed != null) {
+          entriesForBlog.addAll(feed.getEntries());
+        }
+      }
+
+      Collections.sort(entriesForBlog, new NewsFeedEntryComparator());
+
+      if (entriesForBlog.size() > FEED_ENTRY_LIMIT) {
+        entriesForBlog = new ArrayList<NewsFeedEntry>(entriesForBlog.subList(0, FEED_ENTRY_LIMIT));
+      }
+
+      merged = new MergedEntries(versions, Collections.unmodifiableList(entriesForBlog));
+      entries.put(blogId, merged);
     }
 
-    return list;
+    return merged.entries;
   }
 
   private Set<String> getUrls(String blogId) {
     Set<String> urls = subscriptions.get(blogId);
     if (urls == null) {
-      urls = new HashSet<String>();
-      subscriptions.put(blogId, urls);
+      Set<String> newUrls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      urls = subscriptions.putIfAbsent(blogId, newUrls);
+      if (urls == null) {
+        urls = newUrls;
+      }
     }
 
     return urls;
   }
 
+  /**
+   * The merged entries for a blog, along with the versions of the
+   * sources they were merged from.
+   */
+  private static class MergedEntries {
+
+    private final Map<String, Long> versions;
+    private final List<NewsFeedEntry> entries;
+
+    MergedEntries(Map<String, Long> versions, List<NewsFeedEntry> entries) {
+      this.versions = versions;
+      this.entries = entries;
+    }
+
+  }
+
 }
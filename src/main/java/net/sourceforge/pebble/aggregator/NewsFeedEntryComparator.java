@@ -35,7 +35,7 @@ import java.util.Comparator;
 
 /**
  * A comparator used to order NewsFeedEntry instances, in reverse order
- * of their date.
+ * of their date. Entries without a date are placed last.
  *
  * @author    Simon Brown
  */
@@ -50,6 +50,10 @@ public class NewsFeedEntryComparator implements Comparator<NewsFeedEntry> {
    *          the same as or greater than the first, respectively
    */
   public int compare(NewsFeedEntry entry1, NewsFeedEntry entry2) {
+    if (entry1.getDate() == null || entry2.getDate() == null) {
+      return (entry1.getDate() == null ? 1 : 0) - (entry2.getDate() == null ? 1 : 0);
+    }
+
     return entry2.getDate().compareTo(entry1.getDate());
   }
 
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.aggregator;
+
+import com.rometools.rome.feed.WireFeed;
+import com.rometools.rome.feed.atom.Content;
+import com.rometools.rome.feed.atom.Entry;
+import com.rometools.rome.feed.atom.Link;
+import com.rometools.rome.feed.rss.Channel;
+import com.rometools.rome.feed.rss.Item;
+import com.rometools.rome.io.FeedException;
+import com.rometools.rome.io.WireFeedInput;
+import com.rometools.rome.io.XmlReader;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A single remote newsfeed, along with what's needed to refresh it cheaply:
+ * the validators from the last response (for conditional GETs), a digest of
+ * the last content seen and the backoff state for sources that keep failing.
+ */
+class NewsFeedSource {
+
+  private static final Log log = LogFactory.getLog(NewsFeedSource.class);
+
+  /** feeds larger than this are ignored, rather than read into memory */
+  private static final int MAXIMUM_FEED_SIZE = 2 * 1024 * 1024;
+
+  /** failing sources are retried after 5 minutes, doubling up to 6 hours */
+  static final long MINIMUM_BACKOFF = 1000 * 60 * 5;
+  static final long MAXIMUM_BACKOFF = 1000 * 60 * 60 * 6;
+
+  private final String url;
+
+  /** the most recently fetched version of the feed */
+  private volatile NewsFeed feed;
+
+  /** incremented every time the content of the feed changes */
+  private volatile long version;
+
+  // the following are only accessed while refreshing, which is synchronized
+  private String etag;
+  private String lastModified;
+  private byte[] digest;
+  private int failures;
+  private long nextAttempt;
+
+  NewsFeedSource(String url) {
+    this.url = url;
+    this.feed = new NewsFeed(url);
+  }
+
+  String getUrl() {
+    return url;
+  }
+
+  NewsFeed getFeed() {
+    return feed;
+  }
+
+  long getVersion() {
+    return version;
+  }
+
+  synchronized int getFailures() {
+    return failures;
+  }
+
+  /**
+   * Determines whether this source should be refreshed, given its backoff.
+   */
+  synchronized boolean isDue(long now) {
+    return now >= nextAttempt;
+  }
+
+  /**
+   * Refreshes this feed, with a conditional GET if possible.
+   *
+   * @param connectTimeout    the connect timeout, in milliseconds
+   * @param readTimeout       the read timeout, in milliseconds
+   * @return  true if the content of the feed changed, false otherwise
+   */
+  synchronized boolean refresh(int connectTimeout, int readTimeout) {
+    try {
+      log.debug("Refreshing feed from " + url);
+      boolean changed = fetch(connectTimeout, readTimeout);
+      failures = 0;
+      nextAttempt = 0;
+      log.debug("Refreshed feed from " + url + (changed ? "" : " (unchanged)"));
+
+      return changed;
+    } catch (Exception e) {
+      failures++;
+      long backoff = Math.min(MAXIMUM_BACKOFF, MINIMUM_BACKOFF << Math.min(failures - 1, 16));
+      nextAttempt = System.currentTimeMillis() + backoff;
+      log.warn("Error while updating feed from " + url + " (failed " + failures + " time(s), next attempt in " + (backoff / 1000) + "s): " + e.getMessage());
+
+      return false;
+    }
+  }
+
+  private boolean fetch(int connectTimeout, int readTimeout) throws IOException, FeedException {
+    URLConnection connection = new URL(url).openConnection();
+    connection.setConnectTimeout(connectTimeout);
+    connection.setReadTimeout(readTimeout);
+    connection.setUseCaches(false);
+    connection.setRequestProperty("User-Agent", "Pebble");
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+    if (etag != null) {
+      connection.setRequestProperty("If-None-Match", etag);
+    }
+    if (lastModified != null) {
+      connection.setRequestProperty("If-Modified-Since", lastModified);
+    }
+
+    try {
+      if (connection instanceof HttpURLConnection) {
+        int status = ((HttpURLConnection)connection).getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+          return false;
+        } else if (status != HttpURLConnection.HTTP_OK) {
+          throw new IOException("HTTP " + status);
+        }
+      }
+
+      byte[] content = read(connection);
+      byte[] newDigest = digest(content);
+      String newEtag = connection.getHeaderField("ETag");
+      String newLastModified = connection.getHeaderField("Last-Modified");
+      if (digest != null && Arrays.equals(digest, newDigest)) {
+        // the server doesn't support conditional GETs, but nothing has changed
+        etag = newEtag;
+        lastModified = newLastModified;
+        return false;
+      }
+
+      InputStream in = new ByteArrayInputStream(content);
+      String contentType = connection.getContentType();
+      NewsFeed newFeed = parse(contentType != null ? new XmlReader(in, contentType, true) : new XmlReader(in, true));
+
+      // only remember the validators once the content has been parsed successfully
+      etag = newEtag;
+      lastModified = newLastModified;
+      digest = newDigest;
+      feed = newFeed;
+      version++;
+
+      return true;
+    } finally {
+      if (connection instanceof HttpURLConnection) {
+        ((HttpURLConnection)connection).disconnect();
+      }
+    }
+  }
+
+  private byte[] read(URLConnection connection) throws IOException {
+    if (connection.getContentLength() > MAXIMUM_FEED_SIZE) {
+      throw new IOException("Feed is too large (" + connection.getContentLength() + " bytes)");
+    }
+
+    InputStream in = connection.getInputStream();
+    try {
+      if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+        in = new GZIPInputStream(in);
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int len = in.read(buf);
+      while (len != -1) {
+        out.write(buf, 0, len);
+        if (out.size() > MAXIMUM_FEED_SIZE) {
+          throw new IOException("Feed is too large (more than " + MAXIMUM_FEED_SIZE + " bytes)");
+        }
+        len = in.read(buf);
+      }
+
+      return out.toByteArray();
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  private static byte[] digest(byte[] content) {
+    try {
+      return MessageDigest.getInstance("MD5").digest(content);
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IllegalStateException(nsae);
+    }
+  }
+
+  private NewsFeed parse(XmlReader reader) throws FeedException {
+    NewsFeed feed = new NewsFeed(url);
+
+    WireFeedInput input = new WireFeedInput(true, Locale.US);
+    WireFeed wf = input.build(reader);
+
+    if (wf.getFeedType() != null && wf.getFeedType().startsWith("rss")) {
+      Channel rssFeed = (Channel)wf;
+
+      feed.setTitle(rssFeed.getTitle());
+      feed.setLink(rssFeed.getLink());
+
+      for (Item item : (List<Item>)rssFeed.getItems()) {
+        NewsFeedEntry fe = new NewsFeedEntry(
+            item.getLink(),
+            item.getTitle(),
+            item.getDescription() != null ? item.getDescription().getValue() : "",
+            item.getAuthor(),
+            item.getPubDate()
+        );
+        feed.add(fe);
+      }
+    } else if (wf.getFeedType() != null && wf.getFeedType().startsWith("atom")) {
+      com.rometools.rome.feed.atom.Feed atomFeed = (com.rometools.rome.feed.atom.Feed)wf;
+      feed.setTitle(atomFeed.getTitle());
+      for (Link link : (List<Link>)atomFeed.getAlternateLinks()) {
+        if ("text/html".equals(link.getType()))
+          feed.setLink(link.getHref());
+      }
+
+      for (Entry entry : (List<Entry>)atomFeed.getEntries()) {
+        String href = "";
+        for (Link link : (List<Link>)entry.getAlternateLinks()) {
+          if ("text/html".equals(link.getType()))
+            href = link.getHref();
+        }
+        String body = null;
+        for (Content content : (List<Content>)entry.getContents()) {
+          if ("html".equals(content.getType()))
+            body = content.getValue();
+        }
+        if (body == null && entry.getSummary() != null) {
+          Content summary = entry.getSummary();
+          if ("html".equals(summary.getType()))
+            body = summary.getValue();
+        }
+        String author = entry.getAuthors() != null && entry.getAuthors().size() > 0 ? entry.getAuthors().get(0).toString() : "";
+        NewsFeedEntry fe = new NewsFeedEntry(
+            href,
+            entry.getTitle(),
+            body,
+            author,
+            entry.getPublished()
+        );
+        feed.add(fe);
+      }
+    }
+
+    return feed;
+  }
+
+}
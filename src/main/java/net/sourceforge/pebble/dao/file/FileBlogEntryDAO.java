@@ -35,6 +35,7 @@ package net.sourceforge.pebble.dao.file;
 import net.sourceforge.pebble.dao.BlogEntryDAO;
 import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.metrics.Metrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Document;
@@ -98,6 +99,7 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
       log.debug("Loading " + source.getAbsolutePath());
       BlogEntry blogEntry = new BlogEntry(blog);
 
+      long startTime = System.nanoTime();
       try {
         DefaultHandler handler = new BlogEntryHandler(blogEntry);
         SAXParserFactory saxFactory = SAXParserFactory.newInstance();
@@ -110,6 +112,8 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
         log.error(e.getMessage() + " while loading blog enty from " + source.getAbsolutePath(), e);
         e.printStackTrace();
         throw new PersistenceException(e.getMessage());
+      } finally {
+        Metrics.getInstance().timer("dao.blogEntry.load", blog.getId()).stop(startTime);
       }
 
       return blogEntry;
@@ -160,7 +164,12 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
     }
 
     File outputFile = new File(outputDir, blogEntry.getId() + ".xml");
-    storeBlogEntry(blogEntry, outputFile);
+    long startTime = System.nanoTime();
+    try {
+      storeBlogEntry(blogEntry, outputFile);
+    } finally {
+      Metrics.getInstance().timer("dao.blogEntry.store", blogEntry.getBlog().getId()).stop(startTime);
+    }
   }
 
 
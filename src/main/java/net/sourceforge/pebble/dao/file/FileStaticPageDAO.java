@@ -36,6 +36,7 @@ import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.dao.StaticPageDAO;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.StaticPage;
+import net.sourceforge.pebble.util.FileUtils;
 import net.sourceforge.pebble.util.SecurityUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -293,20 +294,27 @@ public class FileStaticPageDAO implements StaticPageDAO {
    */
   public boolean lock(StaticPage staticPage) {
     File lockFile = getLockFile(staticPage);
-    try {
-      boolean success = lockFile.createNewFile();
-      if (success) {
-        FileWriter writer = new FileWriter(lockFile);
-        writer.write(SecurityUtils.getUsername());
-        writer.flush();
-        writer.close();
-        return true;
-      } else {
-        String lockedBy = getUsernameHoldingLock(staticPage);
-        return (lockedBy != null && lockedBy.equals(SecurityUtils.getUsername()));
+    String username = SecurityUtils.getUsername();
+    // threads in this JVM take turns, so none of them sees a lock file that's been claimed but not written
+    synchronized (FileUtils.getMonitor(lockFile)) {
+      try {
+        // creating the file claims the page, even against other processes
+        if (lockFile.createNewFile()) {
+          try {
+            // so that another process reads either nobody or the whole username
+            FileUtils.writeAtomically(lockFile, username.getBytes("UTF-8"));
+          } catch (IOException ioe) {
+            lockFile.delete();
+            throw ioe;
+          }
+          return true;
+        } else {
+          String lockedBy = getUsernameHoldingLock(lockFile);
+          return (lockedBy != null && lockedBy.equals(username));
+        }
+      } catch (IOException e) {
+        log.warn("Exception while attempting to lock static page " + staticPage.getGuid(), e);
       }
-    } catch (IOException e) {
-      log.warn("Exceptoin while attempting to lock static page " + staticPage.getGuid(), e);
     }
 
     return false;
@@ -320,10 +328,12 @@ public class FileStaticPageDAO implements StaticPageDAO {
    */
   public boolean unlock(StaticPage staticPage) {
     File lockFile = getLockFile(staticPage);
-    if (lockFile.exists()) {
-      return lockFile.delete();
-    } else {
-      return true;
+    synchronized (FileUtils.getMonitor(lockFile)) {
+      if (lockFile.exists()) {
+        return lockFile.delete();
+      } else {
+        return true;
+      }
     }
   }
 
@@ -347,14 +357,36 @@ public class FileStaticPageDAO implements StaticPageDAO {
   }
 
   private String getUsernameHoldingLock(StaticPage staticPage) {
+    File lockFile = getLockFile(staticPage);
+    synchronized (FileUtils.getMonitor(lockFile)) {
+      return getUsernameHoldingLock(lockFile);
+    }
+  }
+
+  /**
+   * Reads the username from a lock file. The username is written in one go
+   * with a rename, but another process may have just created the file and
+   * not yet written it, in which case the page is locked by somebody
+   * unknown and an empty String is returned.
+   *
+   * @return  the username, an empty String, or null if the page isn't locked
+   */
+  private String getUsernameHoldingLock(File lockFile) {
     String username = null;
     try {
-      File lockFile = getLockFile(staticPage);
       if (lockFile.exists()) {
-        BufferedReader reader = new BufferedReader(new FileReader(lockFile));
-        username = reader.readLine();
-        reader.close();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(lockFile), "UTF-8"));
+        try {
+          username = reader.readLine();
+        } finally {
+          reader.close();
+        }
+        if (username == null) {
+          username = "";
+        }
       }
+    } catch (FileNotFoundException fnfe) {
+      // the page was unlocked in the meantime
     } catch (IOException ioe) {
       log.warn("Error reading lock file", ioe);
     }
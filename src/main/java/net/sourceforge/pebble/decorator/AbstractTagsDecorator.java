@@ -35,6 +35,7 @@ package net.sourceforge.pebble.decorator;
 import java.util.Iterator;
 
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 import net.sourceforge.pebble.domain.PageBasedContent;
 import net.sourceforge.pebble.domain.Tag;
 import net.sourceforge.pebble.util.I18n;
@@ -45,7 +46,7 @@ import net.sourceforge.pebble.util.I18n;
  * 
  * @author Simon Brown
  */
-public abstract class AbstractTagsDecorator extends ContentDecoratorSupport {
+public abstract class AbstractTagsDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
   private final String resourceKey;
   private final String target;
 
@@ -35,6 +35,7 @@ package net.sourceforge.pebble.decorator;
 import java.util.Iterator;
 
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Category;
 import net.sourceforge.pebble.util.I18n;
@@ -45,7 +46,7 @@ import net.sourceforge.pebble.util.I18n;
  * 
  * @author Simon Brown
  */
-public class BlogCategoriesDecorator extends ContentDecoratorSupport {
+public class BlogCategoriesDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
 
   /**
    * Decorates the specified blog entry.
@@ -34,12 +34,16 @@ package net.sourceforge.pebble.decorator;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.api.decorator.ContentDecorator;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Manages a list of content decorators at runtime.
+ * Manages a list of content decorators at runtime. The results of runs of
+ * {@link DeterministicContentDecorator}s are cached, so that only
+ * request-dependent decorators are run on every render, and consecutive
+ * {@link HtmlRewritingDecorator}s share a single pass over the HTML.
  *
  * @author    Simon Brown
  */
@@ -51,6 +55,9 @@ public class ContentDecoratorChain implements ContentDecorator {
   /** the list of decorators */
   private List<ContentDecorator> decorators = new ArrayList<ContentDecorator>();
 
+  /** the cache of decoration results */
+  private DecorationCache cache;
+
   /**
    * Creates a new chain.
    *
@@ -58,6 +65,7 @@ public class ContentDecoratorChain implements ContentDecorator {
    */
   public ContentDecoratorChain(Blog blog) {
     setBlog(blog);
+    this.cache = new DecorationCache(blog);
   }
 
   /**
@@ -67,6 +75,7 @@ public class ContentDecoratorChain implements ContentDecorator {
    */
   public void add(ContentDecorator decorator) {
     decorators.add(decorator);
+    cache.clear();
   }
 
   /**
@@ -85,9 +94,7 @@ public class ContentDecoratorChain implements ContentDecorator {
    * @param blogEntry the blog entry to be decorated
    */
   public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
-    for (ContentDecorator decorator : decorators) {
-      decorator.decorate(context, blogEntry);
-    }
+    decorate(context, blogEntry, ContentType.BLOG_ENTRY);
 
     // if the view is detail, decorate the comments and TrackBacks too
     if (context.getView() == ContentDecoratorContext.DETAIL_VIEW) {
@@ -108,9 +115,7 @@ public class ContentDecoratorChain implements ContentDecorator {
    * @param comment the comment to be decorated
    */
   public void decorate(ContentDecoratorContext context, Comment comment) {
-    for (ContentDecorator decorator : decorators) {
-      decorator.decorate(context, comment);
-    }
+    decorate(context, comment, ContentType.COMMENT);
   }
 
   /**
@@ -120,9 +125,7 @@ public class ContentDecoratorChain implements ContentDecorator {
    * @param trackBack the TrackBack to be decorated
    */
   public void decorate(ContentDecoratorContext context, TrackBack trackBack) {
-    for (ContentDecorator decorator : decorators) {
-      decorator.decorate(context, trackBack);
-    }
+    decorate(context, trackBack, ContentType.TRACKBACK);
   }
 
   /**
@@ -132,11 +135,49 @@ public class ContentDecoratorChain implements ContentDecorator {
    * @param staticPage the static page to be decorated
    */
   public void decorate(ContentDecoratorContext context, StaticPage staticPage) {
-    for (ContentDecorator decorator : decorators) {
-      decorator.decorate(context, staticPage);
+    decorate(context, staticPage, ContentType.STATIC_PAGE);
+  }
+
+  /**
+   * Runs each decorator in turn, taking the results of consecutive
+   * deterministic decorators from the cache where possible.
+   */
+  private <T extends Content> void decorate(ContentDecoratorContext context, T content, ContentType<T> type) {
+    int i = 0;
+    while (i < decorators.size()) {
+      boolean deterministic = decorators.get(i) instanceof DeterministicContentDecorator;
+      int end = i + 1;
+      while (end < decorators.size() && (decorators.get(end) instanceof DeterministicContentDecorator) == deterministic) {
+        end++;
+      }
+
+      if (deterministic) {
+        cache.decorate(context, content, type, i, decorators.subList(i, end));
+      } else {
+        type.decorate(decorators.subList(i, end), context, content);
+      }
+      i = end;
     }
   }
 
+  /**
+   * Removes any cached decorations for the specified blog entry, and its
+   * comments and TrackBacks.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public void invalidate(BlogEntry blogEntry) {
+    cache.remove(blogEntry);
+  }
+
+  /**
+   * Removes all cached decorations, e.g. when the plugin properties or
+   * static pages (which decorators may link to) change.
+   */
+  public void clearCache() {
+    cache.clear();
+  }
+
   /**
    * Gets the blog to which this decorator is associated.
    *
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecorator;
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.util.html.HtmlRewriter;
+import net.sourceforge.pebble.util.html.HtmlVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes how a given type of content is decorated, keyed, compared and
+ * restored by the decorator chain and its cache.
+ */
+abstract class ContentType<T extends Content> {
+
+  /** the blog entry/static page that the content belongs to */
+  abstract String getKey(T content);
+
+  /** identifies the content within the blog entry/static page */
+  abstract String getDecorationKey(T content);
+
+  /** everything that deterministic decorators may read */
+  abstract Object[] getInputs(T content);
+
+  /** the HTML fields; everything that deterministic decorators may change */
+  abstract String[] getOutputs(T content);
+
+  abstract void setOutputs(T content, String[] outputs);
+
+  abstract void decorate(ContentDecorator decorator, ContentDecoratorContext context, T content);
+
+  /**
+   * Runs the given decorators over the content, in order. Consecutive
+   * {@link HtmlRewritingDecorator}s are combined, so that each HTML field
+   * is rewritten by all of them in a single pass.
+   *
+   * @param decorators  a List of ContentDecorator instances
+   * @param context     the context in which the decoration is running
+   * @param content     the content to decorate
+   */
+  void decorate(List<? extends ContentDecorator> decorators, ContentDecoratorContext context, T content) {
+    int i = 0;
+    while (i < decorators.size()) {
+      ContentDecorator decorator = decorators.get(i);
+      if (decorator instanceof HtmlRewritingDecorator) {
+        int end = i + 1;
+        while (end < decorators.size() && decorators.get(end) instanceof HtmlRewritingDecorator) {
+          end++;
+        }
+        rewrite(decorators.subList(i, end), context, content);
+        i = end;
+      } else {
+        decorate(decorator, context, content);
+        i++;
+      }
+    }
+  }
+
+  private void rewrite(List<? extends ContentDecorator> decorators, ContentDecoratorContext context, T content) {
+    String[] fields = getOutputs(content);
+    List<HtmlVisitor> visitors = new ArrayList<HtmlVisitor>(decorators.size());
+    boolean changed = false;
+    for (int i = 0; i < fields.length; i++) {
+      visitors.clear();
+      for (ContentDecorator decorator : decorators) {
+        HtmlVisitor visitor = ((HtmlRewritingDecorator)decorator).getVisitor(context, content);
+        if (visitor != null) {
+          visitors.add(visitor);
+        }
+      }
+
+      String html = HtmlRewriter.rewrite(fields[i], visitors);
+      if (html != fields[i]) {
+        fields[i] = html;
+        changed = true;
+      }
+    }
+
+    if (changed) {
+      setOutputs(content, fields);
+    }
+
+    for (ContentDecorator decorator : decorators) {
+      ((HtmlRewritingDecorator)decorator).decorateProperties(context, content);
+    }
+  }
+
+  static final ContentType<BlogEntry> BLOG_ENTRY = new ContentType<BlogEntry>() {
+    String getKey(BlogEntry blogEntry) {
+      return "e/" + blogEntry.getId();
+    }
+
+    String getDecorationKey(BlogEntry blogEntry) {
+      return "e";
+    }
+
+    Object[] getInputs(BlogEntry blogEntry) {
+      // categories are equal by ID alone, so their names are compared too
+      List<String> categoryNames = new ArrayList<String>();
+      for (Category category : blogEntry.getCategories()) {
+        categoryNames.add(category.getName());
+      }
+
+      return new Object[] {
+          blogEntry.getTitle(), blogEntry.getSubtitle(), blogEntry.getBody(), blogEntry.getExcerpt(),
+          blogEntry.getAuthor(), blogEntry.getDate(), blogEntry.getCategories(), categoryNames,
+          blogEntry.getTags(), blogEntry.isAggregated(), blogEntry.getOriginalPermalink()
+      };
+    }
+
+    String[] getOutputs(BlogEntry blogEntry) {
+      return new String[] { blogEntry.getBody(), blogEntry.getExcerpt() };
+    }
+
+    void setOutputs(BlogEntry blogEntry, String[] outputs) {
+      blogEntry.setBody(outputs[0]);
+      blogEntry.setExcerpt(outputs[1]);
+    }
+
+    void decorate(ContentDecorator decorator, ContentDecoratorContext context, BlogEntry blogEntry) {
+      decorator.decorate(context, blogEntry);
+    }
+  };
+
+  static final ContentType<Comment> COMMENT = new ContentType<Comment>() {
+    String getKey(Comment comment) {
+      return BLOG_ENTRY.getKey(comment.getBlogEntry());
+    }
+
+    String getDecorationKey(Comment comment) {
+      return "c/" + comment.getId();
+    }
+
+    Object[] getInputs(Comment comment) {
+      return new Object[] {
+          comment.getTitle(), comment.getBody(), comment.getAuthor(), comment.getEmail(),
+          comment.getWebsite(), comment.isAuthenticated()
+      };
+    }
+
+    String[] getOutputs(Comment comment) {
+      return new String[] { comment.getBody() };
+    }
+
+    void setOutputs(Comment comment, String[] outputs) {
+      comment.setBody(outputs[0]);
+    }
+
+    void decorate(ContentDecorator decorator, ContentDecoratorContext context, Comment comment) {
+      decorator.decorate(context, comment);
+    }
+  };
+
+  static final ContentType<TrackBack> TRACKBACK = new ContentType<TrackBack>() {
+    String getKey(TrackBack trackBack) {
+      return BLOG_ENTRY.getKey(trackBack.getBlogEntry());
+    }
+
+    String getDecorationKey(TrackBack trackBack) {
+      return "t/" + trackBack.getId();
+    }
+
+    Object[] getInputs(TrackBack trackBack) {
+      return new Object[] {
+          trackBack.getTitle(), trackBack.getExcerpt(), trackBack.getUrl(), trackBack.getBlogName()
+      };
+    }
+
+    String[] getOutputs(TrackBack trackBack) {
+      return new String[] { trackBack.getExcerpt() };
+    }
+
+    void setOutputs(TrackBack trackBack, String[] outputs) {
+      trackBack.setExcerpt(outputs[0]);
+    }
+
+    void decorate(ContentDecorator decorator, ContentDecoratorContext context, TrackBack trackBack) {
+      decorator.decorate(context, trackBack);
+    }
+  };
+
+  static final ContentType<StaticPage> STATIC_PAGE = new ContentType<StaticPage>() {
+    String getKey(StaticPage staticPage) {
+      return "p/" + staticPage.getId();
+    }
+
+    String getDecorationKey(StaticPage staticPage) {
+      return "p";
+    }
+
+    Object[] getInputs(StaticPage staticPage) {
+      return new Object[] {
+          staticPage.getTitle(), staticPage.getSubtitle(), staticPage.getBody(), staticPage.getName(),
+          staticPage.getAuthor(), staticPage.getDate(), staticPage.getTags()
+      };
+    }
+
+    String[] getOutputs(StaticPage staticPage) {
+      return new String[] { staticPage.getBody() };
+    }
+
+    void setOutputs(StaticPage staticPage, String[] outputs) {
+      staticPage.setBody(outputs[0]);
+    }
+
+    void decorate(ContentDecorator decorator, ContentDecoratorContext context, StaticPage staticPage) {
+      decorator.decorate(context, staticPage);
+    }
+  };
+
+}
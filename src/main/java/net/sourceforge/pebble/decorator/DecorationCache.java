@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecorator;
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the results of running a run of deterministic content decorators,
+ * per blog entry/static page, view and media. Each cached result records
+ * the content it was produced from and is only replayed if the content
+ * still matches, so a stale result is never used even if an invalidation
+ * is missed. Blog entries are evicted least recently used first.
+ */
+class DecorationCache {
+
+  /** the default maximum number of blog entries/static pages to cache */
+  static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+  /** the blog that this cache belongs to */
+  private final Blog blog;
+
+  /** decorations, keyed on blog entry/static page and then on decoration */
+  private final Map<String,Map<String,Decoration>> decorations;
+
+  DecorationCache(Blog blog) {
+    this(blog, DEFAULT_MAXIMUM_SIZE);
+  }
+
+  DecorationCache(Blog blog, final int maximumSize) {
+    this.blog = blog;
+    this.decorations = new LinkedHashMap<String,Map<String,Decoration>>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String,Map<String,Decoration>> eldest) {
+        return size() > maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Runs the given decorators over the content, or replays the result of a
+   * previous run if the content hasn't changed since.
+   *
+   * @param context     the context in which the decoration is running
+   * @param content     the content to decorate
+   * @param type        the type of content
+   * @param segment     the position of the first decorator in the chain
+   * @param decorators  the (deterministic) decorators to run
+   */
+  <T extends Content> void decorate(ContentDecoratorContext context, T content, ContentType<T> type, int segment, List<ContentDecorator> decorators) {
+    if (context.getView() == ContentDecoratorContext.PREVIEW) {
+      // previews are, by definition, changing - don't bother caching them
+      type.decorate(decorators, context, content);
+      return;
+    }
+
+    String key = type.getKey(content);
+    String decorationKey = type.getDecorationKey(content) + "/" + segment + "/" + context.getView() + "/" + context.getMedia();
+    Object[] inputs = type.getInputs(content);
+
+    Decoration decoration = get(key, decorationKey);
+    if (decoration != null && Arrays.equals(decoration.inputs, inputs)) {
+      recordLookup(true);
+      type.setOutputs(content, decoration.outputs);
+    } else {
+      recordLookup(false);
+      type.decorate(decorators, context, content);
+      put(key, decorationKey, new Decoration(inputs, type.getOutputs(content)));
+    }
+  }
+
+  private synchronized Decoration get(String key, String decorationKey) {
+    Map<String,Decoration> map = decorations.get(key);
+    return map != null ? map.get(decorationKey) : null;
+  }
+
+  private synchronized void put(String key, String decorationKey, Decoration decoration) {
+    Map<String,Decoration> map = decorations.get(key);
+    if (map == null) {
+      map = new HashMap<String,Decoration>();
+      decorations.put(key, map);
+    }
+    map.put(decorationKey, decoration);
+  }
+
+  /**
+   * Removes all cached decorations for the specified blog entry, including
+   * those for its comments and TrackBacks.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  synchronized void remove(BlogEntry blogEntry) {
+    decorations.remove(ContentType.BLOG_ENTRY.getKey(blogEntry));
+  }
+
+  /**
+   * Removes all cached decorations.
+   */
+  synchronized void clear() {
+    decorations.clear();
+  }
+
+  /**
+   * Gets the number of blog entries/static pages with cached decorations.
+   *
+   * @return  an int
+   */
+  synchronized int size() {
+    return decorations.size();
+  }
+
+  private void recordLookup(boolean hit) {
+    if (blog != null) {
+      Metrics.getInstance().counter(hit ? "decorationCache.hits" : "decorationCache.misses", blog.getId()).increment();
+    }
+  }
+
+  /**
+   * The result of running the decorators.
+   */
+  private static class Decoration {
+
+    private final Object[] inputs;
+    private final String[] outputs;
+
+    Decoration(Object[] inputs, String[] outputs) {
+      this.inputs = inputs;
+      this.outputs = outputs;
+    }
+
+  }
+
+}
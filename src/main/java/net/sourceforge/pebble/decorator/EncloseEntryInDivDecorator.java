@@ -1,6 +1,7 @@
 package net.sourceforge.pebble.decorator;
 
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.StaticPage;
 
@@ -10,7 +11,7 @@ import net.sourceforge.pebble.domain.StaticPage;
  *
  * @author Pieroxy
  */
-public class EncloseEntryInDivDecorator extends ContentDecoratorSupport {
+public class EncloseEntryInDivDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
 
   /**
    * Decorates the specified blog entry by putting the existing body and excerpt in a DIV.
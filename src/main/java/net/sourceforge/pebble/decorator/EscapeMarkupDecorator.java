@@ -36,6 +36,7 @@ import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.StaticPage;
 import net.sourceforge.pebble.util.StringUtils;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -46,7 +47,7 @@ import java.util.regex.Pattern;
  * 
  * @author Simon Brown
  */
-public class EscapeMarkupDecorator extends ContentDecoratorSupport {
+public class EscapeMarkupDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
 
   private static final String ESCAPE_START_TAG = "<escape>";
   private static final String ESCAPE_END_TAG = "</escape>";
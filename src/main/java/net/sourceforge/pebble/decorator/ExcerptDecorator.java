@@ -32,6 +32,7 @@
 package net.sourceforge.pebble.decorator;
 
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.StaticPage;
 import net.sourceforge.pebble.util.StringUtils;
@@ -45,7 +46,7 @@ import org.apache.commons.logging.LogFactory;
  *
  * @author Simon Brown
  */
-public class ExcerptDecorator extends ContentDecoratorSupport {
+public class ExcerptDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
 
   private static final Log log = LogFactory.getLog(ExcerptDecorator.class);
 
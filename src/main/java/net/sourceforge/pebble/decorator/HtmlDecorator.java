@@ -39,6 +39,12 @@ import net.sourceforge.pebble.util.StringUtils;
 
 /**
  * Decorates blog entries and comments by rendering them as HTML.
+ * <p />
+ * Comment and TrackBack text is escaped a character at a time, and the
+ * allowed subset of tags is then restored in a single pass over the
+ * escaped text. Neither step needs the HTML token stream that the
+ * rewriting decorators use, since the input is treated as text rather
+ * than markup.
  * 
  * @author Simon Brown
  */
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.util.html.HtmlVisitor;
+
+import java.util.Collections;
+
+/**
+ * Starting point for decorators that rewrite the HTML of content (the body
+ * and excerpt of blog entries, the body of static pages and comments, and
+ * the excerpt of TrackBacks) token by token. Rather than each scanning and
+ * rebuilding the HTML, consecutive decorators of this type in a chain
+ * share a single pass over it.
+ */
+public abstract class HtmlRewritingDecorator extends ContentDecoratorSupport {
+
+  /**
+   * Gets a visitor to rewrite one HTML field of the given content. This is
+   * called once per field, so each visitor only ever sees one document.
+   *
+   * @param context   the context in which the decoration is running
+   * @param content   the BlogEntry, StaticPage, Comment or TrackBack
+   * @return  an HtmlVisitor, or null if there's nothing to rewrite
+   */
+  protected abstract HtmlVisitor getVisitor(ContentDecoratorContext context, Content content);
+
+  /**
+   * Called after the HTML has been rewritten, for decorators that need to
+   * change other properties of the content too.
+   *
+   * @param context   the context in which the decoration is running
+   * @param content   the BlogEntry, StaticPage, Comment or TrackBack
+   */
+  protected void decorateProperties(ContentDecoratorContext context, Content content) {
+  }
+
+  public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
+    ContentType.BLOG_ENTRY.decorate(Collections.singletonList(this), context, blogEntry);
+  }
+
+  public void decorate(ContentDecoratorContext context, Comment comment) {
+    ContentType.COMMENT.decorate(Collections.singletonList(this), context, comment);
+  }
+
+  public void decorate(ContentDecoratorContext context, TrackBack trackBack) {
+    ContentType.TRACKBACK.decorate(Collections.singletonList(this), context, trackBack);
+  }
+
+  public void decorate(ContentDecoratorContext context, StaticPage staticPage) {
+    ContentType.STATIC_PAGE.decorate(Collections.singletonList(this), context, staticPage);
+  }
+
+}
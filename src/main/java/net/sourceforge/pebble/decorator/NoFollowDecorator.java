@@ -33,11 +33,12 @@
 package net.sourceforge.pebble.decorator;
 
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.Content;
 import net.sourceforge.pebble.domain.TrackBack;
-
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import net.sourceforge.pebble.util.html.HtmlToken;
+import net.sourceforge.pebble.util.html.HtmlVisitor;
 
 /**
  * Adds a rel="nofollow" attribute into all links within comment
@@ -45,80 +46,37 @@ import java.util.regex.Pattern;
  * 
  * @author Simon Brown
  */
-public class NoFollowDecorator extends ContentDecoratorSupport {
-
-  /** the regex used to find HTML links */
-  private static Pattern HTML_LINK_PATTERN = Pattern.compile("<a.*?href=.*?>", Pattern.CASE_INSENSITIVE);
-
-  /**
-   * Decorates the specified comment.
-   *
-   * @param context the context in which the decoration is running
-   * @param comment the comment to be decorated
-   */
-  public void decorate(ContentDecoratorContext context, Comment comment) {
-    comment.setBody(addNoFollowLinks(comment.getBody()));
-  }
+public class NoFollowDecorator extends HtmlRewritingDecorator implements DeterministicContentDecorator {
+
+  /** adds rel="nofollow" to anchor tags; this keeps no state, so is shared */
+  private static final HtmlVisitor NO_FOLLOW_VISITOR = new HtmlVisitor() {
+    public void visit(HtmlToken token) {
+      if (token.isStartTag() && token.isTag("a") && token.hasAttribute("href")) {
+        String rel = token.getAttribute("rel");
+        if (rel == null) {
+          // no rel link, add one
+          token.setAttribute("rel", "nofollow");
+        } else if (rel.toLowerCase().indexOf("nofollow") == -1) {
+          // rel exists, but without nofollow
+          token.setAttribute("rel", rel + " nofollow");
+        }
+      }
+    }
+  };
 
   /**
-   * Decorates the specified TrackBack.
+   * Gets the visitor used to rewrite comments and TrackBacks.
    *
    * @param context   the context in which the decoration is running
-   * @param trackBack the TrackBack to be decorated
+   * @param content   the content being decorated
+   * @return  an HtmlVisitor, or null for blog entries and static pages
    */
-  public void decorate(ContentDecoratorContext context, TrackBack trackBack) {
-    trackBack.setExcerpt(addNoFollowLinks(trackBack.getExcerpt()));
-  }
-
-  /**
-   * Adds rel="nofollow" links too any links in the specified string.
-   *
-   * @param   html    a String containing HTML
-   * @return  the same String with rel="nofollow" in anchor tags
-   */
-  private String addNoFollowLinks(String html) {
-    if (html == null || html.length() == 0) {
-      return html;
+  protected HtmlVisitor getVisitor(ContentDecoratorContext context, Content content) {
+    if (content instanceof Comment || content instanceof TrackBack) {
+      return NO_FOLLOW_VISITOR;
+    } else {
+      return null;
     }
-
-    Matcher m = HTML_LINK_PATTERN.matcher(html);
-    StringBuffer buf = new StringBuffer();
-
-    while (m.find()) {
-      int start = m.start();
-      int end = m.end();
-
-      String link = html.substring(start, end);
-      buf.append(html.substring(0, start));
-
-      // add the nofollow, if necessary
-      int startOfRelIndex = link.indexOf("rel=\"");
-      if (startOfRelIndex == -1) {
-        // no rel link, add one
-        buf.append(link.substring(0, link.length() - 1));
-        buf.append(" rel=\"nofollow\">");
-      } else {
-        int endOfRelIndex = link.indexOf("\"", startOfRelIndex+5);
-        String rel = link.substring(startOfRelIndex+5, endOfRelIndex);
-        rel = rel.toLowerCase();
-        if (rel.indexOf("nofollow") == -1) {
-          // rel exists, but without nofollow
-          buf.append(link.substring(0, endOfRelIndex));
-          buf.append(" nofollow");
-          buf.append(link.substring(endOfRelIndex));
-        } else {
-          // nofollow exists
-          buf.append(link);
-        }
-      }
-
-      html = html.substring(end, html.length());
-      m = HTML_LINK_PATTERN.matcher(html);
-    }
-
-    buf.append(html);
-
-    return buf.toString();
   }
 
 }
@@ -32,13 +32,16 @@
 package net.sourceforge.pebble.decorator;
 
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.StaticPage;
-import net.sourceforge.pebble.util.StringUtils;
+import net.sourceforge.pebble.domain.ThumbnailService;
+import net.sourceforge.pebble.util.FileUtils;
 
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.StringReader;
 import java.io.IOException;
 
@@ -64,8 +67,8 @@ public class PhotoDecorator extends ContentDecoratorSupport {
    * @param blogEntry the blog entry to be decorated
    */
   public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
-    blogEntry.setBody(markup(blogEntry.getBody()));
-    blogEntry.setExcerpt(markup(blogEntry.getExcerpt()));
+    blogEntry.setBody(markup(blogEntry.getBody(), blogEntry.getBlog()));
+    blogEntry.setExcerpt(markup(blogEntry.getExcerpt(), blogEntry.getBlog()));
   }
 
   /**
@@ -75,10 +78,10 @@ public class PhotoDecorator extends ContentDecoratorSupport {
    * @param staticPage the static page to be decorated
    */
   public void decorate(ContentDecoratorContext context, StaticPage staticPage) {
-    staticPage.setBody(markup(staticPage.getBody()));
+    staticPage.setBody(markup(staticPage.getBody(), staticPage.getBlog()));
   }
 
-  private String markup(String content) {
+  private String markup(String content, Blog blog) {
     // is there work to do?
     if (content == null || content.length() == 0) {
       return "";
@@ -118,7 +121,7 @@ public class PhotoDecorator extends ContentDecoratorSupport {
           } else {
             String[] tokens = line.split("\\|");
             buf.append("<img src=\"");
-            buf.append(tokens[0]);
+            buf.append(getScaledImageUri(tokens[0], blog));
             buf.append("\" class=\"photo\" alt=\"");
             if (tokens.length == 2) {
               buf.append(tokens[1]);
@@ -144,4 +147,28 @@ public class PhotoDecorator extends ContentDecoratorSupport {
     return content;
   }
 
+  /**
+   * Gets the URI of a display-sized version of the given photo, if one has
+   * already been generated, or the original URI otherwise.
+   */
+  private String getScaledImageUri(String uri, Blog blog) {
+    if (blog == null || uri.indexOf(':') > -1 || uri.startsWith("/")) {
+      // absolute URIs aren't images we manage
+      return uri;
+    }
+
+    File root = new File(blog.getRoot());
+    File image = new File(root, uri);
+    if (!FileUtils.underneathRoot(root, image)) {
+      return uri;
+    }
+
+    File scaled = ThumbnailService.getInstance().getThumbnail(image, ThumbnailService.getDisplaySize(blog));
+    if (scaled == null) {
+      return uri;
+    }
+
+    return uri.substring(0, uri.lastIndexOf('/') + 1) + ThumbnailService.THUMBNAIL_DIRECTORY + "/" + scaled.getName();
+  }
+
 }
@@ -37,6 +37,7 @@ import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.StaticPage;
 import net.sourceforge.pebble.util.UrlRewriter;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 import org.radeox.api.engine.RenderEngine;
 import org.radeox.api.engine.WikiRenderEngine;
 import org.radeox.api.engine.context.InitialRenderContext;
@@ -53,11 +54,18 @@ import java.util.regex.Pattern;
  *
  * @author Simon Brown
  */
-public class RadeoxDecorator extends ContentDecoratorSupport {
+public class RadeoxDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
 
   private static final String WIKI_START_TAG = "<wiki>";
   private static final String WIKI_END_TAG = "</wiki>";
 
+  // this pattern says "take the shortest match you can find where there are
+  // one or more characters between wiki tags"
+  //  - the match is case insensitive and DOTALL means that newlines are
+  //  - considered as a character match
+  private static final Pattern WIKI_PATTERN = Pattern.compile(WIKI_START_TAG + ".+?" + WIKI_END_TAG,
+      Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
   /**
    * Decorates the specified blog entry.
    *
@@ -93,30 +101,27 @@ public class RadeoxDecorator extends ContentDecoratorSupport {
       return "";
     }
 
-    // this pattern says "take the shortest match you can find where there are
-    // one or more characters between wiki tags"
-    //  - the match is case insensitive and DOTALL means that newlines are
-    //  - considered as a character match
-    Pattern p = Pattern.compile(WIKI_START_TAG + ".+?" + WIKI_END_TAG,
-        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-    Matcher m = p.matcher(content);
+    Matcher m = WIKI_PATTERN.matcher(content);
+    if (!m.find()) {
+      return content;
+    }
 
-    // while there are blocks to be escaped
-    while (m.find()) {
+    // build the result in a single pass over the blocks to be wikified
+    StringBuilder buf = new StringBuilder(content.length());
+    int last = 0;
+    do {
       int start = m.start();
       int end = m.end();
 
       // grab the text, strip off the escape tags and transform it
-      String textToWikify = content.substring(start, end);
-      textToWikify = textToWikify.substring(WIKI_START_TAG.length(), textToWikify.length() - WIKI_END_TAG.length());
-      textToWikify = renderEngine.render(textToWikify, renderContext);
-
-      // now add it back into the original text
-      content = content.substring(0, start) + textToWikify + content.substring(end, content.length());
-      m = p.matcher(content);
-    }
-
-    return content;
+      String textToWikify = content.substring(start + WIKI_START_TAG.length(), end - WIKI_END_TAG.length());
+      buf.append(content, last, start);
+      buf.append(renderEngine.render(textToWikify, renderContext));
+      last = end;
+    } while (m.find());
+    buf.append(content, last, content.length());
+
+    return buf.toString();
   }
 
 }
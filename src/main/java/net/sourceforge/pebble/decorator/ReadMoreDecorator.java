@@ -33,6 +33,7 @@
 package net.sourceforge.pebble.decorator;
 
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.util.I18n;
@@ -44,7 +45,7 @@ import net.sourceforge.pebble.util.I18n;
  *
  * @author Simon Brown
  */
-public class ReadMoreDecorator extends ContentDecoratorSupport {
+public class ReadMoreDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
 
 
   /**
@@ -34,57 +34,72 @@ package net.sourceforge.pebble.decorator;
 
 import net.sourceforge.pebble.domain.Attachment;
 import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Content;
 import net.sourceforge.pebble.domain.StaticPage;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.util.html.HtmlToken;
+import net.sourceforge.pebble.util.html.HtmlVisitor;
 
 /**
  * Translates relative URIs in blog entries and static pages into absolute URLs.
  * 
  * @author Simon Brown
  */
-public class RelativeUriDecorator extends ContentDecoratorSupport {
+public class RelativeUriDecorator extends HtmlRewritingDecorator {
+
+  /** replaces href and src attributes starting with ./ with the blog URL */
+  private final HtmlVisitor relativeUriVisitor = new HtmlVisitor() {
+    public void visit(HtmlToken token) {
+      if (token.isStartTag()) {
+        replaceRelativeUri(token, "href");
+        replaceRelativeUri(token, "src");
+      }
+    }
+  };
 
   /**
-   * Decorates the specified blog entry.
+   * Gets the visitor used to rewrite blog entries and static pages.
    *
    * @param context   the context in which the decoration is running
-   * @param blogEntry the blog entry to be decorated
+   * @param content   the content being decorated
+   * @return  an HtmlVisitor, or null for comments and TrackBacks
    */
-  public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
-    blogEntry.setBody(replaceCommonUris(blogEntry.getBody()));
-    blogEntry.setExcerpt(replaceCommonUris(blogEntry.getExcerpt()));
-
-    Attachment attachment = blogEntry.getAttachment();
-    if (attachment != null) {
-      String attachmentUrl = attachment.getUrl();
-      if (attachmentUrl.startsWith("./")) {
-        attachment.setUrl(getBlog().getUrl() + attachmentUrl.substring(2));
-      }
+  protected HtmlVisitor getVisitor(ContentDecoratorContext context, Content content) {
+    if (content instanceof BlogEntry || content instanceof StaticPage) {
+      return relativeUriVisitor;
+    } else {
+      return null;
     }
   }
 
   /**
-   * Decorates the specified static page.
+   * Translates the URL of any attachment belonging to a blog entry.
    *
-   * @param context    the context in which the decoration is running
-   * @param staticPage the static page to be decorated
+   * @param context   the context in which the decoration is running
+   * @param content   the content being decorated
    */
-  public void decorate(ContentDecoratorContext context, StaticPage staticPage) {
-    staticPage.setBody(replaceCommonUris(staticPage.getBody()));
+  protected void decorateProperties(ContentDecoratorContext context, Content content) {
+    if (content instanceof BlogEntry) {
+      Attachment attachment = ((BlogEntry)content).getAttachment();
+      if (attachment != null) {
+        String attachmentUrl = attachment.getUrl();
+        if (attachmentUrl.startsWith("./")) {
+          attachment.setUrl(getBlog().getUrl() + attachmentUrl.substring(2));
+        }
+      }
+    }
   }
 
   /**
-   * Helper method to replace common relative URIs with their absolute values.
+   * Helper method to replace a relative URI with its absolute value.
    *
-   * @param s   the String containing relative URIs
-   * @return    a new String containing absolute URLs
+   * @param token       the start tag
+   * @param attribute   the name of the attribute holding the URI
    */
-  private String replaceCommonUris(String s) {
-    s = s.replaceAll("href=\"\\./", "href=\"" + getBlog().getUrl());
-    s = s.replaceAll("href='\\./", "href='" + getBlog().getUrl());
-    s = s.replaceAll("src=\"\\./", "src=\"" + getBlog().getUrl());
-    s = s.replaceAll("src='\\./", "src='" + getBlog().getUrl());
-    return s;
+  private void replaceRelativeUri(HtmlToken token, String attribute) {
+    if (token.attributeStartsWith(attribute, "./")) {
+      token.setAttribute(attribute, getBlog().getUrl() + token.getAttribute(attribute).substring(2));
+    }
   }
 
-}
\ No newline at end of file
+}
@@ -37,6 +37,7 @@ import java.net.URLEncoder;
 import java.util.ResourceBundle;
 
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.util.I18n;
@@ -46,7 +47,7 @@ import net.sourceforge.pebble.util.I18n;
  * 
  * @author Alexander Zagniotov
  */
-public class SocialBookmarksDecorator extends ContentDecoratorSupport {
+public class SocialBookmarksDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
 
 	private static final String TITLE = "&amp;title=";
 	private static final String TITLE_FURL_YAHOO = "&amp;t=";
@@ -38,6 +38,7 @@ import java.util.*;
 
 import net.sourceforge.pebble.PluginProperties;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.util.I18n;
@@ -49,7 +50,7 @@ import net.sourceforge.pebble.util.I18n;
  * 
  * @author Mike Bremford
  */
-public class SuffixDecorator extends ContentDecoratorSupport {
+public class SuffixDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
 
     /**
      * The name of the configuration property which specifies the suffix
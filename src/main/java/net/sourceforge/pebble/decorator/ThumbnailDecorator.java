@@ -32,26 +32,13 @@
 
 package net.sourceforge.pebble.decorator;
 
-import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.StaticPage;
+import net.sourceforge.pebble.domain.ThumbnailService;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.FileImageOutputStream;
-import net.sourceforge.pebble.PluginProperties;
 import net.sourceforge.pebble.domain.Blog;
 
 /**
@@ -101,25 +88,8 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
         }
 
         // Establish default sizes.
-        int defaultThumbSize = 200;
-        int defaultPopupSize = 640;
-        PluginProperties props = blog.getPluginProperties();
-        if (props.hasProperty(thumbSizeProp)) {
-            try {
-                defaultThumbSize =
-                  Integer.parseInt(props.getProperty(thumbSizeProp));
-            } catch (NumberFormatException nfe) {
-                // Ignore.
-            }
-        }
-        if (props.hasProperty(popupSizeProp)) {
-            try {
-                defaultPopupSize =
-                  Integer.parseInt(props.getProperty(popupSizeProp));
-            } catch (NumberFormatException nfe) {
-                // Ignore.
-            }
-        }
+        int defaultThumbSize = ThumbnailService.getThumbnailSize(blog);
+        int defaultPopupSize = ThumbnailService.getDisplaySize(blog);
 
         // Find all the thumbnail tags.
         Matcher tagM = tagRE.matcher(content);
@@ -173,8 +143,9 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
     }
 
     /**
-     * Render a thumbnail tag into the equivalent HTML, also creating and
-     * caching the thumbnail as appropriate.
+     * Render a thumbnail tag into the equivalent HTML. Thumbnails are created
+     * in the background by the ThumbnailService; until one is ready the
+     * original image is used, constrained to the thumbnail size.
      * @param src image source.
      * @param thumbSize required thumbmail size, maximum dimension.
      * @param popupSize required popup size, maximum dimension.
@@ -192,34 +163,25 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
               "<!-- ERROR: invalid thumbnail src \"%s\" -->", src);
         }
 
-        // Check the thumbnail directory exists.
-        File thumbDir = new File(img.getParent(), "thumbnails");
-        if (!thumbDir.isDirectory()) {
-            if (!thumbDir.mkdir()) {
-                return String.format(
-                  "<!-- ERROR: can't create thumbnail directory -->",
-                  thumbDir.toString());
-            }
-        }
-
-        // Check that an up-to-date thumbnail exists.
-        File thumb = new File(thumbDir, img.getName());
-        if (!thumb.isFile() || thumb.lastModified() < img.lastModified()) {
-            if (! createThumbnail(img, thumb, thumbSize)) {
-                return String.format(
-                  "<!-- ERROR: can't create thumbnail \"%s\" -->", thumb);
-            }
+        // Use the thumbnail if it's ready, otherwise the original.
+        File thumb = ThumbnailService.getInstance().getThumbnail(img, thumbSize);
+        String imgAttrs;
+        if (thumb != null) {
+            File tsrc = new File(new File(src.getParent(),
+              ThumbnailService.THUMBNAIL_DIRECTORY), thumb.getName());
+            imgAttrs = String.format("src=\"%s\"", tsrc);
+        } else {
+            imgAttrs = String.format("src=\"%1$s\" style=\"max-width:%2$dpx;" +
+              "max-height:%2$dpx\"", src, thumbSize);
         }
 
         // Build the replacement HTML & return it.
-        File tsrc = new File(new File(src.getParent(), "thumbnails"),
-          src.getName());
         return String.format("<a href=\"%1$s\" onclick=\"window.open(" +
           "'%1$s','popup','width=%4$d,height=%4$d,toolbar=no,directories=no," +
           "location=no,menubar=no,status=no'); return false\" " +
-          "class=\"thumbnailLink\"><img src=\"%2$s\" alt=\"%3$s\" " +
+          "class=\"thumbnailLink\"><img %2$s alt=\"%3$s\" " +
           "class=\"thumbnailImage\"/></a>",
-          src, tsrc, alt, popupSize);
+          src, imgAttrs, alt, popupSize);
     }
 
     /**
@@ -231,77 +193,10 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
      */
     public boolean createThumbnail(File imgFile, File thumbFile,
       int thumbSize) {
-        // Work out the image file suffix.
-        String suffix = imgFile.getName();
-        int dot = suffix.lastIndexOf('.');
-        if (dot < 1) {
-            return false;
-        }
-        suffix = suffix.substring(dot + 1);
-
-        try {
-            // Read in the image.
-            BufferedImage img = ImageIO.read(imgFile);
-            if (img == null) {
-                return false;
-            }
-
-            // Calcuate the scaling.
-            int ih = img.getHeight();
-            int iw = img.getWidth();
-            int thumbH, thumbW;
-            float scale;
-            if (iw > ih) {
-                scale = (float) thumbSize / (float) iw;
-                thumbW = thumbSize;
-                thumbH = Math.round(ih * scale);
-            } else {
-                scale = (float) thumbSize / (float) ih;
-                thumbH = thumbSize;
-                thumbW = Math.round(iw * scale);
-            }
-
-            // Scale the image.
-            BufferedImage thumb =
-              new BufferedImage(thumbW, thumbH, img.getType());
-            AffineTransform at =
-              AffineTransform.getScaleInstance(scale, scale);
-            AffineTransformOp ato = new AffineTransformOp(at, renderHints);
-            ato.filter(img, thumb);
-
-            // Save the image.
-            Iterator<ImageWriter> iwi =
-              ImageIO.getImageWritersBySuffix(suffix);
-            if (! iwi.hasNext()) {
-                return false;
-            }
-            ImageWriter thumbWriter = iwi.next();
-            ImageWriteParam iwp = thumbWriter.getDefaultWriteParam();
-            if (iwp.canWriteCompressed()) {
-                String ct[] = iwp.getCompressionTypes();
-                if (ct != null) {
-                    iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                    iwp.setCompressionType(ct[0]);
-                    iwp.setCompressionQuality(0.8F);
-                }
-            }
-            FileImageOutputStream thumbOut =
-              new FileImageOutputStream(thumbFile);
-            thumbWriter.setOutput(thumbOut);
-            thumbWriter.write(null, new IIOImage(thumb, null, null), iwp);
-            thumbWriter.dispose();
-            thumbOut.close();
-            
-        } catch (IOException ex) {
-            return false;
-        }
-        return true;
+        return ThumbnailService.getInstance().createThumbnail(imgFile,
+          thumbFile, thumbSize);
     }
-    
-    /** Default thumbnail size property name. */
-    private static final String thumbSizeProp = "Thumbnail.thumbnailSize";
-    /** Default popup window size property name. */
-    private static final String popupSizeProp = "Thumbnail.popupSize";
+
     /** RE for matching thumbnail tags. */
     private static Pattern tagRE = Pattern.compile(
       "<thumbnail\\s+(.+?)\\s*/>",
@@ -310,27 +205,4 @@ public class ThumbnailDecorator extends ContentDecoratorSupport {
     private static Pattern attrRE = Pattern.compile(
       "([\\w_-]+)\\s*=\\s*\"([^\"]+)\"",
       Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-    /** Image transform hints. */
-    private static final RenderingHints renderHints;
-
-    // Initialise rendering hints.
-    static {
-        Map<RenderingHints.Key, Object> hintMap =
-          new HashMap<RenderingHints.Key, Object>();
-        hintMap.put(RenderingHints.KEY_ALPHA_INTERPOLATION,
-          RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        hintMap.put(RenderingHints.KEY_ANTIALIASING,
-          RenderingHints.VALUE_ANTIALIAS_ON);
-        hintMap.put(RenderingHints.KEY_COLOR_RENDERING,
-          RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        hintMap.put(RenderingHints.KEY_DITHERING,
-          RenderingHints.VALUE_DITHER_DISABLE);
-        hintMap.put(RenderingHints.KEY_INTERPOLATION,
-          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        hintMap.put(RenderingHints.KEY_ALPHA_INTERPOLATION,
-          RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        hintMap.put(RenderingHints.KEY_COLOR_RENDERING,
-          RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        renderHints = new RenderingHints(hintMap);
-    }
 }
@@ -77,6 +77,9 @@ public abstract class AbstractBlog extends TimePeriod {
   /** the properties for this blog */
   protected Properties properties;
 
+  /** a calendar for the blog's time zone and locale, cloned by getCalendar() */
+  private volatile Calendar calendar;
+
   /**
    * Creates a new Blog instance, based at the specified location.
    * Note: You must call init() before being able to use this object -
@@ -104,6 +107,7 @@ public abstract class AbstractBlog extends TimePeriod {
    * in the root directory.
    */
   protected void loadProperties() {
+    calendar = null;
     try {
       this.properties = new Properties(getDefaultProperties());
 
@@ -186,6 +190,7 @@ public abstract class AbstractBlog extends TimePeriod {
     if (key != null) {
       if (value != null) {
         properties.setProperty(key, value);
+        calendar = null;
       } else {
         removeProperty(key);
       }
@@ -199,6 +204,7 @@ public abstract class AbstractBlog extends TimePeriod {
    */
   public void removeProperty(String key) {
     properties.remove(key);
+    calendar = null;
   }
 
   /**
@@ -334,7 +340,16 @@ public abstract class AbstractBlog extends TimePeriod {
    * @return    a Calendar instance
    */
   public Calendar getCalendar() {
-    return Calendar.getInstance(getTimeZone(), getLocale());
+    // cloning avoids looking up the time zone and locale each time
+    Calendar prototype = calendar;
+    if (prototype == null) {
+      prototype = Calendar.getInstance(getTimeZone(), getLocale());
+      calendar = prototype;
+    }
+
+    Calendar cal = (Calendar)prototype.clone();
+    cal.setTimeInMillis(System.currentTimeMillis());
+    return cal;
   }
 
   /**
@@ -82,20 +82,25 @@ import net.sourceforge.pebble.event.AuditListener;
 import net.sourceforge.pebble.event.DefaultEventDispatcher;
 import net.sourceforge.pebble.event.EventListenerList;
 import net.sourceforge.pebble.event.blogentry.EmailSubscriptionListener;
+import net.sourceforge.pebble.event.blogentry.PdfCacheListener;
 import net.sourceforge.pebble.index.AuthorIndex;
 import net.sourceforge.pebble.index.AuthorIndexListener;
 import net.sourceforge.pebble.index.BlogEntryIndex;
 import net.sourceforge.pebble.index.BlogEntryIndexListener;
 import net.sourceforge.pebble.index.CategoryIndex;
+import net.sourceforge.pebble.index.DiskUsageIndex;
 import net.sourceforge.pebble.index.CategoryIndexListener;
 import net.sourceforge.pebble.index.EmailSubscriptionList;
+import net.sourceforge.pebble.index.IndexedResponse;
 import net.sourceforge.pebble.index.ResponseIndex;
 import net.sourceforge.pebble.index.ResponseIndexListener;
 import net.sourceforge.pebble.index.SearchIndex;
 import net.sourceforge.pebble.index.SearchIndexListener;
 import net.sourceforge.pebble.index.StaticPageIndex;
+import net.sourceforge.pebble.index.ArchiveIndex;
 import net.sourceforge.pebble.index.TagIndex;
 import net.sourceforge.pebble.index.TagIndexListener;
+import net.sourceforge.pebble.index.TimelineIndex;
 import net.sourceforge.pebble.logging.AbstractLogger;
 import net.sourceforge.pebble.logging.CombinedLogFormatLogger;
 import net.sourceforge.pebble.permalink.DefaultPermalinkProvider;
@@ -150,6 +155,9 @@ public class Blog extends AbstractBlog {
   /** the collection of Year instance that this root blog is managing */
   private List<Year> years;
 
+  /** the result of getArchives(), along with what it was calculated from */
+  private volatile Archives archives;
+
   /** the root category associated with this blog */
   private Category rootCategory;
 
@@ -190,6 +198,7 @@ public class Blog extends AbstractBlog {
   private CategoryIndex categoryIndex;
   private AuthorIndex authorIndex;
   private StaticPageIndex staticPageIndex;
+  private DiskUsageIndex diskUsageIndex;
 
   private final List<PageDecorator> pageDecorators = new CopyOnWriteArrayList<PageDecorator>();
   private final List<OpenIdCommentAuthorProvider> openIdCommentAuthorProviders = new CopyOnWriteArrayList<OpenIdCommentAuthorProvider>();
@@ -260,6 +269,7 @@ public class Blog extends AbstractBlog {
     categoryIndex = new CategoryIndex(this);
     authorIndex = new AuthorIndex(this);
     staticPageIndex = new StaticPageIndex(this);
+    diskUsageIndex = new DiskUsageIndex(this);
 
     decoratorChain = new ContentDecoratorChain(this);
 
@@ -372,7 +382,9 @@ public class Blog extends AbstractBlog {
     eventListenerList.addBlogEntryListener(new CategoryIndexListener());
     eventListenerList.addBlogEntryListener(new AuthorIndexListener());
     eventListenerList.addBlogEntryListener(new SearchIndexListener());
+    eventListenerList.addBlogEntryListener(new ResponseIndexListener());
     eventListenerList.addBlogEntryListener(new AuditListener());
+    eventListenerList.addBlogEntryListener(new PdfCacheListener());
     try {
       eventListenerList.addBlogEntryListener(new EmailSubscriptionListener());
     } catch (Throwable t) {
@@ -886,9 +898,14 @@ public class Blog extends AbstractBlog {
    * @return  a Collection of Year instances
    */
   public List<Year> getArchives() {
-    List<Year> list = new LinkedList<Year>();
     int firstYear = getBlogForFirstMonth().getYear().getYear();
     int thisYear = getBlogForThisYear().getYear();
+    Archives cached = archives;
+    if (cached != null && cached.firstYear == firstYear && cached.thisYear == thisYear && cached.numberOfYears == years.size()) {
+      return cached.years;
+    }
+
+    List<Year> list = new LinkedList<Year>();
     // only add years that are in range
     for (Year year : years) {
       if (year.getYear() >= firstYear && year.getYear() <= thisYear) {
@@ -896,9 +913,20 @@ public class Blog extends AbstractBlog {
       }
     }
     Collections.reverse(list);
+    list = Collections.unmodifiableList(list);
+    archives = new Archives(firstYear, thisYear, years.size(), list);
     return list;
   }
 
+  /**
+   * Gets the index of months that contain published blog entries.
+   *
+   * @return  an ArchiveIndex instance
+   */
+  public ArchiveIndex getArchiveIndex() {
+    return blogEntryIndex != null ? blogEntryIndex.getArchiveIndex() : null;
+  }
+
   /**
    * Gets the Month instance representing the first month that
    * contains blog entries.
@@ -910,12 +938,7 @@ public class Blog extends AbstractBlog {
       return getBlogForThisMonth();
     }
 
-    List<String> blogEntryIds = getBlogEntryIndex().getBlogEntries();
-    if (blogEntryIds == null || blogEntryIds.isEmpty()) {
-      return getBlogForThisMonth();
-    }
-
-    String firstBlogEntryId = blogEntryIds.get(blogEntryIds.size()-1);
+    String firstBlogEntryId = getBlogEntryIndex().getOldestBlogEntry();
     if (firstBlogEntryId == null) {
       return getBlogForThisMonth();
     }
@@ -1270,21 +1293,18 @@ public class Blog extends AbstractBlog {
    */
   public List<Response> getRecentApprovedResponses() {
     BlogService service = new BlogService();
-    List<String> responseIds = responseIndex.getApprovedResponses();
     List<Response> responses = new ArrayList<Response>();
-    for (String responseId : responseIds) {
+    // the index knows which responses belong to published blog entries,
+    // so only the blog entries of the responses returned need to be loaded
+    for (IndexedResponse indexedResponse : responseIndex.getRecentApprovedResponses(getRecentResponsesOnHomePage())) {
       try {
-        Response response = service.getResponse(this, responseId);
+        Response response = service.getResponse(this, indexedResponse.getGuid());
         if (response != null && response.getBlogEntry().isPublished()) {
           responses.add(response);
         }
       } catch (BlogServiceException e) {
         log.error("Exception encountered", e);
       }
-
-      if (responses.size() == getRecentResponsesOnHomePage()) {
-        break;
-      }
     }
 
     return responses;
@@ -1375,8 +1395,8 @@ public class Blog extends AbstractBlog {
    * @return  a Date instance representing the time of the most recent entry
    */
   public Date getDateOfLastResponse() {
-    List<Response> responses = this.getRecentApprovedResponses();
-    if (responses != null && responses.size() > 0) {
+    List<IndexedResponse> responses = responseIndex.getRecentApprovedResponses(1);
+    if (responses.size() > 0) {
       return responses.get(0).getDate();
     } else {
       return new Date(0);
@@ -1581,6 +1601,15 @@ public class Blog extends AbstractBlog {
     return this.staticPageIndex;
   }
 
+  /**
+   * Gets the disk usage index.
+   *
+   * @return  a DiskUsageIndex instance
+   */
+  public DiskUsageIndex getDiskUsageIndex() {
+    return this.diskUsageIndex;
+  }
+
   /**
    * Logs this request for blog.
    *
@@ -1700,6 +1729,8 @@ public class Blog extends AbstractBlog {
 
     logger.start();
     editableTheme.restore();
+    diskUsageIndex.start();
+    TimelineIndex.getInstance().add(this);
 
     // call blog listeners
     eventDispatcher.fireBlogEvent(new BlogEvent(this, BlogEvent.BLOG_STARTED));
@@ -1714,6 +1745,8 @@ public class Blog extends AbstractBlog {
 
     logger.stop();
     editableTheme.backup();
+    diskUsageIndex.stop();
+    TimelineIndex.getInstance().remove(this);
 
     // call blog listeners
     eventDispatcher.fireBlogEvent(new BlogEvent(this, BlogEvent.BLOG_STOPPED));
@@ -1738,6 +1771,19 @@ public class Blog extends AbstractBlog {
     return getStringsFromProperty(CONTENT_DECORATORS_KEY);
   }
 
+  /**
+   * Stores the properties associated with this blog. Decorators read some of
+   * them (e.g. the locale and URL), so any cached decorations are thrown away.
+   *
+   * @throws BlogServiceException    if the properties can't be stored
+   */
+  public void storeProperties() throws BlogServiceException {
+    super.storeProperties();
+    if (decoratorChain != null) {
+      decoratorChain.clearCache();
+    }
+  }
+
   /**
    * Gets the decorator manager associated with this blog.
    *
@@ -2053,4 +2099,24 @@ public class Blog extends AbstractBlog {
   private <T> T instantiate(Class<T> clazz) {
     return (T) beanFactory.autowire(clazz, AutowireCapableBeanFactory.AUTOWIRE_NO, false);
   }
+  /**
+   * The years returned by getArchives(), which only change when the first
+   * year, this year or the set of known years change.
+   */
+  private static class Archives {
+
+    private final int firstYear;
+    private final int thisYear;
+    private final int numberOfYears;
+    private final List<Year> years;
+
+    Archives(int firstYear, int thisYear, int numberOfYears, List<Year> years) {
+      this.firstYear = firstYear;
+      this.thisYear = thisYear;
+      this.numberOfYears = numberOfYears;
+      this.years = years;
+    }
+
+  }
+
 }
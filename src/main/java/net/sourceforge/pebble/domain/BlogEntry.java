@@ -34,7 +34,6 @@ package net.sourceforge.pebble.domain;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
 import net.sourceforge.pebble.api.event.comment.CommentEvent;
 import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
-import net.sourceforge.pebble.comparator.ResponseByDateComparator;
 import net.sourceforge.pebble.web.validation.ValidationContext;
 import net.sourceforge.pebble.trackback.TrackBackTokenManager;
 import org.apache.commons.logging.Log;
@@ -93,6 +92,12 @@ public class BlogEntry extends PageBasedContent {
    */
   private List trackBacks = new ArrayList();
 
+  /** comments and TrackBacks, indexed by id and date */
+  private BlogEntryResponses responses = new BlogEntryResponses();
+
+  /** the threaded list of all comments, built lazily */
+  private List<Comment> allComments;
+
   /** the attachment for this blog entry, if applicable */
   private Attachment attachment;
 
@@ -295,20 +300,9 @@ public class BlogEntry extends PageBasedContent {
   public Date getLastModified() {
     Date date = getDate();
 
-    Iterator it = comments.iterator();
-    while (it.hasNext()) {
-      Comment comment = (Comment)it.next();
-      if (comment.getDate().after(date)) {
-        date = comment.getDate();
-      }
-    }
-
-    it = trackBacks.iterator();
-    while (it.hasNext()) {
-      TrackBack trackBack = (TrackBack)it.next();
-      if (trackBack.getDate().after(date)) {
-        date = trackBack.getDate();
-      }
+    Response response = responses.getMostRecentResponse();
+    if (response != null && response.getDate().after(date)) {
+      date = response.getDate();
     }
 
     return date;
@@ -441,11 +435,7 @@ public class BlogEntry extends PageBasedContent {
    * @return  a List of all Response instances
    */
   public List<Response> getResponses() {
-    List<Response> responses = new ArrayList();
-    responses.addAll(getComments());
-    responses.addAll(getTrackBacks());
-    Collections.sort(responses, new ResponseByDateComparator());
-    return responses;
+    return new ArrayList<Response>(responses.getResponses());
   }
 
   /**
@@ -453,25 +443,25 @@ public class BlogEntry extends PageBasedContent {
    *
    * @return a List of Comment instances
    */
-  public List<Comment> getComments() {
-    List<Comment> allComments = new ArrayList();
-    Iterator it = comments.iterator();
-    while (it.hasNext()) {
-      allComments.addAll(getComments((Comment)it.next()));
+  public synchronized List<Comment> getComments() {
+    if (allComments == null) {
+      List<Comment> list = new ArrayList<Comment>(responses.getNumberOfComments());
+      Iterator it = comments.iterator();
+      while (it.hasNext()) {
+        getComments((Comment)it.next(), list);
+      }
+      allComments = list;
     }
 
-    return allComments;
+    return new ArrayList<Comment>(allComments);
   }
 
-  private List<Comment> getComments(Comment comment) {
-    List<Comment> allComments = new ArrayList();
-    allComments.add(comment);
+  private void getComments(Comment comment, List<Comment> list) {
+    list.add(comment);
     Iterator it = comment.getComments().iterator();
     while (it.hasNext()) {
-      allComments.addAll(getComments((Comment)it.next()));
+      getComments((Comment)it.next(), list);
     }
-
-    return allComments;
   }
 
   /**
@@ -480,7 +470,7 @@ public class BlogEntry extends PageBasedContent {
    * @return the number of comments as a int
    */
   public int getNumberOfComments() {
-    return getComments().size();
+    return responses.getNumberOfComments();
   }
 
   /**
@@ -507,7 +497,34 @@ public class BlogEntry extends PageBasedContent {
    * @return the number of responses as a int
    */
   public int getNumberOfResponses() {
-    return getResponses().size();
+    return responses.getNumberOfResponses();
+  }
+
+  /**
+   * Gets the number of approved responses for this blog entry.
+   *
+   * @return  an int
+   */
+  public int getNumberOfApprovedResponses() {
+    return responses.getNumberOfApprovedResponses();
+  }
+
+  /**
+   * Gets the number of pending responses for this blog entry.
+   *
+   * @return  an int
+   */
+  public int getNumberOfPendingResponses() {
+    return responses.getNumberOfPendingResponses();
+  }
+
+  /**
+   * Gets the number of rejected responses for this blog entry.
+   *
+   * @return  an int
+   */
+  public int getNumberOfRejectedResponses() {
+    return responses.getNumberOfRejectedResponses();
   }
 
   /**
@@ -575,6 +592,8 @@ public class BlogEntry extends PageBasedContent {
         comments.add(comment);
       }
       comment.setBlogEntry(this);
+      responses.add(comment);
+      allComments = null;
 
       if (areEventsEnabled()) {
         addEvent(new CommentEvent(comment, CommentEvent.COMMENT_ADDED));
@@ -621,11 +640,12 @@ public class BlogEntry extends PageBasedContent {
    * @param trackBack a TrackBack instance
    */
   public synchronized void addTrackBack(TrackBack trackBack) {
-    if (trackBack == null || trackBacks.contains(trackBack)) {
+    if (trackBack == null || responses.contains(trackBack)) {
       return;
     }
 
     trackBacks.add(trackBack);
+    responses.add(trackBack);
 
     if (areEventsEnabled()) {
       addEvent(new TrackBackEvent(trackBack, TrackBackEvent.TRACKBACK_ADDED));
@@ -641,6 +661,8 @@ public class BlogEntry extends PageBasedContent {
   public synchronized void removeComment(long id) {
     Comment comment = getComment(id);
     if (comment != null) {
+      List<Comment> thread = new ArrayList<Comment>();
+      getComments(comment, thread);
 
       // get all children and delete them
       for (Comment child : comment.getComments()) {
@@ -653,6 +675,11 @@ public class BlogEntry extends PageBasedContent {
         comments.remove(comment);
       }
 
+      for (Comment c : thread) {
+        responses.remove(c);
+      }
+      allComments = null;
+
       if (areEventsEnabled()) {
         addEvent(new CommentEvent(comment, CommentEvent.COMMENT_REMOVED));
       }
@@ -667,16 +694,8 @@ public class BlogEntry extends PageBasedContent {
    *
    * @param id    the id of the comment
    */
-  public Comment getComment(long id) {
-    Iterator it = getComments().iterator();
-    while (it.hasNext()) {
-      Comment comment = (Comment) it.next();
-      if (comment.getId() == id) {
-        return comment;
-      }
-    }
-
-    return null;
+  public synchronized Comment getComment(long id) {
+    return responses.getComment(id);
   }
 
   /**
@@ -684,16 +703,8 @@ public class BlogEntry extends PageBasedContent {
    *
    * @param id    the id of the TrackBack
    */
-  public TrackBack getTrackBack(long id) {
-    Iterator it = getTrackBacks().iterator();
-    while (it.hasNext()) {
-      TrackBack trackBack = (TrackBack)it.next();
-      if (trackBack.getId() == id) {
-        return trackBack;
-      }
-    }
-
-    return null;
+  public synchronized TrackBack getTrackBack(long id) {
+    return responses.getTrackBack(id);
   }
 
   /**
@@ -720,6 +731,7 @@ public class BlogEntry extends PageBasedContent {
     TrackBack trackBack = getTrackBack(id);
     if (trackBack != null) {
       trackBacks.remove(trackBack);
+      responses.remove(trackBack);
 
       if (areEventsEnabled()) {
         addEvent(new TrackBackEvent(trackBack, TrackBackEvent.TRACKBACK_REMOVED));
@@ -730,6 +742,37 @@ public class BlogEntry extends PageBasedContent {
     }
   }
 
+  /**
+   * Called by a response before its date (and therefore its id) changes.
+   *
+   * @param response    the Response being changed
+   * @return  true if the response belongs to this blog entry and was
+   *          unindexed, false otherwise
+   */
+  synchronized boolean unindexResponse(Response response) {
+    return responses.remove(response);
+  }
+
+  /**
+   * Called by a response after its date has changed, to re-index it.
+   *
+   * @param response    the Response that was changed
+   */
+  synchronized void indexResponse(Response response) {
+    responses.add(response);
+  }
+
+  /**
+   * Called by a response when its state changes, to keep the counts by
+   * state up to date.
+   *
+   * @param response        the Response that was changed
+   * @param previousState   the state before the change
+   */
+  synchronized void responseStateChanged(Response response, State previousState) {
+    responses.stateChanged(response, previousState);
+  }
+
   /**
    * Removes the specified comment or TrackBack.
    *
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes the comments and TrackBacks belonging to a single blog entry, by
+ * id and by date, and keeps a running count of them by state. Instances
+ * are maintained incrementally by the owning {@link BlogEntry} as responses
+ * are added, removed, re-dated or moderated, so that lookups and counts
+ * don't have to walk the comment thread.
+ */
+class BlogEntryResponses {
+
+  /** comments, keyed on id */
+  private Map<Long,Comment> commentsById = new HashMap<Long,Comment>();
+
+  /** TrackBacks, keyed on id (the first added wins if ids collide) */
+  private Map<Long,TrackBack> trackBacksById = new HashMap<Long,TrackBack>();
+
+  /** all responses, newest first */
+  private List<Response> byDate = new ArrayList<Response>();
+
+  private int numberOfComments;
+  private int numberOfTrackBacks;
+  private int numberOfApprovedResponses;
+  private int numberOfPendingResponses;
+  private int numberOfRejectedResponses;
+
+  /**
+   * Adds the specified response to the index.
+   *
+   * @param response    a Comment or TrackBack
+   */
+  void add(Response response) {
+    Long id = response.getId();
+    if (response instanceof Comment) {
+      commentsById.put(id, (Comment)response);
+      numberOfComments++;
+    } else {
+      if (!trackBacksById.containsKey(id)) {
+        trackBacksById.put(id, (TrackBack)response);
+      }
+      numberOfTrackBacks++;
+    }
+
+    byDate.add(insertionPoint(response), response);
+    count(response.getState(), 1);
+  }
+
+  /**
+   * Removes the specified response from the index.
+   *
+   * @param response    a Comment or TrackBack
+   * @return  true if the response was indexed, false otherwise
+   */
+  boolean remove(Response response) {
+    int index = indexOf(response);
+    if (index == -1) {
+      return false;
+    }
+
+    byDate.remove(index);
+    Long id = response.getId();
+    if (response instanceof Comment) {
+      commentsById.remove(id);
+      numberOfComments--;
+    } else {
+      if (trackBacksById.get(id) == response) {
+        trackBacksById.remove(id);
+
+        // promote any other TrackBack that shares the same id
+        for (Response r : byDate) {
+          if (r instanceof TrackBack && r.getId() == id) {
+            trackBacksById.put(id, (TrackBack)r);
+            break;
+          }
+        }
+      }
+      numberOfTrackBacks--;
+    }
+    count(response.getState(), -1);
+
+    return true;
+  }
+
+  /**
+   * Called when the state of a response changes, so that the counts
+   * can be adjusted.
+   *
+   * @param response        the response
+   * @param previousState   the state before the change
+   */
+  void stateChanged(Response response, State previousState) {
+    if (contains(response)) {
+      count(previousState, -1);
+      count(response.getState(), 1);
+    }
+  }
+
+  boolean contains(Response response) {
+    return indexOf(response) != -1;
+  }
+
+  Comment getComment(long id) {
+    return commentsById.get(id);
+  }
+
+  TrackBack getTrackBack(long id) {
+    return trackBacksById.get(id);
+  }
+
+  /**
+   * Gets all responses, newest first.
+   *
+   * @return  an unmodifiable List of Response instances
+   */
+  List<Response> getResponses() {
+    return Collections.unmodifiableList(byDate);
+  }
+
+  /**
+   * Gets the most recent response.
+   *
+   * @return  a Response, or null if there are none
+   */
+  Response getMostRecentResponse() {
+    return byDate.isEmpty() ? null : byDate.get(0);
+  }
+
+  int getNumberOfResponses() {
+    return byDate.size();
+  }
+
+  int getNumberOfComments() {
+    return numberOfComments;
+  }
+
+  int getNumberOfTrackBacks() {
+    return numberOfTrackBacks;
+  }
+
+  int getNumberOfApprovedResponses() {
+    return numberOfApprovedResponses;
+  }
+
+  int getNumberOfPendingResponses() {
+    return numberOfPendingResponses;
+  }
+
+  int getNumberOfRejectedResponses() {
+    return numberOfRejectedResponses;
+  }
+
+  private void count(State state, int delta) {
+    if (state == State.APPROVED) {
+      numberOfApprovedResponses += delta;
+    } else if (state == State.PENDING) {
+      numberOfPendingResponses += delta;
+    } else if (state == State.REJECTED) {
+      numberOfRejectedResponses += delta;
+    }
+  }
+
+  /**
+   * Finds the position of the given response (by identity), or -1 if it
+   * isn't indexed.
+   */
+  private int indexOf(Response response) {
+    if (response.getDate() == null) {
+      return -1;
+    }
+
+    // binary search to the first response that sorts alongside this one
+    int low = 0;
+    int high = byDate.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compare(byDate.get(mid), response) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    for (int i = low; i < byDate.size() && compare(byDate.get(i), response) == 0; i++) {
+      if (byDate.get(i) == response) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Finds the position after all responses that sort alongside the given
+   * response, so that equal responses stay in the order they were added.
+   */
+  private int insertionPoint(Response response) {
+    int low = 0;
+    int high = byDate.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compare(byDate.get(mid), response) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    return low;
+  }
+
+  /**
+   * Newest first, with comments ahead of TrackBacks left at the same time.
+   */
+  private static int compare(Response r1, Response r2) {
+    int result = r2.getDate().compareTo(r1.getDate());
+    if (result == 0) {
+      result = rank(r1) - rank(r2);
+    }
+
+    return result;
+  }
+
+  private static int rank(Response response) {
+    return response instanceof Comment ? 0 : 1;
+  }
+
+}
@@ -39,9 +39,22 @@ import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A singleton to manage the active blog.
+ * <br /><br />
+ * In multi-blog mode, blogs can be started in parallel, or lazily - where
+ * each blog is only registered at startup and is started when it is first
+ * requested. Blogs that haven't been requested for a while can also be
+ * passivated (stopped), to be started again when next requested. Aggregated
+ * views (the public blog list and the MultiBlog timeline) are built from the
+ * blogs that are currently started, so that they don't start (or keep alive)
+ * every blog.
+ * <br /><br />
+ * Blogs looked up between beginRequest() and endRequest() are pinned for the
+ * rest of that request, so they can't be passivated while still in use.
  *
  * @author    Simon Brown
  */
@@ -56,11 +69,37 @@ public class BlogManager {
   private static final String THEMES_PATH = "themes";
   private static final String DEFAULT_BLOG = "default";
 
-  /** the blogs that are currently being managed */
-  private Map<String,Blog> blogs = new HashMap<String,Blog>();
+  /** the blogs that are currently started */
+  private Map<String,Blog> blogs = new ConcurrentHashMap<String,Blog>();
+
+  /** the IDs of all blogs being managed, whether started or not */
+  private Set<String> blogIds = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+  /** the time at which each started blog was started or last requested */
+  private final ConcurrentMap<String,Long> lastAccessed = new ConcurrentHashMap<String,Long>();
+
+  /** locks used to make sure that a blog is only started or stopped once */
+  private final ConcurrentMap<String,Object> locks = new ConcurrentHashMap<String,Object>();
+
+  /** the number of in-flight requests using each blog */
+  private final ConcurrentMap<String,AtomicInteger> pins = new ConcurrentHashMap<String,AtomicInteger>();
+
+  /** the IDs of the blogs pinned by the current request, or null outside of a request */
+  private final ThreadLocal<List<String>> pinnedByRequest = new ThreadLocal<List<String>>();
 
   private boolean multiBlog = false;
 
+  /** the number of threads used to start blogs */
+  private int startupThreads = 1;
+
+  /** whether blogs are only started when first requested */
+  private boolean lazyStartup = false;
+
+  /** the number of milliseconds after which an unused blog is stopped, 0 to never stop */
+  private long passivationTimeout = 0;
+
+  private Timer passivationTimer;
+
   /**
    * Creates a new instance - private constructor for the singleton pattern.
    */
@@ -95,7 +134,66 @@ public class BlogManager {
    * @return  a Blog instance
    */
   public Blog getBlog(String id) {
-    return blogs.get(id);
+    if (id == null) {
+      return null;
+    }
+
+    List<String> pinned = pinnedByRequest.get();
+    if (pinned != null && !pinned.contains(id)) {
+      // the blog can't be passivated between being looked up and pinned
+      synchronized (getLock(id)) {
+        Blog blog = lookupBlog(id);
+        if (blog != null) {
+          getPins(id).incrementAndGet();
+          pinned.add(id);
+        }
+        return blog;
+      }
+    }
+
+    return lookupBlog(id);
+  }
+
+  private Blog lookupBlog(String id) {
+    Blog blog = blogs.get(id);
+    if (blog == null && blogIds.contains(id)) {
+      blog = activateBlog(id);
+    }
+
+    if (blog != null && passivationTimeout > 0) {
+      // only blogs that are still started are tracked
+      lastAccessed.replace(id, System.currentTimeMillis());
+    }
+
+    return blog;
+  }
+
+  /**
+   * Called at the start of a request, so that any blogs looked up while
+   * processing it are pinned (not passivated) until endRequest() is called.
+   * This does nothing unless blogs are being passivated.
+   */
+  public void beginRequest() {
+    if (passivationTimeout > 0) {
+      pinnedByRequest.set(new ArrayList<String>());
+    }
+  }
+
+  /**
+   * Called at the end of a request, to release the blogs it pinned.
+   */
+  public void endRequest() {
+    List<String> pinned = pinnedByRequest.get();
+    if (pinned == null) {
+      return;
+    }
+
+    pinnedByRequest.remove();
+    long now = System.currentTimeMillis();
+    for (String id : pinned) {
+      getPins(id).decrementAndGet();
+      lastAccessed.replace(id, now);
+    }
   }
 
   /**
@@ -112,21 +210,205 @@ public class BlogManager {
 
     if (isMultiBlog()) {
       // find all directories and set them up as blogs
+      List<String> ids = new ArrayList<String>();
       File files[] = getBlogsDirectory().listFiles();
       if (files != null) {
         for (File file : files) {
           if (file.isDirectory()) {
-            startBlog(file.getAbsolutePath(), file.getName());
+            ids.add(file.getName());
           }
         }
       }
+
+      if (lazyStartup) {
+        blogIds.addAll(ids);
+        log.info("Registered " + ids.size() + " blogs, to be started on first request");
+      } else {
+        startBlogs(ids);
+      }
     } else {
       // start the default blog only
       startBlog(defaultBlog.getAbsolutePath(), DEFAULT_BLOG);      
     }
+
+    if (isMultiBlog() && passivationTimeout > 0) {
+      startPassivationTimer();
+    }
+  }
+
+  /**
+   * Starts the specified blogs, using up to startupThreads threads.
+   *
+   * @param ids   a List of blog IDs
+   */
+  private void startBlogs(List<String> ids) {
+    int threads = Math.min(startupThreads, ids.size());
+    if (threads <= 1) {
+      for (String id : ids) {
+        activateBlog(id);
+      }
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private int count = 0;
+
+      public synchronized Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "pebble-blog-startup-" + (++count));
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (final String id : ids) {
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          try {
+            activateBlog(id);
+          } catch (Exception e) {
+            log.error("Could not start blog with ID " + id, e);
+          }
+          return null;
+        }
+      });
+    }
+
+    try {
+      executor.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      log.warn("Interrupted while starting blogs");
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Starts all blogs that have been registered but not yet started.
+   */
+  public void startAllBlogs() {
+    if (blogs.size() == blogIds.size()) {
+      return;
+    }
+
+    List<String> ids = new ArrayList<String>();
+    for (String id : blogIds) {
+      if (!blogs.containsKey(id)) {
+        ids.add(id);
+      }
+    }
+    startBlogs(ids);
+  }
+
+  /**
+   * Starts the blog with the specified ID, if it isn't already started.
+   *
+   * @param id    the blog ID
+   * @return  the started Blog instance
+   */
+  private Blog activateBlog(String id) {
+    synchronized (getLock(id)) {
+      Blog blog = blogs.get(id);
+      if (blog == null) {
+        File f = new File(getBlogsDirectory(), id);
+        startBlog(f.getAbsolutePath(), id);
+        blog = blogs.get(id);
+      }
+
+      return blog;
+    }
+  }
+
+  /**
+   * Stops the blog with the specified ID, leaving it registered so that it
+   * is started again when next requested. Blogs that are pinned by an
+   * in-flight request are left alone.
+   *
+   * @param id    the blog ID
+   * @return  true if the blog was stopped, false otherwise
+   */
+  boolean passivateBlog(String id) {
+    synchronized (getLock(id)) {
+      if (getPins(id).get() > 0) {
+        return false;
+      }
+
+      Blog blog = blogs.remove(id);
+      lastAccessed.remove(id);
+      if (blog != null) {
+        log.info("Passivating blog with ID " + id);
+        stopBlog(blog);
+      }
+      return blog != null;
+    }
+  }
+
+  /**
+   * Stops those blogs that haven't been started or requested within the
+   * passivation timeout.
+   */
+  void passivateIdleBlogs() {
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String,Long> entry : lastAccessed.entrySet()) {
+      if (now - entry.getValue() > passivationTimeout) {
+        passivateBlog(entry.getKey());
+      }
+    }
+  }
+
+  private synchronized void startPassivationTimer() {
+    if (passivationTimer == null) {
+      long period = Math.min(passivationTimeout, 60 * 1000);
+      passivationTimer = new Timer("pebble-blog-passivation", true);
+      passivationTimer.schedule(new TimerTask() {
+        public void run() {
+          try {
+            passivateIdleBlogs();
+          } catch (Exception e) {
+            log.error("Error while passivating blogs", e);
+          }
+        }
+      }, period, period);
+    }
+  }
+
+  private synchronized void stopPassivationTimer() {
+    if (passivationTimer != null) {
+      passivationTimer.cancel();
+      passivationTimer = null;
+    }
+  }
+
+  private AtomicInteger getPins(String id) {
+    AtomicInteger count = pins.get(id);
+    if (count == null) {
+      AtomicInteger newCount = new AtomicInteger();
+      count = pins.putIfAbsent(id, newCount);
+      if (count == null) {
+        count = newCount;
+      }
+    }
+
+    return count;
+  }
+
+  private Object getLock(String id) {
+    Object lock = locks.get(id);
+    if (lock == null) {
+      Object newLock = new Object();
+      lock = locks.putIfAbsent(id, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+
+    return lock;
   }
 
   public void stopBlogs() {
+    stopPassivationTimer();
+
     for (Blog blog : blogs.values()) {
       stopBlog(blog);
     }
@@ -137,10 +419,12 @@ public class BlogManager {
   }
 
   public void reloadBlog(Blog blog) {
-    stopBlog(blog);
+    synchronized (getLock(blog.getId())) {
+      stopBlog(blog);
 
-    File f = new File(getBlogsDirectory(), blog.getId());
-    startBlog(f.getAbsolutePath(), blog.getId());
+      File f = new File(getBlogsDirectory(), blog.getId());
+      startBlog(f.getAbsolutePath(), blog.getId());
+    }
   }
 
   /**
@@ -159,6 +443,8 @@ public class BlogManager {
 
     blog.start();
     blogs.put(blog.getId(), blog);
+    blogIds.add(blog.getId());
+    lastAccessed.put(blog.getId(), System.currentTimeMillis());
 
     // which version are we at and do we need to upgrade?
     File versionFile = new File(blogDir, "pebble.version");
@@ -211,16 +497,50 @@ public class BlogManager {
     this.multiBlog = multiBlog;
   }
 
+  public int getStartupThreads() {
+    return startupThreads;
+  }
+
+  public void setStartupThreads(int startupThreads) {
+    this.startupThreads = Math.max(1, startupThreads);
+  }
+
+  public boolean isLazyStartup() {
+    return lazyStartup;
+  }
+
+  public void setLazyStartup(boolean lazyStartup) {
+    this.lazyStartup = lazyStartup;
+  }
+
+  public long getPassivationTimeout() {
+    return passivationTimeout;
+  }
+
+  /**
+   * Sets the time after which a blog that hasn't been requested is stopped.
+   *
+   * @param passivationTimeout    a number of milliseconds, 0 to never stop blogs
+   */
+  public void setPassivationTimeout(long passivationTimeout) {
+    this.passivationTimeout = Math.max(0, passivationTimeout);
+  }
+
   public void addBlog(Blog blog) {
     blogs.put(blog.getId(), blog);
+    blogIds.add(blog.getId());
+    lastAccessed.put(blog.getId(), System.currentTimeMillis());
   }
 
   public void removeAllBlogs() {
-    blogs = new HashMap<String,Blog>();
+    blogs = new ConcurrentHashMap<String,Blog>();
+    blogIds = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+    lastAccessed.clear();
+    pins.clear();
   }
 
   /**
-   * Gets all blogs that are currently being managed.
+   * Gets the blogs that are currently started, ordered by last modified date.
    *
    * @return  a Collection of Blog instances
    */
@@ -230,19 +550,42 @@ public class BlogManager {
     return sortedBlogs;
   }
 
+  /**
+   * Gets all blogs that are being managed, ordered by last modified date,
+   * starting any that haven't yet been started. This is only intended for
+   * administrative use, since it can be expensive when blogs are started
+   * lazily.
+   *
+   * @return  a Collection of Blog instances
+   */
+  public Collection<Blog> getAllBlogs() {
+    startAllBlogs();
+    return getBlogs();
+  }
+
   /**
    * Gets the number of blogs that are currently being managed.
    *
    * @return the number of managed blogs
    */
   public int getNumberOfBlogs() {
-	  return blogs.size();
+	  return blogIds.size();
+  }
+
+  /**
+   * Gets those blogs that are currently started, without starting any others.
+   *
+   * @return  a Collection of Blog instances
+   */
+  public Collection<Blog> getStartedBlogs() {
+    return new ArrayList<Blog>(blogs.values());
   }
   
   
   /**
-   * Gets all blogs that are currently being managed and are
-   * to be included in aggregated pages and feeds.
+   * Gets those started blogs that are to be included in aggregated pages
+   * and feeds. Blogs that are registered but not started (or have been
+   * passivated) aren't included, and aren't started by this method.
    *
    * @return  a List of Blog instances
    */
@@ -264,7 +607,7 @@ public class BlogManager {
    * @return  true if a blog with the specified ID exists, false otherwise
    */
   public boolean hasBlog(String id) {
-    return blogs.containsKey(id);
+    return id != null && (blogs.containsKey(id) || blogIds.contains(id));
   }
 
   public MultiBlog getMultiBlog() {
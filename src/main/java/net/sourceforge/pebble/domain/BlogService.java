@@ -179,6 +179,7 @@ public class BlogService {
           // and store the blog entry now that listeners have been fired
           dao.storeBlogEntry(blogEntry);
           cache.removeBlogEntry(blogEntry);
+          blog.getContentDecoratorChain().invalidate(blogEntry);
         }
 
         blogEntry.setPersistent(true);
@@ -207,6 +208,7 @@ public class BlogService {
 
       // remove from cache
       cache.removeBlogEntry(blogEntry);
+      blog.getContentDecoratorChain().invalidate(blogEntry);
 
       blogEntry.insertEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_REMOVED));
 
@@ -52,6 +52,9 @@ import java.util.*;
  */
 public class FileManager {
 
+  /** the blog that this manager refers to */
+  private Blog blog;
+
   /** the type of files being managed */
   private String type;
 
@@ -65,6 +68,7 @@ public class FileManager {
    * @param type    the type of files to manage
    */
   public FileManager(Blog blog, String type) {
+    this.blog = blog;
     this.type = type;
 
     // which directory are we looking at?
@@ -228,7 +232,9 @@ public class FileManager {
         throw new IllegalFileAccessException();
       }
 
+      long sizeBefore = FileUtils.sizeOf(newFile);
       FileUtils.copyFile(originalFile, newFile);
+      updateUsage(FileUtils.sizeOf(newFile) - sizeBefore);
 
       return newFile;
     } else {
@@ -257,7 +263,10 @@ public class FileManager {
         throw new IllegalFileAccessException();
       }
 
+      long sizeBefore = FileUtils.sizeOf(originalFile) + FileUtils.sizeOf(newFile);
       originalFile.renameTo(newFile);
+      updateUsage(FileUtils.sizeOf(originalFile) + FileUtils.sizeOf(newFile) - sizeBefore);
+
       return newFile;
     } else {
       return null;
@@ -278,7 +287,9 @@ public class FileManager {
       throw new IllegalFileAccessException();
     }
 
+    long sizeBefore = FileUtils.sizeOf(fileToDelete);
     FileUtils.deleteFile(fileToDelete);
+    updateUsage(FileUtils.sizeOf(fileToDelete) - sizeBefore);
   }
 
   /**
@@ -334,6 +345,7 @@ public class FileManager {
       throw new IllegalFileAccessException();
     }
 
+    long sizeBefore = fileToSave.length();
     BufferedWriter writer = null;
     try {
       writer = new BufferedWriter(new FileWriter(fileToSave));
@@ -341,6 +353,7 @@ public class FileManager {
       writer.flush();
     } finally {
       IOUtils.closeQuietly(writer);
+      updateUsage(fileToSave.length() - sizeBefore);
     }
   }
 
@@ -359,6 +372,7 @@ public class FileManager {
       throw new IllegalFileAccessException();
     }
 
+    long sizeBefore = fileToSave.length();
     BufferedOutputStream out = null;
     try {
       out = new BufferedOutputStream(new FileOutputStream(fileToSave));
@@ -368,9 +382,31 @@ public class FileManager {
       IOUtils.closeQuietly(out);
     }
 
+    fileWritten(fileToSave, sizeBefore);
+
     return file;
   }
 
+  /**
+   * Called once a file has been written (e.g. uploaded) underneath the root
+   * directory, so that any derived data can be brought up to date.
+   *
+   * @param file          the java.io.File that has been written
+   * @param sizeBefore    the size of the file before it was written (0 if it didn't exist)
+   */
+  public void fileWritten(File file, long sizeBefore) {
+    updateUsage(file.length() - sizeBefore);
+
+    if (type.equals(FileMetaData.BLOG_IMAGE) || type.equals(FileMetaData.BLOG_FILE)) {
+      ThumbnailService thumbnailService = ThumbnailService.getInstance();
+      if (thumbnailService.isImage(file)) {
+        thumbnailService.generateThumbnails(file, new int[] {
+            ThumbnailService.getThumbnailSize(blog),
+            ThumbnailService.getDisplaySize(blog) });
+      }
+    }
+  }
+
   /**
    * Gets a list of files that reside under a given path.
    *
@@ -431,6 +467,17 @@ public class FileManager {
     return directoriesAndFiles;
   }
 
+  /**
+   * Records a change in the amount of space used by files of this type.
+   *
+   * @param bytes   the number of bytes added (negative if removed)
+   */
+  private void updateUsage(long bytes) {
+    if (blog != null && blog.getDiskUsageIndex() != null) {
+      blog.getDiskUsageIndex().adjust(type, bytes);
+    }
+  }
+
   /**
    * Determines how much space is being used in files, images and theme.
    *
@@ -438,12 +485,7 @@ public class FileManager {
    * @return  the number of KB
    */
   public static double getCurrentUsage(Blog blog) {
-    FileManager imagesFileManager = new FileManager(blog, FileMetaData.BLOG_IMAGE);
-    FileManager filesFileManager = new FileManager(blog, FileMetaData.BLOG_FILE);
-    FileManager themeFileManager = new FileManager(blog, FileMetaData.THEME_FILE);
-    return  imagesFileManager.getFileMetaData("/").getSizeInKB() +
-            filesFileManager.getFileMetaData("/").getSizeInKB() +
-            themeFileManager.getFileMetaData("/").getSizeInKB();
+    return blog.getDiskUsageIndex().getUsageInKB();
   }
 
 
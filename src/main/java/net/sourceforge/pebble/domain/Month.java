@@ -31,6 +31,9 @@
  */
 package net.sourceforge.pebble.domain;
 
+import net.sourceforge.pebble.index.ArchiveIndex;
+import net.sourceforge.pebble.index.MonthArchive;
+
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -131,13 +134,7 @@ public class Month extends TimePeriod implements Permalinkable {
    * @return    true if this blog contains entries, false otherwise
    */
   public boolean hasBlogEntries() {
-    for (int i = 1; i <= lastDayInMonth; i++) {
-      if (getBlogForDay(i).hasBlogEntries()) {
-        return true;
-      }
-    }
-
-    return false;
+    return getNumberOfBlogEntries() > 0;
   }
 
   /**
@@ -160,6 +157,12 @@ public class Month extends TimePeriod implements Permalinkable {
    * @return  an int
    */
   public int getNumberOfBlogEntries() {
+    ArchiveIndex archiveIndex = getBlog().getArchiveIndex();
+    if (archiveIndex != null) {
+      MonthArchive archive = archiveIndex.getMonthArchive(year.getYear(), month);
+      return archive != null ? archive.getNumberOfBlogEntries() : 0;
+    }
+
     int count = 0;
     Day days[] = getAllDays();
     for (Day day : days) {
@@ -31,8 +31,10 @@
  */
 package net.sourceforge.pebble.domain;
 
-import net.sourceforge.pebble.comparator.BlogEntryComparator;
 import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.index.TimelineIndex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.*;
@@ -50,6 +52,9 @@ import java.util.*;
  */
 public class MultiBlog extends AbstractBlog {
 
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(MultiBlog.class);
+
   /**
    * Creates a new Blog instance, based at the specified location.
    *
@@ -125,18 +130,7 @@ public class MultiBlog extends AbstractBlog {
    * @return  a Date instance representing the time of the most recent entry
    */
   public Date getLastModified() {
-    Date date = new Date(0);
-
-    Iterator it = BlogManager.getInstance().getPublicBlogs().iterator();
-    Blog blog;
-    while (it.hasNext()) {
-      blog = (Blog)it.next();
-      if (blog.getLastModified().after(date)) {
-        date = blog.getLastModified();
-      }
-    }
-
-    return date;
+    return TimelineIndex.getInstance().getLastModified();
   }
 
   /**
@@ -147,19 +141,35 @@ public class MultiBlog extends AbstractBlog {
    * @return a List containing the most recent blog entries
    */
   public List<BlogEntry> getRecentBlogEntries(int numberOfEntries) {
-    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
-
-    for (Blog blog : BlogManager.getInstance().getPublicBlogs()) {
-      blogEntries.addAll(blog.getRecentPublishedBlogEntries());
-    }
+    return getBlogEntries(TimelineIndex.getInstance().getRecentBlogEntries(numberOfEntries));
+  }
 
-    Collections.sort(blogEntries, new BlogEntryComparator());
+  /**
+   * Gets a page of the published blog entries across all public blogs.
+   *
+   * @param offset            the number of entries to skip
+   * @param numberOfEntries   the maximum number of entries to get
+   * @return a List containing the blog entries, most recent first
+   */
+  public List<BlogEntry> getBlogEntries(int offset, int numberOfEntries) {
+    return getBlogEntries(TimelineIndex.getInstance().getBlogEntries(offset, numberOfEntries));
+  }
 
-    if (blogEntries.size() >= numberOfEntries) {
-      return new ArrayList<BlogEntry>(blogEntries).subList(0, numberOfEntries);
-    } else {
-      return new ArrayList<BlogEntry>(blogEntries);
+  private List<BlogEntry> getBlogEntries(List<TimelineIndex.Entry> entries) {
+    BlogService service = new BlogService();
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    for (TimelineIndex.Entry entry : entries) {
+      try {
+        BlogEntry blogEntry = service.getBlogEntry(entry.getBlog(), entry.getBlogEntryId());
+        if (blogEntry != null) {
+          blogEntries.add(blogEntry);
+        }
+      } catch (BlogServiceException e) {
+        log.error("Exception encountered", e);
+      }
     }
+
+    return blogEntries;
   }
 
   /**
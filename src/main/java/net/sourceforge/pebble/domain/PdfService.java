@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import com.lowagie.text.pdf.BaseFont;
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.security.PebbleUserDetails;
+import net.sourceforge.pebble.util.StringUtils;
+import net.sourceforge.pebble.web.listener.PebblePDFCreationListener;
+import net.sourceforge.pebble.web.view.HtmlView;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.TrueTypeUtil;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders and caches PDF versions of blog entries. PDFs are written to a
+ * "pdf" directory underneath the blog, named after the entry ID and a hash
+ * of the XHTML they were rendered from, so that a changed entry never
+ * picks up a stale PDF and unchanged entries survive restarts. Rendering
+ * normally happens in the background when an entry is published or changed
+ * (see PdfCacheListener); a request for a PDF that isn't ready yet renders
+ * it once, sharing the work with any concurrent requests or queued job.
+ */
+public class PdfService {
+
+  private static final PdfService instance = new PdfService();
+
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(PdfService.class);
+
+  /** the name of the directory, underneath each blog, holding PDFs */
+  public static final String PDF_DIRECTORY = "pdf";
+
+  private static final String SEP = "/";
+  private static final String FONTS_PATH = "fonts";
+  private static final String THEMES_PATH = "themes";
+  private static final String DEFAULT_ENCODING = "UTF-8";
+  private static final String PDF_CSS = "pdf.css";
+  private static final String SYSTEM_THEME_PATH = HtmlView.SYSTEM_THEME;
+
+  private static final int MAXIMUM_QUEUED_JOBS = 100;
+
+  /** PDF file path -> the job rendering it, to avoid duplicate work */
+  private final ConcurrentMap<String, PdfJob> pending = new ConcurrentHashMap<String, PdfJob>();
+
+  private final ThreadPoolExecutor executor;
+
+  /** the font (if any) embedded in PDFs, looked up once per font directory */
+  private volatile PdfFont font;
+
+  PdfService() {
+    int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(MAXIMUM_QUEUED_JOBS),
+        new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "pebble-pdf");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+        },
+        new RejectedExecutionHandler() {
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            // the PDF will be rendered when it's first requested instead
+            log.debug("PDF queue is full, skipping background rendering");
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  public static PdfService getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the PDF version of a blog entry, rendering it on the calling thread
+   * if it isn't already available.
+   *
+   * @param blogEntry   a BlogEntry instance
+   * @return  the PDF File
+   * @throws IOException    if the PDF can't be rendered
+   */
+  public File getPdf(BlogEntry blogEntry) throws IOException {
+    String xhtml = toXhtml(blogEntry);
+    File file = getPdfFile(blogEntry, xhtml);
+    if (file.isFile()) {
+      return file;
+    }
+
+    PdfJob job = getJob(blogEntry, file, xhtml);
+    // a no-op if the job is already running, or has completed
+    job.run();
+    try {
+      return job.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while rendering " + file.getName());
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      throw new IOException("Could not render " + file.getName(), cause);
+    }
+  }
+
+  /**
+   * Schedules rendering of the PDF version of a blog entry in the background,
+   * if it isn't already available.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public void generatePdf(BlogEntry blogEntry) {
+    // a copy, so that the job sees the entry as it is at this point
+    final BlogEntry entry = (BlogEntry)blogEntry.clone();
+    executor.execute(new Runnable() {
+      public void run() {
+        try {
+          String xhtml = toXhtml(entry);
+          File file = getPdfFile(entry, xhtml);
+          if (!file.isFile()) {
+            PdfJob job = getJob(entry, file, xhtml);
+            // a no-op if a request is already rendering it
+            job.run();
+            job.get();
+          }
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+          log.warn("Could not generate PDF for " + entry.getId(), ee.getCause());
+        } catch (Exception e) {
+          log.warn("Could not generate PDF for " + entry.getId(), e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Removes any cached PDF versions of the given blog entry.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public void removePdfs(BlogEntry blogEntry) {
+    removePdfs(getPdfDirectory(blogEntry.getBlog()), blogEntry.getId(), null);
+  }
+
+  private PdfJob getJob(BlogEntry blogEntry, File file, String xhtml) {
+    String key = file.getAbsolutePath();
+    PdfJob job = pending.get(key);
+    if (job == null) {
+      PdfJob newJob = new PdfJob(key, blogEntry.getId(), file, xhtml);
+      job = pending.putIfAbsent(key, newJob);
+      if (job == null) {
+        job = newJob;
+      }
+    }
+
+    return job;
+  }
+
+  private File getPdfDirectory(Blog blog) {
+    return new File(blog.getRoot(), PDF_DIRECTORY);
+  }
+
+  private File getPdfFile(BlogEntry blogEntry, String xhtml) {
+    return new File(getPdfDirectory(blogEntry.getBlog()), blogEntry.getId() + "-" + hash(xhtml) + ".pdf");
+  }
+
+  /**
+   * Removes the PDFs for the given blog entry, other than the one specified.
+   */
+  private void removePdfs(File directory, String blogEntryId, File current) {
+    final String prefix = blogEntryId + "-";
+    File[] files = directory.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.startsWith(prefix) && name.endsWith(".pdf");
+      }
+    });
+
+    if (files != null) {
+      for (File file : files) {
+        if (!file.equals(current) && !file.delete() && file.exists()) {
+          log.warn("Could not delete stale PDF " + file.getAbsolutePath());
+        }
+      }
+    }
+  }
+
+  private File writePdf(String blogEntryId, File file, String xhtml) throws Exception {
+    File directory = file.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Can't create PDF directory " + directory);
+    }
+
+    // write to a temporary file first, so that readers never see a partial PDF
+    File tmp = new File(directory, "." + file.getName() + ".tmp");
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+    try {
+      render(xhtml, out);
+    } catch (Exception e) {
+      out.close();
+      tmp.delete();
+      throw e;
+    }
+    out.close();
+
+    if (!tmp.renameTo(file)) {
+      tmp.delete();
+      if (!file.isFile()) {
+        throw new IOException("Could not rename " + tmp + " to " + file);
+      }
+    }
+    removePdfs(directory, blogEntryId, file);
+
+    log.info("Successfully generated PDF document: " + file.getName());
+    return file;
+  }
+
+  /**
+   * Renders the given XHTML as a PDF.
+   *
+   * @param xhtml   the XHTML source, as produced by toXhtml()
+   * @param out     the OutputStream to write the PDF to
+   */
+  void render(String xhtml, OutputStream out) throws Exception {
+    ITextRenderer renderer = new ITextRenderer();
+    PdfFont font = getFont();
+    if (font != null) {
+      //You should always embed TrueType fonts.
+      renderer.getFontResolver().addFont(font.getPath(), BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+    }
+
+    ByteArrayInputStream bais = new ByteArrayInputStream(xhtml.getBytes(DEFAULT_ENCODING));
+    DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    Document doc = builder.parse(new InputSource(bais));
+
+    //Listener that will parse HTML header meta tags, and will set them to PDF document as meta data
+    PebblePDFCreationListener pdfListener = new PebblePDFCreationListener();
+    pdfListener.parseMetaTags(doc);
+    renderer.setListener(pdfListener);
+    renderer.setDocument(doc, null);
+    renderer.layout();
+    renderer.createPDF(out);
+  }
+
+  /**
+   * Builds the XHTML source that a PDF is rendered from.
+   *
+   * @param entry   a BlogEntry instance
+   * @return  the XHTML as a String
+   */
+  String toXhtml(BlogEntry entry) {
+    PebbleUserDetails user = entry.getUser();
+    String author = user != null ? user.getName() : entry.getAuthor();
+    String title = entry.getTitle();
+    String subtitle = entry.getSubtitle();
+    String body = entry.getBody();
+    String blogName = entry.getBlog().getName();
+    String entryPermalink = entry.getPermalink();
+    String entryDescription = entry.getBlog().getDescription();
+
+    //Some of the HTML entities need to be escaped to Unicode notation \\uXXXX for XHTML markup to validate
+    title = title != null ? StringUtils.transformHTML(title) : "";
+    subtitle = subtitle != null ? StringUtils.transformHTML(subtitle) : "";
+    body = body != null ? StringUtils.unescapeHTMLEntities(body) : "";
+
+    //Get blog entry tags for PDF metadata 'keywords'
+    StringBuilder tags = new StringBuilder();
+    Iterator<Tag> currentEntryTags = entry.getAllTags().iterator();
+
+    //Build a string out of blog entry tags and seperate them by comma
+    while (currentEntryTags.hasNext()) {
+      Tag currentTag = currentEntryTags.next();
+      if (currentTag.getName() != null && !currentTag.getName().equals("")) {
+        tags.append(currentTag.getName());
+        if (currentEntryTags.hasNext()) {
+          tags.append(",");
+        }
+      }
+    }
+
+    //Build valid XHTML source from blog entry for parsing
+    StringBuilder buf = new StringBuilder();
+    buf.append("<html>");
+    buf.append("<head>");
+    buf.append("<meta name=\"title\" content=\"" + title + " - " + blogName + "\"/>");
+    buf.append("<meta name=\"subject\" content=\"" + title + "\"/>");
+    buf.append("<meta name=\"keywords\" content=\"" + tags.toString().trim() + "\"/>");
+    buf.append("<meta name=\"author\" content=\"" + author + "\"/>");
+    buf.append("<meta name=\"creator\" content=\"Pebble (by pebble.sourceforge.net)\"/>");
+    buf.append("<meta name=\"producer\" content=\"Flying Saucer (by xhtmlrenderer.dev.java.net)\"/>");
+    buf.append("<link rel='stylesheet' type='text/css' href='" + entry.getBlog().getUrl() +
+                                                                THEMES_PATH + SEP +
+                                                                SYSTEM_THEME_PATH + SEP +
+                                                                PDF_CSS + "' media='print' />");
+    buf.append("</head>");
+    buf.append("<body>");
+    buf.append("<div id=\"header\" style=\"\">" + blogName + " - " + entryDescription + "</div>");
+    buf.append("<p>");
+
+    PdfFont font = getFont();
+    if (font != null && !font.getFamilyName().equals("")) {
+      //Wrap DIV with font family name around the content of the blog entry
+      String fontFamilyName = font.getFamilyName();
+      author = "<div style=\"font-family: " + fontFamilyName + ";\">" + author + "</div>";
+      title = "<div style=\"font-family: " + fontFamilyName + ";\">" + title + "</div>";
+      subtitle = "<div style=\"font-family: " + fontFamilyName + ";\">" + subtitle + "</div>";
+      body = "<div style=\"font-family: " + fontFamilyName + ";\">" + body + "</div>";
+    }
+
+    buf.append("<h1>" + title  + "</h1>");
+    buf.append("<h2>" + subtitle + "</h2>");
+    buf.append("</p>");
+    buf.append("<p>" + body + "</p>");
+    buf.append("<p><br /><br /><br />");
+    buf.append("<i>Published by " + author + "</i><br />");
+    buf.append("<i>" + entry.getDate().toString() + "</i><br />");
+    buf.append("<i><a href=\"" + entryPermalink + "\" title=\"" + entryPermalink + "\">" + entryPermalink + "</a></i>");
+    buf.append("</p>");
+    buf.append("</body>");
+    buf.append("</html>");
+
+    return buf.toString();
+  }
+
+  /**
+   * Gets the TTF or OTF font from the font directory in the system theme
+   * folder, reading it only when that directory changes.
+   */
+  private PdfFont getFont() {
+    //Build absolute path to: <pebble_root>/themes/_pebble/fonts/
+    String fontDirAbsolutePath = PebbleContext.getInstance().getWebApplicationRoot() + SEP + THEMES_PATH +
+        SEP + SYSTEM_THEME_PATH + SEP + FONTS_PATH;
+
+    PdfFont current = font;
+    if (current != null && current.getDirectory().equals(fontDirAbsolutePath)) {
+      return current.getPath() != null ? current : null;
+    }
+
+    String path = null;
+    String familyName = "";
+    File fontDir = new File(fontDirAbsolutePath);
+    if (fontDir.isDirectory()) {
+      File[] files = fontDir.listFiles(new FilenameFilter() {
+        public boolean accept(File dir, String name) {
+          String lower = name.toLowerCase();
+
+          //Load TTF or OTF files
+          return lower.endsWith(".otf") || lower.endsWith(".ttf");
+        }
+      });
+
+      if (files != null && files.length > 0) {
+        path = files[0].getAbsolutePath();
+        try {
+          //Get font family name from the BaseFont object. All this work just to get font family name
+          BaseFont baseFont = BaseFont.createFont(path, BaseFont.IDENTITY_H, BaseFont.NOT_EMBEDDED);
+          familyName = TrueTypeUtil.getFamilyName(baseFont);
+          log.info("Using font: " + path + " (" + familyName + ") for PDFs");
+        } catch (Exception e) {
+          log.warn("Could not read font " + path, e);
+          path = null;
+        }
+      }
+    }
+
+    current = new PdfFont(fontDirAbsolutePath, path, familyName);
+    font = current;
+    return path != null ? current : null;
+  }
+
+  private static String hash(String s) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+      digest.update(s.getBytes(DEFAULT_ENCODING));
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IllegalStateException(nsae);
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+      hex.append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  private class PdfJob extends FutureTask<File> {
+
+    PdfJob(final String key, final String blogEntryId, final File file, final String xhtml) {
+      super(new Callable<File>() {
+        public File call() throws Exception {
+          try {
+            return writePdf(blogEntryId, file, xhtml);
+          } finally {
+            pending.remove(key);
+          }
+        }
+      });
+    }
+
+  }
+
+  private static class PdfFont {
+
+    private final String directory;
+    private final String path;
+    private final String familyName;
+
+    PdfFont(String directory, String path, String familyName) {
+      this.directory = directory;
+      this.path = path;
+      this.familyName = familyName != null ? familyName : "";
+    }
+
+    String getDirectory() {
+      return directory;
+    }
+
+    String getPath() {
+      return path;
+    }
+
+    String getFamilyName() {
+      return familyName;
+    }
+
+  }
+
+}
@@ -184,7 +184,13 @@ public abstract class Response extends Content {
 
     Calendar cal = blogEntry.getBlog().getCalendar();
     cal.setTime(date);
+
+    // the id is derived from the date, so re-index if already added
+    boolean indexed = blogEntry.unindexResponse(this);
     this.date = cal.getTime();
+    if (indexed) {
+      blogEntry.indexResponse(this);
+    }
   }
 
   /**
@@ -205,6 +211,20 @@ public abstract class Response extends Content {
     this.blogEntry = blogEntry;
   }
 
+  /**
+   * Sets the state of this response.
+   *
+   * @param state   the new State
+   */
+  void setState(State state) {
+    State previousState = getState();
+    super.setState(state);
+
+    if (blogEntry != null) {
+      blogEntry.responseStateChanged(this, previousState);
+    }
+  }
+
   /**
    * Gets the spam score.
    *
@@ -0,0 +1,495 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import net.sourceforge.pebble.PluginProperties;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates scaled down versions of blog images in the background. Thumbnails
+ * are written to a "thumbnails" directory alongside the source image, named
+ * after a hash of the source content and the requested size, so they survive
+ * restarts and are served as ordinary static files. Callers never block on
+ * image decoding; until a thumbnail is ready they should fall back to the
+ * original image.
+ */
+public class ThumbnailService {
+
+  private static final ThumbnailService instance = new ThumbnailService();
+
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(ThumbnailService.class);
+
+  /** the plugin properties used to configure thumbnail sizes */
+  public static final String THUMBNAIL_SIZE_PROPERTY = "Thumbnail.thumbnailSize";
+  public static final String DISPLAY_SIZE_PROPERTY = "Thumbnail.popupSize";
+
+  public static final int DEFAULT_THUMBNAIL_SIZE = 200;
+  public static final int DEFAULT_DISPLAY_SIZE = 640;
+
+  /** the name of the directory, alongside each image, holding thumbnails */
+  public static final String THUMBNAIL_DIRECTORY = "thumbnails";
+
+  private static final int MAXIMUM_QUEUED_JOBS = 200;
+
+  /** the image suffixes that thumbnails can be generated for */
+  private static final String[] IMAGE_SUFFIXES = { "jpg", "jpeg", "png", "gif", "bmp" };
+
+  /** image transform hints */
+  private static final RenderingHints renderHints;
+
+  static {
+    Map<RenderingHints.Key, Object> hintMap = new HashMap<RenderingHints.Key, Object>();
+    hintMap.put(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+    hintMap.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    hintMap.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+    hintMap.put(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+    hintMap.put(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    renderHints = new RenderingHints(hintMap);
+  }
+
+  /** source image path -> the hash of the version last seen */
+  private final ConcurrentMap<String, SourceVersion> versions = new ConcurrentHashMap<String, SourceVersion>();
+
+  /** keys of the jobs that are queued or running, to avoid duplicate work */
+  private final ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<String, Boolean>();
+
+  private final ThreadPoolExecutor executor;
+
+  private ThumbnailService() {
+    int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(MAXIMUM_QUEUED_JOBS),
+        new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "pebble-thumbnails");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+        },
+        new RejectedExecutionHandler() {
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            // the page will carry on using the original; we'll try again next time
+            pending.remove(((ThumbnailJob)r).getKey());
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  public static ThumbnailService getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the configured thumbnail size for the given blog.
+   */
+  public static int getThumbnailSize(Blog blog) {
+    return getSize(blog, THUMBNAIL_SIZE_PROPERTY, DEFAULT_THUMBNAIL_SIZE);
+  }
+
+  /**
+   * Gets the configured display (popup) size for the given blog.
+   */
+  public static int getDisplaySize(Blog blog) {
+    return getSize(blog, DISPLAY_SIZE_PROPERTY, DEFAULT_DISPLAY_SIZE);
+  }
+
+  private static int getSize(Blog blog, String property, int defaultSize) {
+    PluginProperties props = blog.getPluginProperties();
+    if (props.hasProperty(property)) {
+      try {
+        return Integer.parseInt(props.getProperty(property));
+      } catch (NumberFormatException nfe) {
+        // ignore, and use the default
+      }
+    }
+    return defaultSize;
+  }
+
+  /**
+   * Determines whether thumbnails can be generated for the given file.
+   *
+   * @param file    a File instance
+   * @return  true if the file has a recognised image suffix
+   */
+  public boolean isImage(File file) {
+    String suffix = getSuffix(file);
+    if (suffix != null) {
+      for (String s : IMAGE_SUFFIXES) {
+        if (s.equalsIgnoreCase(suffix)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the thumbnail of the given size for an image, if it has already been
+   * generated for the current version of that image. If not, generation is
+   * scheduled in the background and null is returned.
+   *
+   * @param image   the source image
+   * @param size    the maximum dimension of the thumbnail
+   * @return  the thumbnail File, or null if it isn't ready yet
+   */
+  public File getThumbnail(File image, int size) {
+    if (!image.isFile() || !isImage(image)) {
+      return null;
+    }
+
+    SourceVersion version = versions.get(image.getAbsolutePath());
+    if (version != null && version.isCurrent(image)) {
+      File thumbnail = getThumbnailFile(image, version.getHash(), size);
+      if (thumbnail.isFile()) {
+        return thumbnail;
+      }
+    }
+
+    generateThumbnails(image, new int[] { size });
+    return null;
+  }
+
+  /**
+   * Schedules generation of thumbnails of the given sizes for an image.
+   *
+   * @param image   the source image
+   * @param sizes   the maximum dimensions of the thumbnails
+   */
+  public void generateThumbnails(File image, int[] sizes) {
+    if (!isImage(image)) {
+      return;
+    }
+
+    for (int size : sizes) {
+      String key = image.getAbsolutePath() + "#" + size;
+      if (pending.putIfAbsent(key, Boolean.TRUE) == null) {
+        executor.execute(new ThumbnailJob(key, image, size));
+      }
+    }
+  }
+
+  /**
+   * Generates (if necessary) the thumbnail of the given size for an image,
+   * on the calling thread.
+   *
+   * @param image   the source image
+   * @param size    the maximum dimension of the thumbnail
+   * @return  the thumbnail File, or null if one couldn't be created
+   */
+  public File generateThumbnail(File image, int size) throws IOException {
+    SourceVersion version = getCurrentVersion(image);
+    File thumbnail = getThumbnailFile(image, version.getHash(), size);
+    if (!thumbnail.isFile()) {
+      File directory = thumbnail.getParentFile();
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        log.warn("Can't create thumbnail directory " + directory);
+        return null;
+      }
+
+      // write to a temporary file first, so that readers never see a partial image
+      File tmp = new File(directory, "." + thumbnail.getName() + ".tmp");
+      if (!createThumbnail(image, tmp, size)) {
+        tmp.delete();
+        return null;
+      }
+      if (!tmp.renameTo(thumbnail)) {
+        tmp.delete();
+        return thumbnail.isFile() ? thumbnail : null;
+      }
+
+      deleteLegacyThumbnail(image);
+    }
+
+    return thumbnail;
+  }
+
+  /**
+   * Older versions of Pebble wrote a single thumbnail per image, with the
+   * same name as the image itself. Nothing refers to those any more, so
+   * they're removed once a replacement has been generated.
+   */
+  private void deleteLegacyThumbnail(File image) {
+    File legacy = new File(new File(image.getParentFile(), THUMBNAIL_DIRECTORY), image.getName());
+    if (legacy.isFile() && !legacy.delete()) {
+      log.warn("Can't delete old thumbnail " + legacy);
+    }
+  }
+
+  private SourceVersion getCurrentVersion(File image) throws IOException {
+    SourceVersion version = versions.get(image.getAbsolutePath());
+    if (version == null || !version.isCurrent(image)) {
+      long lastModified = image.lastModified();
+      long length = image.length();
+      version = new SourceVersion(lastModified, length, hash(image));
+      versions.put(image.getAbsolutePath(), version);
+    }
+
+    return version;
+  }
+
+  private File getThumbnailFile(File image, String hash, int size) {
+    File directory = new File(image.getParentFile(), THUMBNAIL_DIRECTORY);
+    return new File(directory, hash + "-" + size + "." + getSuffix(image).toLowerCase());
+  }
+
+  private String hash(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IOException(nsae.getMessage());
+    }
+
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      byte[] buf = new byte[8192];
+      int len = in.read(buf);
+      while (len != -1) {
+        digest.update(buf, 0, len);
+        len = in.read(buf);
+      }
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+      hex.append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  private static String getSuffix(File file) {
+    String name = file.getName();
+    int dot = name.lastIndexOf('.');
+    if (dot < 1) {
+      return null;
+    }
+    return name.substring(dot + 1);
+  }
+
+  /**
+   * Creates a new thumbnail from an image. The image is decoded with source
+   * subsampling, so that only roughly twice the thumbnail resolution is ever
+   * held in memory, regardless of the size of the original.
+   *
+   * @param imgFile     the image to thumbnail
+   * @param thumbFile   the thumbnail to create
+   * @param thumbSize   the maximum dimension of the thumbnail
+   * @return true if the thumbnail was created successfully
+   */
+  public boolean createThumbnail(File imgFile, File thumbFile, int thumbSize) {
+    String suffix = getSuffix(imgFile);
+    if (suffix == null || thumbSize <= 0) {
+      return false;
+    }
+
+    ImageInputStream in = null;
+    ImageReader reader = null;
+    try {
+      in = ImageIO.createImageInputStream(imgFile);
+      if (in == null) {
+        return false;
+      }
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        return false;
+      }
+      reader = readers.next();
+      reader.setInput(in, true, true);
+
+      // work out how much we can subsample while decoding
+      int iw = reader.getWidth(0);
+      int ih = reader.getHeight(0);
+      int subsampling = Math.max(1, Math.max(iw, ih) / (thumbSize * 2));
+      ImageReadParam param = reader.getDefaultReadParam();
+      param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+      BufferedImage img = reader.read(0, param);
+
+      // calculate the scaling
+      iw = img.getWidth();
+      ih = img.getHeight();
+      int thumbH, thumbW;
+      float scale;
+      if (iw > ih) {
+        scale = (float)thumbSize / (float)iw;
+        thumbW = thumbSize;
+        thumbH = Math.max(1, Math.round(ih * scale));
+      } else {
+        scale = (float)thumbSize / (float)ih;
+        thumbH = thumbSize;
+        thumbW = Math.max(1, Math.round(iw * scale));
+      }
+
+      // scale the image
+      int type = img.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB : img.getType();
+      BufferedImage thumb = new BufferedImage(thumbW, thumbH, type);
+      AffineTransformOp ato = new AffineTransformOp(AffineTransform.getScaleInstance(scale, scale), renderHints);
+      ato.filter(img, thumb);
+
+      // save the image
+      Iterator<ImageWriter> iwi = ImageIO.getImageWritersBySuffix(suffix);
+      if (!iwi.hasNext()) {
+        return false;
+      }
+      ImageWriter thumbWriter = iwi.next();
+      ImageWriteParam iwp = thumbWriter.getDefaultWriteParam();
+      if (iwp.canWriteCompressed()) {
+        String ct[] = iwp.getCompressionTypes();
+        if (ct != null) {
+          iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+          iwp.setCompressionType(ct[0]);
+          iwp.setCompressionQuality(0.8F);
+        }
+      }
+      FileImageOutputStream thumbOut = new FileImageOutputStream(thumbFile);
+      try {
+        thumbWriter.setOutput(thumbOut);
+        thumbWriter.write(null, new IIOImage(thumb, null, null), iwp);
+      } finally {
+        thumbWriter.dispose();
+        thumbOut.close();
+      }
+    } catch (IOException ioe) {
+      log.warn("Can't create thumbnail for " + imgFile, ioe);
+      return false;
+    } catch (RuntimeException re) {
+      // ImageIO plugins can throw all sorts of things for corrupt images
+      log.warn("Can't create thumbnail for " + imgFile, re);
+      return false;
+    } finally {
+      if (reader != null) {
+        reader.dispose();
+      }
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ioe) {
+          // ignore
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * The version of a source image that a hash was calculated for.
+   */
+  private static final class SourceVersion {
+
+    private final long lastModified;
+    private final long length;
+    private final String hash;
+
+    SourceVersion(long lastModified, long length, String hash) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.hash = hash;
+    }
+
+    boolean isCurrent(File file) {
+      return file.lastModified() == lastModified && file.length() == length;
+    }
+
+    String getHash() {
+      return hash;
+    }
+
+  }
+
+  private final class ThumbnailJob implements Runnable {
+
+    private final String key;
+    private final File image;
+    private final int size;
+
+    ThumbnailJob(String key, File image, int size) {
+      this.key = key;
+      this.image = image;
+      this.size = size;
+    }
+
+    String getKey() {
+      return key;
+    }
+
+    public void run() {
+      try {
+        if (image.isFile()) {
+          generateThumbnail(image, size);
+        }
+      } catch (Exception e) {
+        log.warn("Can't create thumbnail for " + image, e);
+      } finally {
+        pending.remove(key);
+      }
+    }
+
+  }
+
+}
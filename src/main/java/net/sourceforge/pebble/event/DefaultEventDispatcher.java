@@ -40,12 +40,16 @@ import net.sourceforge.pebble.api.event.comment.CommentListener;
 import net.sourceforge.pebble.api.event.EventDispatcher;
 import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
 import net.sourceforge.pebble.api.event.trackback.TrackBackListener;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.Response;
+import net.sourceforge.pebble.metrics.Metrics;
 
 import java.util.Iterator;
 
 /**
  * Responsible for dispatching events to registered listeners, which are
- * called in the order they were added.
+ * called in the order they were added. The time taken by each listener is
+ * recorded in a "listener.&lt;class name&gt;" timer for the blog.
  *
  * @author Simon Brown
  */
@@ -57,14 +61,17 @@ public class DefaultEventDispatcher extends EventDispatcher {
    * @param event   the BlogEvent instance
    */
   public void fireBlogEvent(BlogEvent event) {
+    String blogId = getBlogId(event.getBlog());
     Iterator it = getEventListenerList().getBlogListeners().iterator();
     while (it.hasNext()) {
       BlogListener listener = (BlogListener)it.next();
+      long startTime = System.nanoTime();
       if (event.getType() == BlogEvent.BLOG_STARTED) {
         listener.blogStarted(event);
       } else if (event.getType() == BlogEvent.BLOG_STOPPED) {
         listener.blogStopped(event);
       }
+      record(listener, blogId, startTime);
 
       // has the event been vetoed?
       if (event.isVetoed()) {
@@ -79,9 +86,11 @@ public class DefaultEventDispatcher extends EventDispatcher {
    * @param event   the BlogEntryEvent instance
    */
   public void fireBlogEntryEvent(BlogEntryEvent event) {
+    String blogId = getBlogId(event.getBlogEntry().getBlog());
     Iterator it = getEventListenerList().getBlogEntryListeners().iterator();
     while (it.hasNext()) {
       BlogEntryListener listener = (BlogEntryListener)it.next();
+      long startTime = System.nanoTime();
       if (event.getType() == BlogEntryEvent.BLOG_ENTRY_ADDED) {
         listener.blogEntryAdded(event);
       } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_REMOVED) {
@@ -93,6 +102,7 @@ public class DefaultEventDispatcher extends EventDispatcher {
       } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_UNPUBLISHED) {
         listener.blogEntryUnpublished(event);
       }
+      record(listener, blogId, startTime);
 
       // has the event been vetoed?
       if (event.isVetoed()) {
@@ -107,9 +117,11 @@ public class DefaultEventDispatcher extends EventDispatcher {
    * @param event   the CommentEvent instance
    */
   public void fireCommentEvent(CommentEvent event) {
+    String blogId = getBlogId(getBlog(event.getComment()));
     Iterator it = getEventListenerList().getCommentListeners().iterator();
     while (it.hasNext()) {
       CommentListener listener = (CommentListener)it.next();
+      long startTime = System.nanoTime();
       if (event.getType() == CommentEvent.COMMENT_ADDED) {
         listener.commentAdded(event);
       } else if (event.getType() == CommentEvent.COMMENT_REMOVED) {
@@ -119,6 +131,7 @@ public class DefaultEventDispatcher extends EventDispatcher {
       } else if (event.getType() == CommentEvent.COMMENT_REJECTED) {
         listener.commentRejected(event);
       }
+      record(listener, blogId, startTime);
 
       // has the event been vetoed?
       if (event.isVetoed()) {
@@ -133,9 +146,11 @@ public class DefaultEventDispatcher extends EventDispatcher {
    * @param event   the TrackBackEvent instance
    */
   public void fireTrackBackEvent(TrackBackEvent event) {
+    String blogId = getBlogId(getBlog(event.getTrackBack()));
     Iterator it = getEventListenerList().getTrackBackListeners().iterator();
     while (it.hasNext()) {
       TrackBackListener listener = (TrackBackListener)it.next();
+      long startTime = System.nanoTime();
       if (event.getType() == TrackBackEvent.TRACKBACK_ADDED) {
         listener.trackBackAdded(event);
       } else if (event.getType() == TrackBackEvent.TRACKBACK_REMOVED) {
@@ -145,6 +160,7 @@ public class DefaultEventDispatcher extends EventDispatcher {
       } else if (event.getType() == TrackBackEvent.TRACKBACK_REJECTED) {
         listener.trackBackRejected(event);
       }
+      record(listener, blogId, startTime);
 
       // has the event been vetoed?
       if (event.isVetoed()) {
@@ -153,4 +169,16 @@ public class DefaultEventDispatcher extends EventDispatcher {
     }
   }
 
-}
\ No newline at end of file
+  private static Blog getBlog(Response response) {
+    return response.getBlogEntry() != null ? response.getBlogEntry().getBlog() : null;
+  }
+
+  private static String getBlogId(Blog blog) {
+    return blog != null ? blog.getId() : null;
+  }
+
+  private static void record(Object listener, String blogId, long startTime) {
+    Metrics.getInstance().timer("listener." + listener.getClass().getName(), blogId).stop(startTime);
+  }
+
+}
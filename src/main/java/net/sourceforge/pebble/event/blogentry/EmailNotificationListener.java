@@ -105,7 +105,7 @@ public class EmailNotificationListener extends BlogEntryListenerSupport {
 
     // and send the e-mail
     try {
-      MailUtils.sendMail(MailUtils.createSession(), blog, blog.getEmailAddresses(), new HashSet(), subject, message);
+      MailUtils.sendMail(blog, blog.getEmailAddresses(), new HashSet(), subject, message);
     } catch (Exception e) {
       e.printStackTrace();
     }
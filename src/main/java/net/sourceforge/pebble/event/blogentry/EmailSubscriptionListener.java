@@ -37,7 +37,6 @@ import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.util.MailUtils;
 
-import javax.mail.Session;
 import java.text.SimpleDateFormat;
 import java.util.List;
 
@@ -95,12 +94,8 @@ public class EmailSubscriptionListener extends BlogEntryListenerSupport {
     // now send personalized e-mails to the blog owner and everybody
     // that left a comment specifying their e-mail address
     try {
-      Session session = MailUtils.createSession();
-      for (String emailAddress : to) {
-        // customize the opt-out link and send the message
-        MailUtils.sendMail(session, blog, emailAddress, subject,
-            message.replaceAll(EMAIL_ADDRESS_TOKEN, emailAddress));
-      }
+      // the opt-out link is customized for each subscriber as the messages are sent
+      MailUtils.sendPersonalizedMail(blog, to, subject, message, EMAIL_ADDRESS_TOKEN);
     } catch (Exception e) {
         e.printStackTrace();
     } catch (NoClassDefFoundError e) {
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event.blogentry;
+
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.PdfService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps the cached PDF versions of blog entries up to date, rendering them
+ * in the background as entries are published or changed and removing them
+ * when entries are unpublished or removed. Nothing that goes wrong here is
+ * allowed to stop the blog entry from being saved.
+ */
+public class PdfCacheListener extends BlogEntryListenerSupport {
+
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(PdfCacheListener.class);
+
+  /**
+   * Called when a blog entry has been added.
+   *
+   * @param event   a BlogEntryEvent instance
+   */
+  public void blogEntryAdded(BlogEntryEvent event) {
+    update(event.getBlogEntry());
+  }
+
+  /**
+   * Called when a blog entry has been removed.
+   *
+   * @param event   a BlogEntryEvent instance
+   */
+  public void blogEntryRemoved(BlogEntryEvent event) {
+    remove(event.getBlogEntry());
+  }
+
+  /**
+   * Called when a blog entry has been changed.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryChanged(BlogEntryEvent event) {
+    update(event.getBlogEntry());
+  }
+
+  /**
+   * Called when a blog entry has been published.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryPublished(BlogEntryEvent event) {
+    update(event.getBlogEntry());
+  }
+
+  /**
+   * Called when a blog entry has been unpublished.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryUnpublished(BlogEntryEvent event) {
+    remove(event.getBlogEntry());
+  }
+
+  private void update(BlogEntry blogEntry) {
+    if (!blogEntry.isPublished()) {
+      return;
+    }
+
+    // PDFs pick up fonts and styles from the web application, so there's
+    // nothing sensible to render ahead of time outside of one
+    if (PebbleContext.getInstance().getWebApplicationRoot() != null) {
+      try {
+        PdfService.getInstance().generatePdf(blogEntry);
+      } catch (Exception e) {
+        log.warn("Could not schedule PDF for " + blogEntry.getId(), e);
+      }
+    }
+  }
+
+  private void remove(BlogEntry blogEntry) {
+    try {
+      PdfService.getInstance().removePdfs(blogEntry);
+    } catch (Exception e) {
+      log.warn("Could not remove PDFs for " + blogEntry.getId(), e);
+    }
+  }
+
+}
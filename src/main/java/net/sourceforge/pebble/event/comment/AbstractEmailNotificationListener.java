@@ -40,7 +40,6 @@ import net.sourceforge.pebble.util.StringUtils;
 import net.sourceforge.pebble.web.security.SecurityTokenValidator;
 import net.sourceforge.pebble.web.security.SecurityTokenValidatorImpl;
 
-import javax.mail.Session;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.HashMap;
@@ -124,15 +123,8 @@ public abstract class AbstractEmailNotificationListener extends CommentListenerS
     // now send personalized e-mails to the blog owner and everybody
     // that left a comment specifying their e-mail address
     try {
-      Session session = MailUtils.createSession();
-      Iterator emailAddresses = to.iterator();
-      while (emailAddresses.hasNext()) {
-        String emailAddress = (String) emailAddresses.next();
-
-        // customize the opt-out link and send the message
-        MailUtils.sendMail(session, blog, emailAddress, subject,
-                message.replaceAll(EMAIL_ADDRESS_TOKEN, emailAddress));
-      }
+      // the opt-out link is customized for each recipient as the messages are sent
+      MailUtils.sendPersonalizedMail(blog, to, subject, message, EMAIL_ADDRESS_TOKEN);
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -172,7 +164,7 @@ public abstract class AbstractEmailNotificationListener extends CommentListenerS
     Collection to = getEmailAddresses(comment);
 
     try {
-      MailUtils.sendMail(MailUtils.createSession(), blog, to, subject, message);
+      MailUtils.sendMail(blog, to, subject, message);
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event.response;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A compiled form of a comma separated list of IP addresses, as used by the
+ * IpAddressListener. IPv4 entries may be single addresses or CIDR blocks
+ * (e.g. 192.168.0.0/16) and are held in a binary prefix trie, so a lookup
+ * costs at most 32 steps however long the list is. Any other entries
+ * (e.g. IPv6 addresses) are matched exactly.
+ */
+public final class IpAddressList {
+
+  /** the list this was compiled from, so that callers can tell when it changes */
+  private final String source;
+
+  private final Node root = new Node();
+
+  private final Set<String> others = new HashSet<String>();
+
+  private boolean empty = true;
+
+  public IpAddressList(String source) {
+    this.source = source;
+
+    if (source != null) {
+      for (String entry : source.split(",")) {
+        entry = entry.trim();
+        if (entry.length() > 0) {
+          add(entry);
+          empty = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Determines whether this was compiled from the given list.
+   */
+  public boolean isCompiledFrom(String list) {
+    return source == null ? list == null : source.equals(list);
+  }
+
+  /**
+   * Determines whether the given IP address is contained within this list.
+   *
+   * @param ipAddress   an IP address
+   * @return  true if the address matches an entry or falls within a CIDR block
+   */
+  public boolean contains(String ipAddress) {
+    if (ipAddress == null || empty) {
+      return false;
+    }
+
+    ipAddress = ipAddress.trim();
+    long address = parseIPv4(ipAddress);
+    if (address == -1) {
+      return others.contains(ipAddress);
+    }
+
+    Node node = root;
+    for (int bit = 31; bit >= 0; bit--) {
+      if (node.terminal) {
+        return true;
+      }
+      node = node.children[(int)((address >> bit) & 1)];
+      if (node == null) {
+        return false;
+      }
+    }
+
+    return node.terminal;
+  }
+
+  private void add(String entry) {
+    int prefixLength = 32;
+    String address = entry;
+    int slash = entry.indexOf('/');
+    if (slash > -1) {
+      address = entry.substring(0, slash);
+      try {
+        prefixLength = Integer.parseInt(entry.substring(slash + 1));
+      } catch (NumberFormatException nfe) {
+        prefixLength = -1;
+      }
+    }
+
+    long bits = parseIPv4(address);
+    if (bits == -1 || prefixLength < 0 || prefixLength > 32) {
+      others.add(entry);
+      return;
+    }
+
+    Node node = root;
+    for (int i = 0; i < prefixLength; i++) {
+      int bit = (int)((bits >> (31 - i)) & 1);
+      if (node.children[bit] == null) {
+        node.children[bit] = new Node();
+      }
+      node = node.children[bit];
+    }
+    node.terminal = true;
+  }
+
+  /**
+   * Parses a dotted quad IPv4 address.
+   *
+   * @return  the address as an unsigned 32-bit value, or -1 if it isn't one
+   */
+  static long parseIPv4(String s) {
+    long result = 0;
+    int octets = 0;
+    int value = -1;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c >= '0' && c <= '9') {
+        value = (value == -1 ? 0 : value * 10) + (c - '0');
+        if (value > 255) {
+          return -1;
+        }
+      } else if (c == '.' && value != -1 && octets < 3) {
+        result = (result << 8) | value;
+        octets++;
+        value = -1;
+      } else {
+        return -1;
+      }
+    }
+
+    if (value == -1 || octets != 3) {
+      return -1;
+    }
+
+    return (result << 8) | value;
+  }
+
+  private static final class Node {
+    private final Node[] children = new Node[2];
+    private boolean terminal;
+  }
+
+}
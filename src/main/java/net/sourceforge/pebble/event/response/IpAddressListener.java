@@ -42,7 +42,8 @@ import org.apache.commons.logging.LogFactory;
  * the response is set to pending and the spam score incremented by 1 point.
  * If in neither, the response is set to pending but the spam score isn't
  * increased. This allows responses from new IP addresses to be manually
- * verified before publication.
+ * verified before publication. Entries in either list may also be IPv4 CIDR
+ * blocks, such as 192.168.0.0/16.
  *
  * @author Simon Brown
  */
@@ -57,6 +58,10 @@ public class IpAddressListener extends BlogEntryResponseListenerSupport {
   /** the name of the blacklist property */
   public static final String BLACKLIST_KEY = "IpAddressListener.blacklist";
 
+  /** the compiled whitelist and blacklist, replaced when the properties change */
+  private volatile IpAddressList compiledWhitelist = new IpAddressList(null);
+  private volatile IpAddressList compiledBlacklist = new IpAddressList(null);
+
   /**
    * Called when a comment or TrackBack has been added.
    *
@@ -65,11 +70,11 @@ public class IpAddressListener extends BlogEntryResponseListenerSupport {
   protected void blogEntryResponseAdded(Response response) {
     PluginProperties props = response.getBlogEntry().getBlog().getPluginProperties();
 
-    if (isListed(response, props.getProperty(BLACKLIST_KEY))) {
+    if (getBlacklist(props).contains(response.getIpAddress())) {
       log.info(response.getTitle() + " marked as pending : IP address " + response.getIpAddress() + " is on blacklist");
       response.setPending();
       response.incrementSpamScore();
-    } else if (isListed(response, props.getProperty(WHITELIST_KEY))) {
+    } else if (getWhitelist(props).contains(response.getIpAddress())) {
       // do nothing
     } else {
       log.info(response.getTitle() + " marked as pending : IP address " + response.getIpAddress() + " not on blacklist or whitelist");
@@ -123,6 +128,36 @@ public class IpAddressListener extends BlogEntryResponseListenerSupport {
     }
   }
 
+  /**
+   * Gets the compiled form of the blacklist, only recompiling it when the
+   * property has changed since it was last used.
+   */
+  private IpAddressList getBlacklist(PluginProperties props) {
+    String list = props.getProperty(BLACKLIST_KEY);
+    IpAddressList compiled = compiledBlacklist;
+    if (!compiled.isCompiledFrom(list)) {
+      compiled = new IpAddressList(list);
+      compiledBlacklist = compiled;
+    }
+
+    return compiled;
+  }
+
+  /**
+   * Gets the compiled form of the whitelist, only recompiling it when the
+   * property has changed since it was last used.
+   */
+  private IpAddressList getWhitelist(PluginProperties props) {
+    String list = props.getProperty(WHITELIST_KEY);
+    IpAddressList compiled = compiledWhitelist;
+    if (!compiled.isCompiledFrom(list)) {
+      compiled = new IpAddressList(list);
+      compiledWhitelist = compiled;
+    }
+
+    return compiled;
+  }
+
   /**
    * Determines whether the IP address of the specified response is contained
    * within a given list of IP addresses.
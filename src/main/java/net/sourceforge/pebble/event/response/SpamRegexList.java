@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event.response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled form of a comma separated list of regular expressions, as
+ * used by the ContentSpamListener. All of the expressions are also combined
+ * into a single alternation, so that the common case (content that matches
+ * none of them) is decided with one scan of the content.
+ */
+final class SpamRegexList {
+
+  private static final Log log = LogFactory.getLog(SpamRegexList.class);
+
+  private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
+
+  private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\([1-9]|k<)");
+
+  /** the list this was compiled from, so that callers can tell when it changes */
+  private final String source;
+
+  private final Pattern[] patterns;
+
+  /** all of the above as one pattern, or null if they can't be combined */
+  private final Pattern combined;
+
+  SpamRegexList(String source) {
+    this.source = source;
+
+    List<Pattern> compiled = new ArrayList<Pattern>();
+    StringBuilder alternation = new StringBuilder();
+    if (source != null) {
+      for (String regex : source.split(",")) {
+        regex = regex.trim();
+        if (regex.length() == 0) {
+          continue;
+        }
+
+        try {
+          compiled.add(Pattern.compile(regex, FLAGS));
+          if (alternation.length() > 0) {
+            alternation.append('|');
+          }
+          alternation.append("(?:").append(regex).append(')');
+        } catch (PatternSyntaxException pse) {
+          log.error("Ignoring invalid content spam regex \"" + regex + "\" : " + pse.getMessage());
+        }
+      }
+    }
+
+    this.patterns = compiled.toArray(new Pattern[compiled.size()]);
+    this.combined = combine(alternation.toString());
+  }
+
+  /**
+   * Compiles the alternation of all expressions. Back references would be
+   * renumbered by combining, so in that case every expression is simply
+   * tried in turn.
+   */
+  private Pattern combine(String alternation) {
+    if (patterns.length == 0 || BACK_REFERENCE.matcher(alternation).find()) {
+      return null;
+    }
+
+    try {
+      return Pattern.compile(alternation, FLAGS);
+    } catch (PatternSyntaxException pse) {
+      return null;
+    }
+  }
+
+  /**
+   * Determines whether this was compiled from the given list.
+   */
+  boolean isCompiledFrom(String list) {
+    return source == null ? list == null : source.equals(list);
+  }
+
+  /**
+   * Determines whether the number of matches within the given content is no
+   * more than the given threshold. Each expression is counted separately, so
+   * overlapping matches from different expressions all count.
+   *
+   * @param content     the content to check
+   * @param threshold   the maximum number of matches allowed
+   * @return  true if the content is within the threshold
+   */
+  boolean isWithinThreshold(String content, int threshold) {
+    if (patterns.length == 0 || content == null || content.trim().length() == 0) {
+      return true;
+    }
+
+    if (combined != null) {
+      if (!combined.matcher(content).find()) {
+        return true;
+      } else if (threshold <= 0) {
+        return false;
+      }
+    }
+
+    int count = 0;
+    for (Pattern pattern : patterns) {
+      Matcher m = pattern.matcher(content);
+      while (m.find()) {
+        count++;
+
+        if (count > threshold) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+}
@@ -93,7 +93,7 @@ public abstract class AbstractEmailNotificationListener extends TrackBackListene
     Collection to = getEmailAddresses(trackBack);
 
     try {
-      MailUtils.sendMail(MailUtils.createSession(), blog, to, subject, message);
+      MailUtils.sendMail(blog, to, subject, message);
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.Month;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps an immutable MonthArchive for every month that has published blog
+ * entries. It is maintained by the BlogEntryIndex as entries are (un)indexed,
+ * so lookups never need to walk the Year/Month/Day structure. Updates are
+ * serialised by the BlogEntryIndex; reads don't need any locking.
+ */
+public class ArchiveIndex {
+
+  /** the archives, keyed by year * 100 + month */
+  private final ConcurrentSkipListMap<Integer,MonthArchive> months = new ConcurrentSkipListMap<Integer,MonthArchive>();
+
+  /** a snapshot of the archives, newest first */
+  private volatile List<MonthArchive> archives = Collections.emptyList();
+
+  ArchiveIndex() {
+  }
+
+  /**
+   * Recalculates the archive for the given month from its days.
+   *
+   * @param month   a Month instance
+   */
+  void update(Month month) {
+    int[] numberOfBlogEntriesByDay = new int[month.getLastDayInMonth()];
+    boolean hasBlogEntries = false;
+    for (int day = 1; day <= numberOfBlogEntriesByDay.length; day++) {
+      numberOfBlogEntriesByDay[day-1] = month.getBlogForDay(day).getNumberOfBlogEntries();
+      hasBlogEntries |= numberOfBlogEntriesByDay[day-1] > 0;
+    }
+
+    Integer key = key(month.getYear().getYear(), month.getMonth());
+    if (hasBlogEntries) {
+      months.put(key, new MonthArchive(month.getYear().getYear(), month.getMonth(), numberOfBlogEntriesByDay));
+    } else {
+      months.remove(key);
+    }
+    archives = Collections.unmodifiableList(new ArrayList<MonthArchive>(months.descendingMap().values()));
+  }
+
+  /**
+   * Clears the index.
+   */
+  void clear() {
+    months.clear();
+    archives = Collections.emptyList();
+  }
+
+  /**
+   * Gets the archive for the given month.
+   *
+   * @param year    the year as an int (e.g. 2011)
+   * @param month   the month as an int (1-12)
+   * @return  a MonthArchive, or null if there are no published blog entries
+   *          in that month
+   */
+  public MonthArchive getMonthArchive(int year, int month) {
+    return months.get(key(year, month));
+  }
+
+  /**
+   * Gets the closest earlier month with published blog entries.
+   *
+   * @param year    the year as an int (e.g. 2011)
+   * @param month   the month as an int (1-12)
+   * @return  a MonthArchive, or null if there isn't one
+   */
+  public MonthArchive getPreviousMonthArchive(int year, int month) {
+    Map.Entry<Integer,MonthArchive> entry = months.lowerEntry(key(year, month));
+    return entry != null ? entry.getValue() : null;
+  }
+
+  /**
+   * Gets the closest later month with published blog entries.
+   *
+   * @param year    the year as an int (e.g. 2011)
+   * @param month   the month as an int (1-12)
+   * @return  a MonthArchive, or null if there isn't one
+   */
+  public MonthArchive getNextMonthArchive(int year, int month) {
+    Map.Entry<Integer,MonthArchive> entry = months.higherEntry(key(year, month));
+    return entry != null ? entry.getValue() : null;
+  }
+
+  /**
+   * Gets all months with published blog entries.
+   *
+   * @return  an immutable List of MonthArchive instances, newest first
+   */
+  public List<MonthArchive> getMonthArchives() {
+    return archives;
+  }
+
+  private static Integer key(int year, int month) {
+    return year * 100 + month;
+  }
+
+}
@@ -36,6 +36,7 @@ import net.sourceforge.pebble.comparator.ReverseBlogEntryIdComparator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Day;
+import net.sourceforge.pebble.domain.Month;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -57,22 +58,29 @@ public class BlogEntryIndex {
   private List<String> publishedIndexEntries = new ArrayList<String>();
   private List<String> unpublishedIndexEntries = new ArrayList<String>();
 
+  /** summaries of the months containing published blog entries */
+  private ArchiveIndex archiveIndex = new ArchiveIndex();
+
   public BlogEntryIndex(Blog blog) {
     this.blog = blog;
 
-    readIndex(true);
-    readIndex(false);
+    Set<Month> months = new HashSet<Month>();
+    readIndex(true, months);
+    readIndex(false, months);
+    updateArchives(months);
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     indexEntries = new ArrayList<String>();
     publishedIndexEntries = new ArrayList<String>();
     unpublishedIndexEntries = new ArrayList<String>();
     writeIndex(true);
     writeIndex(false);
+    archiveIndex.clear();
+    TimelineIndex.getInstance().clear(blog);
   }
 
   /**
@@ -81,11 +89,14 @@ public class BlogEntryIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
+    Set<Month> months = new HashSet<Month>();
     for (BlogEntry blogEntry : blogEntries) {
       Day day = blog.getBlogForDay(blogEntry.getDate());
+      months.add(day.getMonth());
       if (blogEntry.isPublished()) {
         publishedIndexEntries.add(blogEntry.getId());
         day.addPublishedBlogEntry(blogEntry.getId());
+        TimelineIndex.getInstance().index(blog, blogEntry.getId());
       } else {
         unpublishedIndexEntries.add(blogEntry.getId());
         day.addUnpublishedBlogEntry(blogEntry.getId());
@@ -99,6 +110,7 @@ public class BlogEntryIndex {
 
     writeIndex(true);
     writeIndex(false);
+    updateArchives(months);
   }
 
   /**
@@ -111,6 +123,7 @@ public class BlogEntryIndex {
     if (blogEntry.isPublished()) {
       publishedIndexEntries.add(blogEntry.getId());
       day.addPublishedBlogEntry(blogEntry.getId());
+      TimelineIndex.getInstance().index(blog, blogEntry.getId());
       writeIndex(true);
     } else {
       unpublishedIndexEntries.add(blogEntry.getId());
@@ -118,6 +131,7 @@ public class BlogEntryIndex {
       writeIndex(false);
     }
     indexEntries.add(blogEntry.getId());
+    archiveIndex.update(day.getMonth());
 
     Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
     Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
@@ -132,10 +146,12 @@ public class BlogEntryIndex {
   public synchronized void unindex(BlogEntry blogEntry) {
     Day day = blog.getBlogForDay(blogEntry.getDate());
     day.removeBlogEntry(blogEntry);
+    archiveIndex.update(day.getMonth());
 
     indexEntries.remove(blogEntry.getId());
     publishedIndexEntries.remove(blogEntry.getId());
     unpublishedIndexEntries.remove(blogEntry.getId());
+    TimelineIndex.getInstance().unindex(blog, blogEntry.getId());
 
     writeIndex(true);
     writeIndex(false);
@@ -144,7 +160,7 @@ public class BlogEntryIndex {
   /**
    * Helper method to load the index.
    */
-  private void readIndex(boolean published) {
+  private void readIndex(boolean published, Set<Month> months) {
     File indexFile;
     if (published) {
       indexFile = new File(blog.getIndexesDirectory(), "blogentries-published.index");
@@ -162,6 +178,7 @@ public class BlogEntryIndex {
           // and add it to the internal memory structures
           Date date = new Date(Long.parseLong(indexEntry));
           Day day = blog.getBlogForDay(date);
+          months.add(day.getMonth());
 
           if (published) {
             publishedIndexEntries.add(indexEntry);
@@ -185,6 +202,15 @@ public class BlogEntryIndex {
     Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
   }
 
+  /**
+   * Brings the archives for the given months up to date.
+   */
+  private void updateArchives(Set<Month> months) {
+    for (Month month : months) {
+      archiveIndex.update(month);
+    }
+  }
+
   /**
    * Helper method to write out the index to disk.
    */
@@ -244,6 +270,27 @@ public class BlogEntryIndex {
     return unpublishedIndexEntries.size();
   }
 
+  /**
+   * Gets the oldest blog entry, published or not.
+   *
+   * @return  a blog entry ID, or null if there are no blog entries
+   */
+  public synchronized String getOldestBlogEntry() {
+    if (indexEntries.isEmpty()) {
+      return null;
+    }
+    return indexEntries.get(indexEntries.size()-1);
+  }
+
+  /**
+   * Gets the archive index, summarising the months with published blog entries.
+   *
+   * @return  an ArchiveIndex instance
+   */
+  public ArchiveIndex getArchiveIndex() {
+    return archiveIndex;
+  }
+
   /**
    * Gets the full list of blog entries.
    *
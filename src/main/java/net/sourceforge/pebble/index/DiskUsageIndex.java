@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.FileManager;
+import net.sourceforge.pebble.domain.FileMetaData;
+import net.sourceforge.pebble.util.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Keeps a running total of the space used by a blog's images, files and
+ * theme, so that upload quotas can be checked without walking the
+ * filesystem. The totals are adjusted by FileManager as files are changed,
+ * and periodically reconciled against the filesystem in the background to
+ * pick up changes made by other means.
+ */
+public class DiskUsageIndex {
+
+  private static final Log log = LogFactory.getLog(DiskUsageIndex.class);
+
+  /** the types of file that count towards the quota */
+  private static final String[] TYPES = {
+      FileMetaData.BLOG_IMAGE, FileMetaData.BLOG_FILE, FileMetaData.THEME_FILE };
+
+  /** how often the totals are reconciled with the filesystem */
+  private static final long RECONCILIATION_PERIOD = 60 * 60 * 1000;
+
+  /** the delay before the first reconciliation, to keep it out of the way of startup */
+  private static final long RECONCILIATION_DELAY = 60 * 1000;
+
+  /** a single timer thread is shared by all blogs */
+  private static final Timer timer = new Timer("pebble-disk-usage", true);
+
+  private Blog blog;
+
+  /** the number of bytes used, keyed on file type */
+  private Map<String,Long> usage = new HashMap<String,Long>();
+
+  /** whether the totals have been checked against the filesystem (now, or before a restart) */
+  private boolean reconciled;
+
+  /** the adjustments made while a reconciliation is walking the filesystem, or null */
+  private Map<String,Long> adjustmentsDuringScan;
+
+  /** only one reconciliation runs at a time */
+  private final Object reconciliationLock = new Object();
+
+  private TimerTask reconciliationTask;
+
+  public DiskUsageIndex(Blog blog) {
+    this.blog = blog;
+
+    readIndex();
+  }
+
+  /**
+   * Starts periodic reconciliation of the totals with the filesystem.
+   */
+  public synchronized void start() {
+    stop();
+    reconciliationTask = new TimerTask() {
+      public void run() {
+        try {
+          reconcile();
+        } catch (Exception e) {
+          log.error("Error while reconciling disk usage for " + blog.getId(), e);
+        }
+      }
+    };
+    timer.schedule(reconciliationTask, RECONCILIATION_DELAY, RECONCILIATION_PERIOD);
+  }
+
+  /**
+   * Stops periodic reconciliation.
+   */
+  public synchronized void stop() {
+    if (reconciliationTask != null) {
+      reconciliationTask.cancel();
+      reconciliationTask = null;
+    }
+  }
+
+  /**
+   * Adjusts the usage for the given type of file.
+   *
+   * @param type    the type of file (see FileMetaData)
+   * @param bytes   the number of bytes added (or removed, if negative)
+   */
+  public synchronized void adjust(String type, long bytes) {
+    if (bytes == 0 || !isCounted(type)) {
+      return;
+    }
+
+    add(usage, type, bytes);
+    if (adjustmentsDuringScan != null) {
+      Long adjustment = adjustmentsDuringScan.get(type);
+      adjustmentsDuringScan.put(type, (adjustment != null ? adjustment : 0) + bytes);
+    }
+
+    // partial totals are never persisted, since they'd be trusted after a restart
+    if (reconciled) {
+      writeIndex();
+    }
+  }
+
+  private static void add(Map<String,Long> totals, String type, long bytes) {
+    Long current = totals.get(type);
+    totals.put(type, Math.max(0, (current != null ? current : 0) + bytes));
+  }
+
+  /**
+   * Gets the number of bytes used by images, files and theme.
+   *
+   * @return  the number of bytes
+   */
+  public long getUsage() {
+    synchronized (this) {
+      if (reconciled) {
+        long total = 0;
+        for (Long bytes : usage.values()) {
+          total += bytes;
+        }
+        return total;
+      }
+    }
+
+    // there's no index yet, so we have to work it out the slow way (just once)
+    reconcile();
+    return getUsage();
+  }
+
+  /**
+   * Gets the number of KB used by images, files and theme.
+   *
+   * @return  the number of KB
+   */
+  public double getUsageInKB() {
+    return getUsage() / 1024.0;
+  }
+
+  /**
+   * Recalculates the totals by walking the filesystem. The walk happens
+   * outside of the lock, so adjustments made while it's running are recorded
+   * and replayed on top of the result. A file changed while its directory is
+   * being walked may be counted twice (or not at all), but the next
+   * reconciliation corrects that.
+   */
+  public void reconcile() {
+    synchronized (reconciliationLock) {
+      synchronized (this) {
+        adjustmentsDuringScan = new HashMap<String,Long>();
+      }
+
+      Map<String,Long> actual = new HashMap<String,Long>();
+      for (String type : TYPES) {
+        try {
+          File root = new FileManager(blog, type).getRootDirectory();
+          actual.put(type, FileUtils.sizeOf(root));
+        } catch (Exception e) {
+          // e.g. there is no editable theme
+          actual.put(type, 0L);
+        }
+      }
+
+      synchronized (this) {
+        for (String type : adjustmentsDuringScan.keySet()) {
+          add(actual, type, adjustmentsDuringScan.get(type));
+        }
+        adjustmentsDuringScan = null;
+
+        if (!actual.equals(usage)) {
+          log.debug("Disk usage for " + blog.getId() + " reconciled from " + usage + " to " + actual);
+        }
+        usage = actual;
+        reconciled = true;
+        writeIndex();
+      }
+    }
+  }
+
+  private boolean isCounted(String type) {
+    for (String t : TYPES) {
+      if (t.equals(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Helper method to load the index.
+   */
+  private void readIndex() {
+    File indexFile = new File(blog.getIndexesDirectory(), "diskusage.index");
+    if (indexFile.exists()) {
+      try {
+        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+        String indexEntry = reader.readLine();
+        while (indexEntry != null) {
+          String[] tuple = indexEntry.split("=");
+          if (tuple.length == 2 && isCounted(tuple[0])) {
+            usage.put(tuple[0], Long.parseLong(tuple[1]));
+          }
+
+          indexEntry = reader.readLine();
+        }
+
+        reader.close();
+        reconciled = true;
+      } catch (Exception e) {
+        log.error("Error while reading index", e);
+        usage.clear();
+      }
+    }
+  }
+
+  /**
+   * Helper method to write out the index to disk.
+   */
+  private void writeIndex() {
+    try {
+      File indexFile = new File(blog.getIndexesDirectory(), "diskusage.index");
+      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+
+      for (String type : usage.keySet()) {
+        writer.write(type);
+        writer.write("=");
+        writer.write(Long.toString(usage.get(type)));
+        writer.newLine();
+      }
+
+      writer.flush();
+      writer.close();
+    } catch (Exception e) {
+      log.error("Error while writing index", e);
+    }
+  }
+
+}
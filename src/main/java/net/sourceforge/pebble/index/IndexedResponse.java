@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.Response;
+import net.sourceforge.pebble.domain.State;
+
+import java.util.Date;
+
+/**
+ * A summary of a response, held by the ResponseIndex so that responses can
+ * be listed and moderated without loading their blog entries. The property
+ * names match those of Response, so the two can be used interchangeably
+ * from JSP pages.
+ */
+public class IndexedResponse {
+
+  private static final char SEPARATOR = '\t';
+
+  private final Blog blog;
+  private final String guid;
+  private final State state;
+  private final int spamScore;
+  private final boolean blogEntryPublished;
+  private final String ipAddress;
+  private final String sourceName;
+  private final String sourceLink;
+  private final String email;
+  private final String title;
+  private final String truncatedContent;
+
+  /** the permalink, relative to the blog URL so that it survives a change of URL */
+  private final String permalink;
+
+  /**
+   * Creates a summary of the specified response.
+   *
+   * @param response    a Response instance
+   */
+  IndexedResponse(Response response) {
+    this.blog = response.getBlogEntry().getBlog();
+    this.guid = response.getGuid();
+    this.state = response.getState();
+    this.spamScore = response.getSpamScore();
+    this.blogEntryPublished = response.getBlogEntry().isPublished();
+    this.ipAddress = response.getIpAddress();
+    this.sourceName = response.getSourceName();
+    this.sourceLink = response.getSourceLink();
+    this.email = (response instanceof Comment) ? ((Comment)response).getEmail() : null;
+    this.title = response.getTitle();
+    this.truncatedContent = response.getTruncatedContent();
+
+    String s = response.getPermalink();
+    String url = blog.getUrl();
+    if (s != null && url != null && s.startsWith(url)) {
+      s = s.substring(url.length());
+    }
+    this.permalink = s;
+  }
+
+  private IndexedResponse(Blog blog, State state, String fields[]) {
+    this.blog = blog;
+    this.state = state;
+    this.guid = fields[0];
+    this.spamScore = Integer.parseInt(fields[1]);
+    this.blogEntryPublished = "1".equals(fields[2]);
+    this.ipAddress = fields[3];
+    this.sourceName = fields[4];
+    this.sourceLink = fields[5];
+    this.email = fields[6];
+    this.title = fields[7];
+    this.truncatedContent = fields[8];
+    this.permalink = fields[9];
+  }
+
+  /**
+   * Reads a summary written by toIndexLine().
+   *
+   * @param blog    the owning Blog
+   * @param state   the state of the response, as given by the index file
+   * @param line    a line from the index file
+   * @return  an IndexedResponse, or null if the line only holds a response
+   *          ID (as written by older versions)
+   */
+  static IndexedResponse fromIndexLine(Blog blog, State state, String line) {
+    String fields[] = new String[10];
+    int field = 0;
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == SEPARATOR) {
+        if (field == fields.length - 1) {
+          return null;
+        }
+        fields[field++] = buf.length() > 0 ? buf.toString() : null;
+        buf.setLength(0);
+      } else if (c == '\\' && i + 1 < line.length()) {
+        c = line.charAt(++i);
+        buf.append(c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+      } else {
+        buf.append(c);
+      }
+    }
+    fields[field] = buf.length() > 0 ? buf.toString() : null;
+
+    if (field != fields.length - 1) {
+      return null;
+    }
+
+    return new IndexedResponse(blog, state, fields);
+  }
+
+  /**
+   * Gets this summary as a single line for the index file.
+   *
+   * @return  the fields, separated by tabs
+   */
+  String toIndexLine() {
+    StringBuilder buf = new StringBuilder(256);
+    append(buf, guid).append(SEPARATOR);
+    buf.append(spamScore).append(SEPARATOR);
+    buf.append(blogEntryPublished ? '1' : '0').append(SEPARATOR);
+    append(buf, ipAddress).append(SEPARATOR);
+    append(buf, sourceName).append(SEPARATOR);
+    append(buf, sourceLink).append(SEPARATOR);
+    append(buf, email).append(SEPARATOR);
+    append(buf, title).append(SEPARATOR);
+    append(buf, truncatedContent).append(SEPARATOR);
+    append(buf, permalink);
+
+    return buf.toString();
+  }
+
+  private static StringBuilder append(StringBuilder buf, String s) {
+    if (s != null) {
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        switch (c) {
+          case '\t' : buf.append("\\t"); break;
+          case '\n' : buf.append("\\n"); break;
+          case '\r' : buf.append("\\r"); break;
+          case '\\' : buf.append("\\\\"); break;
+          default : buf.append(c);
+        }
+      }
+    }
+
+    return buf;
+  }
+
+  /**
+   * Gets the globally unique ID of the response.
+   *
+   * @return  a String of the form type/blogEntryId/responseId
+   */
+  public String getGuid() {
+    return guid;
+  }
+
+  /**
+   * Gets the ID of the response.
+   *
+   * @return  the id as a primitive long
+   */
+  public long getId() {
+    return Long.parseLong(guid.substring(guid.lastIndexOf('/') + 1));
+  }
+
+  /**
+   * Gets the ID of the blog entry that the response belongs to.
+   *
+   * @return  a blog entry ID
+   */
+  public String getBlogEntryId() {
+    return guid.substring(guid.indexOf('/') + 1, guid.lastIndexOf('/'));
+  }
+
+  /**
+   * Determines whether the response is a comment.
+   *
+   * @return  true for a comment, false for a TrackBack
+   */
+  public boolean isComment() {
+    return guid.startsWith("c");
+  }
+
+  /**
+   * Determines whether the blog entry that the response belongs to was
+   * published when the response was indexed.
+   *
+   * @return  true if published, false otherwise
+   */
+  public boolean isBlogEntryPublished() {
+    return blogEntryPublished;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public boolean isApproved() {
+    return state == State.APPROVED;
+  }
+
+  public boolean isPending() {
+    return state == State.PENDING;
+  }
+
+  public boolean isRejected() {
+    return state == State.REJECTED;
+  }
+
+  public int getSpamScore() {
+    return spamScore;
+  }
+
+  public Date getDate() {
+    return new Date(getId());
+  }
+
+  public String getIpAddress() {
+    return ipAddress;
+  }
+
+  public String getSourceName() {
+    return sourceName;
+  }
+
+  public String getSourceLink() {
+    return sourceLink;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public boolean isHasEmail() {
+    return isComment();
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getTruncatedContent() {
+    return truncatedContent;
+  }
+
+  public String getPermalink() {
+    if (permalink == null || permalink.length() == 0 || permalink.indexOf("://") != -1) {
+      return permalink;
+    } else {
+      return blog.getUrl() + permalink;
+    }
+  }
+
+  public String toString() {
+    return guid;
+  }
+
+}
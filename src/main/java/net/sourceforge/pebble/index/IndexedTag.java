@@ -46,9 +46,14 @@ import java.util.Collections;
  */
 public class IndexedTag extends Tag {
 
-  /** the blog entries associated with this tag */
+  private static final ReverseBlogEntryIdComparator BLOG_ENTRY_ID_COMPARATOR = new ReverseBlogEntryIdComparator();
+
+  /** the blog entries associated with this tag, newest first */
   private List<String> blogEntries = new ArrayList<String>();
 
+  /** the index that ranks this tag, if any */
+  private TagIndex index;
+
   /**
    * Creates a new tag with the specified properties.
    *
@@ -59,6 +64,18 @@ public class IndexedTag extends Tag {
     super(name, blog);
   }
 
+  /**
+   * Creates a new tag whose rank is calculated by the given index.
+   *
+   * @param name    the name
+   * @param blog    a Blog instance
+   * @param index   the TagIndex that this tag belongs to
+   */
+  IndexedTag(String name, Blog blog, TagIndex index) {
+    super(name, blog);
+    this.index = index;
+  }
+
   /**
    * Gets the blog entries associated with this tag.
    *
@@ -74,9 +91,11 @@ public class IndexedTag extends Tag {
    * @param blogEntryId   a blog entry ID
    */
   public synchronized void addBlogEntry(String blogEntryId) {
-    if (blogEntryId != null && !blogEntries.contains(blogEntryId)) {
-      blogEntries.add(blogEntryId);
-      Collections.sort(blogEntries, new ReverseBlogEntryIdComparator());
+    if (blogEntryId != null) {
+      int i = Collections.binarySearch(blogEntries, blogEntryId, BLOG_ENTRY_ID_COMPARATOR);
+      if (i < 0) {
+        blogEntries.add(-i - 1, blogEntryId);
+      }
     }
   }
 
@@ -87,7 +106,10 @@ public class IndexedTag extends Tag {
    */
   public synchronized void removeBlogEntry(String blogEntryId) {
     if (blogEntryId != null) {
-      blogEntries.remove(blogEntryId);
+      int i = Collections.binarySearch(blogEntries, blogEntryId, BLOG_ENTRY_ID_COMPARATOR);
+      if (i >= 0) {
+        blogEntries.remove(i);
+      }
     }
   }
 
@@ -106,6 +128,9 @@ public class IndexedTag extends Tag {
    * @return  an int between 1 and 10;
    */
   public int getRank() {
+    if (index != null) {
+      return index.getRank(getNumberOfBlogEntries());
+    }
     return this.rank;
   }
 
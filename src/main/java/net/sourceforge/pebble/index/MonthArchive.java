@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+/**
+ * An immutable summary of the published blog entries in a single month,
+ * used to render calendars and archive lists without walking every day.
+ */
+public final class MonthArchive {
+
+  private final int year;
+  private final int month;
+  private final int[] numberOfBlogEntriesByDay;
+  private final int numberOfBlogEntries;
+
+  MonthArchive(int year, int month, int[] numberOfBlogEntriesByDay) {
+    this.year = year;
+    this.month = month;
+    this.numberOfBlogEntriesByDay = numberOfBlogEntriesByDay;
+
+    int count = 0;
+    for (int n : numberOfBlogEntriesByDay) {
+      count += n;
+    }
+    this.numberOfBlogEntries = count;
+  }
+
+  /**
+   * Gets the year.
+   *
+   * @return  the year as an int (e.g. 2011)
+   */
+  public int getYear() {
+    return year;
+  }
+
+  /**
+   * Gets the month.
+   *
+   * @return  the month as an int (1-12)
+   */
+  public int getMonth() {
+    return month;
+  }
+
+  /**
+   * Gets the last day in this month.
+   *
+   * @return  an int (28-31)
+   */
+  public int getLastDayInMonth() {
+    return numberOfBlogEntriesByDay.length;
+  }
+
+  /**
+   * Gets the number of published blog entries in this month.
+   *
+   * @return  an int
+   */
+  public int getNumberOfBlogEntries() {
+    return numberOfBlogEntries;
+  }
+
+  /**
+   * Gets the number of published blog entries on the given day.
+   *
+   * @param day   the day of the month (1-31)
+   * @return  an int
+   */
+  public int getNumberOfBlogEntries(int day) {
+    if (day < 1 || day > numberOfBlogEntriesByDay.length) {
+      return 0;
+    }
+    return numberOfBlogEntriesByDay[day-1];
+  }
+
+  /**
+   * Determines whether the given day has published blog entries.
+   *
+   * @param day   the day of the month (1-31)
+   * @return  true if so, false otherwise
+   */
+  public boolean hasBlogEntries(int day) {
+    return getNumberOfBlogEntries(day) > 0;
+  }
+
+  public String toString() {
+    return year + "/" + (month < 10 ? "0" : "") + month + " (" + numberOfBlogEntries + ")";
+  }
+
+}
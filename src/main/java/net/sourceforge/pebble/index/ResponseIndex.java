@@ -32,22 +32,30 @@
 
 package net.sourceforge.pebble.index;
 
-import net.sourceforge.pebble.comparator.ReverseResponseIdComparator;
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.DAOFactory;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Response;
 import net.sourceforge.pebble.domain.State;
+import net.sourceforge.pebble.util.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Collection;
+import java.util.Map;
 
 /**
- * Keeps an index of all responses.
+ * Keeps an index of all responses. Alongside the ID of each response, the
+ * index holds the fields needed to list and moderate it (see
+ * IndexedResponse), so that doesn't require the blog entries to be loaded.
  *
  * @author    Simon Brown
  */
@@ -55,32 +63,52 @@ public class ResponseIndex {
 
   private static final Log log = LogFactory.getLog(ResponseIndex.class);
 
+  /** newest first, with the guid to break ties between responses on different blog entries */
+  private static final Comparator<IndexedResponse> NEWEST_FIRST = new Comparator<IndexedResponse>() {
+    public int compare(IndexedResponse r1, IndexedResponse r2) {
+      long id1 = r1.getId();
+      long id2 = r2.getId();
+      if (id1 != id2) {
+        return id1 > id2 ? -1 : 1;
+      } else {
+        return r1.getGuid().compareTo(r2.getGuid());
+      }
+    }
+  };
+
   private Blog blog;
 
-  private List<String> approvedResponses = new ArrayList<String>();
-  private List<String> pendingResponses = new ArrayList<String>();
-  private List<String> rejectedResponses = new ArrayList<String>();
+  private final Bucket approvedResponses = new Bucket(State.APPROVED, "responses-approved.index");
+  private final Bucket pendingResponses = new Bucket(State.PENDING, "responses-pending.index");
+  private final Bucket rejectedResponses = new Bucket(State.REJECTED, "responses-rejected.index");
+
+  private Map<String,IndexedResponse> responsesByGuid = new HashMap<String,IndexedResponse>();
+
+  /** the depth of nested batches, during which writes to disk are deferred */
+  private int batch;
 
   public ResponseIndex(Blog blog) {
     this.blog = blog;
 
-    approvedResponses = readIndex(State.APPROVED);
-    pendingResponses = readIndex(State.PENDING);
-    rejectedResponses = readIndex(State.REJECTED);
+    List<String> unsummarised = new ArrayList<String>();
+    readIndex(approvedResponses, unsummarised);
+    readIndex(pendingResponses, unsummarised);
+    readIndex(rejectedResponses, unsummarised);
+
+    if (!unsummarised.isEmpty()) {
+      upgrade(unsummarised);
+    }
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
-    approvedResponses = new ArrayList<String>();
-    writeIndex(State.APPROVED);
-
-    pendingResponses = new ArrayList<String>();
-    writeIndex(State.PENDING);
-
-    rejectedResponses = new ArrayList<String>();
-    writeIndex(State.REJECTED);
+  public synchronized void clear() {
+    responsesByGuid = new HashMap<String,IndexedResponse>();
+    for (Bucket bucket : buckets()) {
+      bucket.clear();
+      writeIndex(bucket);
+    }
   }
 
   /**
@@ -91,22 +119,24 @@ public class ResponseIndex {
   public synchronized void index(Collection<BlogEntry> blogEntries) {
     for (BlogEntry blogEntry : blogEntries) {
       for (Response response : blogEntry.getResponses()) {
-        if (response.isApproved()) {
-          approvedResponses.add(response.getGuid());
-        } else if (response.isPending()) {
-          pendingResponses.add(response.getGuid());
-        } else if (response.isRejected()) {
-          rejectedResponses.add(response.getGuid());
+        Bucket bucket = getBucket(response.getState());
+        if (bucket != null) {
+          IndexedResponse indexedResponse = new IndexedResponse(response);
+          IndexedResponse previous = responsesByGuid.put(indexedResponse.getGuid(), indexedResponse);
+          if (previous != null) {
+            // the buckets aren't sorted until the end, so search the slow way
+            getBucket(previous.getState()).responses.remove(previous);
+          }
+          bucket.responses.add(indexedResponse);
+          bucket.changed();
         }
       }
     }
 
-    Collections.sort(approvedResponses, new ReverseResponseIdComparator());
-    Collections.sort(pendingResponses, new ReverseResponseIdComparator());
-    Collections.sort(rejectedResponses, new ReverseResponseIdComparator());
-    writeIndex(State.APPROVED);
-    writeIndex(State.PENDING);
-    writeIndex(State.REJECTED);
+    for (Bucket bucket : buckets()) {
+      Collections.sort(bucket.responses, NEWEST_FIRST);
+      writeIndex(bucket);
+    }
   }
 
   /**
@@ -115,18 +145,14 @@ public class ResponseIndex {
    * @param response    a Response instance
    */
   public synchronized void index(Response response) {
-    if (response.isApproved()) {
-      approvedResponses.add(response.getGuid());
-      Collections.sort(approvedResponses, new ReverseResponseIdComparator());
-      writeIndex(State.APPROVED);
-    } else if (response.isPending()) {
-      pendingResponses.add(response.getGuid());
-      Collections.sort(pendingResponses, new ReverseResponseIdComparator());
-      writeIndex(State.PENDING);
-    } else if (response.isRejected()) {
-      rejectedResponses.add(response.getGuid());
-      Collections.sort(rejectedResponses, new ReverseResponseIdComparator());
-      writeIndex(State.REJECTED);
+    Bucket bucket = getBucket(response.getState());
+    if (bucket != null) {
+      unindex(response);
+
+      IndexedResponse indexedResponse = new IndexedResponse(response);
+      responsesByGuid.put(indexedResponse.getGuid(), indexedResponse);
+      bucket.add(indexedResponse);
+      writeIndex(bucket);
     }
   }
 
@@ -136,40 +162,97 @@ public class ResponseIndex {
    * @param response    a Response instance
    */
   public synchronized void unindex(Response response) {
-    if (approvedResponses.contains(response.getGuid())) {
-      approvedResponses.remove(response.getGuid());
-      writeIndex(State.APPROVED);
-    } else if (pendingResponses.contains(response.getGuid())) {
-      pendingResponses.remove(response.getGuid());
-      writeIndex(State.PENDING);
-    } else if (rejectedResponses.contains(response.getGuid())) {
-      rejectedResponses.remove(response.getGuid());
-      writeIndex(State.REJECTED);
+    IndexedResponse indexedResponse = responsesByGuid.remove(response.getGuid());
+    if (indexedResponse != null) {
+      Bucket bucket = getBucket(indexedResponse.getState());
+      bucket.remove(indexedResponse);
+      writeIndex(bucket);
     }
   }
 
   /**
-   * Helper method to load the index.
+   * Refreshes the summaries of the responses to a blog entry that has been
+   * changed, published or unpublished, since they hold its permalink and
+   * whether it is published.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void reindex(BlogEntry blogEntry) {
+    beginBatch();
+    try {
+      for (Response response : blogEntry.getResponses()) {
+        if (responsesByGuid.containsKey(response.getGuid())) {
+          index(response);
+        }
+      }
+    } finally {
+      endBatch();
+    }
+  }
+
+  /**
+   * Starts a batch of changes, during which the index isn't written to disk.
+   * Every call must be matched by a call to endBatch(), which writes out
+   * whatever has changed.
+   */
+  public synchronized void beginBatch() {
+    batch++;
+  }
+
+  /**
+   * Ends a batch of changes started by beginBatch().
    */
-  private List<String> readIndex(State state) {
-    String filename = null;
-    List<String> responses = new ArrayList<String>();
+  public synchronized void endBatch() {
+    if (batch > 0) {
+      batch--;
+    }
+    if (batch == 0) {
+      for (Bucket bucket : buckets()) {
+        if (bucket.unwritten) {
+          writeIndex(bucket);
+        }
+      }
+    }
+  }
+
+  private Bucket[] buckets() {
+    return new Bucket[] { approvedResponses, pendingResponses, rejectedResponses };
+  }
+
+  private Bucket getBucket(State state) {
     if (state == State.APPROVED) {
-        filename = "responses-approved.index";
+      return approvedResponses;
     } else if (state == State.PENDING) {
-      filename = "responses-pending.index";
+      return pendingResponses;
     } else if (state == State.REJECTED) {
-      filename = "responses-rejected.index";
+      return rejectedResponses;
+    } else {
+      return null;
     }
+  }
 
-    File indexFile = new File(blog.getIndexesDirectory(), filename);
+  /**
+   * Helper method to load the index.
+   */
+  private void readIndex(Bucket bucket, List<String> unsummarised) {
+    File indexFile = new File(blog.getIndexesDirectory(), bucket.filename);
     if (indexFile.exists()) {
       try {
-        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
-        String response = reader.readLine();
-        while (response != null) {
-          responses.add(response);
-          response = reader.readLine();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+        String line = reader.readLine();
+        while (line != null) {
+          if (line.length() > 0) {
+            IndexedResponse indexedResponse = IndexedResponse.fromIndexLine(blog, bucket.state, line);
+            if (indexedResponse != null) {
+              responsesByGuid.put(indexedResponse.getGuid(), indexedResponse);
+              bucket.responses.add(indexedResponse);
+            } else if (line.indexOf('\t') == -1) {
+              unsummarised.add(line);
+            } else {
+              log.warn("Ignoring malformed line in " + indexFile);
+            }
+          }
+          line = reader.readLine();
         }
 
         reader.close();
@@ -178,39 +261,66 @@ public class ResponseIndex {
       }
     }
 
-    Collections.sort(responses, new ReverseResponseIdComparator());
+    Collections.sort(bucket.responses, NEWEST_FIRST);
+  }
 
-    return responses;
+  /**
+   * Builds summaries for responses listed by an index file that only holds
+   * their IDs, loading each of the blog entries involved once.
+   */
+  private void upgrade(List<String> guids) {
+    log.info("Adding summaries for " + guids.size() + " responses to the response index");
+
+    Map<String,List<String>> guidsByBlogEntry = new LinkedHashMap<String,List<String>>();
+    for (String guid : guids) {
+      String blogEntryId = guid.substring(guid.indexOf("/")+1, guid.lastIndexOf("/"));
+      List<String> list = guidsByBlogEntry.get(blogEntryId);
+      if (list == null) {
+        list = new ArrayList<String>();
+        guidsByBlogEntry.put(blogEntryId, list);
+      }
+      list.add(guid);
+    }
+
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    try {
+      BlogEntryDAO dao = DAOFactory.getConfiguredFactory().getBlogEntryDAO();
+      for (String blogEntryId : guidsByBlogEntry.keySet()) {
+        BlogEntry blogEntry = dao.loadBlogEntry(blog, blogEntryId);
+        if (blogEntry != null) {
+          blogEntries.add(blogEntry);
+        }
+      }
+    } catch (Exception e) {
+      log.error("Error while upgrading index", e);
+    }
+
+    // responses that have gone since the index was written are dropped
+    index(blogEntries);
   }
 
   /**
    * Helper method to write out the index to disk.
    */
-  private void writeIndex(State state) {
-    String filename = null;
-    List<String> responses = null;
-    if (state == State.APPROVED) {
-        filename = "responses-approved.index";
-        responses = approvedResponses;
-    } else if (state == State.PENDING) {
-      filename = "responses-pending.index";
-      responses = pendingResponses;
-    } else if (state == State.REJECTED) {
-      filename = "responses-rejected.index";
-      responses = rejectedResponses;
+  private void writeIndex(Bucket bucket) {
+    if (batch > 0) {
+      bucket.unwritten = true;
+      return;
     }
 
     try {
-      File indexFile = new File(blog.getIndexesDirectory(), filename);
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
-
-      for (String response : responses) {
-        writer.write(response);
+      StringWriter buf = new StringWriter();
+      BufferedWriter writer = new BufferedWriter(buf);
+      for (IndexedResponse response : bucket.responses) {
+        writer.write(response.toIndexLine());
         writer.newLine();
       }
-
-      writer.flush();
       writer.close();
+
+      // this is the only copy of the response summaries, so never leave it half written
+      File indexFile = new File(blog.getIndexesDirectory(), bucket.filename);
+      FileUtils.writeAtomically(indexFile, buf.toString().getBytes("UTF-8"));
+      bucket.unwritten = false;
     } catch (Exception e) {
       log.error("Error while writing index", e);
     }
@@ -222,7 +332,7 @@ public class ResponseIndex {
    * @return  an int
    */
   public int getNumberOfApprovedResponses() {
-    return approvedResponses.size();
+    return approvedResponses.responses.size();
   }
 
   /**
@@ -231,7 +341,7 @@ public class ResponseIndex {
    * @return  an int
    */
   public int getNumberOfPendingResponses() {
-    return pendingResponses.size();
+    return pendingResponses.responses.size();
   }
 
   /**
@@ -240,7 +350,7 @@ public class ResponseIndex {
    * @return  an int
    */
   public int getNumberOfRejectedResponses() {
-    return rejectedResponses.size();
+    return rejectedResponses.responses.size();
   }
 
   /**
@@ -255,23 +365,67 @@ public class ResponseIndex {
   /**
    * Gets the most recent N approved responses.
    *
-   * @return  a List of response IDs
+   * @return  a List of IndexedResponse instances
    */
-  public List<String> getRecentResponses(int number) {
+  public List<IndexedResponse> getRecentResponses(int number) {
     return getRecentApprovedResponses(number);
   }
 
   /**
-   * Gets the most recent N approved responses.
+   * Gets the most recent N approved responses to published blog entries.
    *
-   * @return  a List of response IDs
+   * @return  a List of IndexedResponse instances
    */
-  public List<String> getRecentApprovedResponses(int number) {
-    if (approvedResponses.size() >= number) {
-      return approvedResponses.subList(0, number);
-    } else {
-      return approvedResponses;
+  public List<IndexedResponse> getRecentApprovedResponses(int number) {
+    List<IndexedResponse> responses = new ArrayList<IndexedResponse>(Math.max(0, number));
+    if (number > 0) {
+      for (IndexedResponse response : getResponses(State.APPROVED)) {
+        if (response.isBlogEntryPublished()) {
+          responses.add(response);
+          if (responses.size() == number) {
+            break;
+          }
+        }
+      }
+    }
+
+    return responses;
+  }
+
+  /**
+   * Gets the summary of a response.
+   *
+   * @param guid    the guid of the response
+   * @return  an IndexedResponse, or null if the response isn't indexed
+   */
+  public synchronized IndexedResponse getResponse(String guid) {
+    return responsesByGuid.get(guid);
+  }
+
+  /**
+   * Gets the summaries of all responses in the specified state, newest first.
+   *
+   * @param state   State.APPROVED, State.PENDING or State.REJECTED
+   * @return  an unmodifiable List of IndexedResponse instances
+   */
+  public List<IndexedResponse> getResponses(State state) {
+    Bucket bucket = getBucket(state);
+    if (bucket == null) {
+      return Collections.emptyList();
+    }
+
+    List<IndexedResponse> snapshot = bucket.snapshot;
+    if (snapshot == null) {
+      synchronized (this) {
+        snapshot = bucket.snapshot;
+        if (snapshot == null) {
+          snapshot = Collections.unmodifiableList(new ArrayList<IndexedResponse>(bucket.responses));
+          bucket.snapshot = snapshot;
+        }
+      }
     }
+
+    return snapshot;
   }
 
   /**
@@ -280,7 +434,7 @@ public class ResponseIndex {
    * @return  a List of response IDs
    */
   public List<String> getApprovedResponses() {
-    return new ArrayList<String>(approvedResponses);
+    return getGuids(State.APPROVED);
   }
 
   /**
@@ -289,7 +443,7 @@ public class ResponseIndex {
    * @return  a List of response IDs
    */
   public List<String> getPendingResponses() {
-    return new ArrayList<String>(pendingResponses);
+    return getGuids(State.PENDING);
   }
 
   /**
@@ -298,7 +452,64 @@ public class ResponseIndex {
    * @return  a List of response IDs
    */
   public List<String> getRejectedResponses() {
-    return new ArrayList<String>(rejectedResponses);
+    return getGuids(State.REJECTED);
+  }
+
+  private List<String> getGuids(State state) {
+    List<IndexedResponse> responses = getResponses(state);
+    List<String> guids = new ArrayList<String>(responses.size());
+    for (IndexedResponse response : responses) {
+      guids.add(response.getGuid());
+    }
+
+    return guids;
+  }
+
+  /**
+   * The responses in one state, kept in NEWEST_FIRST order.
+   */
+  private static class Bucket {
+
+    private final State state;
+    private final String filename;
+    private final List<IndexedResponse> responses = new ArrayList<IndexedResponse>();
+
+    /** an immutable copy of responses, made when first asked for after a change */
+    private volatile List<IndexedResponse> snapshot;
+
+    /** set when a change hasn't been written to disk because of a batch */
+    private boolean unwritten;
+
+    Bucket(State state, String filename) {
+      this.state = state;
+      this.filename = filename;
+    }
+
+    void add(IndexedResponse response) {
+      int index = Collections.binarySearch(responses, response, NEWEST_FIRST);
+      if (index < 0) {
+        responses.add(-(index + 1), response);
+      }
+      changed();
+    }
+
+    void remove(IndexedResponse response) {
+      int index = Collections.binarySearch(responses, response, NEWEST_FIRST);
+      if (index >= 0) {
+        responses.remove(index);
+      }
+      changed();
+    }
+
+    void clear() {
+      responses.clear();
+      changed();
+    }
+
+    void changed() {
+      snapshot = null;
+    }
+
   }
 
-}
\ No newline at end of file
+}
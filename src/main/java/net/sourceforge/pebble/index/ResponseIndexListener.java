@@ -32,8 +32,11 @@
 
 package net.sourceforge.pebble.index;
 
+import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Comment;
 import net.sourceforge.pebble.domain.TrackBack;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
 import net.sourceforge.pebble.api.event.comment.CommentEvent;
 import net.sourceforge.pebble.api.event.comment.CommentListener;
 import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
@@ -41,10 +44,35 @@ import net.sourceforge.pebble.api.event.trackback.TrackBackListener;
 
 /**
  * Listens to comment/TrackBack events and keeps the response index up to date.
+ * Blog entry events are also listened to, since the index holds the
+ * permalink of each response and whether its blog entry is published.
  *
  * @author    Simon Brown
  */
-public class ResponseIndexListener implements CommentListener, TrackBackListener {
+public class ResponseIndexListener implements BlogEntryListener, CommentListener, TrackBackListener {
+
+  public void blogEntryAdded(BlogEntryEvent event) {
+    // responses are indexed by their own events
+  }
+
+  public void blogEntryRemoved(BlogEntryEvent event) {
+    // responses are unindexed by their own events
+  }
+
+  public void blogEntryChanged(BlogEntryEvent event) {
+    BlogEntry blogEntry = event.getBlogEntry();
+    blogEntry.getBlog().getResponseIndex().reindex(blogEntry);
+  }
+
+  public void blogEntryPublished(BlogEntryEvent event) {
+    BlogEntry blogEntry = event.getBlogEntry();
+    blogEntry.getBlog().getResponseIndex().reindex(blogEntry);
+  }
+
+  public void blogEntryUnpublished(BlogEntryEvent event) {
+    BlogEntry blogEntry = event.getBlogEntry();
+    blogEntry.getBlog().getResponseIndex().reindex(blogEntry);
+  }
 
   /**
    * Called when a comment has been added.
@@ -32,6 +32,7 @@
 package net.sourceforge.pebble.index;
 
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.metrics.Metrics;
 import net.sourceforge.pebble.search.SearchException;
 import net.sourceforge.pebble.search.SearchHit;
 import net.sourceforge.pebble.search.SearchResults;
@@ -370,6 +371,7 @@ public class SearchIndex {
 
     if (queryString != null && queryString.length() > 0) {
       Searcher searcher = null;
+      long startTime = System.nanoTime();
 
       try {
         searcher = new IndexSearcher(blog.getSearchIndexDirectory());
@@ -403,6 +405,7 @@ public class SearchIndex {
             // can't do much now! ;-)
           }
         }
+        Metrics.getInstance().timer("search.query", blog.getId()).stop(startTime);
       }
     }
 
@@ -33,14 +33,22 @@ package net.sourceforge.pebble.index;
 
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.StaticPage;
+import net.sourceforge.pebble.util.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.util.*;
 
 /**
- * Maintains an index of all static pages
+ * Maintains an index of all static pages. Lookups are served from an
+ * immutable in-memory snapshot, which is replaced whenever a page is
+ * (un)indexed. Changes are written to a temporary file and renamed over the
+ * index, so that a crash never leaves a partial index behind, while a
+ * FileChannel lock serialises writers in different processes sharing the
+ * same blog directory.
  *
  * @author    Simon Brown
  */
@@ -51,17 +59,22 @@ public class StaticPageIndex {
   private static final String PAGES_INDEX_DIRECTORY_NAME = "pages";
   private static final String NAME_TO_ID_INDEX_FILE_NAME = "name.index";
   private static final String LOCK_FILE_NAME = "pages.lock";
-  private static final int MAXIMUM_LOCK_ATTEMPTS = 3;
 
   /** the owning blog */
   private Blog blog;
 
-  /** the collection of all static pages */
-  private Map<String,String> index = new HashMap<String,String>();
-  private int lockAttempts = 0;
+  /**
+   * FileChannel locks are held on behalf of the whole JVM, so writers within
+   * this process are serialised on this (one per blog) rather than on the file.
+   */
+  private final Object writeLock;
+
+  /** the collection of all static pages, as an immutable name to ID map */
+  private volatile Map<String,String> index = Collections.emptyMap();
 
   public StaticPageIndex(Blog blog) {
     this.blog = blog;
+    this.writeLock = FileUtils.getMonitor(getLockFile());
 
     // create the directory structure if it doesn't exist
     File indexDirectory = new File(blog.getIndexesDirectory(), PAGES_INDEX_DIRECTORY_NAME);
@@ -69,7 +82,7 @@ public class StaticPageIndex {
       indexDirectory.mkdirs();
     }
 
-    readIndex();
+    index = Collections.unmodifiableMap(readIndex());
   }
 
   /**
@@ -77,17 +90,21 @@ public class StaticPageIndex {
    *
    * @param staticPages   a List of Page instances
    */
-  public synchronized void reindex(Collection<StaticPage> staticPages) {
-    if (lock()) {
-      // clear the index and add all static pages
-      index = new HashMap<String,String>();
-      for (StaticPage staticPage : staticPages) {
-        index.put(staticPage.getName(), staticPage.getId());
-      }
+  public void reindex(Collection<StaticPage> staticPages) {
+    // clear the index and add all static pages
+    Map<String,String> map = new HashMap<String,String>();
+    for (StaticPage staticPage : staticPages) {
+      map.put(staticPage.getName(), staticPage.getId());
+    }
 
-      // and finally, write the index
-      writeIndex();
-      unlock();
+    synchronized (writeLock) {
+      FileLock lock = lock();
+      try {
+        writeIndex(map);
+        index = Collections.unmodifiableMap(map);
+      } finally {
+        unlock(lock);
+      }
     }
   }
 
@@ -96,34 +113,22 @@ public class StaticPageIndex {
    *
    * @param staticPage    a Page instance
    */
-  public synchronized void index(StaticPage staticPage) {
-    if (lock()) {
-      readIndex();
-
-      // remove the old entry for this static page
-      Iterator it = index.keySet().iterator();
-      while (it.hasNext()) {
-        String key = (String)it.next();
-        String value = index.get(key);
-        if (value.equals(staticPage.getId())) {
-          it.remove();
-        }
-      }
+  public void index(StaticPage staticPage) {
+    synchronized (writeLock) {
+      FileLock lock = lock();
+      try {
+        // pick up any changes made by other processes
+        Map<String,String> map = readIndex();
 
-      // and now add the new entry for this page
-      index.put(staticPage.getName(), staticPage.getId());
-      writeIndex();
-      unlock();
-    } else {
-      if (lockAttempts <= MAXIMUM_LOCK_ATTEMPTS) {
-        try {
-          Thread.sleep(1000);
-        } catch (InterruptedException ie) {
-          // ignore
-        }
-        index(staticPage);
-      } else {
-        blog.error("Could not index static page - try <a href=\"utilities.secureaction?action=buildIndexes\">rebuilding the indexes</a>.");
+        // remove the old entry for this static page
+        map.values().removeAll(Collections.singleton(staticPage.getId()));
+
+        // and now add the new entry for this page
+        map.put(staticPage.getName(), staticPage.getId());
+        writeIndex(map);
+        index = Collections.unmodifiableMap(map);
+      } finally {
+        unlock(lock);
       }
     }
   }
@@ -133,31 +138,28 @@ public class StaticPageIndex {
    *
    * @param staticPage    a Page instance
    */
-  public synchronized void unindex(StaticPage staticPage) {
-    if (lock()) {
-      readIndex();
-      index.remove(staticPage.getName());
-      writeIndex();
-      unlock();
-    } else {
-      if (lockAttempts <= MAXIMUM_LOCK_ATTEMPTS) {
-        try {
-          Thread.sleep(1000);
-        } catch (InterruptedException ie) {
-          // ignore
-        }
-        unindex(staticPage);
-      } else {
-        blog.reindexStaticPages();
+  public void unindex(StaticPage staticPage) {
+    synchronized (writeLock) {
+      FileLock lock = lock();
+      try {
+        Map<String,String> map = readIndex();
+        map.remove(staticPage.getName());
+        writeIndex(map);
+        index = Collections.unmodifiableMap(map);
+      } finally {
+        unlock(lock);
       }
     }
   }
 
   /**
    * Helper method to load the index.
+   *
+   * @return  a new, modifiable map of page names to IDs
    */
-  private void readIndex() {
-    log.info("Reading index from disk");
+  private Map<String,String> readIndex() {
+    log.debug("Reading index from disk");
+    Map<String,String> map = new HashMap<String,String>();
     File indexFile = getIndexFile();
     if (indexFile.exists()) {
       try {
@@ -165,7 +167,9 @@ public class StaticPageIndex {
         String indexEntry = reader.readLine();
         while (indexEntry != null) {
           String[] parts = indexEntry.split("=");
-          index.put(parts[0], parts[1]);
+          if (parts.length == 2) {
+            map.put(parts[0], parts[1]);
+          }
 
           indexEntry = reader.readLine();
         }
@@ -174,26 +178,32 @@ public class StaticPageIndex {
       } catch (Exception e) {
         log.error("Error while reading index", e);
       }
+    } else if (!index.isEmpty()) {
+      // the file has gone, so keep what we know about
+      map.putAll(index);
     }
+
+    return map;
   }
 
   /**
    * Helper method to write out the index to disk.
    */
-  private void writeIndex() {
+  private void writeIndex(Map<String,String> map) {
     try {
-      File indexFile = getIndexFile();
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
-
-      for (String name : index.keySet()) {
-        writer.write(name + "=" + index.get(name));
+      StringWriter buf = new StringWriter();
+      BufferedWriter writer = new BufferedWriter(buf);
+      for (Map.Entry<String,String> entry : map.entrySet()) {
+        writer.write(entry.getKey() + "=" + entry.getValue());
         writer.newLine();
       }
-
-      writer.flush();
       writer.close();
+
+      // read back with a FileReader, so this is in the platform's default encoding
+      FileUtils.writeAtomically(getIndexFile(), buf.toString().getBytes());
     } catch (Exception e) {
       log.error("Error while writing index", e);
+      blog.error("Could not index static page - try <a href=\"utilities.secureaction?action=buildIndexes\">rebuilding the indexes</a>.");
     }
   }
 
@@ -241,25 +251,42 @@ public class StaticPageIndex {
     return new File(indexDirectory, NAME_TO_ID_INDEX_FILE_NAME);
   }
 
-  private boolean lock() {
-    File lockFile = new File(blog.getIndexesDirectory(), LOCK_FILE_NAME);
-    boolean success = false;
+  /**
+   * Takes an exclusive lock on the lock file, blocking only while another
+   * process is writing the index.
+   *
+   * @return  a FileLock, or null if the file can't be locked (in which case
+   *          the index is still updated)
+   */
+  private FileLock lock() {
+    File lockFile = getLockFile();
     try {
-      success = lockFile.createNewFile();
-      if (!success) {
-        lockAttempts++;
+      FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+      try {
+        return channel.lock();
+      } catch (IOException ioe) {
+        channel.close();
+        throw ioe;
       }
     } catch (IOException ioe) {
-      log.warn("Error while creating lock file", ioe);
+      log.warn("Error while locking " + lockFile.getAbsolutePath(), ioe);
+      return null;
     }
+  }
 
-    return success;
+  private File getLockFile() {
+    return new File(blog.getIndexesDirectory(), LOCK_FILE_NAME);
   }
 
-  private void unlock() {
-    File lockFile = new File(blog.getIndexesDirectory(), LOCK_FILE_NAME);
-    lockFile.delete();
-    lockAttempts = 0;
+  private void unlock(FileLock lock) {
+    if (lock != null) {
+      try {
+        lock.release();
+        lock.channel().close();
+      } catch (IOException ioe) {
+        log.warn("Error while unlocking index", ioe);
+      }
+    }
   }
 
-}
\ No newline at end of file
+}
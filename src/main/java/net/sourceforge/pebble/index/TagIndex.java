@@ -51,24 +51,49 @@ public class TagIndex {
 
   private Blog blog;
 
+  /** the number of rank buckets */
+  private static final int NUMBER_OF_RANKS = 10;
+
   /** the map containing the tags */
   private Map<String,IndexedTag> tags = new HashMap<String,IndexedTag>();
 
-  /** a view onto the map, ordered by tag name */
-  private List<Tag> orderedTags = new ArrayList<Tag>();
+  /** the (encoded) names of the tags that each blog entry has been indexed against */
+  private Map<String,Set<String>> tagsByBlogEntry = new HashMap<String,Set<String>>();
+
+  /** the number of tags with a given number of blog entries, indexed by that number */
+  private int[] tagsByNumberOfBlogEntries = new int[16];
+
+  /** the largest number of blog entries associated with any tag */
+  private int maxBlogEntries;
+
+  /** the upper bound on the number of blog entries for each rank */
+  private volatile int[] thresholds = new int[NUMBER_OF_RANKS];
+
+  /** an immutable view onto the map, ordered by tag name and replaced whenever its membership changes */
+  private volatile List<Tag> orderedTags = Collections.emptyList();
+
+  /** set while a batch of changes is being made, deferring the rebuild of orderedTags */
+  private boolean batch;
 
   public TagIndex(Blog blog) {
     this.blog = blog;
 
+    batch = true;
     readIndex();
-    recalculateTagRankings();
+    batch = false;
+    rebuildOrderedTags();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     tags = new HashMap<String,IndexedTag>();
+    tagsByBlogEntry = new HashMap<String,Set<String>>();
+    tagsByNumberOfBlogEntries = new int[16];
+    maxBlogEntries = 0;
+    thresholds = new int[NUMBER_OF_RANKS];
+    orderedTags = Collections.emptyList();
     writeIndex();
   }
 
@@ -78,17 +103,21 @@ public class TagIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
-    for (BlogEntry blogEntry : blogEntries) {
-      if (blogEntry.isPublished()) {
-        for (Tag tag : blogEntry.getAllTags()) {
-          IndexedTag t = getTag(tag.getName());
-          t.addBlogEntry(blogEntry.getId());
+    batch = true;
+    try {
+      for (BlogEntry blogEntry : blogEntries) {
+        if (blogEntry.isPublished()) {
+          for (Tag tag : blogEntry.getAllTags()) {
+            addBlogEntry(tag.getName(), blogEntry.getId());
+          }
         }
       }
+    } finally {
+      batch = false;
     }
 
     writeIndex();
-    recalculateTagRankings();
+    rebuildOrderedTags();
   }
 
   /**
@@ -99,12 +128,10 @@ public class TagIndex {
   public synchronized void index(BlogEntry blogEntry) {
     if (blogEntry.isPublished()) {
       for (Tag tag : blogEntry.getAllTags()) {
-        IndexedTag t = getTag(tag.getName());
-        t.addBlogEntry(blogEntry.getId());
+        addBlogEntry(tag.getName(), blogEntry.getId());
       }
 
       writeIndex();
-      recalculateTagRankings();
     }
   }
 
@@ -114,13 +141,40 @@ public class TagIndex {
    * @param blogEntry   a BlogEntry instance
    */
   public synchronized void unindex(BlogEntry blogEntry) {
-    for (Tag tag : tags.values()) {
-      IndexedTag t = getTag(tag.getName());
-      t.removeBlogEntry(blogEntry.getId());
+    Set<String> names = tagsByBlogEntry.remove(blogEntry.getId());
+    if (names != null) {
+      for (String name : names) {
+        IndexedTag tag = tags.get(name);
+        int before = tag.getNumberOfBlogEntries();
+        tag.removeBlogEntry(blogEntry.getId());
+        numberOfBlogEntriesChanged(tag, before, tag.getNumberOfBlogEntries());
+      }
+
+      writeIndex();
+    }
+  }
+
+  /**
+   * Associates a blog entry with the named tag, keeping the counts, ranks
+   * and ordered list of tags up to date.
+   */
+  private void addBlogEntry(String name, String blogEntryId) {
+    if (blogEntryId == null) {
+      return;
     }
 
-    writeIndex();
-    recalculateTagRankings();
+    String encodedName = Tag.encode(name);
+    IndexedTag tag = getTag(name);
+    int before = tag.getNumberOfBlogEntries();
+    tag.addBlogEntry(blogEntryId);
+    numberOfBlogEntriesChanged(tag, before, tag.getNumberOfBlogEntries());
+
+    Set<String> names = tagsByBlogEntry.get(blogEntryId);
+    if (names == null) {
+      names = new HashSet<String>();
+      tagsByBlogEntry.put(blogEntryId, names);
+    }
+    names.add(encodedName);
   }
 
   /**
@@ -134,12 +188,12 @@ public class TagIndex {
         String indexEntry = reader.readLine();
         while (indexEntry != null) {
           String[] tuple = indexEntry.split("=");
-          IndexedTag tag = getTag(tuple[0]);
+          getTag(tuple[0]);
 
           if (tuple.length > 1 && tuple[1] != null) {
             String[] blogEntries = tuple[1].split(",");
             for (String blogEntry : blogEntries) {
-              tag.addBlogEntry(blogEntry);
+              addBlogEntry(tuple[0], blogEntry);
             }
           }
 
@@ -188,48 +242,100 @@ public class TagIndex {
     String encodedName = Tag.encode(name);
     IndexedTag tag = tags.get(encodedName);
     if (tag == null) {
-      tag = new IndexedTag(name, blog);
+      tag = new IndexedTag(name, blog, this);
       tags.put(encodedName, tag);
     }
     return tag;
   }
 
-  private synchronized void recalculateTagRankings() {
-    if (tags.size() > 0) {
-      // find the maximum
-      int maxBlogEntries = 0;
-      for (IndexedTag tag : tags.values()) {
-        if (tag.getNumberOfBlogEntries() > maxBlogEntries) {
-          maxBlogEntries = tag.getNumberOfBlogEntries();
-        }
-      }
-
-      int[] thresholds = new int[10];
-      for (int i = 0; i < 10; i++) {
-        thresholds[i] = (int)Math.round((maxBlogEntries/10.0) * (i+1));
-      }
+  /**
+   * Updates the tag counts after the number of blog entries associated with
+   * a tag has changed. The thresholds are only recalculated when the maximum
+   * changes, and the ordered list only when a tag gains its first or loses
+   * its last blog entry.
+   */
+  private void numberOfBlogEntriesChanged(IndexedTag tag, int before, int after) {
+    if (before == after) {
+      return;
+    }
 
-      orderedTags = new ArrayList<Tag>();
+    if (after >= tagsByNumberOfBlogEntries.length) {
+      int[] counts = new int[Math.max(after + 1, tagsByNumberOfBlogEntries.length * 2)];
+      System.arraycopy(tagsByNumberOfBlogEntries, 0, counts, 0, tagsByNumberOfBlogEntries.length);
+      tagsByNumberOfBlogEntries = counts;
+    }
+    if (before > 0) {
+      tagsByNumberOfBlogEntries[before]--;
+    }
+    if (after > 0) {
+      tagsByNumberOfBlogEntries[after]++;
+    }
 
-      // now rank the tags
-      for (IndexedTag tag : tags.values()) {
-        tag.calculateRank(thresholds);
+    int max = maxBlogEntries;
+    if (after > max) {
+      max = after;
+    } else {
+      while (max > 0 && tagsByNumberOfBlogEntries[max] == 0) {
+        max--;
+      }
+    }
+    if (max != maxBlogEntries) {
+      maxBlogEntries = max;
+      int[] t = new int[NUMBER_OF_RANKS];
+      for (int i = 0; i < NUMBER_OF_RANKS; i++) {
+        t[i] = (int)Math.round((max/10.0) * (i+1));
+      }
+      thresholds = t;
+    }
 
-        if (tag.getNumberOfBlogEntries() > 0) {
-          orderedTags.add(tag);
-        }
+    if (!batch && (before == 0 || after == 0)) {
+      List<Tag> list = new ArrayList<Tag>(orderedTags);
+      int i = Collections.binarySearch(list, (Tag)tag, null);
+      if (after > 0 && i < 0) {
+        list.add(-i - 1, tag);
+      } else if (after == 0 && i >= 0) {
+        list.remove(i);
       }
+      orderedTags = Collections.unmodifiableList(list);
+    }
+  }
 
-      Collections.sort(orderedTags);
+  /**
+   * Rebuilds the ordered list of tags from scratch, after a batch of changes.
+   */
+  private synchronized void rebuildOrderedTags() {
+    List<Tag> list = new ArrayList<Tag>();
+    for (IndexedTag tag : tags.values()) {
+      if (tag.getNumberOfBlogEntries() > 0) {
+        list.add(tag);
+      }
     }
+    Collections.sort(list);
+    orderedTags = Collections.unmodifiableList(list);
+  }
 
+  /**
+   * Gets the rank of a tag with the given number of blog entries.
+   *
+   * @param numberOfBlogEntries   the number of blog entries
+   * @return  an int between 1 and 10
+   */
+  int getRank(int numberOfBlogEntries) {
+    int[] t = thresholds;
+    for (int i = 0; i < t.length; i++) {
+      if (numberOfBlogEntries <= t[i]) {
+        return i+1;
+      }
+    }
+    return t.length;
   }
 
   /**
-   * Gets the list of tags associated with this blog.
+   * Gets the list of tags associated with this blog. The list is an
+   * immutable snapshot, so it doesn't change as blog entries are indexed.
    */
   public List<Tag> getTags() {
-    return new ArrayList<Tag>(orderedTags);
+    return orderedTags;
   }
 
   /**
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.Blog;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Keeps a single, merged timeline of the published blog entries across all
+ * running blogs, allowing the aggregated pages and feeds of a MultiBlog to
+ * be generated without visiting every blog. Blogs are added when they start
+ * and removed when they stop, and are kept up to date by their
+ * BlogEntryIndex as entries are published, unpublished and removed.
+ */
+public class TimelineIndex {
+
+  /** the singleton instance of this class */
+  private static final TimelineIndex instance = new TimelineIndex();
+
+  /** the blogs in the timeline, keyed on blog ID */
+  private final ConcurrentMap<String,Blog> blogs = new ConcurrentHashMap<String,Blog>();
+
+  /** all published blog entries, most recent first */
+  private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<Entry>();
+
+  TimelineIndex() {
+  }
+
+  /**
+   * Gets the singleton instance of this class.
+   *
+   * @return    the singleton TimelineIndex instance
+   */
+  public static TimelineIndex getInstance() {
+    return instance;
+  }
+
+  /**
+   * Adds a blog, and all of its published blog entries, to the timeline.
+   * Any other blog instance with the same ID is removed first.
+   *
+   * @param blog    a Blog instance
+   */
+  public void add(Blog blog) {
+    BlogEntryIndex blogEntryIndex = blog.getBlogEntryIndex();
+    synchronized (blogEntryIndex) {
+      Blog previous = blogs.put(blog.getId(), blog);
+      if (previous != null) {
+        removeEntries(previous);
+      }
+
+      for (String blogEntryId : blogEntryIndex.getPublishedBlogEntries()) {
+        entries.add(new Entry(blog, blogEntryId));
+      }
+    }
+  }
+
+  /**
+   * Removes a blog, and all of its blog entries, from the timeline.
+   *
+   * @param blog    a Blog instance
+   */
+  public void remove(Blog blog) {
+    if (blogs.remove(blog.getId(), blog)) {
+      removeEntries(blog);
+    }
+  }
+
+  /**
+   * Called when a blog entry has been published.
+   *
+   * @param blog          the owning Blog
+   * @param blogEntryId   the ID of the blog entry
+   */
+  void index(Blog blog, String blogEntryId) {
+    if (isInTimeline(blog)) {
+      entries.add(new Entry(blog, blogEntryId));
+    }
+  }
+
+  /**
+   * Called when a blog entry has been unpublished or removed.
+   *
+   * @param blog          the owning Blog
+   * @param blogEntryId   the ID of the blog entry
+   */
+  void unindex(Blog blog, String blogEntryId) {
+    if (isInTimeline(blog)) {
+      entries.remove(new Entry(blog, blogEntryId));
+    }
+  }
+
+  /**
+   * Called when the index of a blog has been cleared.
+   *
+   * @param blog    the owning Blog
+   */
+  void clear(Blog blog) {
+    if (isInTimeline(blog)) {
+      removeEntries(blog);
+    }
+  }
+
+  /**
+   * Gets the most recent published blog entries from public blogs, taking
+   * no more from any one blog than it shows on its own home page.
+   *
+   * @param number    the maximum number of entries
+   * @return  a List of Entry instances, most recent first
+   */
+  public List<Entry> getRecentBlogEntries(int number) {
+    List<Entry> result = new ArrayList<Entry>();
+    Map<Blog,Integer> counts = new IdentityHashMap<Blog,Integer>();
+    for (Iterator<Entry> it = entries.iterator(); it.hasNext() && result.size() < number; ) {
+      Entry entry = it.next();
+      Blog blog = entry.getBlog();
+      if (!blog.isPublic()) {
+        continue;
+      }
+
+      Integer count = counts.get(blog);
+      int taken = (count == null) ? 0 : count;
+      if (taken < blog.getRecentBlogEntriesOnHomePage()) {
+        result.add(entry);
+        counts.put(blog, taken + 1);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Gets a page of published blog entries from public blogs.
+   *
+   * @param offset    the number of entries to skip
+   * @param number    the maximum number of entries
+   * @return  a List of Entry instances, most recent first
+   */
+  public List<Entry> getBlogEntries(int offset, int number) {
+    List<Entry> result = new ArrayList<Entry>();
+    int skipped = 0;
+    for (Iterator<Entry> it = entries.iterator(); it.hasNext() && result.size() < number; ) {
+      Entry entry = it.next();
+      if (entry.getBlog().isPublic()) {
+        if (skipped < offset) {
+          skipped++;
+        } else {
+          result.add(entry);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Gets the date of the most recent published blog entry from a public blog.
+   *
+   * @return  a Date instance, or the epoch if there are no entries
+   */
+  public Date getLastModified() {
+    for (Entry entry : entries) {
+      if (entry.getBlog().isPublic()) {
+        return entry.getDate();
+      }
+    }
+
+    return new Date(0);
+  }
+
+  private boolean isInTimeline(Blog blog) {
+    return blog.getId() != null && blogs.get(blog.getId()) == blog;
+  }
+
+  private void removeEntries(Blog blog) {
+    for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+      if (it.next().getBlog() == blog) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * A published blog entry within the timeline.
+   */
+  public static final class Entry implements Comparable<Entry> {
+
+    private final Blog blog;
+    private final String blogEntryId;
+    private final long time;
+
+    Entry(Blog blog, String blogEntryId) {
+      this.blog = blog;
+      this.blogEntryId = blogEntryId;
+      this.time = Long.parseLong(blogEntryId);
+    }
+
+    public Blog getBlog() {
+      return blog;
+    }
+
+    public String getBlogEntryId() {
+      return blogEntryId;
+    }
+
+    public Date getDate() {
+      return new Date(time);
+    }
+
+    /**
+     * Orders entries most recent first, then by blog ID.
+     */
+    public int compareTo(Entry other) {
+      if (time != other.time) {
+        return time > other.time ? -1 : 1;
+      }
+
+      int i = blog.getId().compareTo(other.blog.getId());
+      if (i != 0) {
+        return i;
+      }
+
+      return blogEntryId.compareTo(other.blogEntryId);
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+
+      Entry other = (Entry)o;
+      return blog == other.blog && blogEntryId.equals(other.blogEntryId);
+    }
+
+    public int hashCode() {
+      return blogEntryId.hashCode();
+    }
+
+  }
+
+}
@@ -33,24 +33,28 @@ package net.sourceforge.pebble.logging;
 
 import net.sourceforge.pebble.domain.Blog;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 /**
- * Represents a log entry in the combined log file format.
+ * Represents a log entry in the combined log file format. This is a String
+ * based convenience wrapper around {@link CombinedLogFormatCodec}, which
+ * should be used directly when dealing with more than a handful of lines.
  *
  * @author Simon Brown
  */
 public class CombinedFormatLogEntryFormat {
 
-  /** the format used for dates */
-  SimpleDateFormat dateFormatter = new SimpleDateFormat("[dd/MMM/yyyy:HH:mm:ss Z]");
+  /** the codec that does the work */
+  private CombinedLogFormatCodec codec;
+
+  private ByteBuffer buffer = ByteBuffer.allocate(1024);
 
   /**
    * Default, no args constructor.
    */
   public CombinedFormatLogEntryFormat(Blog blog) {
-    dateFormatter.setTimeZone(blog.getTimeZone());
+    codec = new CombinedLogFormatCodec(blog.getTimeZone());
   }
 
   /**
@@ -60,139 +64,38 @@ public class CombinedFormatLogEntryFormat {
    * @return  a formatted String
    */
   public String format(LogEntry entry) {
-    StringBuffer buf = new StringBuffer();
-    if (entry.getHost() != null) {
-      buf.append(entry.getHost());
-    } else {
-      buf.append("-");
-    }
-    buf.append(" ");
-    buf.append("-");
-    buf.append(" ");
-    buf.append("-");
-    buf.append(" ");
-    buf.append(dateFormatter.format(entry.getDate()));
-    buf.append(" ");
-    buf.append("\"" + entry.getRequest() + "\"");
-    buf.append(" ");
-    buf.append(entry.getStatusCode());
-    buf.append(" ");
-    buf.append("-");
-    buf.append(" ");
-    if (entry.getReferer() != null) {
-      buf.append("\"" + entry.getReferer() + "\"");
-    } else {
-      buf.append("-");
-    }
-    buf.append(" ");
-    if (entry.getAgent() != null) {
-      buf.append("\"" + entry.getAgent() + "\"");
-    } else {
-      buf.append("-");
+    buffer.clear();
+    while (!codec.encode(entry, buffer)) {
+      buffer = ByteBuffer.allocate(buffer.capacity() * 2);
     }
 
-    return buf.toString();
+    try {
+      // drop the trailing newline
+      return new String(buffer.array(), 0, buffer.position() - 1, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
   }
 
   /**
    * Parses a string in the combined log file format into a log entry.
    *
    * @param s   the String to parse
-   * @return  a LogEntry instance
+   * @return  a LogEntry instance, or null if the string is malformed
    */
   public LogEntry parse(String s) {
-    LogEntry logEntry = new LogEntry();
-
-    // there are 9 tokens in the combined log file format
-    int start = 0;
-    int end = s.indexOf(" ", start);
-    String host = s.substring(start, end);
-    start = end + 1;
-    end = s.indexOf(" ", start);
-    String rfc931 = s.substring(start, end);
-    start = end + 1;
-    end = s.indexOf(" ", start);
-    String authuser = s.substring(start, end);
-    start = end + 1;
-    end = s.indexOf("]", start);
-    String date = s.substring(start, end+1);
-    start = end + 2;
-    end = s.indexOf("\"", start+1);
-    String request = s.substring(start+1, end);
-    start = end + 2;
-    end = s.indexOf(" ", start);
-    String statusCode = s.substring(start, end);
-    start = end + 1;
-    end = s.indexOf(" ", start);
-    String bytes = s.substring(start, end);
-    start = end + 1;
-    String referer;
-    if (s.charAt(start) == '-') {
-      referer = "-";
-      start = start + 2;
-    } else {
-      end = s.indexOf("\"", start+1);
-      referer = s.substring(start+1, end);
-      start = end + 2;
-    }
-    end = s.length();
-    String agent;
-    if (s.charAt(start) == '-') {
-      agent = "-";
-      start = start + 2;
-    } else {
-      end = s.indexOf("\"", start+1);
-      agent = s.substring(start+1, end);
-      start = end + 2;
-    }
-
-    if (!host.equals("-")) {
-      logEntry.setHost(host);
-    }
-
-    if (!rfc931.equals("-")) {
-      //logEntry.setHost(host);
-    }
-
-    if (!authuser.equals("-")) {
-      //logEntry.setUser(authuser);
-    }
-
+    final LogEntry[] logEntry = new LogEntry[1];
     try {
-      logEntry.setDate(dateFormatter.parse(date));
-    } catch (ParseException e) {
-      // ignore
-    }
-
-    logEntry.setRequest(request);
-
-    if (!statusCode.equals("-")) {
-      try {
-        logEntry.setStatusCode(Integer.parseInt(statusCode));
-      } catch (NumberFormatException e) {
-        // ignore
-      }
-    }
-
-    if (!bytes.equals("-")) {
-      try {
-        logEntry.setBytes(Long.parseLong(bytes));
-      } catch (NumberFormatException e) {
-        // ignore
-      }
+      codec.decode(ByteBuffer.wrap(s.getBytes("UTF-8")), new CombinedLogFormatVisitor() {
+        public void visit(CombinedLogFormatRecord record) {
+          logEntry[0] = record.toLogEntry();
+        }
+      }, true);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
     }
 
-    if (!referer.equals("-")) {
-      logEntry.setReferer(referer);
-    }
-
-    if (!agent.equals("-")) {
-      logEntry.setAgent(agent);
-    }
-
-    return logEntry;
+    return logEntry[0];
   }
 
 }
-
-
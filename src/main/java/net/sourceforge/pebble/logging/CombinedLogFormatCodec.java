@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A byte level encoder and decoder for the
+ * <a href="http://httpd.apache.org/docs/logs.html#combined">Combined Log Format</a>,
+ * working directly against reusable ByteBuffers.
+ * <p />
+ * Timestamps are only rebuilt when the minute changes (the seconds are
+ * patched in place), and decoding reuses the previous line's timestamp when
+ * only the seconds differ. Instances are not thread safe.
+ */
+public class CombinedLogFormatCodec {
+
+  /** the number of bytes in a timestamp, e.g. [10/Oct/2000:13:55:36 -0700] */
+  static final int TIMESTAMP_LENGTH = 28;
+
+  private static final int SECONDS_OFFSET = 19;
+  private static final int ZONE_OFFSET = 22;
+
+  private static final long ONE_MINUTE = 60 * 1000;
+
+  private static final byte[][] MONTHS = {
+      bytes("Jan"), bytes("Feb"), bytes("Mar"), bytes("Apr"), bytes("May"), bytes("Jun"),
+      bytes("Jul"), bytes("Aug"), bytes("Sep"), bytes("Oct"), bytes("Nov"), bytes("Dec")
+  };
+
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final TimeZone timeZone;
+  private final Calendar calendar;
+
+  /** the timestamp for the minute most recently encoded */
+  private final byte[] encodedTimestamp = new byte[TIMESTAMP_LENGTH];
+  private long encodedMinute = Long.MIN_VALUE;
+
+  /** the timestamp for the minute most recently decoded */
+  private final byte[] decodedTimestamp = new byte[TIMESTAMP_LENGTH];
+  private long decodedMinute = -1;
+
+  /** used for timestamps that weren't written in the default format */
+  private SimpleDateFormat fallbackDateFormat;
+
+  private final CombinedLogFormatRecord record = new CombinedLogFormatRecord();
+
+  private ByteBuffer readBuffer;
+
+  /**
+   * Creates a new codec that reads and writes timestamps in the given time zone.
+   *
+   * @param timeZone    a TimeZone instance
+   */
+  public CombinedLogFormatCodec(TimeZone timeZone) {
+    this.timeZone = timeZone;
+    this.calendar = Calendar.getInstance(timeZone, Locale.ENGLISH);
+  }
+
+  /**
+   * Encodes a log entry as a single line (terminated by a newline) into the
+   * given buffer.
+   *
+   * @param entry   a LogEntry instance
+   * @param buf     the buffer to write to
+   * @return  true if the line was written, false if there wasn't enough
+   *          space left (in which case the buffer is left untouched)
+   */
+  public boolean encode(LogEntry entry, ByteBuffer buf) {
+    int mark = buf.position();
+    try {
+      putOptional(buf, entry.getHost(), false);
+      buf.put((byte)' ').put((byte)'-').put((byte)' ').put((byte)'-').put((byte)' ');
+      buf.put(timestamp(entry.getDate().getTime()));
+      buf.put((byte)' ').put((byte)'"');
+      putString(buf, entry.getRequest());
+      buf.put((byte)'"').put((byte)' ');
+      putNumber(buf, entry.getStatusCode());
+      buf.put((byte)' ');
+      if (entry.getBytes() >= 0) {
+        putNumber(buf, entry.getBytes());
+      } else {
+        buf.put((byte)'-');
+      }
+      buf.put((byte)' ');
+      putOptional(buf, entry.getReferer(), true);
+      buf.put((byte)' ');
+      putOptional(buf, entry.getAgent(), true);
+      buf.put((byte)'\n');
+      return true;
+    } catch (BufferOverflowException e) {
+      buf.position(mark);
+      return false;
+    }
+  }
+
+  /**
+   * Decodes every complete line between the buffer's position and limit,
+   * passing each to the visitor. On return the position is left at the start
+   * of any trailing partial line, ready for the buffer to be compacted and
+   * refilled. Malformed lines are skipped.
+   *
+   * @param buf           the buffer to read from
+   * @param visitor       the visitor to call for each line
+   * @param endOfInput    true if a trailing line without a newline should
+   *                      also be decoded
+   */
+  public void decode(ByteBuffer buf, CombinedLogFormatVisitor visitor, boolean endOfInput) {
+    int start = buf.position();
+    int limit = buf.limit();
+    for (int i = start; i < limit; i++) {
+      if (buf.get(i) == '\n') {
+        decodeLine(buf, start, i, visitor);
+        start = i + 1;
+      }
+    }
+    if (endOfInput && start < limit) {
+      decodeLine(buf, start, limit, visitor);
+      start = limit;
+    }
+    buf.position(start);
+  }
+
+  /**
+   * Decodes every line read from the given channel, reusing a single
+   * buffer across calls.
+   *
+   * @param channel   the channel to read from
+   * @param visitor   the visitor to call for each line
+   */
+  public void decode(ReadableByteChannel channel, CombinedLogFormatVisitor visitor) throws IOException {
+    if (readBuffer == null) {
+      readBuffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+    }
+    ByteBuffer buf = readBuffer;
+    buf.clear();
+    while (channel.read(buf) != -1) {
+      if (!buf.hasRemaining()) {
+        buf.flip();
+        decode(buf, visitor, false);
+        if (buf.position() == 0) {
+          // a single line larger than the buffer
+          ByteBuffer larger = ByteBuffer.allocate(buf.capacity() * 2);
+          larger.put(buf);
+          readBuffer = buf = larger;
+        } else {
+          buf.compact();
+        }
+      }
+    }
+    buf.flip();
+    decode(buf, visitor, true);
+    buf.clear();
+  }
+
+  private void decodeLine(ByteBuffer buf, int start, int end, CombinedLogFormatVisitor visitor) {
+    if (end > start && buf.get(end - 1) == '\r') {
+      end--;
+    }
+    CombinedLogFormatRecord r = record;
+    r.reset(buf);
+
+    // host, rfc931 and authuser are separated by single spaces
+    int i = indexOf(buf, ' ', start, end);
+    if (i < 0) {
+      return;
+    }
+    if (i - start == 1 && buf.get(start) == '-') {
+      r.setHost(-1, -1);
+    } else {
+      r.setHost(start, i);
+    }
+    i = indexOf(buf, ' ', i + 1, end);
+    if (i < 0) {
+      return;
+    }
+    i = indexOf(buf, ' ', i + 1, end);
+    if (i < 0 || i + 1 >= end || buf.get(i + 1) != '[') {
+      return;
+    }
+
+    int timestampStart = i + 1;
+    int timestampEnd = indexOf(buf, ']', timestampStart, end);
+    if (timestampEnd < 0) {
+      return;
+    }
+    r.setTime(parseTimestamp(buf, timestampStart, timestampEnd + 1));
+
+    // the request runs until the closing quote
+    i = timestampEnd + 2;
+    if (i >= end || buf.get(i) != '"') {
+      return;
+    }
+    int requestEnd = indexOfQuote(buf, i + 1, end);
+    if (requestEnd < 0) {
+      return;
+    }
+    r.setRequest(i + 1, requestEnd);
+
+    i = requestEnd + 2;
+    int statusEnd = indexOf(buf, ' ', i, end);
+    if (statusEnd < 0) {
+      return;
+    }
+    long status = parseNumber(buf, i, statusEnd);
+    r.setStatusCode(status < 0 ? 200 : (int)status);
+
+    i = statusEnd + 1;
+    int bytesEnd = indexOf(buf, ' ', i, end);
+    if (bytesEnd < 0) {
+      return;
+    }
+    r.setBytes(parseNumber(buf, i, bytesEnd));
+
+    i = bytesEnd + 1;
+    if (i >= end) {
+      return;
+    }
+    if (buf.get(i) == '"') {
+      int refererEnd = indexOfQuote(buf, i + 1, end);
+      if (refererEnd < 0) {
+        return;
+      }
+      r.setReferer(i + 1, refererEnd);
+      i = refererEnd + 2;
+    } else {
+      r.setReferer(-1, -1);
+      i += 2;
+    }
+
+    // the agent is the last field, so runs to the final quote on the line
+    if (i < end && buf.get(i) == '"' && end - i >= 2 && buf.get(end - 1) == '"') {
+      r.setAgent(i + 1, end - 1);
+    } else {
+      r.setAgent(-1, -1);
+    }
+
+    visitor.visit(r);
+  }
+
+  /**
+   * Gets the encoded timestamp for the given time, only rebuilding it when
+   * the minute changes.
+   */
+  byte[] timestamp(long time) {
+    long minute = time - ((time % ONE_MINUTE) + ONE_MINUTE) % ONE_MINUTE;
+    if (minute != encodedMinute) {
+      calendar.setTimeInMillis(minute);
+      byte[] b = encodedTimestamp;
+      b[0] = '[';
+      putDigits(b, 1, calendar.get(Calendar.DAY_OF_MONTH), 2);
+      b[3] = '/';
+      System.arraycopy(MONTHS[calendar.get(Calendar.MONTH)], 0, b, 4, 3);
+      b[7] = '/';
+      putDigits(b, 8, calendar.get(Calendar.YEAR), 4);
+      b[12] = ':';
+      putDigits(b, 13, calendar.get(Calendar.HOUR_OF_DAY), 2);
+      b[15] = ':';
+      putDigits(b, 16, calendar.get(Calendar.MINUTE), 2);
+      b[18] = ':';
+      b[21] = ' ';
+      int offset = (calendar.get(Calendar.ZONE_OFFSET) + calendar.get(Calendar.DST_OFFSET)) / (int)ONE_MINUTE;
+      b[ZONE_OFFSET] = (byte)(offset < 0 ? '-' : '+');
+      offset = Math.abs(offset);
+      putDigits(b, ZONE_OFFSET + 1, offset / 60, 2);
+      putDigits(b, ZONE_OFFSET + 3, offset % 60, 2);
+      b[27] = ']';
+      encodedMinute = minute;
+    }
+    putDigits(encodedTimestamp, SECONDS_OFFSET, (int)((time - minute) / 1000), 2);
+    return encodedTimestamp;
+  }
+
+  /**
+   * Parses a timestamp, reusing the previous result when only the seconds
+   * have changed.
+   */
+  private long parseTimestamp(ByteBuffer buf, int start, int end) {
+    if (end - start != TIMESTAMP_LENGTH) {
+      return parseTimestampSlowly(buf, start, end);
+    }
+
+    byte[] last = decodedTimestamp;
+    boolean sameMinute = decodedMinute != -1;
+    for (int i = 0; sameMinute && i < TIMESTAMP_LENGTH; i++) {
+      if (i != SECONDS_OFFSET && i != SECONDS_OFFSET + 1 && buf.get(start + i) != last[i]) {
+        sameMinute = false;
+      }
+    }
+
+    int seconds = digits(buf, start + SECONDS_OFFSET, 2);
+    if (seconds < 0) {
+      return parseTimestampSlowly(buf, start, end);
+    }
+    if (sameMinute) {
+      return decodedMinute + seconds * 1000L;
+    }
+
+    int day = digits(buf, start + 1, 2);
+    int month = month(buf, start + 4);
+    int year = digits(buf, start + 8, 4);
+    int hour = digits(buf, start + 13, 2);
+    int minute = digits(buf, start + 16, 2);
+    int zoneHours = digits(buf, start + ZONE_OFFSET + 1, 2);
+    int zoneMinutes = digits(buf, start + ZONE_OFFSET + 3, 2);
+    byte sign = buf.get(start + ZONE_OFFSET);
+    if (day < 0 || month < 0 || year < 0 || hour < 0 || minute < 0 ||
+        zoneHours < 0 || zoneMinutes < 0 || (sign != '+' && sign != '-')) {
+      return parseTimestampSlowly(buf, start, end);
+    }
+
+    long offset = (zoneHours * 60 + zoneMinutes) * ONE_MINUTE;
+    if (sign == '-') {
+      offset = -offset;
+    }
+    long time = (((daysFromCivil(year, month + 1, day) * 24 + hour) * 60) + minute) * ONE_MINUTE - offset;
+
+    for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+      last[i] = buf.get(start + i);
+    }
+    decodedMinute = time;
+    return time + seconds * 1000L;
+  }
+
+  /**
+   * Handles timestamps written by older versions with locale specific
+   * month names.
+   */
+  private long parseTimestampSlowly(ByteBuffer buf, int start, int end) {
+    if (fallbackDateFormat == null) {
+      fallbackDateFormat = new SimpleDateFormat("[dd/MMM/yyyy:HH:mm:ss Z]");
+      fallbackDateFormat.setTimeZone(timeZone);
+    }
+    byte[] b = new byte[end - start];
+    for (int i = 0; i < b.length; i++) {
+      b[i] = buf.get(start + i);
+    }
+    try {
+      return fallbackDateFormat.parse(new String(b, "UTF-8")).getTime();
+    } catch (ParseException e) {
+      return -1;
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Gets the number of days since 1970-01-01 for a date in the proleptic
+   * Gregorian calendar.
+   */
+  static long daysFromCivil(int year, int month, int day) {
+    if (month <= 2) {
+      year--;
+    }
+    long era = (year >= 0 ? year : year - 399) / 400;
+    long yearOfEra = year - era * 400;
+    long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  private static int month(ByteBuffer buf, int start) {
+    for (int m = 0; m < MONTHS.length; m++) {
+      byte[] name = MONTHS[m];
+      if (buf.get(start) == name[0] && buf.get(start + 1) == name[1] && buf.get(start + 2) == name[2]) {
+        return m;
+      }
+    }
+    return -1;
+  }
+
+  private static int digits(ByteBuffer buf, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      int digit = buf.get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * Parses a non-negative number, returning -1 for "-" or anything else
+   * that isn't a number.
+   */
+  private static long parseNumber(ByteBuffer buf, int start, int end) {
+    if (start >= end) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = buf.get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static int indexOf(ByteBuffer buf, char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (buf.get(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the closing quote of a quoted field, which is the first quote
+   * followed by a space.
+   */
+  private static int indexOfQuote(ByteBuffer buf, int start, int end) {
+    for (int i = start; i < end - 1; i++) {
+      if (buf.get(i) == '"' && buf.get(i + 1) == ' ') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static void putDigits(byte[] b, int offset, int value, int count) {
+    for (int i = offset + count - 1; i >= offset; i--) {
+      b[i] = (byte)('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  private static void putNumber(ByteBuffer buf, long value) {
+    if (value < 0) {
+      buf.put((byte)'-');
+      value = -value;
+    }
+    long divisor = 1;
+    while (divisor <= value / 10) {
+      divisor *= 10;
+    }
+    while (divisor > 0) {
+      buf.put((byte)('0' + (value / divisor) % 10));
+      divisor /= 10;
+    }
+  }
+
+  private static void putOptional(ByteBuffer buf, String s, boolean quoted) {
+    if (s == null) {
+      buf.put((byte)'-');
+    } else if (quoted) {
+      buf.put((byte)'"');
+      putString(buf, s);
+      buf.put((byte)'"');
+    } else {
+      putString(buf, s);
+    }
+  }
+
+  /**
+   * Writes a String as UTF-8.
+   */
+  private static void putString(ByteBuffer buf, String s) {
+    if (s == null) {
+      return;
+    }
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        buf.put((byte)c);
+      } else if (c < 0x800) {
+        buf.put((byte)(0xc0 | (c >> 6)));
+        buf.put((byte)(0x80 | (c & 0x3f)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, s.charAt(++i));
+        buf.put((byte)(0xf0 | (codePoint >> 18)));
+        buf.put((byte)(0x80 | ((codePoint >> 12) & 0x3f)));
+        buf.put((byte)(0x80 | ((codePoint >> 6) & 0x3f)));
+        buf.put((byte)(0x80 | (codePoint & 0x3f)));
+      } else if (c >= 0xd800 && c <= 0xdfff) {
+        buf.put((byte)'?');
+      } else {
+        buf.put((byte)(0xe0 | (c >> 12)));
+        buf.put((byte)(0x80 | ((c >> 6) & 0x3f)));
+        buf.put((byte)(0x80 | (c & 0x3f)));
+      }
+    }
+  }
+
+  private static byte[] bytes(String s) {
+    byte[] b = new byte[s.length()];
+    for (int i = 0; i < b.length; i++) {
+      b[i] = (byte)s.charAt(i);
+    }
+    return b;
+  }
+
+}
@@ -33,9 +33,13 @@ package net.sourceforge.pebble.logging;
 
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.metrics.Gauge;
+import net.sourceforge.pebble.metrics.Metrics;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -52,15 +56,25 @@ public class CombinedLogFormatLogger extends AbstractLogger {
   private static final String REFERER_HEADER = "Referer";
   private static final String USER_AGENT_HEADER = "User-Agent";
   private static final int FLUSH_SIZE = 0;
+  private static final int WRITE_BUFFER_SIZE = 8 * 1024;
 
   /** the format of the log filenames */
   private SimpleDateFormat filenameFormat = new SimpleDateFormat("'blog-'yyyyMMdd'.log'");
 
   private List entries = new ArrayList();
 
+  /** encodes entries on the write path, guarded by this */
+  private CombinedLogFormatCodec writeCodec;
+  private ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+  /** decodes log files on the read path, guarded by itself */
+  private CombinedLogFormatCodec readCodec;
+
   public CombinedLogFormatLogger(Blog blog) {
     super(blog);
     filenameFormat.setTimeZone(blog.getTimeZone());
+    writeCodec = new CombinedLogFormatCodec(blog.getTimeZone());
+    readCodec = new CombinedLogFormatCodec(blog.getTimeZone());
   }
 
   /**
@@ -89,11 +103,14 @@ public class CombinedLogFormatLogger extends AbstractLogger {
   }
 
   private void flush() {
+    long startTime = System.nanoTime();
     try {
       write(entries);
       entries.clear();
     } catch (IOException ioe) {
       ioe.printStackTrace();
+    } finally {
+      Metrics.getInstance().timer("logger.flush", blog.getId()).stop(startTime);
     }
   }
 
@@ -101,6 +118,11 @@ public class CombinedLogFormatLogger extends AbstractLogger {
    * Called to start this logger.
    */
   public void start() {
+    Metrics.getInstance().gauge("logger.queueDepth", blog.getId(), new Gauge() {
+      public long getValue() {
+        return entries.size();
+      }
+    });
   }
 
   /**
@@ -149,25 +171,47 @@ public class CombinedLogFormatLogger extends AbstractLogger {
    * @return    a Log object
    */
   public Log getLog(int year, int month, int day) {
-    List logEntries = new ArrayList();
-    CombinedFormatLogEntryFormat format = new CombinedFormatLogEntryFormat(blog);
+    final List<LogEntry> logEntries = new ArrayList<LogEntry>();
+    visit(year, month, day, new CombinedLogFormatVisitor() {
+      public void visit(CombinedLogFormatRecord record) {
+        logEntries.add(record.toLogEntry());
+      }
+    });
 
-    try {
-      // read the file a line at a time, parsing into LogEntry objects
-      File file = new File(blog.getLogsDirectory(), getFilename(year, month, day));
-      if (file.exists()) {
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        String line = reader.readLine();
-        while (line != null) {
-          logEntries.add(format.parse(line));
-          line = reader.readLine();
+    return new Log(blog, logEntries);
+  }
+
+  /**
+   * Decodes each entry in the log for a given year, month and day, without
+   * creating LogEntry objects.
+   *
+   * @param year      the year to get entries for
+   * @param month     the month to get entries for
+   * @param day       the day to get entries for
+   * @param visitor   the visitor to call for each entry
+   */
+  public void visit(int year, int month, int day, CombinedLogFormatVisitor visitor) {
+    File file = new File(blog.getLogsDirectory(), getFilename(year, month, day));
+    if (!file.exists()) {
+      return;
+    }
+
+    synchronized (readCodec) {
+      FileInputStream in = null;
+      try {
+        in = new FileInputStream(file);
+        readCodec.decode(in.getChannel(), visitor);
+      } catch (IOException e) {
+        e.printStackTrace();
+      } finally {
+        if (in != null) {
+          try {
+            in.close();
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
         }
-        reader.close();
       }
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      return new Log(blog, logEntries);
     }
   }
 
@@ -184,25 +228,14 @@ public class CombinedLogFormatLogger extends AbstractLogger {
     cal.set(Calendar.YEAR, year);
     cal.set(Calendar.MONTH, month-1);
     cal.set(Calendar.DAY_OF_MONTH, day);
-    int totalRequests = 0;
-
-    try {
-      // read the file a line at a time
-      File file = new File(blog.getLogsDirectory(), getFilename(year, month, day));
-      if (file.exists()) {
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        String line = reader.readLine();
-        while (line != null) {
-          totalRequests++;
-          line = reader.readLine();
-        }
-        reader.close();
+    final int[] totalRequests = new int[1];
+    visit(year, month, day, new CombinedLogFormatVisitor() {
+      public void visit(CombinedLogFormatRecord record) {
+        totalRequests[0]++;
       }
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+    });
 
-    return new LogSummaryItem(blog, cal.getTime(), totalRequests);
+    return new LogSummaryItem(blog, cal.getTime(), totalRequests[0]);
   }
 
   /**
@@ -229,36 +262,58 @@ public class CombinedLogFormatLogger extends AbstractLogger {
    * @param entries   the list of entries to write
    */
   private void write(List entries) throws IOException {
-    CombinedFormatLogEntryFormat format = new CombinedFormatLogEntryFormat(blog);
-    File file;
-    BufferedWriter writer = null;
+    FileChannel channel = null;
     String currentFilename = "";
     String filename;
-    Iterator it = entries.iterator();
-    while (it.hasNext()) {
-      LogEntry entry = (LogEntry)it.next();
+    ByteBuffer buf = writeBuffer;
+    buf.clear();
+    try {
+      Iterator it = entries.iterator();
+      while (it.hasNext()) {
+        LogEntry entry = (LogEntry)it.next();
         filename = filenameFormat.format(entry.getDate());
         if (!filename.equals(currentFilename)) {
           // close the old file (if there is one)
-          if (writer != null) {
-            writer.flush();
-            writer.close();
+          if (channel != null) {
+            drain(buf, channel);
+            channel.close();
           }
 
           // and open a new file
           currentFilename = filename;
-          file = new File(blog.getLogsDirectory(), currentFilename);
-          writer = new BufferedWriter(new FileWriter(file, true));
+          File file = new File(blog.getLogsDirectory(), currentFilename);
+          channel = new FileOutputStream(file, true).getChannel();
+        }
+
+        while (!writeCodec.encode(entry, buf)) {
+          if (buf.position() == 0) {
+            // a single entry larger than the buffer
+            writeBuffer = buf = ByteBuffer.allocate(buf.capacity() * 2);
+          } else {
+            drain(buf, channel);
+          }
         }
+      }
 
-      writer.write(format.format(entry));
-      writer.newLine();
+      if (channel != null) {
+        drain(buf, channel);
+      }
+    } finally {
+      if (channel != null) {
+        channel.close();
+      }
     }
+  }
 
-    if (writer != null) {
-      writer.flush();
-      writer.close();
+  /**
+   * Writes out and clears the given buffer.
+   */
+  private void drain(ByteBuffer buf, FileChannel channel) throws IOException {
+    buf.flip();
+    while (buf.hasRemaining()) {
+      channel.write(buf);
     }
+    buf.clear();
   }
 
 }
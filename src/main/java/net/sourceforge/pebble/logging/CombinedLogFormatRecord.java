@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * A reusable view over a single decoded line in the combined log format.
+ * The numeric fields are decoded eagerly, while the textual fields are only
+ * turned into Strings when they are asked for.
+ */
+public class CombinedLogFormatRecord {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private ByteBuffer buffer;
+
+  private int hostStart, hostEnd;
+  private int requestStart, requestEnd;
+  private int refererStart, refererEnd;
+  private int agentStart, agentEnd;
+
+  private long time;
+  private int statusCode;
+  private long bytes;
+
+  private String host, request, referer, agent;
+
+  private char[] chars = new char[256];
+  private byte[] scratch = new byte[256];
+
+  void reset(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.host = null;
+    this.request = null;
+    this.referer = null;
+    this.agent = null;
+  }
+
+  void setHost(int start, int end) {
+    this.hostStart = start;
+    this.hostEnd = end;
+  }
+
+  void setRequest(int start, int end) {
+    this.requestStart = start;
+    this.requestEnd = end;
+  }
+
+  void setReferer(int start, int end) {
+    this.refererStart = start;
+    this.refererEnd = end;
+  }
+
+  void setAgent(int start, int end) {
+    this.agentStart = start;
+    this.agentEnd = end;
+  }
+
+  void setTime(long time) {
+    this.time = time;
+  }
+
+  void setStatusCode(int statusCode) {
+    this.statusCode = statusCode;
+  }
+
+  void setBytes(long bytes) {
+    this.bytes = bytes;
+  }
+
+  /**
+   * Gets the host that made the request.
+   *
+   * @return  the host as a String, or null if not logged
+   */
+  public String getHost() {
+    if (host == null && hostStart >= 0) {
+      host = decode(hostStart, hostEnd);
+    }
+    return host;
+  }
+
+  /**
+   * Gets the time of the request.
+   *
+   * @return  the time in milliseconds, or -1 if it couldn't be parsed
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * Gets the HTTP request (method and URI).
+   *
+   * @return  the request as a String
+   */
+  public String getRequest() {
+    if (request == null) {
+      request = decode(requestStart, requestEnd);
+    }
+    return request;
+  }
+
+  /**
+   * Gets the HTTP status code.
+   *
+   * @return  the status code
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * Gets the number of bytes sent.
+   *
+   * @return  the number of bytes, or -1 if not logged
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Gets the referer.
+   *
+   * @return  the referer as a String, or null if not logged
+   */
+  public String getReferer() {
+    if (referer == null && refererStart >= 0) {
+      referer = decode(refererStart, refererEnd);
+    }
+    return referer;
+  }
+
+  /**
+   * Gets the user agent.
+   *
+   * @return  the user agent as a String, or null if not logged
+   */
+  public String getAgent() {
+    if (agent == null && agentStart >= 0) {
+      agent = decode(agentStart, agentEnd);
+    }
+    return agent;
+  }
+
+  /**
+   * Determines whether the request URI starts with the given prefix,
+   * without creating a String for the request.
+   *
+   * @param prefix    an ASCII prefix (e.g. "/blog/images/")
+   * @return  true if the URI (after the method) starts with the prefix
+   */
+  public boolean requestUriStartsWith(String prefix) {
+    int i = requestStart;
+    while (i < requestEnd && buffer.get(i) != ' ') {
+      i++;
+    }
+    i++;
+    if (requestEnd - i < prefix.length()) {
+      return false;
+    }
+    for (int j = 0; j < prefix.length(); j++) {
+      if (buffer.get(i + j) != prefix.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Creates a LogEntry holding a copy of this record.
+   *
+   * @return  a new LogEntry instance
+   */
+  public LogEntry toLogEntry() {
+    LogEntry logEntry = new LogEntry();
+    logEntry.setHost(getHost());
+    if (time != -1) {
+      logEntry.setDate(new Date(time));
+    }
+    logEntry.setRequest(getRequest());
+    logEntry.setStatusCode(statusCode);
+    logEntry.setBytes(bytes);
+    logEntry.setReferer(getReferer());
+    logEntry.setAgent(getAgent());
+    return logEntry;
+  }
+
+  /**
+   * Turns a range of the buffer into a String, taking a fast path for
+   * plain ASCII and falling back to UTF-8 decoding otherwise.
+   */
+  private String decode(int start, int end) {
+    int length = end - start;
+    if (chars.length < length) {
+      chars = new char[Math.max(length, chars.length * 2)];
+    }
+    for (int i = 0; i < length; i++) {
+      byte b = buffer.get(start + i);
+      if (b < 0) {
+        if (scratch.length < length) {
+          scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int j = 0; j < length; j++) {
+          scratch[j] = buffer.get(start + j);
+        }
+        return new String(scratch, 0, length, UTF8);
+      }
+      chars[i] = (char)b;
+    }
+    return new String(chars, 0, length);
+  }
+
+}
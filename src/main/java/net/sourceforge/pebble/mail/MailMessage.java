@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.mail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An e-mail waiting in the outbox. A message either goes to all of its
+ * recipients at once or, if it has a personalization token, separately to
+ * each of its TO recipients with that token replaced by their address in
+ * the body (e.g. for opt-out links). Personalized messages are worked
+ * through one recipient at a time, so the list of recipients shrinks as
+ * they are sent.
+ */
+public class MailMessage {
+
+  private String id;
+  private String from;
+  private String fromName;
+  private List<String> to = new ArrayList<String>();
+  private List<String> cc = new ArrayList<String>();
+  private List<String> bcc = new ArrayList<String>();
+  private String subject;
+  private String body;
+  private String personalizationToken;
+
+  /** the number of delivery attempts that have failed */
+  private int attempts;
+
+  /** the time before which the message shouldn't be sent */
+  private long nextAttempt;
+
+  public MailMessage(String from, String fromName, Collection<String> to, String subject, String body) {
+    this.from = from;
+    this.fromName = fromName;
+    this.subject = subject;
+    this.body = body;
+    if (to != null) {
+      this.to.addAll(to);
+    }
+  }
+
+  /**
+   * Gets the ID of this message, assigned when it's added to the outbox.
+   */
+  public String getId() {
+    return id;
+  }
+
+  void setId(String id) {
+    this.id = id;
+  }
+
+  public String getFrom() {
+    return from;
+  }
+
+  public String getFromName() {
+    return fromName;
+  }
+
+  public List<String> getTo() {
+    return to;
+  }
+
+  public List<String> getCc() {
+    return cc;
+  }
+
+  public void setCc(Collection<String> cc) {
+    this.cc = new ArrayList<String>(cc);
+  }
+
+  public List<String> getBcc() {
+    return bcc;
+  }
+
+  public void setBcc(Collection<String> bcc) {
+    this.bcc = new ArrayList<String>(bcc);
+  }
+
+  public String getSubject() {
+    return subject;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  /**
+   * Gets the body of this message as sent to a given recipient.
+   *
+   * @param recipient   the e-mail address of the recipient
+   * @return  the body, personalized if this message has a personalization token
+   */
+  public String getBody(String recipient) {
+    if (personalizationToken == null) {
+      return body;
+    } else {
+      return body.replace(personalizationToken, recipient);
+    }
+  }
+
+  public String getPersonalizationToken() {
+    return personalizationToken;
+  }
+
+  public void setPersonalizationToken(String personalizationToken) {
+    this.personalizationToken = personalizationToken;
+  }
+
+  public boolean isPersonalized() {
+    return personalizationToken != null;
+  }
+
+  int getAttempts() {
+    return attempts;
+  }
+
+  void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  long getNextAttempt() {
+    return nextAttempt;
+  }
+
+  void setNextAttempt(long nextAttempt) {
+    this.nextAttempt = nextAttempt;
+  }
+
+}
@@ -0,0 +1,573 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.mail;
+
+import net.sourceforge.pebble.Configuration;
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.metrics.Gauge;
+import net.sourceforge.pebble.metrics.Metrics;
+import net.sourceforge.pebble.util.MailUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeUtility;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends e-mail in the background. Messages are written to a persistent
+ * outbox before being queued, and are sent by a configurable number of
+ * workers, each of which keeps its SMTP connection open while there is mail
+ * to send. Sending is rate limited across all workers. Messages that fail
+ * with a transient error are retried with exponential backoff; recipients
+ * that are rejected outright are dropped.
+ */
+public class MailQueue {
+
+  private static final Log log = LogFactory.getLog(MailQueue.class);
+
+  private static final String ENCODING = "UTF-8";
+
+  /** the name of the outbox directory, underneath the data directory */
+  public static final String OUTBOX_DIRECTORY = "outbox";
+
+  /** how long a worker holds on to an idle connection */
+  private static final long IDLE_TIMEOUT = 1000 * 5;
+
+  /** connections are recycled after this many messages */
+  private static final int MAXIMUM_MESSAGES_PER_CONNECTION = 100;
+
+  /** personalized messages record their progress every so many recipients */
+  private static final int PROGRESS_INTERVAL = 50;
+
+  /** the number of attempts made to deliver a message before giving up */
+  static final int MAXIMUM_ATTEMPTS = 8;
+
+  private static MailQueue instance;
+
+  private final Outbox outbox;
+  private final int threads;
+  private final RateLimiter rateLimiter;
+  private final DelayQueue<QueuedMessage> queue = new DelayQueue<QueuedMessage>();
+  private final List<Thread> workers = new ArrayList<Thread>();
+
+  /** the delay before the first retry, doubling on each subsequent attempt */
+  private volatile long retryDelay = 1000 * 60;
+
+  private volatile boolean running;
+
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong retried = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong connections = new AtomicLong();
+
+  /**
+   * Creates a new mail queue.
+   *
+   * @param directory           the outbox directory
+   * @param threads             the number of workers sending mail
+   * @param messagesPerSecond   the maximum rate at which mail is sent, or 0 for no limit
+   */
+  public MailQueue(File directory, int threads, double messagesPerSecond) {
+    this.outbox = new Outbox(directory);
+    this.threads = Math.max(1, threads);
+    this.rateLimiter = new RateLimiter(messagesPerSecond);
+  }
+
+  /**
+   * Gets the mail queue configured for this Pebble instance.
+   *
+   * @return  a MailQueue instance
+   */
+  public static synchronized MailQueue getInstance() {
+    if (instance == null) {
+      Configuration config = PebbleContext.getInstance().getConfiguration();
+      instance = new MailQueue(new File(config.getDataDirectory(), OUTBOX_DIRECTORY),
+          config.getMailThreads(), config.getMailRateLimit());
+    }
+
+    return instance;
+  }
+
+  void setRetryDelay(long retryDelay) {
+    this.retryDelay = retryDelay;
+  }
+
+  /**
+   * Starts the workers, queueing anything left in the outbox.
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+
+    running = true;
+    List<MailMessage> messages = outbox.load();
+    for (MailMessage message : messages) {
+      queue.add(new QueuedMessage(message));
+    }
+    if (!messages.isEmpty()) {
+      log.info("Resuming delivery of " + messages.size() + " message(s) from the outbox");
+    }
+
+    registerMetrics();
+
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(new Worker(), "pebble-mail-" + (i+1));
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+  }
+
+  private void registerMetrics() {
+    Metrics metrics = Metrics.getInstance();
+    metrics.gauge("mail.queueSize", null, new Gauge() {
+      public long getValue() {
+        return getQueueSize();
+      }
+    });
+    metrics.gauge("mail.sent", null, new Gauge() {
+      public long getValue() {
+        return getSentCount();
+      }
+    });
+    metrics.gauge("mail.retries", null, new Gauge() {
+      public long getValue() {
+        return getRetryCount();
+      }
+    });
+    metrics.gauge("mail.failed", null, new Gauge() {
+      public long getValue() {
+        return getFailedCount();
+      }
+    });
+  }
+
+  /**
+   * Stops the workers. Anything not yet sent stays in the outbox.
+   */
+  public synchronized void stop() {
+    running = false;
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join(IDLE_TIMEOUT);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    workers.clear();
+    queue.clear();
+  }
+
+  /**
+   * Adds a message to the outbox and queues it for delivery, starting the
+   * workers if necessary.
+   *
+   * @param message   the MailMessage to send
+   * @throws IOException  if the message can't be written to the outbox
+   */
+  public synchronized void send(MailMessage message) throws IOException {
+    // under the same lock as start(), so that the message is either loaded from the outbox or queued here, never both
+    outbox.add(message);
+    if (running) {
+      queue.add(new QueuedMessage(message));
+    } else {
+      // this picks up the message from the outbox
+      start();
+    }
+  }
+
+  /** the number of messages waiting to be sent (including those due to be retried) */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /** the number of e-mails that have been sent */
+  public long getSentCount() {
+    return sent.get();
+  }
+
+  /** the number of times delivery has been deferred after a transient failure */
+  public long getRetryCount() {
+    return retried.get();
+  }
+
+  /** the number of e-mails (or recipients) that couldn't be delivered */
+  public long getFailedCount() {
+    return failed.get();
+  }
+
+  /** the number of SMTP connections that have been opened */
+  public long getConnectionCount() {
+    return connections.get();
+  }
+
+  /**
+   * Creates the JavaMail session used to send mail.
+   */
+  Session createSession() throws Exception {
+    return MailUtils.createSession();
+  }
+
+  /**
+   * Sends as much of a message as possible over the given connection.
+   *
+   * @return  the number of e-mails sent
+   */
+  private int deliver(MailMessage message, Connection connection) throws Exception {
+    if (!message.isPersonalized()) {
+      MimeMessage mimeMessage = createMimeMessage(connection.getSession(), message, message.getTo(), message.getBody());
+      addRecipients(mimeMessage, Message.RecipientType.CC, message.getCc());
+      addRecipients(mimeMessage, Message.RecipientType.BCC, message.getBcc());
+      connection.send(mimeMessage);
+      return 1;
+    }
+
+    int count = 0;
+    Iterator<String> recipients = message.getTo().iterator();
+    while (recipients.hasNext()) {
+      String recipient = recipients.next();
+      List<String> to = new ArrayList<String>();
+      to.add(recipient);
+      try {
+        connection.send(createMimeMessage(connection.getSession(), message, to, message.getBody(recipient)));
+        count++;
+      } catch (SendFailedException sfe) {
+        if (!isRejected(sfe)) {
+          throw sfe;
+        }
+        log.warn("E-mail to " + recipient + " was rejected: " + sfe.getMessage());
+        failed.incrementAndGet();
+      }
+      recipients.remove();
+
+      if (count % PROGRESS_INTERVAL == 0 && recipients.hasNext()) {
+        // so that a restart doesn't send this batch again
+        outbox.save(message);
+      }
+    }
+
+    return count;
+  }
+
+  private MimeMessage createMimeMessage(Session session, MailMessage message, List<String> to, String body) throws MessagingException, IOException {
+    MimeMessage mimeMessage = new MimeMessage(session);
+    mimeMessage.setFrom(new InternetAddress(message.getFrom(), MimeUtility.encodeText(message.getFromName(), ENCODING, "B")));
+    addRecipients(mimeMessage, Message.RecipientType.TO, to);
+    mimeMessage.setSubject(MimeUtility.encodeText(message.getSubject(), ENCODING, "B"));
+    mimeMessage.setSentDate(new Date());
+    mimeMessage.setContent(body, "text/html; charset=" + ENCODING);
+    mimeMessage.saveChanges();
+
+    return mimeMessage;
+  }
+
+  private void addRecipients(MimeMessage mimeMessage, Message.RecipientType type, List<String> addresses) throws MessagingException {
+    if (!addresses.isEmpty()) {
+      List<InternetAddress> internetAddresses = new ArrayList<InternetAddress>();
+      for (String address : addresses) {
+        internetAddresses.add(new InternetAddress(address));
+      }
+      mimeMessage.addRecipients(type, internetAddresses.toArray(new InternetAddress[internetAddresses.size()]));
+    }
+  }
+
+  /**
+   * Determines whether the server rejected every recipient outright, in
+   * which case there's no point trying again.
+   */
+  private boolean isRejected(SendFailedException sfe) {
+    Address[] invalid = sfe.getInvalidAddresses();
+    Address[] validUnsent = sfe.getValidUnsentAddresses();
+    return invalid != null && invalid.length > 0 && (validUnsent == null || validUnsent.length == 0);
+  }
+
+  private void process(MailMessage message, Connection connection) {
+    try {
+      int count = deliver(message, connection);
+      sent.addAndGet(count);
+      outbox.remove(message);
+    } catch (SendFailedException sfe) {
+      if (isRejected(sfe)) {
+        log.error("E-mail \"" + message.getSubject() + "\" was rejected: " + sfe.getMessage());
+        failed.incrementAndGet();
+        outbox.fail(message);
+      } else if (message.isPersonalized()) {
+        // the recipients that have been dealt with are already gone
+        retry(message, sfe);
+      } else {
+        Address[] invalid = sfe.getInvalidAddresses();
+        retainRecipients(message, sfe.getValidUnsentAddresses());
+        if (invalid != null && invalid.length > 0) {
+          // the rest of the recipients are fine, so send to them straight away
+          log.warn("E-mail \"" + message.getSubject() + "\" was rejected for " + Arrays.toString(invalid) + ": " + sfe.getMessage());
+          failed.addAndGet(invalid.length);
+          requeue(message);
+        } else {
+          retry(message, sfe);
+        }
+      }
+    } catch (Exception e) {
+      connection.close();
+      retry(message, e);
+    }
+  }
+
+  /**
+   * Narrows down the recipients of a message to those it still needs to go to.
+   */
+  private void retainRecipients(MailMessage message, Address[] unsent) {
+    if (unsent == null || unsent.length == 0) {
+      return;
+    }
+
+    Set<String> addresses = new HashSet<String>();
+    for (Address address : unsent) {
+      addresses.add(toString(address));
+    }
+    retainRecipients(message.getTo(), addresses);
+    retainRecipients(message.getCc(), addresses);
+    retainRecipients(message.getBcc(), addresses);
+  }
+
+  private void retainRecipients(List<String> recipients, Set<String> addresses) {
+    Iterator<String> it = recipients.iterator();
+    while (it.hasNext()) {
+      if (!addresses.contains(it.next().toLowerCase())) {
+        it.remove();
+      }
+    }
+  }
+
+  private static String toString(Address address) {
+    if (address instanceof InternetAddress) {
+      return ((InternetAddress)address).getAddress().toLowerCase();
+    } else {
+      return address.toString().toLowerCase();
+    }
+  }
+
+  private void requeue(MailMessage message) {
+    try {
+      outbox.save(message);
+    } catch (IOException ioe) {
+      log.warn("Could not save " + message.getId() + " to the outbox", ioe);
+    }
+    if (running) {
+      queue.add(new QueuedMessage(message));
+    }
+  }
+
+  private void retry(MailMessage message, Exception e) {
+    int attempts = message.getAttempts() + 1;
+    message.setAttempts(attempts);
+    if (attempts >= MAXIMUM_ATTEMPTS) {
+      log.error("Giving up on e-mail \"" + message.getSubject() + "\" after " + attempts + " attempts", e);
+      failed.incrementAndGet();
+      outbox.fail(message);
+      return;
+    }
+
+    long delay = retryDelay << (attempts - 1);
+    message.setNextAttempt(System.currentTimeMillis() + delay);
+    log.warn("E-mail \"" + message.getSubject() + "\" could not be sent, retrying in " + (delay / 1000) + "s: " + e.getMessage());
+    retried.incrementAndGet();
+    requeue(message);
+  }
+
+  /**
+   * Takes messages off the queue and sends them, keeping the connection open
+   * while there's more to send.
+   */
+  private class Worker implements Runnable {
+
+    public void run() {
+      Connection connection = new Connection();
+      try {
+        while (running) {
+          QueuedMessage next;
+          if (connection.isOpen()) {
+            next = queue.poll(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (next == null) {
+              connection.close();
+              continue;
+            }
+          } else {
+            next = queue.take();
+          }
+
+          process(next.getMessage(), connection);
+        }
+      } catch (InterruptedException ie) {
+        // we're being stopped
+      } finally {
+        connection.close();
+      }
+    }
+
+  }
+
+  /**
+   * A worker's SMTP connection, opened when first needed.
+   */
+  private class Connection {
+
+    private Session session;
+    private Transport transport;
+    private int messages;
+
+    Session getSession() throws Exception {
+      if (session == null) {
+        session = createSession();
+      }
+      return session;
+    }
+
+    boolean isOpen() {
+      return transport != null;
+    }
+
+    void send(MimeMessage message) throws Exception {
+      if (transport == null || !transport.isConnected() || messages >= MAXIMUM_MESSAGES_PER_CONNECTION) {
+        close();
+        transport = getSession().getTransport("smtp");
+        transport.connect();
+        connections.incrementAndGet();
+        messages = 0;
+      }
+
+      rateLimiter.acquire();
+      transport.sendMessage(message, message.getAllRecipients());
+      messages++;
+    }
+
+    void close() {
+      if (transport != null) {
+        try {
+          transport.close();
+        } catch (MessagingException me) {
+          // ignore
+        }
+        transport = null;
+      }
+      // JNDI sessions may be reconfigured, so look it up again next time
+      session = null;
+    }
+
+  }
+
+  /**
+   * A message on the queue, which becomes available at its next attempt time.
+   */
+  private static class QueuedMessage implements Delayed {
+
+    private final MailMessage message;
+    private final long time;
+
+    QueuedMessage(MailMessage message) {
+      this.message = message;
+      this.time = message.getNextAttempt();
+    }
+
+    MailMessage getMessage() {
+      return message;
+    }
+
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public int compareTo(Delayed other) {
+      long diff = time - ((QueuedMessage)other).time;
+      return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+    }
+
+  }
+
+  /**
+   * Spaces out sends so that they don't exceed a given rate.
+   */
+  private static class RateLimiter {
+
+    private final long interval;
+    private long next;
+
+    RateLimiter(double permitsPerSecond) {
+      this.interval = permitsPerSecond > 0 ? (long)(1000000000L / permitsPerSecond) : 0;
+    }
+
+    void acquire() throws InterruptedException {
+      if (interval == 0) {
+        return;
+      }
+
+      long wait;
+      synchronized (this) {
+        long now = System.nanoTime();
+        if (next < now) {
+          next = now;
+        }
+        wait = next - now;
+        next += interval;
+      }
+      if (wait > 0) {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      }
+    }
+
+  }
+
+}
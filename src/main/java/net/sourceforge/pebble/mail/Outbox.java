@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.mail;
+
+import net.sourceforge.pebble.util.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A directory of messages waiting to be sent, one properties file per
+ * message, so that queued mail survives a restart. Messages that can't be
+ * delivered are moved into a "failed" subdirectory.
+ */
+class Outbox {
+
+  private static final Log log = LogFactory.getLog(Outbox.class);
+
+  private static final String SUFFIX = ".properties";
+  private static final String FAILED_DIRECTORY = "failed";
+
+  private static final String FROM = "from";
+  private static final String FROM_NAME = "fromName";
+  private static final String TO = "to";
+  private static final String CC = "cc";
+  private static final String BCC = "bcc";
+  private static final String SUBJECT = "subject";
+  private static final String BODY = "body";
+  private static final String PERSONALIZATION_TOKEN = "personalizationToken";
+  private static final String ATTEMPTS = "attempts";
+  private static final String NEXT_ATTEMPT = "nextAttempt";
+
+  private final File directory;
+
+  /** used to give messages queued in the same millisecond distinct IDs */
+  private final AtomicLong sequence = new AtomicLong();
+
+  Outbox(File directory) {
+    this.directory = directory;
+  }
+
+  File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Adds a message to the outbox, assigning it an ID.
+   */
+  void add(MailMessage message) throws IOException {
+    message.setId(System.currentTimeMillis() + "-" + sequence.incrementAndGet());
+    save(message);
+  }
+
+  /**
+   * Saves the current state of a message.
+   */
+  void save(MailMessage message) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Can't create outbox directory " + directory);
+    }
+
+    Properties properties = new Properties();
+    set(properties, FROM, message.getFrom());
+    set(properties, FROM_NAME, message.getFromName());
+    set(properties, TO, join(message.getTo()));
+    set(properties, CC, join(message.getCc()));
+    set(properties, BCC, join(message.getBcc()));
+    set(properties, SUBJECT, message.getSubject());
+    set(properties, BODY, message.getBody());
+    set(properties, PERSONALIZATION_TOKEN, message.getPersonalizationToken());
+    properties.setProperty(ATTEMPTS, Integer.toString(message.getAttempts()));
+    properties.setProperty(NEXT_ATTEMPT, Long.toString(message.getNextAttempt()));
+
+    // so that a crash never leaves a partial message
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    properties.store(out, null);
+    FileUtils.writeAtomically(getFile(message), out.toByteArray());
+  }
+
+  /**
+   * Removes a message that has been sent.
+   */
+  void remove(MailMessage message) {
+    File file = getFile(message);
+    if (!file.delete() && file.exists()) {
+      log.warn("Could not remove " + file + " from the outbox");
+    }
+  }
+
+  /**
+   * Moves a message that couldn't be delivered out of the way.
+   */
+  void fail(MailMessage message) {
+    File failed = new File(directory, FAILED_DIRECTORY);
+    failed.mkdirs();
+    File file = getFile(message);
+    if (!file.renameTo(new File(failed, file.getName()))) {
+      remove(message);
+    }
+  }
+
+  /**
+   * Loads all of the messages in the outbox, oldest first.
+   */
+  List<MailMessage> load() {
+    List<MailMessage> messages = new ArrayList<MailMessage>();
+    File[] files = directory.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.endsWith(SUFFIX) && !name.startsWith(".");
+      }
+    });
+    if (files == null) {
+      return messages;
+    }
+
+    Arrays.sort(files);
+    for (File file : files) {
+      try {
+        messages.add(load(file));
+      } catch (IOException ioe) {
+        log.warn("Could not read " + file + " from the outbox", ioe);
+      }
+    }
+
+    return messages;
+  }
+
+  private MailMessage load(File file) throws IOException {
+    Properties properties = new Properties();
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      properties.load(in);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+
+    MailMessage message = new MailMessage(
+        properties.getProperty(FROM),
+        properties.getProperty(FROM_NAME),
+        split(properties.getProperty(TO)),
+        properties.getProperty(SUBJECT),
+        properties.getProperty(BODY));
+    message.setId(file.getName().substring(0, file.getName().length() - SUFFIX.length()));
+    message.setCc(split(properties.getProperty(CC)));
+    message.setBcc(split(properties.getProperty(BCC)));
+    message.setPersonalizationToken(properties.getProperty(PERSONALIZATION_TOKEN));
+    try {
+      message.setAttempts(Integer.parseInt(properties.getProperty(ATTEMPTS, "0")));
+      message.setNextAttempt(Long.parseLong(properties.getProperty(NEXT_ATTEMPT, "0")));
+    } catch (NumberFormatException nfe) {
+      // send it now
+    }
+
+    return message;
+  }
+
+  private File getFile(MailMessage message) {
+    return new File(directory, message.getId() + SUFFIX);
+  }
+
+  private static void set(Properties properties, String key, String value) {
+    if (value != null) {
+      properties.setProperty(key, value);
+    }
+  }
+
+  private static String join(List<String> addresses) {
+    StringBuilder buf = new StringBuilder();
+    for (String address : addresses) {
+      if (buf.length() > 0) {
+        buf.append('\n');
+      }
+      buf.append(address);
+    }
+    return buf.toString();
+  }
+
+  private static List<String> split(String addresses) {
+    if (addresses == null || addresses.length() == 0) {
+      return Collections.emptyList();
+    }
+    return Arrays.asList(addresses.split("\n"));
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.metrics;
+
+/**
+ * Identifies a metric by name and, optionally, the blog it belongs to.
+ */
+public final class MetricName implements Comparable<MetricName> {
+
+  private final String name;
+  private final String blogId;
+
+  /**
+   * Creates a new name.
+   *
+   * @param name      the name of the metric, e.g. "search.query"
+   * @param blogId    the ID of the blog, or null (or an empty string) for
+   *                  metrics that aren't specific to a blog
+   */
+  public MetricName(String name, String blogId) {
+    this.name = name;
+    this.blogId = (blogId == null || blogId.length() == 0) ? null : blogId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getBlogId() {
+    return blogId;
+  }
+
+  public int compareTo(MetricName other) {
+    if (blogId == null && other.blogId != null) {
+      return -1;
+    } else if (blogId != null && other.blogId == null) {
+      return 1;
+    } else if (blogId != null) {
+      int result = blogId.compareTo(other.blogId);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return name.compareTo(other.name);
+  }
+
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof MetricName)) {
+      return false;
+    }
+    MetricName other = (MetricName)o;
+    return name.equals(other.name) && (blogId == null ? other.blogId == null : blogId.equals(other.blogId));
+  }
+
+  public int hashCode() {
+    return 31 * name.hashCode() + (blogId == null ? 0 : blogId.hashCode());
+  }
+
+  public String toString() {
+    return blogId == null ? name : name + "{blog=\"" + blogId + "\"}";
+  }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of runtime metrics (counters, timers and gauges), optionally
+ * exposed as MBeans in the "net.sourceforge.pebble" JMX domain. Metrics are
+ * created the first time they are asked for, so instrumented code simply
+ * looks up and updates them:
+ *
+ * <pre>
+ * Metrics.getInstance().counter("contentCache.hits", blog.getId()).increment();
+ * </pre>
+ */
+public class Metrics {
+
+  /** the JMX domain under which metrics are registered */
+  public static final String JMX_DOMAIN = "net.sourceforge.pebble";
+
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(Metrics.class);
+
+  private static final Metrics instance = new Metrics();
+
+  private final ConcurrentMap<MetricName,Object> metrics = new ConcurrentHashMap<MetricName,Object>();
+
+  /** the server metrics are registered with, or null if JMX is off */
+  private MBeanServer mbeanServer;
+
+  Metrics() {
+  }
+
+  public static Metrics getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets (creating if necessary) the named counter.
+   *
+   * @param name    the name of the metric
+   * @param blogId  the blog ID, or null
+   */
+  public Counter counter(String name, String blogId) {
+    MetricName metricName = new MetricName(name, blogId);
+    Object metric = metrics.get(metricName);
+    if (metric == null) {
+      metric = add(metricName, new Counter());
+    }
+    return (Counter)metric;
+  }
+
+  /**
+   * Gets (creating if necessary) the named timer.
+   *
+   * @param name    the name of the metric
+   * @param blogId  the blog ID, or null
+   */
+  public Timer timer(String name, String blogId) {
+    MetricName metricName = new MetricName(name, blogId);
+    Object metric = metrics.get(metricName);
+    if (metric == null) {
+      metric = add(metricName, new Timer());
+    }
+    return (Timer)metric;
+  }
+
+  /**
+   * Registers a gauge, replacing any gauge previously registered under
+   * the same name (e.g. by an earlier instance of a restarted blog).
+   *
+   * @param name    the name of the metric
+   * @param blogId  the blog ID, or null
+   * @param gauge   the Gauge to read
+   */
+  public void gauge(String name, String blogId, Gauge gauge) {
+    MetricName metricName = new MetricName(name, blogId);
+    synchronized (this) {
+      Object previous = metrics.put(metricName, gauge);
+      if (previous != null) {
+        unregister(metricName);
+      }
+      register(metricName, gauge);
+    }
+  }
+
+  private Object add(MetricName metricName, Object metric) {
+    Object existing = metrics.putIfAbsent(metricName, metric);
+    if (existing != null) {
+      return existing;
+    }
+
+    synchronized (this) {
+      register(metricName, metric);
+    }
+    return metric;
+  }
+
+  /**
+   * Gets all metrics, sorted by blog and then by name.
+   */
+  public SortedMap<MetricName,Object> getMetrics() {
+    return new TreeMap<MetricName,Object>(metrics);
+  }
+
+  /**
+   * Gets the metrics for a single blog, together with those that don't
+   * belong to any blog.
+   *
+   * @param blogId    the blog ID
+   */
+  public SortedMap<MetricName,Object> getMetrics(String blogId) {
+    SortedMap<MetricName,Object> result = new TreeMap<MetricName,Object>();
+    for (Map.Entry<MetricName,Object> entry : metrics.entrySet()) {
+      String id = entry.getKey().getBlogId();
+      if (id == null || id.equals(blogId)) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Registers all current and future metrics with the given MBean server.
+   *
+   * @param server    an MBeanServer, typically the platform MBean server
+   */
+  public synchronized void registerMBeans(MBeanServer server) {
+    unregisterMBeans();
+    this.mbeanServer = server;
+    for (Map.Entry<MetricName,Object> entry : metrics.entrySet()) {
+      register(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Removes all metrics from the MBean server they were registered with.
+   */
+  public synchronized void unregisterMBeans() {
+    if (mbeanServer != null) {
+      for (MetricName metricName : metrics.keySet()) {
+        unregister(metricName);
+      }
+      mbeanServer = null;
+    }
+  }
+
+  /**
+   * Forgets all metrics.
+   */
+  public synchronized void clear() {
+    unregisterMBeans();
+    metrics.clear();
+  }
+
+  private void register(MetricName metricName, Object metric) {
+    if (mbeanServer == null) {
+      return;
+    }
+
+    try {
+      Object mbean = metric;
+      if (metric instanceof Gauge) {
+        mbean = new StandardMBean((Gauge)metric, Gauge.class);
+      }
+      ObjectName objectName = getObjectName(metricName, metric);
+      if (!mbeanServer.isRegistered(objectName)) {
+        mbeanServer.registerMBean(mbean, objectName);
+      }
+    } catch (Exception e) {
+      log.warn("Could not register " + metricName + " with JMX", e);
+    }
+  }
+
+  private void unregister(MetricName metricName) {
+    if (mbeanServer == null) {
+      return;
+    }
+
+    try {
+      for (ObjectName objectName : mbeanServer.queryNames(getObjectNamePattern(metricName), null)) {
+        mbeanServer.unregisterMBean(objectName);
+      }
+    } catch (Exception e) {
+      log.warn("Could not unregister " + metricName + " from JMX", e);
+    }
+  }
+
+  static ObjectName getObjectName(MetricName metricName, Object metric) throws Exception {
+    String type = metric instanceof Gauge ? "Gauge" : metric.getClass().getSimpleName();
+    StringBuilder buf = new StringBuilder(JMX_DOMAIN);
+    buf.append(":type=").append(type);
+    if (metricName.getBlogId() != null) {
+      buf.append(",blog=").append(ObjectName.quote(metricName.getBlogId()));
+    }
+    buf.append(",name=").append(ObjectName.quote(metricName.getName()));
+    return new ObjectName(buf.toString());
+  }
+
+  private static ObjectName getObjectNamePattern(MetricName metricName) throws Exception {
+    StringBuilder buf = new StringBuilder(JMX_DOMAIN);
+    buf.append(":type=*");
+    if (metricName.getBlogId() != null) {
+      buf.append(",blog=").append(ObjectName.quote(metricName.getBlogId()));
+    }
+    buf.append(",name=").append(ObjectName.quote(metricName.getName()));
+    return new ObjectName(buf.toString());
+  }
+
+}
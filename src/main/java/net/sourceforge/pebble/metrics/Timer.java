@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.metrics;
+
+/**
+ * Records how long something takes, with a histogram of durations kept at
+ * microsecond resolution. Typical usage is:
+ *
+ * <pre>
+ * long start = System.nanoTime();
+ * try {
+ *   ...
+ * } finally {
+ *   timer.stop(start);
+ * }
+ * </pre>
+ */
+public class Timer implements TimerMBean {
+
+  private final Histogram histogram = new Histogram();
+
+  /**
+   * Records the time elapsed since the given start time.
+   *
+   * @param startTime   a value previously returned by System.nanoTime()
+   */
+  public void stop(long startTime) {
+    update(System.nanoTime() - startTime);
+  }
+
+  /**
+   * Records a duration.
+   *
+   * @param nanos   the duration, in nanoseconds
+   */
+  public void update(long nanos) {
+    histogram.update(nanos / 1000);
+  }
+
+  public Histogram getHistogram() {
+    return histogram;
+  }
+
+  public long getCount() {
+    return histogram.getCount();
+  }
+
+  public double getMean() {
+    return histogram.getMean() / 1000;
+  }
+
+  public double getMax() {
+    return histogram.getMax() / 1000.0;
+  }
+
+  public double getPercentile(double percentile) {
+    return histogram.getValueAtPercentile(percentile) / 1000.0;
+  }
+
+  public double get50thPercentile() {
+    return getPercentile(50);
+  }
+
+  public double get95thPercentile() {
+    return getPercentile(95);
+  }
+
+  public double get99thPercentile() {
+    return getPercentile(99);
+  }
+
+  public double get999thPercentile() {
+    return getPercentile(99.9);
+  }
+
+}
@@ -46,11 +46,20 @@ import org.springframework.security.authentication.encoding.PasswordEncoder;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Implementation of the SecurityRealm that gets authentication
  * credentials from the blog directory.
  *
+ * The user files are held in memory as an immutable snapshot, so that
+ * lookups (which happen on every authenticated request) need neither file
+ * I/O nor a lock. Updates are written through to disk and then published as
+ * a new snapshot, and the realm directory is rescanned every few seconds
+ * so that files edited outside of Pebble are still picked up. Only one
+ * request thread performs that rescan; the others carry on with the
+ * current snapshot in the meantime.
+ *
  * @author    Simon Brown
  */
 public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener {
@@ -74,11 +83,20 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
 
   private SaltSource saltSource;
 
-  /** Map of open ids to users, cached in a copy on write map */
-  private volatile Map<String, String> openIdMap;
+  /** how often (in ms) the realm directory is checked for changes made outside of Pebble */
+  private long changeDetectionInterval = 5 * 1000;
+
+  /** the current, immutable, view of the realm - replaced (never modified) on change */
+  private volatile Snapshot snapshot;
+
+  /** when the realm directory was last checked for changes */
+  private volatile long lastChecked;
+
+  /** whether a thread is currently checking the realm directory for changes */
+  private final AtomicBoolean checking = new AtomicBoolean();
 
   /**
-   * Creates the underlying security realm upon creation, if necessary, and initialises the openIdMap.
+   * Creates the underlying security realm upon creation, if necessary, and loads the users.
    *
    * Note, this used to be an init method for the bean, however, due to a circular dependency between this bean and the
    * Pebble configuration bean, it was possible for the Pebble configuration to have been injected and the init method
@@ -101,15 +119,9 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
       }
 
       try {
-        // Initialise open id map
-        openIdMap = new HashMap<String, String>();
-        for (PebbleUserDetails user : getUsers()) {
-          for (String openId : user.getOpenIds()) {
-            openIdMap.put(openId, user.getUsername());
-          }
-        }
+        reload(true);
       } catch (SecurityRealmException e) {
-        log.error("Error initialising open ids map", e);
+        log.error("Error loading security realm", e);
       }
     }
   }
@@ -119,28 +131,10 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
    *
    * @return  a Collection of PebbleUserDetails objects
    */
-  public synchronized Collection<PebbleUserDetails> getUsers() throws SecurityRealmException {
+  public Collection<PebbleUserDetails> getUsers() throws SecurityRealmException {
     LinkedList<PebbleUserDetails> users = new LinkedList<PebbleUserDetails>();
-    File realm = getFileForRealm();
-    File files[] = realm.listFiles(new FilenameFilter() {
-      /**
-       * Tests if a specified file should be included in a file list.
-       *
-       * @param dir  the directory in which the file was found.
-       * @param name the name of the file.
-       * @return <code>true</code> if and only if the name should be
-       *         included in the file list; <code>false</code> otherwise.
-       */
-      public boolean accept(File dir, String name) {
-        return name.endsWith(".properties");
-      }
-    });
-
-    for (File file : files) {
-      PebbleUserDetails pud = getUser(file.getName().substring(0, file.getName().lastIndexOf(".")));
-      if (pud != null) {
-        users.add(pud);
-      }
+    for (UserRecord record : getSnapshot().users.values()) {
+      users.add(record.toUserDetails());
     }
 
     Collections.sort(users, new PebbleUserDetailsComparator());
@@ -155,50 +149,23 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
    * @return a PebbleUserDetails instance
    *
    */
-  public synchronized PebbleUserDetails getUser(String username) throws SecurityRealmException {
-    File user = getFileForUser(username);
-    if (!user.exists()) {
+  public PebbleUserDetails getUser(String username) throws SecurityRealmException {
+    UserRecord record = getSnapshot().users.get(username);
+    if (record == null) {
       return null;
     }
 
-    try {
-      FileInputStream in = new FileInputStream(user);
-      Properties props = new Properties();
-      props.load(in);
-      in.close();
-
-      String password = props.getProperty(PASSWORD);
-      String[] roles = props.getProperty(ROLES).split(",");
-      String name = props.getProperty(NAME);
-      String emailAddress = props.getProperty(EMAIL_ADDRESS);
-      String website = props.getProperty(WEBSITE);
-      String profile = props.getProperty(PROFILE);
-      String detailsUpdateableAsString = props.getProperty(DETAILS_UPDATEABLE);
-      boolean detailsUpdateable = true;
-      if (detailsUpdateableAsString != null) {
-        detailsUpdateable = detailsUpdateableAsString.equalsIgnoreCase("true");
-      }
-
-      Map<String,String> preferences = new HashMap<String,String>();
-      for (Object key : props.keySet()) {
-        String propertyName = (String)key;
-        if (propertyName.startsWith(PREFERENCE)) {
-          preferences.put(propertyName.substring(PREFERENCE.length()), props.getProperty(propertyName));          
-        }
-      }
-
-      return new PebbleUserDetails(username, password, name, emailAddress, website, profile, roles, preferences, detailsUpdateable);
-    } catch (IOException ioe) {
-      throw new SecurityRealmException(ioe);
-    }
+    return record.toUserDetails();
   }
 
   public PebbleUserDetails getUserForOpenId(String openId) throws SecurityRealmException {
-    String username = openIdMap.get(openId);
+    Snapshot current = getSnapshot();
+    String username = current.openIds.get(openId);
     if (username == null) {
       return null;
     } else {
-      return getUser(username);
+      UserRecord record = current.users.get(username);
+      return record != null ? record.toUserDetails() : null;
     }
   }
 
@@ -207,18 +174,9 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
     openIds.add(openId);
     pud.setOpenIds(openIds);
     updateUser(pud);
-    // Update open id map
-    HashMap<String, String> newOpenIdMap = new HashMap<String, String>(openIdMap);
-    newOpenIdMap.put(openId, pud.getUsername());
-    openIdMap = newOpenIdMap;
   }
 
   public synchronized void removeOpenIdFromUser(PebbleUserDetails pud, String openId) throws SecurityRealmException {
-    // Update open id map
-    HashMap<String, String> newOpenIdMap = new HashMap<String, String>(openIdMap);
-    newOpenIdMap.remove(openId);
-    openIdMap = newOpenIdMap;
-    
     Collection<String> openIds = new ArrayList<String>(pud.getOpenIds());
     openIds.remove(openId);
     pud.setOpenIds(openIds);
@@ -231,7 +189,7 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
    * @param pud   a PebbleUserDetails instance
    */
   public synchronized void createUser(PebbleUserDetails pud) throws SecurityRealmException {
-    if (getUser(pud.getUsername()) == null) {
+    if (!getFileForUser(pud.getUsername()).exists()) {
       updateUser(pud, true);
     } else {
       throw new SecurityRealmException("User " + pud.getUsername() + " already exists");
@@ -254,12 +212,12 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
    */
   private void updateUser(PebbleUserDetails pud, boolean updatePassword) throws SecurityRealmException {
     File user = getFileForUser(pud.getUsername());
-    PebbleUserDetails currentDetails = getUser(pud.getUsername());
 
     Properties props = new Properties();
     if (updatePassword) {
       props.setProperty(DefaultSecurityRealm.PASSWORD, passwordEncoder.encodePassword(pud.getPassword(), saltSource.getSalt(pud)));
     } else {
+      PebbleUserDetails currentDetails = loadUser(user, pud.getUsername()).toUserDetails();
       props.setProperty(DefaultSecurityRealm.PASSWORD, currentDetails.getPassword());
     }
     props.setProperty(DefaultSecurityRealm.ROLES, pud.getRolesAsString());
@@ -282,6 +240,8 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
     } catch (IOException ioe) {
       throw new SecurityRealmException(ioe);
     }
+
+    publish(pud.getUsername(), new UserRecord(pud.getUsername(), props, user.lastModified(), user.length()));
   }
 
   /**
@@ -313,6 +273,123 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
     if (user.exists()) {
       throw new SecurityRealmException("User " + username + " could not be deleted");
     }
+
+    publish(username, null);
+  }
+
+  /**
+   * Gets the current snapshot of the realm, first reloading any user files
+   * that have changed on disk if it's time to check.
+   */
+  private Snapshot getSnapshot() throws SecurityRealmException {
+    Snapshot current = snapshot;
+    if (current == null) {
+      return reload(false);
+    }
+
+    if (isTimeToCheck() && checking.compareAndSet(false, true)) {
+      try {
+        current = reload(false);
+      } finally {
+        checking.set(false);
+      }
+    }
+
+    return current;
+  }
+
+  private boolean isTimeToCheck() {
+    return System.currentTimeMillis() - lastChecked >= changeDetectionInterval;
+  }
+
+  /**
+   * Rescans the realm directory, reloading only those user files that have
+   * been added, changed or removed since the last snapshot was taken.
+   *
+   * @param force   true to rescan even if another thread has just done so
+   */
+  private synchronized Snapshot reload(boolean force) throws SecurityRealmException {
+    Snapshot current = snapshot;
+    if (!force && current != null && !isTimeToCheck()) {
+      // another thread got here first
+      return current;
+    }
+    lastChecked = System.currentTimeMillis();
+
+    Map<String,UserRecord> users = new HashMap<String,UserRecord>();
+    File files[] = getFileForRealm().listFiles(new FilenameFilter() {
+      /**
+       * Tests if a specified file should be included in a file list.
+       *
+       * @param dir  the directory in which the file was found.
+       * @param name the name of the file.
+       * @return <code>true</code> if and only if the name should be
+       *         included in the file list; <code>false</code> otherwise.
+       */
+      public boolean accept(File dir, String name) {
+        return name.endsWith(".properties");
+      }
+    });
+
+    boolean changed = (current == null);
+    if (files != null) {
+      for (File file : files) {
+        String username = file.getName().substring(0, file.getName().lastIndexOf("."));
+        UserRecord record = current != null ? current.users.get(username) : null;
+        if (record == null || !record.isCurrent(file)) {
+          record = loadUser(file, username);
+          changed = true;
+        }
+        if (record != null) {
+          users.put(username, record);
+        }
+      }
+    }
+
+    if (!changed && current.users.size() == users.size()) {
+      return current;
+    }
+
+    snapshot = new Snapshot(users);
+    return snapshot;
+  }
+
+  /**
+   * Publishes a new snapshot with the given user added, replaced or (if the record is null) removed.
+   */
+  private synchronized void publish(String username, UserRecord record) throws SecurityRealmException {
+    Snapshot current = snapshot;
+    if (current == null) {
+      reload(true);
+      return;
+    }
+
+    Map<String,UserRecord> users = new HashMap<String,UserRecord>(current.users);
+    if (record != null) {
+      users.put(username, record);
+    } else {
+      users.remove(username);
+    }
+    snapshot = new Snapshot(users);
+  }
+
+  private UserRecord loadUser(File user, String username) throws SecurityRealmException {
+    if (!user.exists()) {
+      return null;
+    }
+
+    try {
+      long lastModified = user.lastModified();
+      long length = user.length();
+      FileInputStream in = new FileInputStream(user);
+      Properties props = new Properties();
+      props.load(in);
+      in.close();
+
+      return new UserRecord(username, props, lastModified, length);
+    } catch (IOException ioe) {
+      throw new SecurityRealmException(ioe);
+    }
   }
 
   protected File getFileForRealm() throws SecurityRealmException {
@@ -351,4 +428,86 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
     this.saltSource = saltSource;
   }
 
+  public long getChangeDetectionInterval() {
+    return changeDetectionInterval;
+  }
+
+  public void setChangeDetectionInterval(long changeDetectionInterval) {
+    this.changeDetectionInterval = changeDetectionInterval;
+  }
+
+  /**
+   * An immutable view of all users in the realm, along with the open ID to username mapping derived from them.
+   */
+  private static final class Snapshot {
+
+    private final Map<String,UserRecord> users;
+    private final Map<String,String> openIds;
+
+    Snapshot(Map<String,UserRecord> users) {
+      this.users = Collections.unmodifiableMap(users);
+
+      Map<String,String> openIds = new HashMap<String,String>();
+      for (UserRecord record : users.values()) {
+        for (String openId : record.toUserDetails().getOpenIds()) {
+          openIds.put(openId, record.username);
+        }
+      }
+      this.openIds = Collections.unmodifiableMap(openIds);
+    }
+
+  }
+
+  /**
+   * The immutable contents of a single user file. Callers are handed a fresh
+   * PebbleUserDetails each time, since those are mutable.
+   */
+  private static final class UserRecord {
+
+    private final String username;
+    private final String password;
+    private final String[] roles;
+    private final String name;
+    private final String emailAddress;
+    private final String website;
+    private final String profile;
+    private final Map<String,String> preferences;
+    private final boolean detailsUpdateable;
+    private final long lastModified;
+    private final long length;
+
+    UserRecord(String username, Properties props, long lastModified, long length) {
+      this.username = username;
+      this.password = props.getProperty(PASSWORD);
+      this.roles = props.getProperty(ROLES).split(",");
+      this.name = props.getProperty(NAME);
+      this.emailAddress = props.getProperty(EMAIL_ADDRESS);
+      this.website = props.getProperty(WEBSITE);
+      this.profile = props.getProperty(PROFILE);
+      String detailsUpdateableAsString = props.getProperty(DETAILS_UPDATEABLE);
+      this.detailsUpdateable = detailsUpdateableAsString == null || detailsUpdateableAsString.equalsIgnoreCase("true");
+
+      Map<String,String> preferences = new HashMap<String,String>();
+      for (Object key : props.keySet()) {
+        String propertyName = (String)key;
+        if (propertyName.startsWith(PREFERENCE)) {
+          preferences.put(propertyName.substring(PREFERENCE.length()), props.getProperty(propertyName));
+        }
+      }
+      this.preferences = preferences;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+    boolean isCurrent(File file) {
+      return file.lastModified() == lastModified && file.length() == length;
+    }
+
+    PebbleUserDetails toUserDetails() {
+      return new PebbleUserDetails(username, password, name, emailAddress, website, profile, roles.clone(),
+          new HashMap<String,String>(preferences), detailsUpdateable);
+    }
+
+  }
+
 }
\ No newline at end of file
@@ -154,6 +154,9 @@ public class StaticPageService {
           dao.storeStaticPage(staticPage);
           staticPage.setPersistent(true);
           cache.removeStaticPage(staticPage);
+
+          // decorators link to static pages, so cached decorations may be stale
+          blog.getContentDecoratorChain().clearCache();
         }
 
         staticPage.getBlog().getSearchIndex().index(staticPage);
@@ -179,6 +182,7 @@ public class StaticPageService {
     try {
       dao.removeStaticPage(staticPage);
       cache.removeStaticPage(staticPage);
+      blog.getContentDecoratorChain().clearCache();
 
       staticPage.getBlog().getSearchIndex().unindex(staticPage);
       staticPage.getBlog().getStaticPageIndex().unindex(staticPage);
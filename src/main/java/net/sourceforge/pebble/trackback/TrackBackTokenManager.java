@@ -32,52 +32,37 @@
 
 package net.sourceforge.pebble.trackback;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import net.sourceforge.pebble.util.ExpiringTokenStore;
 
-import java.util.*;
+import java.util.Random;
 
 /**
- * Manages tokens for generating TrackBack links.
+ * Manages tokens for generating TrackBack links. Tokens expire after ten
+ * minutes, and at most MAXIMUM_TOKENS are held at any one time; beyond that,
+ * the oldest tokens are discarded first.
  *
  * @author    Simon Brown
  */
 public class TrackBackTokenManager {
 
-  private static final Log log = LogFactory.getLog(TrackBackTokenManager.class);
-
   private static final TrackBackTokenManager instance = new TrackBackTokenManager();
 
   /** the time to live for new tokens */
   private static final long TIME_TO_LIVE = 1000 * 60 * 10; // 10 minutes
 
+  /** the maximum number of live tokens */
+  private static final int MAXIMUM_TOKENS = 10000;
+
   private Random random = new Random();
 
-  /** the map of tokens */
-  private Map<String,Date> tokens = new HashMap<String,Date>();
+  /** the tokens */
+  private final ExpiringTokenStore tokens = new ExpiringTokenStore(TIME_TO_LIVE, MAXIMUM_TOKENS);
 
   /**
    * Private constructor for the singleton pattern.
    */
   private TrackBackTokenManager() {
-    // create a new TimerTask that will purge invalid tokens
-    TimerTask task = new TimerTask() {
-      public void run() {
-        synchronized (TrackBackTokenManager.this) {
-          log.debug("Purging expired tokens");
-          Iterator it = tokens.keySet().iterator();
-          while (it.hasNext()) {
-            String token = (String)it.next();
-            if (!isValid(token)) {
-              it.remove();
-            }
-          }
-        }
-      }
-    };
-
-    Timer timer = new Timer();
-    timer.schedule(task, 2 * TIME_TO_LIVE);
+    tokens.registerMetrics("trackback.tokens");
   }
 
   /**
@@ -94,9 +79,9 @@ public class TrackBackTokenManager {
    *
    * @return  a new token
    */
-  public synchronized String generateToken() {
+  public String generateToken() {
     String token = "" + random.nextLong();
-    tokens.put(token, new Date());
+    tokens.add(token);
     return token;
   }
 
@@ -106,12 +91,11 @@ public class TrackBackTokenManager {
    * @param token   the token to test
    * @return  true if the token is valid and hasn't expired, false otherwise
    */
-  public synchronized boolean isValid(String token) {
+  public boolean isValid(String token) {
     if (token == null || token.length() == 0) {
       return false;
     } else {
-      Date date = tokens.get(token);
-      return (date != null) && (new Date().getTime() - date.getTime() <= TIME_TO_LIVE);
+      return tokens.contains(token);
     }
   }
 
@@ -120,7 +104,7 @@ public class TrackBackTokenManager {
    *
    * @param token   the token to be expired
    */
-  public synchronized void expire(String token) {
+  public void expire(String token) {
     tokens.remove(token);
   }
 
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import net.sourceforge.pebble.metrics.Gauge;
+import net.sourceforge.pebble.metrics.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent store of short-lived tokens, each of which expires a fixed
+ * time after it was added. Expiry is driven by a timing wheel: every token
+ * is also queued in the slot for the tick in which it expires, and as time
+ * moves on (checked on each call, so no timer thread is needed) the slots
+ * that have passed are drained. The store also has a hard cap on its size;
+ * once that is reached, the tokens closest to expiry are evicted first.
+ */
+public class ExpiringTokenStore {
+
+  private static final int DEFAULT_TICKS = 60;
+
+  private final long timeToLive;
+  private final int maximumSize;
+
+  /** the length of one tick of the wheel, in milliseconds */
+  private final long tickLength;
+
+  /** token -> the time at which it expires */
+  private final ConcurrentMap<String, Long> tokens = new ConcurrentHashMap<String, Long>();
+
+  /** the tokens expiring in each tick, indexed by tick modulo the number of slots */
+  private final Slot[] wheel;
+
+  /** the last tick whose slot has been drained */
+  private final AtomicLong currentTick;
+
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final Object evictionLock = new Object();
+
+  private final AtomicLong added = new AtomicLong();
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong removed = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+  private final AtomicLong evicted = new AtomicLong();
+
+  /**
+   * Creates a new store.
+   *
+   * @param timeToLive    how long tokens live for, in milliseconds
+   * @param maximumSize   the maximum number of live tokens
+   */
+  public ExpiringTokenStore(long timeToLive, int maximumSize) {
+    this(timeToLive, maximumSize, DEFAULT_TICKS);
+  }
+
+  /**
+   * Creates a new store.
+   *
+   * @param timeToLive    how long tokens live for, in milliseconds
+   * @param maximumSize   the maximum number of live tokens
+   * @param ticks         the number of ticks a token lives for
+   */
+  public ExpiringTokenStore(long timeToLive, int maximumSize, int ticks) {
+    if (timeToLive <= 0 || maximumSize <= 0 || ticks <= 0) {
+      throw new IllegalArgumentException("The time to live, maximum size and number of ticks must be positive");
+    }
+
+    this.timeToLive = timeToLive;
+    this.maximumSize = maximumSize;
+    this.tickLength = Math.max(1, timeToLive / ticks);
+
+    // enough slots that a token never wraps around onto a slot that's due before it
+    int slots = (int)(timeToLive / tickLength) + 3;
+    wheel = new Slot[slots];
+    for (int i = 0; i < slots; i++) {
+      wheel[i] = new Slot();
+    }
+    currentTick = new AtomicLong(currentTimeMillis() / tickLength);
+  }
+
+  /**
+   * Adds a token, which will expire after the time to live.
+   *
+   * @param token   the token to add
+   */
+  public void add(String token) {
+    long now = currentTimeMillis();
+    advance(now);
+
+    long expiry = now + timeToLive;
+    if (tokens.put(token, expiry) == null) {
+      size.incrementAndGet();
+    }
+    wheel[slot(getTick(expiry))].add(token);
+    added.incrementAndGet();
+
+    if (size.get() > maximumSize) {
+      evict();
+    }
+  }
+
+  /**
+   * Determines whether a given token is present and hasn't expired.
+   *
+   * @param token   the token to test
+   * @return  true if the token is valid, false otherwise
+   */
+  public boolean contains(String token) {
+    if (token == null) {
+      rejected.incrementAndGet();
+      return false;
+    }
+
+    long now = currentTimeMillis();
+    advance(now);
+
+    Long expiry = tokens.get(token);
+    if (expiry != null && now <= expiry) {
+      accepted.incrementAndGet();
+      return true;
+    } else {
+      rejected.incrementAndGet();
+      return false;
+    }
+  }
+
+  /**
+   * Removes a token before it expires.
+   *
+   * @param token   the token to remove
+   */
+  public void remove(String token) {
+    if (token != null && tokens.remove(token) != null) {
+      size.decrementAndGet();
+      removed.incrementAndGet();
+    }
+    // the token is left in its slot, and is skipped when that is drained
+  }
+
+  /**
+   * Gets the number of live tokens.
+   */
+  public int size() {
+    advance(currentTimeMillis());
+    return size.get();
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /** the number of tokens that have been added */
+  public long getAddedCount() {
+    return added.get();
+  }
+
+  /** the number of lookups that found a valid token */
+  public long getAcceptedCount() {
+    return accepted.get();
+  }
+
+  /** the number of lookups that didn't find a valid token */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /** the number of tokens removed before they expired */
+  public long getRemovedCount() {
+    return removed.get();
+  }
+
+  /** the number of tokens that have expired */
+  public long getExpiredCount() {
+    return expired.get();
+  }
+
+  /** the number of tokens evicted because the store was full */
+  public long getEvictedCount() {
+    return evicted.get();
+  }
+
+  /**
+   * Registers the size of this store as a gauge with the given name, and
+   * each of its counts as a gauge named after it (e.g. name.added).
+   *
+   * @param name    the name of the size gauge
+   */
+  public void registerMetrics(String name) {
+    Metrics metrics = Metrics.getInstance();
+    metrics.gauge(name, null, new Gauge() {
+      public long getValue() {
+        return size();
+      }
+    });
+    metrics.gauge(name + ".added", null, new Gauge() {
+      public long getValue() {
+        return getAddedCount();
+      }
+    });
+    metrics.gauge(name + ".accepted", null, new Gauge() {
+      public long getValue() {
+        return getAcceptedCount();
+      }
+    });
+    metrics.gauge(name + ".rejected", null, new Gauge() {
+      public long getValue() {
+        return getRejectedCount();
+      }
+    });
+    metrics.gauge(name + ".removed", null, new Gauge() {
+      public long getValue() {
+        return getRemovedCount();
+      }
+    });
+    metrics.gauge(name + ".expired", null, new Gauge() {
+      public long getValue() {
+        return getExpiredCount();
+      }
+    });
+    metrics.gauge(name + ".evicted", null, new Gauge() {
+      public long getValue() {
+        return getEvictedCount();
+      }
+    });
+  }
+
+  /**
+   * Gets the current time; overridden by tests.
+   */
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private long getTick(long time) {
+    // the first tick that starts after the given time
+    return time / tickLength + 1;
+  }
+
+  private int slot(long tick) {
+    return (int)(tick % wheel.length);
+  }
+
+  /**
+   * Drains the slots for every tick that has passed since this was last called.
+   */
+  private void advance(long now) {
+    long tick = now / tickLength;
+    long last = currentTick.get();
+    if (tick <= last || !currentTick.compareAndSet(last, tick)) {
+      // nothing to do, or another thread is already doing it
+      return;
+    }
+
+    long first = Math.max(last + 1, tick - wheel.length + 1);
+    for (long t = first; t <= tick; t++) {
+      Slot queue = wheel[slot(t)];
+      String token = queue.poll();
+      while (token != null) {
+        // tokens that have been removed, or re-added since, are simply dropped from this slot
+        Long expiry = tokens.get(token);
+        if (expiry != null && expiry < now && tokens.remove(token, expiry)) {
+          size.decrementAndGet();
+          expired.incrementAndGet();
+        }
+        token = queue.poll();
+      }
+    }
+  }
+
+  /**
+   * Evicts the tokens closest to expiry, until the store is back under its cap.
+   */
+  private void evict() {
+    synchronized (evictionLock) {
+      long tick = currentTick.get();
+      for (int i = 1; i <= wheel.length && size.get() > maximumSize; i++) {
+        Slot queue = wheel[slot(tick + i)];
+        while (size.get() > maximumSize) {
+          String token = queue.poll();
+          if (token == null) {
+            break;
+          }
+          Long expiry = tokens.get(token);
+          if (expiry != null && getTick(expiry) == tick + i && tokens.remove(token, expiry)) {
+            size.decrementAndGet();
+            evicted.incrementAndGet();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The tokens expiring in one tick of the wheel.
+   */
+  private static class Slot extends ConcurrentLinkedQueue<String> {
+  }
+
+}
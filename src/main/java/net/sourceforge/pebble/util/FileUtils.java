@@ -39,6 +39,8 @@ import java.net.FileNameMap;
 import java.net.URLConnection;
 import java.nio.channels.FileChannel;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A collection of utility methods for manipulating files.
@@ -53,6 +55,9 @@ public final class FileUtils {
   /** the local content type map */
   private static Properties localFileNameMap;
 
+  /** absolute path -> the monitor for that file */
+  private static final ConcurrentMap<String,Object> monitors = new ConcurrentHashMap<String,Object>();
+
   static {
     try {
       localFileNameMap = new Properties();
@@ -115,6 +120,29 @@ public final class FileUtils {
     directory.delete();
   }
 
+  /**
+   * Gets the size of a file or, if the specified file is a directory,
+   * the total size of all files and sub-directories underneath it.
+   *
+   * @param file    a File instance
+   * @return  the size in bytes, or 0 if the file doesn't exist
+   */
+  public static long sizeOf(File file) {
+    if (!file.isDirectory()) {
+      return file.length();
+    }
+
+    long size = 0;
+    File files[] = file.listFiles();
+    if (files != null) {
+      for (int i = 0; i < files.length; i++) {
+        size += sizeOf(files[i]);
+      }
+    }
+
+    return size;
+  }
+
   /**
    * Copies a file.
    *
@@ -129,6 +157,76 @@ public final class FileUtils {
     dstChannel.close();
   }
 
+  /**
+   * Writes a file by way of a temporary file in the same directory, which
+   * is then renamed over the original, so that a crash part way through
+   * never leaves a partially written file behind.
+   * <p />
+   * The rename is atomic on platforms that can rename over an existing file.
+   * Elsewhere (e.g. Windows) the existing file has to be moved aside first,
+   * so there's a moment when the file doesn't exist at all; a crash at that
+   * point leaves the previous version next to it, with a .bak suffix.
+   *
+   * @param file      the File to write
+   * @param content   the new content of the file
+   * @throws IOException  if the file can't be written
+   */
+  public static void writeAtomically(File file, byte[] content) throws IOException {
+    File tmp = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+    OutputStream out = new FileOutputStream(tmp);
+    try {
+      out.write(content);
+      out.close();
+    } catch (IOException ioe) {
+      out.close();
+      tmp.delete();
+      throw ioe;
+    }
+
+    if (tmp.renameTo(file)) {
+      return;
+    }
+
+    // some platforms won't rename over an existing file
+    File backup = new File(file.getParentFile(), "." + file.getName() + ".bak");
+    backup.delete();
+    if (file.exists() && !file.renameTo(backup)) {
+      tmp.delete();
+      throw new IOException("Could not replace " + file);
+    }
+    if (!tmp.renameTo(file)) {
+      backup.renameTo(file);
+      tmp.delete();
+      throw new IOException("Could not replace " + file);
+    }
+    backup.delete();
+  }
+
+  /**
+   * Gets an object to synchronize on while working with the given file, the
+   * same one for every caller in this JVM. This is needed alongside
+   * FileChannel locks, which are held on behalf of the whole JVM and throw
+   * an OverlappingFileLockException if a second thread asks for one. Monitors
+   * are kept for the lifetime of the JVM, so this is only meant for a
+   * limited number of files, such as one per blog or per page.
+   *
+   * @param file    a File
+   * @return  an Object to synchronize on
+   */
+  public static Object getMonitor(File file) {
+    String path = file.getAbsolutePath();
+    Object monitor = monitors.get(path);
+    if (monitor == null) {
+      Object newMonitor = new Object();
+      monitor = monitors.putIfAbsent(path, newMonitor);
+      if (monitor == null) {
+        monitor = newMonitor;
+      }
+    }
+
+    return monitor;
+  }
+
   /**
    * Gets the content type for the specified filename.
    *
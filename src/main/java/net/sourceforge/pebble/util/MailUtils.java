@@ -38,18 +38,16 @@ import org.apache.commons.logging.LogFactory;
 import net.sourceforge.pebble.web.validation.ValidationContext;
 import net.sourceforge.pebble.PebbleContext;
 
-import javax.mail.Message;
+import net.sourceforge.pebble.mail.MailMessage;
+import net.sourceforge.pebble.mail.MailQueue;
+
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
-import javax.mail.internet.MimeUtility;
 import javax.naming.Context;
 import javax.naming.InitialContext;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Utilities for e-mail related functions.
@@ -60,10 +58,9 @@ public class MailUtils {
 
   /** the log used by this class */
   private static Log log = LogFactory.getLog(MailUtils.class);
-  private static String ENCODING = "UTF-8";
 
-  /** thread pool used to send e-mail */
-  private static ExecutorService pool = Executors.newFixedThreadPool(1);
+  /** the number of recipients in each batch of a personalized mailing */
+  private static final int PERSONALIZED_BATCH_SIZE = 500;
 
   /**
    * Get the prefix to be used for blog entry emails
@@ -142,10 +139,10 @@ public class MailUtils {
    * @param subject       the subject of the e-mail
    * @param message       the body of the e-mail
    */
-  public static void sendMail(Session session, Blog blog, String to, String subject, String message) {
+  public static void sendMail(Blog blog, String to, String subject, String message) {
     Collection set = new HashSet();
     set.add(to);
-    sendMail(session, blog, set, new HashSet(), new HashSet(), subject, message);
+    sendMail(blog, set, new HashSet(), new HashSet(), subject, message);
   }
 
   /**
@@ -156,8 +153,8 @@ public class MailUtils {
    * @param subject       the subject of the e-mail
    * @param message       the body of the e-mail
    */
-  public static void sendMail(Session session, Blog blog, Collection to, String subject, String message) {
-    sendMail(session, blog, to, new HashSet(), new HashSet(), subject, message);
+  public static void sendMail(Blog blog, Collection to, String subject, String message) {
+    sendMail(blog, to, new HashSet(), new HashSet(), subject, message);
   }
 
   /**
@@ -169,8 +166,8 @@ public class MailUtils {
    * @param subject       the subject of the e-mail
    * @param message       the body of the e-mail
    */
-  public static void sendMail(Session session, Blog blog, Collection to, Collection cc, String subject, String message) {
-    sendMail(session, blog, to, cc, new HashSet(), subject, message);
+  public static void sendMail(Blog blog, Collection to, Collection cc, String subject, String message) {
+    sendMail(blog, to, cc, new HashSet(), subject, message);
   }
 
   /**
@@ -183,102 +180,54 @@ public class MailUtils {
    * @param subject       the subject of the e-mail
    * @param message       the body of the e-mail
    */
-  public static void sendMail(Session session, Blog blog, Collection to, Collection cc, Collection bcc, String subject, String message) {
-    Runnable r = new SendMailRunnable(session, blog, to, cc, bcc, subject, message);
-    pool.execute(r);
+  public static void sendMail(Blog blog, Collection to, Collection cc, Collection bcc, String subject, String message) {
+    MailMessage mailMessage = new MailMessage(blog.getFirstEmailAddress(), blog.getName(), toStrings(to), subject, message);
+    mailMessage.setCc(toStrings(cc));
+    mailMessage.setBcc(toStrings(bcc));
+    send(mailMessage);
   }
 
   /**
-   * A thread allowing the e-mail to be sent asynchronously, so the requesting
-   * thread (and therefore the user) isn't held up.
+   * Sends a separate e-mail to each recipient, with the given token in the
+   * body replaced by their e-mail address. Large mailings are split into
+   * batches, so that they can be sent in parallel.
+   *
+   * @param blog    the notifying blog
+   * @param to     the e-mail addresses of the recipients
+   * @param subject       the subject of the e-mail
+   * @param message       the body of the e-mail
+   * @param token         the token to replace with each recipient's e-mail address
    */
-  static class SendMailRunnable implements Runnable {
-
-    /** the JavaMail session */
-    private Session session;
-
-    /** the notifying blog */
-    private Blog blog;
-
-    /** the e-mail addresses of the recipients in the TO field */
-    private Collection to;
-
-    /** the e-mail addresses of the recipients in the CC field */
-    private Collection cc;
-
-    /** the e-mail addresses of the recipients in the BCC field */
-    private Collection bcc;
-
-    /** the subject of the e-mail */
-    private String subject;
-
-    /** the body of the e-mail */
-    private String message;
-
-    /**
-     * Creates a new thread to send a new e-mail.
-     *
-     * @param session   a JavaMail Session instance
-     * @param blog    the notifying blog
-     * @param to     the e-mail addresses of the recipients in the TO field
-     * @param cc     the e-mail addresses of the recipients in the CC field
-     * @param bcc     the e-mail addresses of the recipients in the BCC field
-     * @param subject       the subject of the e-mail
-     * @param message       the body of the e-mail
-     */
-    public SendMailRunnable(Session session, Blog blog, Collection to, Collection cc, Collection bcc, String subject, String message) {
-      this.session = session;
-      this.blog = blog;
-      this.to = to;
-      this.cc = cc;
-      this.bcc = bcc;
-      this.subject = subject;
-      this.message = message;
+  public static void sendPersonalizedMail(Blog blog, Collection to, String subject, String message, String token) {
+    List<String> recipients = new ArrayList<String>(toStrings(to));
+    for (int i = 0; i < recipients.size(); i += PERSONALIZED_BATCH_SIZE) {
+      List<String> batch = recipients.subList(i, Math.min(recipients.size(), i + PERSONALIZED_BATCH_SIZE));
+      MailMessage mailMessage = new MailMessage(blog.getFirstEmailAddress(), blog.getName(), batch, subject, message);
+      mailMessage.setPersonalizationToken(token);
+      send(mailMessage);
     }
+  }
 
-    /**
-     * Performs the processing associated with this thread.
-     */
-    public void run() {
-      try {
-        // create a message and try to send it
-        Message msg = new MimeMessage(session);
-        msg.setFrom(new InternetAddress(blog.getFirstEmailAddress(), MimeUtility.encodeText(blog.getName(), ENCODING, "B")));
-        Collection internetAddresses = new HashSet();
-        Iterator it = to.iterator();
-        while (it.hasNext()) {
-          internetAddresses.add(new InternetAddress(it.next().toString()));
-        }
-        msg.addRecipients(Message.RecipientType.TO, (InternetAddress[])internetAddresses.toArray(new InternetAddress[]{}));
-
-        internetAddresses = new HashSet();
-        it = cc.iterator();
-        while (it.hasNext()) {
-          internetAddresses.add(new InternetAddress(it.next().toString()));
-        }
-        msg.addRecipients(Message.RecipientType.CC, (InternetAddress[])internetAddresses.toArray(new InternetAddress[]{}));
-
-        internetAddresses = new HashSet();
-        it = bcc.iterator();
-        while (it.hasNext()) {
-          internetAddresses.add(new InternetAddress(it.next().toString()));
-        }
-        msg.addRecipients(Message.RecipientType.BCC, (InternetAddress[])internetAddresses.toArray(new InternetAddress[]{}));
-
-        msg.setSubject(MimeUtility.encodeText(subject, ENCODING, "B"));
-        msg.setSentDate(new Date());
-        msg.setContent(message, "text/html; charset=" + ENCODING);
+  private static void send(MailMessage mailMessage) {
+    log.debug("From : " + mailMessage.getFromName() + " (" + mailMessage.getFrom() + ")");
+    log.debug("Subject : " + mailMessage.getSubject());
+    log.debug("Message : " + mailMessage.getBody());
 
-        log.debug("From : " + blog.getName() + " (" + blog.getFirstEmailAddress() + ")");
-        log.debug("Subject : " + subject);
-        log.debug("Message : " + message);
+    try {
+      MailQueue.getInstance().send(mailMessage);
+    } catch (IOException ioe) {
+      log.error("Notification e-mail could not be queued", ioe);
+    }
+  }
 
-        Transport.send(msg);
-      } catch (Exception e) {
-        log.error("Notification e-mail could not be sent", e);
+  private static Collection<String> toStrings(Collection addresses) {
+    Collection<String> strings = new LinkedHashSet<String>();
+    if (addresses != null) {
+      for (Object address : addresses) {
+        strings.add(address.toString());
       }
     }
-
+    return strings;
   }
 
   /**
@@ -299,7 +248,8 @@ public class MailUtils {
       Properties props = new Properties();
       props.put("mail.smtp.host", host);
       props.put("mail.smtp.port", port);
-      return Session.getDefaultInstance(props, null);
+      // not the default instance, which would be fixed to whatever was configured first
+      return Session.getInstance(props, null);
     }
   }
 
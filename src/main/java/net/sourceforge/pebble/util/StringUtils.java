@@ -31,6 +31,10 @@
  */
 package net.sourceforge.pebble.util;
 
+import net.sourceforge.pebble.util.html.HtmlRewriter;
+import net.sourceforge.pebble.util.html.HtmlToken;
+import net.sourceforge.pebble.util.html.HtmlVisitor;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -47,33 +51,10 @@ import java.util.regex.Pattern;
  */
 public final class StringUtils {
 
-  private static final Pattern OPENING_B_TAG_PATTERN = Pattern.compile("&lt;b&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_B_TAG_PATTERN = Pattern.compile("&lt;/b&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_STRONG_TAG_PATTERN = Pattern.compile("&lt;strong&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_STRONG_TAG_PATTERN = Pattern.compile("&lt;/strong&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_I_TAG_PATTERN = Pattern.compile("&lt;i&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_I_TAG_PATTERN = Pattern.compile("&lt;/i&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_EM_TAG_PATTERN = Pattern.compile("&lt;em&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_EM_TAG_PATTERN = Pattern.compile("&lt;/em&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_BLOCKQUOTE_TAG_PATTERN = Pattern.compile("&lt;blockquote&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_BLOCKQUOTE_TAG_PATTERN = Pattern.compile("&lt;/blockquote&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern BR_TAG_PATTERN = Pattern.compile("&lt;br */*&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_P_TAG_PATTERN = Pattern.compile("&lt;p&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_P_TAG_PATTERN = Pattern.compile("&lt;/p&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_PRE_TAG_PATTERN = Pattern.compile("&lt;pre&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_PRE_TAG_PATTERN = Pattern.compile("&lt;/pre&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_UL_TAG_PATTERN = Pattern.compile("&lt;ul&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_UL_TAG_PATTERN = Pattern.compile("&lt;/ul&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_OL_TAG_PATTERN = Pattern.compile("&lt;ol&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_OL_TAG_PATTERN = Pattern.compile("&lt;/ol&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_LI_TAG_PATTERN = Pattern.compile("&lt;li&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_LI_TAG_PATTERN = Pattern.compile("&lt;/li&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_A_TAG_PATTERN = Pattern.compile("&lt;/a&gt;", Pattern.CASE_INSENSITIVE);
+  /** the escaped tags that transformToHTMLSubset lets through, other than links */
+  private static final Pattern ALLOWED_TAG_PATTERN = Pattern.compile("&lt;(/?)(b|strong|i|em|blockquote|p|pre|ul|ol|li|sup|sub)&gt;|&lt;(br) */*&gt;|&lt;(/)(a)&gt;", Pattern.CASE_INSENSITIVE);
   private static final Pattern OPENING_A_TAG_PATTERN = Pattern.compile("&lt;a href=.*?&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_SUP_TAG_PATTERN = Pattern.compile("&lt;sup&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_SUP_TAG_PATTERN = Pattern.compile("&lt;/sup&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern OPENING_SUB_TAG_PATTERN = Pattern.compile("&lt;sub&gt;", Pattern.CASE_INSENSITIVE);
-  private static final Pattern CLOSING_SUB_TAG_PATTERN = Pattern.compile("&lt;/sub&gt;", Pattern.CASE_INSENSITIVE);
+  private static final Pattern ESCAPED_ENTITY_PATTERN = Pattern.compile("&amp;([#a-zA-Z0-9]{1,}?);");
 
   public static final int MAX_CONTENT_LENGTH = 255;
   public static final int MAX_WORD_LENGTH = 20;
@@ -394,34 +375,27 @@ public final class StringUtils {
       return null;
     }
 
-    s = replace(s, OPENING_B_TAG_PATTERN, "<b>");
-    s = replace(s, CLOSING_B_TAG_PATTERN, "</b>");
-    s = replace(s, OPENING_STRONG_TAG_PATTERN, "<strong>");
-    s = replace(s, CLOSING_STRONG_TAG_PATTERN, "</strong>");
-    s = replace(s, OPENING_I_TAG_PATTERN, "<i>");
-    s = replace(s, CLOSING_I_TAG_PATTERN, "</i>");
-    s = replace(s, OPENING_EM_TAG_PATTERN, "<em>");
-    s = replace(s, CLOSING_EM_TAG_PATTERN, "</em>");
-    s = replace(s, OPENING_BLOCKQUOTE_TAG_PATTERN, "<blockquote>");
-    s = replace(s, CLOSING_BLOCKQUOTE_TAG_PATTERN, "</blockquote>");
-    s = replace(s, BR_TAG_PATTERN, "<br />");
-    s = replace(s, OPENING_P_TAG_PATTERN, "<p>");
-    s = replace(s, CLOSING_P_TAG_PATTERN, "</p>");
-    s = replace(s, OPENING_PRE_TAG_PATTERN, "<pre>");
-    s = replace(s, CLOSING_PRE_TAG_PATTERN, "</pre>");
-    s = replace(s, OPENING_UL_TAG_PATTERN, "<ul>");
-    s = replace(s, CLOSING_UL_TAG_PATTERN, "</ul>");
-    s = replace(s, OPENING_OL_TAG_PATTERN, "<ol>");
-    s = replace(s, CLOSING_OL_TAG_PATTERN, "</ol>");
-    s = replace(s, OPENING_LI_TAG_PATTERN, "<li>");
-    s = replace(s, CLOSING_LI_TAG_PATTERN, "</li>");
-    s = replace(s, OPENING_SUP_TAG_PATTERN, "<sup>");
-    s = replace(s, CLOSING_SUP_TAG_PATTERN, "</sup>");
-    s = replace(s, OPENING_SUB_TAG_PATTERN, "<sub>");
-    s = replace(s, CLOSING_SUB_TAG_PATTERN, "</sub>");
+    // all of the simple tags in a single pass; none of the replacements contain &, so they can't form new matches
+    Matcher tags = ALLOWED_TAG_PATTERN.matcher(s);
+    if (tags.find()) {
+      StringBuilder buffer = new StringBuilder(s.length());
+      int position = 0;
+      do {
+        buffer.append(s, position, tags.start());
+        if (tags.group(3) != null) {
+          buffer.append("<br />");
+        } else if (tags.group(5) != null) {
+          buffer.append("</a>");
+        } else {
+          buffer.append('<').append(tags.group(1)).append(tags.group(2).toLowerCase()).append('>');
+        }
+        position = tags.end();
+      } while (tags.find());
+      buffer.append(s, position, s.length());
+      s = buffer.toString();
+    }
 
     // HTTP links - remove all attributes other than href
-    s = replace(s, CLOSING_A_TAG_PATTERN, "</a>");
     Matcher m = OPENING_A_TAG_PATTERN.matcher(s);
     // Use a single buffer for efficiency
     StringBuffer buffer = new StringBuffer();
@@ -455,9 +429,7 @@ public final class StringUtils {
     }
 
     // escaped angle brackets and other allowed entities
-    s = s.replaceAll("&amp;lt;", "&lt;");
-    s = s.replaceAll("&amp;gt;", "&gt;");
-    s = s.replaceAll("&amp;([#a-zA-Z0-9]{1,}?);", "&$1;");
+    s = replace(s, ESCAPED_ENTITY_PATTERN, "&$1;");
     
     return s;
   }
@@ -577,14 +549,25 @@ public final class StringUtils {
     }
   }
 
+  /**
+   * Removes script elements (tags and content) from the given HTML.
+   *
+   * @param html    the HTML
+   * @return  the HTML without any script elements
+   */
   public static String stripScriptTags(String html) {
-    if (html == null) {
-      return html;
-    }
-
-    html = html.replaceAll("<script.*?>.*?</script.*?>", "");
-    html = html.replaceAll("<script.*?/>", "");
-    return html;
+    return HtmlRewriter.rewrite(html, new HtmlVisitor() {
+      private boolean inScript = false;
+
+      public void visit(HtmlToken token) {
+        if (token.isTag("script")) {
+          token.remove();
+          inScript = token.isStartTag() && !token.isSelfClosing();
+        } else if (inScript) {
+          token.remove();
+        }
+      }
+    });
   }
 
 
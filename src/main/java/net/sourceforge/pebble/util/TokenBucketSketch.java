@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size set of token buckets, shared between any number of keys in
+ * the manner of a count-min sketch. Each key maps to one cell in each of
+ * several rows, and each cell holds the time at which its bucket will next
+ * be full (the "theoretical arrival time" of the generic cell rate
+ * algorithm). A key's bucket is read as the least full of its cells, so
+ * keys that collide can only be limited more strictly than they should be,
+ * never less, and the memory used doesn't grow with the number of keys.
+ * <p />
+ * Cells are updated with compare-and-set rather than locks. Concurrent
+ * requests for the same key may occasionally both take the last token,
+ * which is an acceptable error for flood protection.
+ */
+public class TokenBucketSketch {
+
+  private final int depth;
+  private final int mask;
+  private final AtomicLongArray cells;
+
+  /**
+   * Creates a new sketch.
+   *
+   * @param depth   the number of rows (hash functions)
+   * @param width   the number of cells per row, rounded up to a power of two
+   */
+  public TokenBucketSketch(int depth, int width) {
+    int size = 1;
+    while (size < width) {
+      size <<= 1;
+    }
+
+    this.depth = depth;
+    this.mask = size - 1;
+    this.cells = new AtomicLongArray(depth * size);
+  }
+
+  /**
+   * Takes a token from the bucket for the given key, if one is available.
+   * Buckets refill at one token per interval, up to the burst size.
+   *
+   * @param key       the key
+   * @param interval  the time taken to refill one token
+   * @param burst     the number of tokens in a full bucket
+   * @param now       the current time, in the same units as interval, and
+   *                  never less than zero
+   * @return  0 if a token was taken, otherwise how long until one will be
+   *          available
+   */
+  public long acquire(long key, long interval, int burst, long now) {
+    // the least full of the key's cells is the best estimate of its bucket
+    long tat = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      tat = Math.min(tat, cells.get(index(key, row)));
+    }
+    tat = Math.max(tat, now);
+
+    long tolerance = interval * (burst - 1);
+    if (tat - now > tolerance) {
+      return tat - now - tolerance;
+    }
+
+    // only ever move cells forward, so colliding keys don't undo each other
+    long next = tat + interval;
+    for (int row = 0; row < depth; row++) {
+      int i = index(key, row);
+      long current = cells.get(i);
+      while (current < next && !cells.compareAndSet(i, current, next)) {
+        current = cells.get(i);
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Gets the number of cells that have been used since the given time,
+   * as a rough measure of how many keys are active.
+   *
+   * @param now   the current time
+   * @return  the number of cells in the first row whose bucket isn't full
+   */
+  public int getActiveCells(long now) {
+    int count = 0;
+    for (int i = 0; i <= mask; i++) {
+      if (cells.get(i) > now) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  private int index(long key, int row) {
+    // a different seed for each row, then the 64-bit finaliser from MurmurHash3
+    long h = key + (0x9E3779B97F4A7C15L * (row + 1));
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+
+    return (row * (mask + 1)) + ((int)h & mask);
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.html;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams an HTML document through a number of visitors in a single pass.
+ * Tokens that no visitor changes are copied straight from the source, and
+ * if nothing changes at all the original String is returned as is.
+ */
+public final class HtmlRewriter {
+
+  private HtmlRewriter() {
+  }
+
+  /**
+   * Rewrites the given HTML with a single visitor.
+   *
+   * @param html      the HTML to rewrite
+   * @param visitor   an HtmlVisitor
+   * @return  the rewritten HTML
+   */
+  public static String rewrite(String html, HtmlVisitor visitor) {
+    return rewrite(html, Collections.singletonList(visitor));
+  }
+
+  /**
+   * Rewrites the given HTML, passing each token to the visitors in turn.
+   * Once a visitor removes or replaces a token, the remaining visitors
+   * don't see it; markup that a token is replaced with isn't tokenized
+   * again.
+   *
+   * @param html      the HTML to rewrite
+   * @param visitors  a List of HtmlVisitor instances
+   * @return  the rewritten HTML
+   */
+  public static String rewrite(String html, List<? extends HtmlVisitor> visitors) {
+    if (html == null || html.length() == 0 || visitors.isEmpty()) {
+      return html;
+    }
+
+    char[] buf = html.toCharArray();
+    HtmlTokenizer tokenizer = new HtmlTokenizer(buf);
+    HtmlToken token = tokenizer.getToken();
+    StringBuilder out = null;
+    int copied = 0;
+
+    while (tokenizer.next()) {
+      for (HtmlVisitor visitor : visitors) {
+        visitor.visit(token);
+        if (token.isRemoved() || token.isReplaced()) {
+          break;
+        }
+      }
+
+      if (token.isChanged()) {
+        if (out == null) {
+          out = new StringBuilder(buf.length + 64);
+        }
+        out.append(buf, copied, token.getStart() - copied);
+        token.writeTo(out);
+        copied = token.getEnd();
+      }
+    }
+
+    if (out == null) {
+      return html;
+    }
+
+    out.append(buf, copied, buf.length - copied);
+    return out.toString();
+  }
+
+}
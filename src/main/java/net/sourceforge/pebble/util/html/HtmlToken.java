@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.html;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A token in an HTML document; a run of text, a start or end tag, a
+ * comment, or some other markup such as a doctype or processing
+ * instruction. A single instance is reused by the {@link HtmlTokenizer}
+ * and refers back to the source buffer, so nothing is copied unless it's
+ * asked for.
+ * <p />
+ * Attribute values are read and written as they appear in the markup;
+ * entities are not decoded or encoded, other than quotes needed to write
+ * a value back out.
+ */
+public final class HtmlToken {
+
+  public static final int TEXT = 0;
+  public static final int START_TAG = 1;
+  public static final int END_TAG = 2;
+  public static final int COMMENT = 3;
+  public static final int OTHER = 4;
+
+  private final char[] buf;
+
+  private int type;
+  private int start;
+  private int end;
+  private int nameStart;
+  private int nameEnd;
+  private boolean selfClosing;
+
+  /** where new attributes are written (before the closing > or />) */
+  private int insertAt;
+
+  private int attributeCount;
+  private int[] attributeNameStart = new int[8];
+  private int[] attributeNameEnd = new int[8];
+  private int[] attributeValueStart = new int[8];
+  private int[] attributeValueEnd = new int[8];
+  private char[] attributeQuote = new char[8];
+  private String[] attributeValue = new String[8];
+
+  private List<String> addedAttributes;
+  private boolean modified;
+  private boolean removed;
+  private String replacement;
+
+  HtmlToken(char[] buf) {
+    this.buf = buf;
+  }
+
+  void reset(int type, int start, int end) {
+    this.type = type;
+    this.start = start;
+    this.end = end;
+    this.nameStart = start;
+    this.nameEnd = start;
+    this.selfClosing = false;
+    this.insertAt = end;
+
+    for (int i = 0; i < attributeCount; i++) {
+      attributeValue[i] = null;
+    }
+    this.attributeCount = 0;
+    if (addedAttributes != null) {
+      addedAttributes.clear();
+    }
+    this.modified = false;
+    this.removed = false;
+    this.replacement = null;
+  }
+
+  void setName(int nameStart, int nameEnd) {
+    this.nameStart = nameStart;
+    this.nameEnd = nameEnd;
+  }
+
+  void setEnd(int end, int insertAt, boolean selfClosing) {
+    this.end = end;
+    this.insertAt = insertAt;
+    this.selfClosing = selfClosing;
+  }
+
+  void addAttribute(int nameStart, int nameEnd, int valueStart, int valueEnd, char quote) {
+    if (attributeCount == attributeNameStart.length) {
+      int size = attributeCount * 2;
+      attributeNameStart = grow(attributeNameStart, size);
+      attributeNameEnd = grow(attributeNameEnd, size);
+      attributeValueStart = grow(attributeValueStart, size);
+      attributeValueEnd = grow(attributeValueEnd, size);
+      char[] quotes = new char[size];
+      System.arraycopy(attributeQuote, 0, quotes, 0, attributeCount);
+      attributeQuote = quotes;
+      String[] values = new String[size];
+      System.arraycopy(attributeValue, 0, values, 0, attributeCount);
+      attributeValue = values;
+    }
+
+    attributeNameStart[attributeCount] = nameStart;
+    attributeNameEnd[attributeCount] = nameEnd;
+    attributeValueStart[attributeCount] = valueStart;
+    attributeValueEnd[attributeCount] = valueEnd;
+    attributeQuote[attributeCount] = quote;
+    attributeCount++;
+  }
+
+  private static int[] grow(int[] a, int size) {
+    int[] b = new int[size];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  /**
+   * Gets the type of this token.
+   *
+   * @return  one of TEXT, START_TAG, END_TAG, COMMENT or OTHER
+   */
+  public int getType() {
+    return type;
+  }
+
+  public boolean isText() {
+    return type == TEXT;
+  }
+
+  public boolean isStartTag() {
+    return type == START_TAG;
+  }
+
+  public boolean isEndTag() {
+    return type == END_TAG;
+  }
+
+  /**
+   * Determines whether this is a start tag that closes itself, e.g. &lt;br /&gt;.
+   *
+   * @return  true if the tag ends with /&gt;, false otherwise
+   */
+  public boolean isSelfClosing() {
+    return selfClosing;
+  }
+
+  /**
+   * Determines whether this is a start or end tag with the given name,
+   * ignoring case.
+   *
+   * @param name    the (lower case) name of the tag
+   * @return  true if the names match, false otherwise
+   */
+  public boolean isTag(String name) {
+    return (type == START_TAG || type == END_TAG) && regionMatches(nameStart, nameEnd, name);
+  }
+
+  /**
+   * Gets the name of this tag, as it appears in the markup.
+   *
+   * @return  a String, or null if this token isn't a tag
+   */
+  public String getName() {
+    if (type == START_TAG || type == END_TAG) {
+      return new String(buf, nameStart, nameEnd - nameStart);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Gets the markup for this token, as it appears in the source.
+   *
+   * @return  a String
+   */
+  public String getText() {
+    return new String(buf, start, end - start);
+  }
+
+  /**
+   * Gets the value of the named attribute, ignoring case.
+   *
+   * @param name    the (lower case) name of the attribute
+   * @return  the value, an empty String if the attribute has no value,
+   *          or null if the attribute isn't present
+   */
+  public String getAttribute(String name) {
+    int i = indexOfAttribute(name);
+    if (i != -1) {
+      if (attributeValue[i] != null) {
+        return attributeValue[i];
+      } else if (attributeValueStart[i] == -1) {
+        return "";
+      } else {
+        return new String(buf, attributeValueStart[i], attributeValueEnd[i] - attributeValueStart[i]);
+      }
+    }
+
+    if (addedAttributes != null) {
+      for (int j = 0; j < addedAttributes.size(); j += 2) {
+        if (addedAttributes.get(j).equalsIgnoreCase(name)) {
+          return addedAttributes.get(j + 1);
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Determines whether the named attribute is present, ignoring case.
+   *
+   * @param name    the (lower case) name of the attribute
+   * @return  true if the attribute is present, false otherwise
+   */
+  public boolean hasAttribute(String name) {
+    return getAttribute(name) != null;
+  }
+
+  /**
+   * Determines whether the named attribute's value starts with the given
+   * prefix, without creating a String for the value.
+   *
+   * @param name      the (lower case) name of the attribute
+   * @param prefix    the prefix to test for
+   * @return  true if the attribute is present and starts with the prefix
+   */
+  public boolean attributeStartsWith(String name, String prefix) {
+    int i = indexOfAttribute(name);
+    if (i == -1 || attributeValue[i] != null) {
+      String value = getAttribute(name);
+      return value != null && value.startsWith(prefix);
+    }
+
+    int valueStart = attributeValueStart[i];
+    if (valueStart == -1 || attributeValueEnd[i] - valueStart < prefix.length()) {
+      return false;
+    }
+    for (int j = 0; j < prefix.length(); j++) {
+      if (buf[valueStart + j] != prefix.charAt(j)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Sets the value of the named attribute, adding the attribute to the end
+   * of the tag if it's not already present.
+   *
+   * @param name    the (lower case) name of the attribute
+   * @param value   the new value
+   */
+  public void setAttribute(String name, String value) {
+    if (type != START_TAG) {
+      throw new IllegalStateException("Attributes can only be set on start tags");
+    }
+
+    int i = indexOfAttribute(name);
+    if (i != -1) {
+      attributeValue[i] = value;
+    } else {
+      if (addedAttributes == null) {
+        addedAttributes = new ArrayList<String>();
+      }
+      for (int j = 0; j < addedAttributes.size(); j += 2) {
+        if (addedAttributes.get(j).equalsIgnoreCase(name)) {
+          addedAttributes.set(j + 1, value);
+          modified = true;
+          return;
+        }
+      }
+      addedAttributes.add(name);
+      addedAttributes.add(value);
+    }
+    modified = true;
+  }
+
+  /**
+   * Removes this token from the output.
+   */
+  public void remove() {
+    this.removed = true;
+  }
+
+  /**
+   * Replaces this token in the output with the given markup.
+   *
+   * @param html    the replacement markup
+   */
+  public void replaceWith(String html) {
+    this.replacement = html;
+  }
+
+  boolean isRemoved() {
+    return removed;
+  }
+
+  boolean isReplaced() {
+    return replacement != null;
+  }
+
+  boolean isChanged() {
+    return modified || removed || replacement != null;
+  }
+
+  int getStart() {
+    return start;
+  }
+
+  int getEnd() {
+    return end;
+  }
+
+  /**
+   * Writes this token, including any changes, to the given buffer.
+   */
+  void writeTo(StringBuilder out) {
+    if (removed) {
+      return;
+    } else if (replacement != null) {
+      out.append(replacement);
+      return;
+    } else if (!modified) {
+      out.append(buf, start, end - start);
+      return;
+    }
+
+    int cursor = start;
+    for (int i = 0; i < attributeCount; i++) {
+      String value = attributeValue[i];
+      if (value == null) {
+        continue;
+      }
+
+      if (attributeValueStart[i] == -1) {
+        // the attribute had no value
+        out.append(buf, cursor, attributeNameEnd[i] - cursor);
+        out.append("=\"");
+        appendValue(out, value, '"');
+        out.append('"');
+        cursor = attributeNameEnd[i];
+      } else if (attributeQuote[i] == 0) {
+        // the value was unquoted
+        out.append(buf, cursor, attributeValueStart[i] - cursor);
+        out.append('"');
+        appendValue(out, value, '"');
+        out.append('"');
+        cursor = attributeValueEnd[i];
+      } else {
+        out.append(buf, cursor, attributeValueStart[i] - cursor);
+        appendValue(out, value, attributeQuote[i]);
+        cursor = attributeValueEnd[i];
+      }
+    }
+
+    out.append(buf, cursor, insertAt - cursor);
+    if (addedAttributes != null) {
+      for (int j = 0; j < addedAttributes.size(); j += 2) {
+        out.append(' ');
+        out.append(addedAttributes.get(j));
+        out.append("=\"");
+        appendValue(out, addedAttributes.get(j + 1), '"');
+        out.append('"');
+      }
+    }
+    out.append(buf, insertAt, end - insertAt);
+  }
+
+  private static void appendValue(StringBuilder out, String value, char quote) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == quote) {
+        out.append(quote == '"' ? "&quot;" : "&#39;");
+      } else {
+        out.append(c);
+      }
+    }
+  }
+
+  private int indexOfAttribute(String name) {
+    for (int i = 0; i < attributeCount; i++) {
+      if (regionMatches(attributeNameStart[i], attributeNameEnd[i], name)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private boolean regionMatches(int from, int to, String name) {
+    if (to - from != name.length()) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      if (Character.toLowerCase(buf[from + i]) != Character.toLowerCase(name.charAt(i))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.html;
+
+/**
+ * A forgiving, single-pass tokenizer for HTML held in a char[] buffer.
+ * Anything that can't be parsed as markup (e.g. a stray &lt;) is treated
+ * as text, and the content of script and style elements is returned as a
+ * single text token.
+ */
+public final class HtmlTokenizer {
+
+  private final char[] buf;
+  private final int length;
+  private final HtmlToken token;
+
+  /** the position of the last &gt;, after which there can be no markup */
+  private final int lastClose;
+
+  /** the position of the next token */
+  private int pos;
+
+  /** the name of the raw text element (script/style) we're inside, if any */
+  private String rawTextElement;
+
+  public HtmlTokenizer(char[] buf) {
+    this.buf = buf;
+    this.length = buf.length;
+    this.token = new HtmlToken(buf);
+
+    int i = length - 1;
+    while (i >= 0 && buf[i] != '>') {
+      i--;
+    }
+    this.lastClose = i;
+  }
+
+  /**
+   * Gets the token, which is updated in place on each call to next().
+   *
+   * @return  the HtmlToken instance
+   */
+  public HtmlToken getToken() {
+    return token;
+  }
+
+  /**
+   * Moves to the next token.
+   *
+   * @return  true if there is another token, false at the end of the buffer
+   */
+  public boolean next() {
+    if (pos >= length) {
+      return false;
+    }
+
+    if (rawTextElement != null) {
+      String name = rawTextElement;
+      rawTextElement = null;
+      int close = indexOfEndTag(pos, name);
+      if (close > pos) {
+        token.reset(HtmlToken.TEXT, pos, close);
+        pos = close;
+        return true;
+      }
+    }
+
+    if (buf[pos] == '<') {
+      int end = parseMarkup(pos);
+      if (end != -1) {
+        pos = end;
+        return true;
+      }
+    }
+
+    // text runs up to the next thing that looks like markup
+    int start = pos;
+    int i = pos + 1;
+    while (i < length && !(buf[i] == '<' && isMarkupStart(i))) {
+      i++;
+    }
+    token.reset(HtmlToken.TEXT, start, i);
+    pos = i;
+    return true;
+  }
+
+  private boolean isMarkupStart(int i) {
+    if (i + 1 >= length) {
+      return false;
+    }
+    char c = buf[i + 1];
+    return isLetter(c) || c == '/' || c == '!' || c == '?';
+  }
+
+  /**
+   * Parses the markup starting at the given &lt;, filling in the token.
+   *
+   * @return  the position after the markup, or -1 if it isn't markup
+   */
+  private int parseMarkup(int start) {
+    if (start + 1 >= length || (start > lastClose && !startsWith(start, "<!--"))) {
+      return -1;
+    }
+
+    char c = buf[start + 1];
+    if (isLetter(c)) {
+      return parseStartTag(start);
+    } else if (c == '/' && start + 2 < length && isLetter(buf[start + 2])) {
+      int nameEnd = scanName(start + 2);
+      int close = indexOf('>', nameEnd);
+      if (close == -1) {
+        return -1;
+      }
+      token.reset(HtmlToken.END_TAG, start, close + 1);
+      token.setName(start + 2, nameEnd);
+      return close + 1;
+    } else if (c == '!' && startsWith(start + 2, "--")) {
+      int close = indexOf("-->", start + 4);
+      int end = close == -1 ? length : close + 3;
+      token.reset(HtmlToken.COMMENT, start, end);
+      return end;
+    } else if (c == '!' || c == '?') {
+      int close = indexOf('>', start + 2);
+      if (close == -1) {
+        return -1;
+      }
+      token.reset(HtmlToken.OTHER, start, close + 1);
+      return close + 1;
+    }
+
+    return -1;
+  }
+
+  private int parseStartTag(int start) {
+    int nameEnd = scanName(start + 1);
+    token.reset(HtmlToken.START_TAG, start, length);
+    token.setName(start + 1, nameEnd);
+
+    int i = nameEnd;
+    while (i < length) {
+      char c = buf[i];
+      if (c == '>') {
+        token.setEnd(i + 1, i, false);
+        if (token.isTag("script") || token.isTag("style")) {
+          rawTextElement = new String(buf, start + 1, nameEnd - start - 1);
+        }
+        return i + 1;
+      } else if (c == '/' && i + 1 < length && buf[i + 1] == '>') {
+        token.setEnd(i + 2, i, true);
+        return i + 2;
+      } else if (Character.isWhitespace(c) || c == '/' || c == '"' || c == '\'' || c == '=') {
+        i++;
+      } else {
+        // an attribute name, optionally followed by a value
+        int attributeNameStart = i;
+        while (i < length && !Character.isWhitespace(buf[i]) && buf[i] != '=' && buf[i] != '>' &&
+            !(buf[i] == '/' && i + 1 < length && buf[i + 1] == '>')) {
+          i++;
+        }
+        int attributeNameEnd = i;
+
+        int j = skipWhitespace(i);
+        if (j < length && buf[j] == '=') {
+          j = skipWhitespace(j + 1);
+          if (j >= length) {
+            return -1;
+          }
+          char quote = buf[j];
+          if (quote == '"' || quote == '\'') {
+            int close = indexOf(quote, j + 1);
+            if (close == -1) {
+              return -1;
+            }
+            token.addAttribute(attributeNameStart, attributeNameEnd, j + 1, close, quote);
+            i = close + 1;
+          } else {
+            int valueStart = j;
+            while (j < length && !Character.isWhitespace(buf[j]) && buf[j] != '>') {
+              j++;
+            }
+            token.addAttribute(attributeNameStart, attributeNameEnd, valueStart, j, (char)0);
+            i = j;
+          }
+        } else {
+          token.addAttribute(attributeNameStart, attributeNameEnd, -1, -1, (char)0);
+        }
+      }
+    }
+
+    // no closing >, so this isn't a tag
+    return -1;
+  }
+
+  /**
+   * Finds the start of the end tag for the given element, ignoring case.
+   */
+  private int indexOfEndTag(int from, String name) {
+    for (int i = from; i < length - 1; i++) {
+      if (buf[i] == '<' && buf[i + 1] == '/' && i + 2 + name.length() <= length) {
+        boolean matches = true;
+        for (int j = 0; j < name.length(); j++) {
+          if (Character.toLowerCase(buf[i + 2 + j]) != Character.toLowerCase(name.charAt(j))) {
+            matches = false;
+            break;
+          }
+        }
+        if (matches) {
+          return i;
+        }
+      }
+    }
+
+    return length;
+  }
+
+  private int scanName(int i) {
+    while (i < length && (Character.isLetterOrDigit(buf[i]) || buf[i] == ':' || buf[i] == '-' || buf[i] == '_')) {
+      i++;
+    }
+    return i;
+  }
+
+  private int skipWhitespace(int i) {
+    while (i < length && Character.isWhitespace(buf[i])) {
+      i++;
+    }
+    return i;
+  }
+
+  private int indexOf(char c, int from) {
+    for (int i = from; i < length; i++) {
+      if (buf[i] == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int indexOf(String s, int from) {
+    for (int i = from; i <= length - s.length(); i++) {
+      if (startsWith(i, s)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean startsWith(int i, String s) {
+    if (i + s.length() > length) {
+      return false;
+    }
+    for (int j = 0; j < s.length(); j++) {
+      if (buf[i + j] != s.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.importer;
+
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogServiceException;
+import net.sourceforge.pebble.util.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports a large number of blog entries into a blog. Unlike saving each
+ * entry through the BlogService, entries are written straight through the
+ * DAO by a pool of worker threads, without taking the blog lock or firing
+ * any events or listeners, and the indexes are rebuilt once all entries
+ * have been written.
+ * <p />
+ * Progress is recorded in a checkpoint file as the import runs. If an import
+ * fails, running it again against the same source skips the entries that
+ * were already stored and carries on from there; the checkpoint is removed
+ * once the indexes have been rebuilt.
+ */
+public class BulkImporter {
+
+  private static final Log log = LogFactory.getLog(BulkImporter.class);
+
+  /** the name of the checkpoint file, in the blog's root directory */
+  public static final String CHECKPOINT_FILENAME = "import.checkpoint";
+
+  private static final String SOURCE = "source";
+  private static final String ENTRIES = "entries";
+  private static final String STORED = "stored";
+
+  private final Blog blog;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private int checkpointInterval = 100;
+  private File checkpointFile;
+  private ImportProgressListener listener;
+
+  private String sourceName;
+  // the number of entries, in source order, known to have been stored
+  private int watermark;
+  private int lastCheckpoint;
+  private final BitSet completed = new BitSet();
+  private int stored;
+  private Exception failure;
+
+  /**
+   * Creates a new importer for the specified blog.
+   *
+   * @param blog    the Blog to import into
+   */
+  public BulkImporter(Blog blog) {
+    this.blog = blog;
+    this.checkpointFile = new File(blog.getRoot(), CHECKPOINT_FILENAME);
+  }
+
+  /**
+   * Sets the number of threads used to write entries.
+   *
+   * @param threads   the number of threads, at least 1
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Sets how many entries are stored between checkpoints.
+   *
+   * @param checkpointInterval    the number of entries
+   */
+  public void setCheckpointInterval(int checkpointInterval) {
+    this.checkpointInterval = Math.max(1, checkpointInterval);
+  }
+
+  /**
+   * Sets the file that progress is recorded in.
+   *
+   * @param checkpointFile    a File
+   */
+  public void setCheckpointFile(File checkpointFile) {
+    this.checkpointFile = checkpointFile;
+  }
+
+  /**
+   * Gets the file that progress is recorded in.
+   *
+   * @return  a File
+   */
+  public File getCheckpointFile() {
+    return checkpointFile;
+  }
+
+  /**
+   * Sets the listener that is told about progress.
+   *
+   * @param listener    an ImportProgressListener, or null
+   */
+  public void setProgressListener(ImportProgressListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Imports all of the blog entries from the specified source, which is
+   * closed afterwards.
+   *
+   * @param source    the BlogEntrySource to read from
+   * @return  the number of entries stored by this run
+   * @throws BlogServiceException   if the source can't be read or an entry
+   *                                can't be stored; the checkpoint is kept
+   *                                so that the import can be resumed
+   */
+  public int importBlogEntries(BlogEntrySource source) throws BlogServiceException {
+    sourceName = source.getName();
+    Properties checkpoint = readCheckpoint(sourceName);
+    int resumeFrom = Integer.parseInt(checkpoint.getProperty(ENTRIES, "0"));
+    boolean allStored = Boolean.valueOf(checkpoint.getProperty(STORED));
+
+    synchronized (this) {
+      watermark = resumeFrom;
+      lastCheckpoint = resumeFrom;
+      completed.clear();
+      stored = 0;
+      failure = null;
+    }
+
+    int skipped = 0;
+    try {
+      if (!allStored) {
+        skipped = storeBlogEntries(source, resumeFrom);
+      } else {
+        skipped = resumeFrom;
+      }
+    } finally {
+      try {
+        source.close();
+      } catch (IOException ioe) {
+        log.warn("Could not close " + sourceName, ioe);
+      }
+    }
+
+    synchronized (this) {
+      if (failure != null) {
+        // record how far we got, so that the next run can resume from there
+        writeCheckpointQuietly(watermark, false);
+        throw new BlogServiceException(blog, failure);
+      }
+    }
+
+    int total = skipped + stored;
+    if (listener != null) {
+      listener.reindexing(stored, skipped);
+    }
+
+    // everything is on disk, so a failure from here on only needs a reindex
+    writeCheckpointQuietly(total, true);
+    blog.reindexBlogEntries();
+    if (checkpointFile.exists() && !checkpointFile.delete()) {
+      log.warn("Could not delete " + checkpointFile);
+    }
+    log.info("Imported " + stored + " blog entries from " + sourceName + " (" + skipped + " already imported)");
+
+    return stored;
+  }
+
+  /**
+   * Reads the source and hands entries to the worker threads.
+   *
+   * @return  the number of entries skipped
+   */
+  private int storeBlogEntries(BlogEntrySource source, int resumeFrom) {
+    final BlogEntryDAO dao = DAOFactory.getConfiguredFactory().getBlogEntryDAO();
+    final ContentCache cache = ContentCache.getInstance();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    // bound the number of parsed entries waiting to be written
+    final Semaphore permits = new Semaphore(threads * 4);
+
+    // the blog entry index hasn't been touched by an interrupted run, so
+    // this is the same set of IDs that the first run started with
+    Set<String> ids = new HashSet<String>(blog.getBlogEntryIndex().getBlogEntries());
+
+    int sequence = 0;
+    int skipped = 0;
+    try {
+      BlogEntry blogEntry = source.nextBlogEntry();
+      while (blogEntry != null && !hasFailed()) {
+        // assign IDs for skipped entries too, so that they come out the same
+        assignUniqueId(blogEntry, ids);
+
+        if (sequence < resumeFrom) {
+          skipped++;
+        } else {
+          permits.acquire();
+          final BlogEntry entry = blogEntry;
+          final int index = sequence;
+          try {
+            executor.execute(new Runnable() {
+              public void run() {
+                try {
+                  if (!hasFailed()) {
+                    dao.storeBlogEntry(entry);
+                    entry.setPersistent(true);
+                    // a resumed import may be overwriting a cached copy
+                    cache.removeBlogEntry(entry);
+                    stored(entry, index);
+                  }
+                } catch (Exception e) {
+                  failed(e);
+                } finally {
+                  permits.release();
+                }
+              }
+            });
+          } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+          }
+        }
+
+        sequence++;
+        blogEntry = source.nextBlogEntry();
+      }
+    } catch (Exception e) {
+      failed(e);
+    } finally {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        failed(ie);
+      }
+    }
+
+    return skipped;
+  }
+
+  private void assignUniqueId(BlogEntry blogEntry, Set<String> ids) {
+    // same as the BlogService - if the ID is taken, move the date on by 1ms
+    while (ids.contains(blogEntry.getId())) {
+      blogEntry.setDate(new Date(blogEntry.getDate().getTime() + 1));
+    }
+    ids.add(blogEntry.getId());
+  }
+
+  private synchronized boolean hasFailed() {
+    return failure != null;
+  }
+
+  private synchronized void failed(Exception e) {
+    if (failure == null) {
+      log.error("Error importing blog entries", e);
+      failure = e;
+    }
+  }
+
+  private void stored(BlogEntry blogEntry, int index) {
+    int count;
+    synchronized (this) {
+      count = ++stored;
+
+      // entries complete out of order, so the checkpoint only moves past
+      // a contiguous run of stored entries
+      completed.set(index);
+      while (completed.get(watermark)) {
+        completed.clear(watermark);
+        watermark++;
+      }
+      if (watermark - lastCheckpoint >= checkpointInterval) {
+        lastCheckpoint = watermark;
+        writeCheckpointQuietly(watermark, false);
+      }
+    }
+
+    if (listener != null) {
+      listener.blogEntryStored(blogEntry, count);
+    }
+  }
+
+  private Properties readCheckpoint(String name) {
+    Properties properties = new Properties();
+    if (checkpointFile.exists()) {
+      InputStream in = null;
+      try {
+        in = new BufferedInputStream(new FileInputStream(checkpointFile));
+        properties.load(in);
+      } catch (IOException ioe) {
+        log.warn("Could not read " + checkpointFile + ", starting from the beginning", ioe);
+        properties.clear();
+      } finally {
+        IOUtils.closeQuietly(in);
+      }
+
+      if (!name.equals(properties.getProperty(SOURCE))) {
+        log.warn(checkpointFile + " was written by an import of " + properties.getProperty(SOURCE) + ", ignoring it");
+        properties.clear();
+      } else {
+        log.info("Resuming import of " + name + " after " + properties.getProperty(ENTRIES) + " blog entries");
+      }
+    }
+
+    return properties;
+  }
+
+  private void writeCheckpointQuietly(int entries, boolean allStored) {
+    try {
+      writeCheckpoint(sourceName, entries, allStored);
+    } catch (IOException ioe) {
+      // losing a checkpoint only means redoing some work on the next run
+      log.warn("Could not write " + checkpointFile, ioe);
+    }
+  }
+
+  private void writeCheckpoint(String name, int entries, boolean allStored) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(SOURCE, name);
+    properties.setProperty(ENTRIES, Integer.toString(entries));
+    properties.setProperty(STORED, Boolean.toString(allStored));
+
+    // so that a crash never leaves a partial checkpoint
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    properties.store(out, null);
+    FileUtils.writeAtomically(checkpointFile, out.toByteArray());
+  }
+
+}
@@ -38,7 +38,6 @@ import net.sourceforge.pebble.dao.DAOFactory;
 import net.sourceforge.pebble.dao.file.FileDAOFactory;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
-import net.sourceforge.pebble.domain.BlogService;
 import net.sourceforge.pebble.domain.Category;
 import net.sourceforge.pebble.domain.Comment;
 import net.sourceforge.pebble.domain.State;
@@ -47,6 +46,7 @@ import net.sourceforge.pebble.domain.TrackBack;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -55,21 +55,41 @@ import java.util.List;
 import java.util.Locale;
 
 /**
- * Simple utility to import posts Movable Type into Pebble.
+ * Simple utility to import posts Movable Type into Pebble. The export file
+ * is read one entry at a time and handed to a {@link BulkImporter}.
  *
  * @author    Simon Brown
  */
-public class MovableTypeImporter {
+public class MovableTypeImporter implements BlogEntrySource {
+
+  private final Blog blog;
+  private final File file;
+  private final BufferedReader reader;
+  private final SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy hh:mm:ss a", Locale.ENGLISH);
+
+  /**
+   * Creates a source that reads the specified Movable Type export file.
+   *
+   * @param blog    the Blog that entries are created for
+   * @param file    the Movable Type export file
+   * @throws IOException  if the file can't be opened
+   */
+  public MovableTypeImporter(Blog blog, File file) throws IOException {
+    this.blog = blog;
+    this.file = file;
+    this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF8"));
+  }
 
   /**
    * Starts the importer.
    */
   public static void main(String[] args) throws Exception {
-    if (args.length != 3) {
-      System.out.println("Usage : net.sourceforge.pebble.util.importer.MovableTypeImporter %1 %2 %3");
+    if (args.length < 3 || args.length > 4) {
+      System.out.println("Usage : net.sourceforge.pebble.util.importer.MovableTypeImporter %1 %2 %3 [%4]");
       System.out.println("   %1 : location of MT export file");
       System.out.println("   %2 : location of Pebble blog");
       System.out.println("   %3 : time zone (e.g. Europe/London)");
+      System.out.println("   %4 : number of threads used to write entries (optional)");
 
       return;
     }
@@ -87,34 +107,34 @@ public class MovableTypeImporter {
     Blog blog = new Blog(args[1]);
     blog.setProperty(Blog.TIMEZONE_KEY, args[2]);
 
-    importBlog(blog, file);
+    System.out.println("Importing " + file.getName());
+    BulkImporter importer = new BulkImporter(blog);
+    if (args.length > 3) {
+      importer.setThreads(Integer.parseInt(args[3]));
+    }
+    importer.setProgressListener(new ConsoleProgressListener());
+    importer.importBlogEntries(new MovableTypeImporter(blog, file));
+
+    System.out.println(" " + blog.getNumberOfBlogEntries());
   }
 
-  /**
-   * Imports a Movable Type blog from an export file.
-   *
-   * @param blog    the SimpleBlo to import to
-   * @param file    the Movable Type export file
-   * @throws Exception  if something goes wrong
-   */
-  private static void importBlog(Blog blog, File file) throws Exception {
-    System.out.println("Importing " + file.getName());
+  public String getName() {
+    return file.getAbsolutePath();
+  }
 
-    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),"UTF8"));
-    BlogEntry blogEntry = null;
-    do {
-      blogEntry = readBlogEntry(blog, reader);
-    } while (blogEntry != null);
+  public BlogEntry nextBlogEntry() throws Exception {
+    return readBlogEntry(blog, reader, sdf);
+  }
 
-    System.out.println(" " + blog.getNumberOfBlogEntries());
+  public void close() throws IOException {
+    reader.close();
   }
 
-  private static BlogEntry readBlogEntry(Blog blog, BufferedReader reader) throws Exception {
+  private static BlogEntry readBlogEntry(Blog blog, BufferedReader reader, SimpleDateFormat sdf) throws Exception {
     String line = reader.readLine();
     if (line == null) {
       return null;
     }
-    SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy hh:mm:ss a", Locale.ENGLISH);
     String author = line.substring("AUTHOR: ".length());
 //    System.out.println("Author:" + author);
     String title = reader.readLine().substring("TITLE: ".length());
@@ -225,19 +245,20 @@ public class MovableTypeImporter {
 
     for (String categoryStr : categories) {
       if(categoryStr != null && categoryStr.trim().length() > 0) {
-        Category category = new Category(categoryStr.trim(), categoryStr.trim());
-        DAOFactory factory = DAOFactory.getConfiguredFactory();
-        CategoryDAO dao = factory.getCategoryDAO();
-        dao.addCategory(category, blog);
-        blog.addCategory(category);
+        // only write the categories when a new one turns up, not for every entry
+        Category category = blog.getCategory(categoryStr.trim());
+        if (category == null) {
+          category = new Category(categoryStr.trim(), categoryStr.trim());
+          blog.addCategory(category);
+          DAOFactory factory = DAOFactory.getConfiguredFactory();
+          CategoryDAO dao = factory.getCategoryDAO();
+          dao.addCategory(category, blog);
+        }
         entry.addCategory(category);
       }
     }
     entry.setPublished("Publish".equals(status));
 
-    BlogService service = new BlogService();
-    service.putBlogEntry(entry);
-
     line = reader.readLine();
     while (!line.equals("--------")) {
       if (line.equals("COMMENT:")) {
@@ -282,11 +303,6 @@ public class MovableTypeImporter {
       line = reader.readLine();
     }
 
-    service.putBlogEntry(entry);
-
-//    System.out.println("--------------------------------------------------");
-    System.out.print(".");
-
     return entry;
   }
 
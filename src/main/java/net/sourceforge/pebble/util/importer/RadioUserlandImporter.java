@@ -35,7 +35,6 @@ import net.sourceforge.pebble.dao.DAOFactory;
 import net.sourceforge.pebble.dao.file.FileDAOFactory;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
-import net.sourceforge.pebble.domain.BlogService;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -47,39 +46,48 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 
 /**
- * Simple utility to import posts Radio Userland into Pebble.
+ * Simple utility to import posts Radio Userland into Pebble. Each file in
+ * the export directory holds a single post; files are parsed one at a time
+ * and handed to a {@link BulkImporter}.
  *
  * @author    Simon Brown
  */
-public class RadioUserlandImporter {
+public class RadioUserlandImporter implements BlogEntrySource {
+
+  private final Blog blog;
+  private final File root;
+  private final File sources[];
+  private final DocumentBuilder builder;
+  private final SimpleDateFormat sdf = new SimpleDateFormat("dd MMM yyyy HH:mm:ss");
+  private int next;
 
   /**
-   * Starts the importer.
+   * Creates a source that reads the posts in the specified directory.
+   *
+   * @param blog    the Blog that entries are created for
+   * @param root    the directory containing the Radio Userland posts
+   * @throws Exception  if the XML parser can't be created
    */
-  public static void main(String[] args) throws Exception {
-    File root = new File(args[0]);
-    File sources[] = root.listFiles();
-    DAOFactory.setConfiguredFactory(new FileDAOFactory());
-    Blog blog = new Blog(args[1]);
-    blog.setProperty(Blog.TIMEZONE_KEY, args[2]);
+  public RadioUserlandImporter(Blog blog, File root) throws Exception {
+    this.blog = blog;
+    this.root = root;
 
-    for (int i = 0; i < sources.length; i++) {
-      importFile(blog, sources[i]);
-    }
-  }
+    // sort, so that a resumed import sees the posts in the same order
+    File files[] = root.listFiles();
+    this.sources = files != null ? files : new File[0];
+    Arrays.sort(this.sources);
 
-  private static void importFile(Blog blog, File source) throws Exception {
-    System.out.println("Importing " + source.getName());
     // create a factory and builder - an abstraction for an XML parser
     DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
     factory.setValidating(false);
     factory.setNamespaceAware(true);
     factory.setIgnoringElementContentWhitespace(true);
     factory.setIgnoringComments(true);
-    DocumentBuilder builder = factory.newDocumentBuilder();
+    builder = factory.newDocumentBuilder();
     builder.setErrorHandler(new ErrorHandler() {
       public void warning(SAXParseException e) throws SAXException {
         System.out.println("Warning : " + e.getMessage());
@@ -96,34 +104,60 @@ public class RadioUserlandImporter {
         throw e;
       }
     });
+  }
+
+  /**
+   * Starts the importer.
+   */
+  public static void main(String[] args) throws Exception {
+    File root = new File(args[0]);
+    DAOFactory.setConfiguredFactory(new FileDAOFactory());
+    Blog blog = new Blog(args[1]);
+    blog.setProperty(Blog.TIMEZONE_KEY, args[2]);
+
+    BulkImporter importer = new BulkImporter(blog);
+    if (args.length > 3) {
+      importer.setThreads(Integer.parseInt(args[3]));
+    }
+    importer.setProgressListener(new ConsoleProgressListener());
+    importer.importBlogEntries(new RadioUserlandImporter(blog, root));
+  }
+
+  public String getName() {
+    return root.getAbsolutePath();
+  }
+
+  public BlogEntry nextBlogEntry() throws Exception {
+    if (next < sources.length) {
+      return importFile(sources[next++]);
+    } else {
+      return null;
+    }
+  }
+
+  public void close() {
+  }
 
-    SimpleDateFormat sdf = new SimpleDateFormat("dd MMM yyyy HH:mm:ss");
+  private BlogEntry importFile(File source) throws Exception {
     String title = "No title";
     String body = "";
     Date date = null;
     Document doc = builder.parse(source);
     Node root = doc.getDocumentElement();
     NodeList nodes = root.getChildNodes();
-    System.out.println(nodes.getLength());
     for (int i = 0; i < nodes.getLength(); i++) {
       Node n = nodes.item(i);
-      System.out.println(n.getNodeName());
 
       if (n.getNodeName().equals("string")) {
-        System.out.println(n.getAttributes().getNamedItem("name"));
-        System.out.println(n.getAttributes().getNamedItem("name").getNodeValue());
         if (n.getAttributes().getNamedItem("name").getNodeValue().equals("title")) {
           title = n.getAttributes().getNamedItem("value").getNodeValue();
-          System.out.println("Title : " + title);
         } else if (n.getAttributes().getNamedItem("name").getNodeValue().equals("text")) {
           body = n.getAttributes().getNamedItem("value").getNodeValue();
-          System.out.println("Body : " + body);
         }
       }
 
       if (n.getNodeName().equals("date") && n.getAttributes().getNamedItem("name").getNodeValue().equals("when")) {
         date = sdf.parse((n.getAttributes().getNamedItem("value").getNodeValue()).substring(4));
-        System.out.println("Date : " + date);
       }
     }
 
@@ -132,8 +166,7 @@ public class RadioUserlandImporter {
     entry.setBody(body);
     entry.setDate(date);
 
-    BlogService service = new BlogService();
-    service.putBlogEntry(entry);
+    return entry;
   }
 
 }
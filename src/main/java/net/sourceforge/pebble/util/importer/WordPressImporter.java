@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.importer;
+
+import net.sourceforge.pebble.Configuration;
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.dao.CategoryDAO;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.file.FileDAOFactory;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.State;
+import net.sourceforge.pebble.domain.TrackBack;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Imports posts from a WordPress export (WXR) file into Pebble. The file is
+ * read with a streaming parser, one item at a time, and handed to a
+ * {@link BulkImporter}. Posts are imported along with their categories,
+ * tags, comments, trackbacks and pingbacks; pages, attachments and
+ * anything in the trash are skipped.
+ */
+public class WordPressImporter implements BlogEntrySource {
+
+  /** the namespace varies with the version of the export format (1.0, 1.1, 1.2, ...) */
+  private static final String WORDPRESS_NAMESPACE = "http://wordpress.org/export/";
+  private static final String EXCERPT_NAMESPACE_SUFFIX = "/excerpt/";
+  private static final String CONTENT_NAMESPACE = "http://purl.org/rss/1.0/modules/content/";
+  private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+
+  private final Blog blog;
+  private final File file;
+  private final InputStream in;
+  private final XMLStreamReader reader;
+  private final SimpleDateFormat gmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+  private final SimpleDateFormat local = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+  /**
+   * Creates a source that reads the specified WordPress export file.
+   *
+   * @param blog    the Blog that entries are created for
+   * @param file    the WordPress export file
+   * @throws Exception  if the file can't be opened
+   */
+  public WordPressImporter(Blog blog, File file) throws Exception {
+    this.blog = blog;
+    this.file = file;
+    gmt.setTimeZone(TimeZone.getTimeZone("GMT"));
+    gmt.setLenient(false);
+    local.setTimeZone(blog.getTimeZone());
+    local.setLenient(false);
+
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    this.in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      this.reader = factory.createXMLStreamReader(in);
+    } catch (XMLStreamException xse) {
+      in.close();
+      throw xse;
+    }
+  }
+
+  /**
+   * Starts the importer.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3 || args.length > 4) {
+      System.out.println("Usage : net.sourceforge.pebble.util.importer.WordPressImporter %1 %2 %3 [%4]");
+      System.out.println("   %1 : location of WordPress export (WXR) file");
+      System.out.println("   %2 : location of Pebble blog");
+      System.out.println("   %3 : time zone (e.g. Europe/London)");
+      System.out.println("   %4 : number of threads used to write entries (optional)");
+
+      return;
+    }
+
+    File file = new File(args[0]);
+    if (PebbleContext.getInstance().getConfiguration() == null) {
+      Configuration config = new Configuration();
+      config.setDataDirectory(args[1]);
+      config.setUrl("http://www.yourdomain.com/blog/");
+      PebbleContext.getInstance().setConfiguration(config);
+    }
+
+    DAOFactory.setConfiguredFactory(new FileDAOFactory());
+    Blog blog = new Blog(args[1]);
+    blog.setProperty(Blog.TIMEZONE_KEY, args[2]);
+
+    System.out.println("Importing " + file.getName());
+    BulkImporter importer = new BulkImporter(blog);
+    if (args.length > 3) {
+      importer.setThreads(Integer.parseInt(args[3]));
+    }
+    importer.setProgressListener(new ConsoleProgressListener());
+    importer.importBlogEntries(new WordPressImporter(blog, file));
+
+    System.out.println(" " + blog.getNumberOfBlogEntries());
+  }
+
+  public String getName() {
+    return file.getAbsolutePath();
+  }
+
+  public BlogEntry nextBlogEntry() throws Exception {
+    while (reader.hasNext()) {
+      if (reader.next() == XMLStreamReader.START_ELEMENT && "item".equals(getName(reader))) {
+        Item item = readItem();
+        String type = item.get("wp:post_type");
+        String status = item.get("wp:status");
+        if ((type == null || type.equals("post")) && !"trash".equals(status) && !"auto-draft".equals(status)) {
+          return createBlogEntry(item);
+        }
+      }
+    }
+
+    return null;
+  }
+
+  public void close() throws IOException {
+    try {
+      reader.close();
+    } catch (XMLStreamException xse) {
+      // the stream is closed below anyway
+    }
+    in.close();
+  }
+
+  /**
+   * Reads an item, up to and including its end tag.
+   */
+  private Item readItem() throws XMLStreamException {
+    Item item = new Item();
+    while (true) {
+      int event = reader.next();
+      if (event == XMLStreamReader.END_ELEMENT) {
+        return item;
+      } else if (event == XMLStreamReader.START_ELEMENT) {
+        String name = getName(reader);
+        if (name.equals("category")) {
+          String domain = reader.getAttributeValue(null, "domain");
+          String nicename = reader.getAttributeValue(null, "nicename");
+          String text = readText().trim();
+          if ("post_tag".equals(domain)) {
+            item.tags.add(nicename != null ? nicename : text.replace(' ', '-'));
+          } else if (domain == null || "category".equals(domain)) {
+            item.categories.add(new String[] { nicename != null ? nicename : text, text });
+          }
+        } else if (name.equals("wp:comment")) {
+          item.comments.add(readItem().fields);
+        } else {
+          item.fields.put(name, readText());
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the text content of the current element, skipping any child
+   * elements (e.g. post metadata), up to and including its end tag.
+   */
+  private String readText() throws XMLStreamException {
+    StringBuilder buf = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamReader.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamReader.END_ELEMENT) {
+        depth--;
+      } else if (depth == 1 && (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA || event == XMLStreamReader.SPACE)) {
+        buf.append(reader.getText());
+      }
+    }
+
+    return buf.toString();
+  }
+
+  /**
+   * Gets the name of the current element, with a conventional prefix for
+   * the namespaces used in WXR files.
+   */
+  private static String getName(XMLStreamReader reader) {
+    String namespace = reader.getNamespaceURI();
+    String name = reader.getLocalName();
+    if (namespace == null || namespace.length() == 0) {
+      return name;
+    } else if (namespace.startsWith(WORDPRESS_NAMESPACE)) {
+      return (namespace.endsWith(EXCERPT_NAMESPACE_SUFFIX) ? "excerpt:" : "wp:") + name;
+    } else if (namespace.equals(CONTENT_NAMESPACE)) {
+      return "content:" + name;
+    } else if (namespace.equals(DC_NAMESPACE)) {
+      return "dc:" + name;
+    } else {
+      return "{" + namespace + "}" + name;
+    }
+  }
+
+  private BlogEntry createBlogEntry(Item item) throws Exception {
+    BlogEntry entry = new BlogEntry(blog);
+    entry.setTitle(item.get("title"));
+    entry.setBody(autop(item.get("content:encoded")));
+    String excerpt = item.get("excerpt:encoded");
+    if (excerpt != null && excerpt.trim().length() > 0) {
+      entry.setExcerpt(autop(excerpt));
+    }
+    entry.setDate(getDate(item.get("wp:post_date_gmt"), item.get("wp:post_date")));
+    entry.setAuthor(item.get("dc:creator"));
+    entry.setCommentsEnabled(!"closed".equals(item.get("wp:comment_status")));
+    entry.setTrackBacksEnabled(!"closed".equals(item.get("wp:ping_status")));
+    entry.setPublished("publish".equals(item.get("wp:status")));
+
+    for (String[] categoryNames : item.categories) {
+      // only write the categories when a new one turns up, not for every entry
+      Category category = blog.getCategory("/" + categoryNames[0]);
+      if (category == null) {
+        category = new Category(categoryNames[0], categoryNames[1]);
+        blog.addCategory(category);
+        CategoryDAO dao = DAOFactory.getConfiguredFactory().getCategoryDAO();
+        dao.addCategory(category, blog);
+      }
+      entry.addCategory(category);
+    }
+
+    if (!item.tags.isEmpty()) {
+      StringBuilder tags = new StringBuilder();
+      for (String tag : item.tags) {
+        if (tags.length() > 0) {
+          tags.append(' ');
+        }
+        tags.append(tag);
+      }
+      entry.setTags(tags.toString());
+    }
+
+    // replies refer to their parent by its WordPress ID
+    Map<String, Comment> comments = new HashMap<String, Comment>();
+    for (Map<String, String> fields : item.comments) {
+      State state = getState(fields.get("wp:comment_approved"));
+      if (state == null) {
+        continue;
+      }
+
+      String author = fields.get("wp:comment_author");
+      String url = fields.get("wp:comment_author_url");
+      String ipAddress = fields.get("wp:comment_author_IP");
+      String content = autop(fields.get("wp:comment_content"));
+      Date date = getDate(fields.get("wp:comment_date_gmt"), fields.get("wp:comment_date"));
+      String type = fields.get("wp:comment_type");
+
+      if ("trackback".equals(type) || "pingback".equals(type)) {
+        TrackBack trackBack = entry.createTrackBack(author, content, url, author, ipAddress, date, state);
+        entry.addTrackBack(trackBack);
+      } else {
+        Comment comment = entry.createComment(null, content, author, fields.get("wp:comment_author_email"), url, "", ipAddress, date, state);
+        Comment parent = comments.get(fields.get("wp:comment_parent"));
+        if (parent != null) {
+          comment.setParent(parent);
+        }
+        entry.addComment(comment);
+        comments.put(fields.get("wp:comment_id"), comment);
+      }
+    }
+
+    return entry;
+  }
+
+  /**
+   * Maps the approval status of a WordPress comment to a Pebble state.
+   *
+   * @return  a State, or null if the comment has been trashed
+   */
+  private static State getState(String approved) {
+    if ("1".equals(approved)) {
+      return State.APPROVED;
+    } else if ("spam".equals(approved)) {
+      return State.REJECTED;
+    } else if ("trash".equals(approved)) {
+      return null;
+    } else {
+      return State.PENDING;
+    }
+  }
+
+  /**
+   * Gets the date of a post or comment, preferring the GMT version. Drafts
+   * may not have a date at all, in which case the date of the export file
+   * is used, so that a resumed import still sees the same dates.
+   */
+  private Date getDate(String gmtDate, String localDate) {
+    try {
+      if (gmtDate != null && !gmtDate.startsWith("0000")) {
+        return gmt.parse(gmtDate.trim());
+      } else if (localDate != null && !localDate.startsWith("0000")) {
+        return local.parse(localDate.trim());
+      }
+    } catch (ParseException pe) {
+      // fall through
+    }
+
+    return new Date(file.lastModified());
+  }
+
+  /**
+   * WordPress stores posts without the paragraphs and line breaks it adds
+   * when they're displayed, so these are added here, unless the content
+   * already has its own paragraphs or preformatted text.
+   */
+  static String autop(String content) {
+    if (content == null) {
+      return "";
+    }
+
+    content = content.replace("\r\n", "\n").trim();
+    String lowerCase = content.toLowerCase();
+    if (content.length() == 0 || lowerCase.contains("<p") || lowerCase.contains("<pre")) {
+      return content;
+    }
+
+    String[] paragraphs = content.split("\n\\s*\n");
+    if (paragraphs.length == 1 && content.indexOf('\n') == -1) {
+      return content;
+    }
+
+    StringBuilder buf = new StringBuilder();
+    for (String paragraph : paragraphs) {
+      paragraph = paragraph.trim();
+      if (paragraph.length() > 0) {
+        buf.append("<p>").append(paragraph.replace("\n", "<br />\n")).append("</p>\n");
+      }
+    }
+
+    return buf.toString().trim();
+  }
+
+  /**
+   * The fields of an item (or a comment), along with its categories, tags and comments.
+   */
+  private static class Item {
+
+    private final Map<String, String> fields = new HashMap<String, String>();
+    private final List<String[]> categories = new ArrayList<String[]>();
+    private final List<String> tags = new ArrayList<String>();
+    private final List<Map<String, String>> comments = new ArrayList<Map<String, String>>();
+
+    String get(String name) {
+      return fields.get(name);
+    }
+
+  }
+
+}
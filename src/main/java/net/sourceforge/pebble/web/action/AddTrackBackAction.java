@@ -36,6 +36,7 @@ import net.sourceforge.pebble.trackback.TrackBackTokenManager;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.TrackBackResponseView;
+import net.sourceforge.pebble.web.security.RateLimited;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -48,6 +49,7 @@ import javax.servlet.http.HttpServletResponse;
  *
  * @author    Simon Brown
  */
+@RateLimited
 public class AddTrackBackAction extends Action {
 
   /** the log used by this class */
@@ -39,11 +39,17 @@ import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.BlogService;
 import net.sourceforge.pebble.domain.BlogServiceException;
+import net.sourceforge.pebble.domain.PdfService;
 
+import net.sourceforge.pebble.web.view.FileView;
 import net.sourceforge.pebble.web.view.NotFoundView;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.PdfView;
 import net.sourceforge.pebble.web.view.View;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -87,9 +93,24 @@ public class BlogEntryToPdfAction extends Action {
       return new NotFoundView();
 
     } else {
-      
+
+      File pdf;
+      try {
+        pdf = PdfService.getInstance().getPdf(blogEntry);
+      } catch (IOException ioe) {
+        log.error("Could not create PDF for blog entry " + blogEntry.getId(), ioe);
+        throw new ServletException(ioe);
+      }
+
+      // PDFs are cached until the entry changes, so a strong ETag is enough to revalidate
+      String etag = FileView.getETag(pdf);
+      response.setHeader("ETag", etag);
+      if (FileView.isETagMatched(request.getHeader("If-None-Match"), etag)) {
+        return new NotModifiedView();
+      }
+
 	  String filename = this.buildPermalink(blogEntry);
-	  return new PdfView(blogEntry, filename + ".pdf");
+	  return new PdfView(pdf, filename + ".pdf");
 
 	}
   }
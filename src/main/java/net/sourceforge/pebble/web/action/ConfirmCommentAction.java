@@ -48,7 +48,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
- * Confirms a comment.
+ * Confirms a comment. This isn't rate limited, since the comment being
+ * confirmed was already counted when SaveCommentAction received it.
  *
  * @author    Simon Brown
  */
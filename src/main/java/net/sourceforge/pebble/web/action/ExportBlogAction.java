@@ -38,8 +38,8 @@ import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.web.view.ForwardView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.AbstractRomeFeedView;
-import net.sourceforge.pebble.web.view.impl.FeedView;
 import net.sourceforge.pebble.web.view.impl.RdfView;
+import net.sourceforge.pebble.web.view.impl.StreamingFeedView;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -73,6 +73,13 @@ public class ExportBlogAction extends SecureAction {
 
     response.setContentType("application/xml; charset=" + blog.getCharacterEncoding());
 
+    // RSS and Atom are written one blog entry at a time
+    if (flavor != null && flavor.equalsIgnoreCase("atom")) {
+      return new StreamingFeedView(AbstractRomeFeedView.FeedType.ATOM);
+    } else if (flavor == null || !flavor.equalsIgnoreCase("rdf")) {
+      return new StreamingFeedView(AbstractRomeFeedView.FeedType.RSS);
+    }
+
     List<BlogEntry> blogEntries = blog.getBlogEntries();
     Collections.sort(blogEntries, new BlogEntryComparator());
     getModel().put(Constants.BLOG_ENTRIES, blogEntries);
@@ -83,13 +90,7 @@ public class ExportBlogAction extends SecureAction {
         javax.servlet.jsp.jstl.core.Config.FMT_LOCALE,
         Locale.ENGLISH);
 
-    if (flavor != null && flavor.equalsIgnoreCase("atom")) {
-      return new FeedView(AbstractRomeFeedView.FeedType.ATOM);
-    } else if (flavor != null && flavor.equalsIgnoreCase("rdf")) {
-      return new RdfView();
-    } else {
-      return new FeedView(AbstractRomeFeedView.FeedType.RSS);
-    }
+    return new RdfView();
   }
 
   /**
@@ -102,7 +102,12 @@ public class FileAction extends Action {
     Calendar expires = blog.getCalendar();
     expires.add(Calendar.MONTH, 1);
 
-    if (lastModifiedService.checkAndProcessLastModified(request, response, lastModified, expires.getTime())) {
+    boolean notModified = lastModifiedService.checkAndProcessLastModified(request, response, lastModified, expires.getTime());
+
+    // files carry a strong ETag (rather than the date based one), so that byte ranges can be validated
+    String etag = FileView.getETag(file);
+    response.setHeader("ETag", etag);
+    if (notModified || FileView.isETagMatched(request.getHeader("If-None-Match"), etag)) {
       return new NotModifiedView();
     } else {
       return new FileView(file);
@@ -33,6 +33,7 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.index.ResponseIndex;
 import net.sourceforge.pebble.web.security.RequireSecurityToken;
 import net.sourceforge.pebble.web.view.ForwardView;
 import net.sourceforge.pebble.web.view.RedirectView;
@@ -43,6 +44,10 @@ import org.apache.commons.logging.LogFactory;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Allows the user to manage recently added responses.
@@ -75,39 +80,40 @@ public class ManageResponsesAction extends SecureAction {
     BlogService service = new BlogService();
 
     if (ids != null && submit != null) {
+      // group the responses by blog entry, so that each blog entry is
+      // loaded once and stored once however many of its responses change
+      Map<String,List<String>> guidsByBlogEntry = new LinkedHashMap<String,List<String>>();
       for (String id : ids) {
-        Response ber = getBlogEntryResponse(blog, id);
-
-        if (ber == null) {
+        String blogEntryId = getBlogEntryId(id);
+        if (blogEntryId == null) {
           continue;
         }
 
-        if (submit.equalsIgnoreCase("Approve")) {
-          try {
-            ber.setApproved();
-            service.putBlogEntry(ber.getBlogEntry());
-            blog.info("Response <a href=\"" + ber.getPermalink() + "\">" + ber.getTitle() + " (" + ber.getSourceName() + ")</a> approved.");
-          } catch (BlogServiceException be) {
-            log.error("Error updating state for response", be);
-          }
-        } else if (submit.equalsIgnoreCase("Reject")) {
+        List<String> guids = guidsByBlogEntry.get(blogEntryId);
+        if (guids == null) {
+          guids = new ArrayList<String>();
+          guidsByBlogEntry.put(blogEntryId, guids);
+        }
+        guids.add(id);
+      }
+
+      // and write the response index once at the end, rather than per response
+      ResponseIndex responseIndex = blog.getResponseIndex();
+      responseIndex.beginBatch();
+      try {
+        for (Map.Entry<String,List<String>> entry : guidsByBlogEntry.entrySet()) {
+          BlogEntry blogEntry;
           try {
-            ber.setRejected();
-            service.putBlogEntry(ber.getBlogEntry());
-            blog.info("Response \"" + ber.getTitle() + "\" (" + ber.getSourceName() + ") rejected.");
-          } catch (BlogServiceException be) {
-            log.error("Error updating state for response", be);
+            blogEntry = service.getBlogEntry(blog, entry.getKey());
+          } catch (BlogServiceException e) {
+            throw new ServletException(e);
           }
-        } else if (submit.equalsIgnoreCase("Remove")) {
-          try {
-            ber.getBlogEntry().removeResponse(ber);
-            service.putBlogEntry(ber.getBlogEntry());
-            blog.info("Response \"" + ber.getTitle() + "\" (" + ber.getSourceName() + ") removed.");
-          } catch (BlogServiceException be) {
-            log.error("Error updating state for response", be);
+          if (blogEntry != null) {
+            updateResponses(blog, blogEntry, entry.getValue(), submit);
           }
         }
-
+      } finally {
+        responseIndex.endBatch();
       }
     }
 
@@ -129,27 +135,64 @@ public class ManageResponsesAction extends SecureAction {
     return new String[]{Constants.BLOG_CONTRIBUTOR_ROLE};
   }
 
-  private Response getBlogEntryResponse(Blog blog, String guid) throws ServletException {
-    // response key is of the form type/blogEntryId/responseId
-    String type = guid.substring(0, 1);
-    String blogEntryId = guid.substring(2, guid.indexOf("/", 2));
-    String responseId = guid.substring(guid.lastIndexOf("/")+1);
+  /**
+   * Approves, rejects or removes the given responses to a blog entry and
+   * stores the blog entry once.
+   */
+  private void updateResponses(Blog blog, BlogEntry blogEntry, List<String> guids, String submit) {
+    List<String> messages = new ArrayList<String>();
+    for (String guid : guids) {
+      Response ber = getBlogEntryResponse(blogEntry, guid);
+      if (ber == null) {
+        continue;
+      }
+
+      if (submit.equalsIgnoreCase("Approve")) {
+        ber.setApproved();
+        messages.add("Response <a href=\"" + ber.getPermalink() + "\">" + ber.getTitle() + " (" + ber.getSourceName() + ")</a> approved.");
+      } else if (submit.equalsIgnoreCase("Reject")) {
+        ber.setRejected();
+        messages.add("Response \"" + ber.getTitle() + "\" (" + ber.getSourceName() + ") rejected.");
+      } else if (submit.equalsIgnoreCase("Remove")) {
+        blogEntry.removeResponse(ber);
+        messages.add("Response \"" + ber.getTitle() + "\" (" + ber.getSourceName() + ") removed.");
+      }
+    }
+
+    if (messages.isEmpty()) {
+      return;
+    }
 
-    BlogService service = new BlogService();
-    BlogEntry blogEntry = null;
     try {
-      blogEntry = service.getBlogEntry(blog, blogEntryId);
-    } catch (BlogServiceException e) {
-      throw new ServletException(e);
+      BlogService service = new BlogService();
+      service.putBlogEntry(blogEntry);
+      for (String message : messages) {
+        blog.info(message);
+      }
+    } catch (BlogServiceException be) {
+      log.error("Error updating state for response", be);
     }
-    if (blogEntry == null) {
+  }
+
+  private String getBlogEntryId(String guid) {
+    // response key is of the form type/blogEntryId/responseId
+    int start = guid.indexOf("/");
+    int end = guid.lastIndexOf("/");
+    if (start == -1 || end <= start) {
       return null;
+    } else {
+      return guid.substring(start+1, end);
     }
+  }
+
+  private Response getBlogEntryResponse(BlogEntry blogEntry, String guid) {
+    String type = guid.substring(0, 1);
+    String responseId = guid.substring(guid.lastIndexOf("/")+1);
 
     try {
-      if (type != null && type.equalsIgnoreCase(COMMENT)) {
+      if (type.equalsIgnoreCase(COMMENT)) {
         return blogEntry.getComment(Long.parseLong(responseId));
-      } else if (type != null && type.equalsIgnoreCase(TRACKBACK)) {
+      } else if (type.equalsIgnoreCase(TRACKBACK)) {
         return blogEntry.getTrackBack(Long.parseLong(responseId));
       }
     } catch (NumberFormatException e) {
@@ -159,4 +202,4 @@ public class ManageResponsesAction extends SecureAction {
     return null;
   }
 
-}
\ No newline at end of file
+}
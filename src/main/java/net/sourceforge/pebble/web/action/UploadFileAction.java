@@ -171,7 +171,9 @@ public abstract class UploadFileAction extends AbstractFileAction {
     destinationDirectory.mkdirs();
 
     File file = new File(destinationDirectory, filename);
+    long sizeBefore = file.length();
     item.write(file);
+    fileManager.fileWritten(file, sizeBefore);
   }
 
   /**
@@ -56,7 +56,7 @@ public class ViewBlogsAction extends SecureAction {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     BlogManager blogManager = BlogManager.getInstance();
-    getModel().put(Constants.BLOGS, blogManager.getBlogs());
+    getModel().put(Constants.BLOGS, blogManager.getAllBlogs());
 
     return new BlogsView();
   }
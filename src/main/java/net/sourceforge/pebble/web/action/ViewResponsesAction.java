@@ -33,8 +33,8 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.domain.BlogService;
-import net.sourceforge.pebble.domain.BlogServiceException;
+import net.sourceforge.pebble.domain.State;
+import net.sourceforge.pebble.index.IndexedResponse;
 import net.sourceforge.pebble.util.Pageable;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.ResponsesView;
@@ -42,9 +42,6 @@ import net.sourceforge.pebble.web.view.impl.ResponsesView;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Iterator;
 
 /**
  * Allows the user to view all recently added responses.
@@ -64,7 +61,7 @@ public class ViewResponsesAction extends SecureAction {
    * @return the name of the next view
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
-    final Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
 
     String type = request.getParameter("type");
     if (type == null) {
@@ -82,31 +79,18 @@ public class ViewResponsesAction extends SecureAction {
       }
     }
 
-    List responses = null;
+    // page through the summaries held by the index, rather than loading
+    // the blog entry behind every response
+    State state;
     if (type.equalsIgnoreCase("pending")) {
-      responses = new ArrayList(blog.getPendingResponses());
+      state = State.PENDING;
     } else if (type.equalsIgnoreCase("rejected")) {
-      responses = new ArrayList(blog.getRejectedResponses());
+      state = State.REJECTED;
     } else {
-      responses = new ArrayList(blog.getApprovedResponses());
+      state = State.APPROVED;
     }
 
-    Pageable pageable = new Pageable(responses) {
-      public List getListForPage() {
-        List responses = new ArrayList();
-        BlogService service = new BlogService();
-        Iterator it = super.getListForPage().iterator();
-        while (it.hasNext()) {
-          try {
-            responses.add(service.getResponse(blog, (String)it.next()));
-          } catch (BlogServiceException e) {
-            // do nothing - some responses just won't get shown,
-            // but a message will be sent to the blog
-          }
-        }
-        return responses;
-      }
-    };
+    Pageable<IndexedResponse> pageable = new Pageable<IndexedResponse>(blog.getResponseIndex().getResponses(state));
     pageable.setPageSize(PAGE_SIZE);
     pageable.setPage(page);
     getModel().put("pageable", pageable);
@@ -43,8 +43,8 @@ import net.sourceforge.pebble.web.view.ZipView;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.text.SimpleDateFormat;
-import java.util.List;
 
 /**
  * Allows the user to export a directory as a ZIP file.
@@ -84,9 +84,18 @@ public class ZipDirectoryAction extends AbstractFileAction {
       }
 
       FileManager fileManager = new FileManager(blog, type);
-      List files = fileManager.getFiles(path, true);
+      File directory = fileManager.getFile(path);
+      if (!fileManager.isUnderneathRootDirectory(directory)) {
+        throw new IllegalFileAccessException();
+      }
+
+      // entries are named relative to the root, e.g. logs/...
+      String prefix = path.startsWith("/") ? path.substring(1) : path;
+      if (prefix.length() > 0 && !prefix.endsWith("/")) {
+        prefix += "/";
+      }
 
-      return new ZipView(files, filename);
+      return new ZipView(directory, prefix, filename);
     } catch (IllegalFileAccessException e) {
       return new ForbiddenView();
     }
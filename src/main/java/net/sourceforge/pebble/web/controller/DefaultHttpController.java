@@ -35,12 +35,15 @@ import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.AbstractBlog;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.MultiBlog;
+import net.sourceforge.pebble.metrics.Metrics;
 import net.sourceforge.pebble.util.SecurityUtils;
 import net.sourceforge.pebble.web.action.Action;
 import net.sourceforge.pebble.web.action.ActionFactory;
 import net.sourceforge.pebble.web.action.ActionNotFoundException;
 import net.sourceforge.pebble.web.action.SecureAction;
 import net.sourceforge.pebble.web.model.Model;
+import net.sourceforge.pebble.web.security.RateLimited;
+import net.sourceforge.pebble.web.security.ResponseRateLimiter;
 import net.sourceforge.pebble.web.security.SecurityTokenValidator;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.MultiBlogNotSupportedView;
@@ -63,6 +66,9 @@ public class DefaultHttpController implements HttpController {
 
   private static final Log log = LogFactory.getLog(DefaultHttpController.class);
 
+  /** not defined by HttpServletResponse in this version of the servlet API */
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+
   /**
    * a reference to the factory used to create Action instances
    */
@@ -113,6 +119,11 @@ public class DefaultHttpController implements HttpController {
       return;
     }
 
+    // turn floods of comments and TrackBacks away before doing any real work
+    if (isRateLimited(request, response, blog, action)) {
+      return;
+    }
+
     boolean authorised = isAuthorised(request, action);
     if (!authorised) {
       response.sendError(HttpServletResponse.SC_FORBIDDEN);
@@ -122,6 +133,7 @@ public class DefaultHttpController implements HttpController {
         // Forward to no security url
         request.getRequestDispatcher("/noSecurityToken.action").forward(request, response);
       } else {
+        long startTime = System.nanoTime();
         try {
           Model model = new Model();
           model.put(Constants.BLOG_KEY, blog);
@@ -155,13 +167,38 @@ public class DefaultHttpController implements HttpController {
 
           }
         } catch (Exception e) {
+          Metrics.getInstance().counter("action.errors", blog.getId()).increment();
           request.setAttribute("exception", e);
           throw new ServletException(e);
+        } finally {
+          Metrics.getInstance().timer("action." + actionName, blog.getId()).stop(startTime);
         }
       }
     }
   }
 
+  /**
+   * Applies the ResponseRateLimiter to actions marked as rate limited,
+   * sending a 429 (too many requests) response if the limit has been reached.
+   *
+   * @return  true if the request has been rejected, false otherwise
+   */
+  private boolean isRateLimited(HttpServletRequest request, HttpServletResponse response,
+                                AbstractBlog blog, Action action) throws IOException {
+    if (!(blog instanceof Blog) || !action.getClass().isAnnotationPresent(RateLimited.class)) {
+      return false;
+    }
+
+    long wait = ResponseRateLimiter.getInstance().acquire((Blog)blog, request.getRemoteAddr());
+    if (wait > 0) {
+      response.setHeader("Retry-After", Long.toString((wait + 999) / 1000));
+      response.sendError(SC_TOO_MANY_REQUESTS);
+      return true;
+    }
+
+    return false;
+  }
+
   private boolean isAuthorised(HttpServletRequest request, Action action) {
     if (action instanceof SecureAction) {
       SecureAction secureAction = (SecureAction) action;
@@ -85,7 +85,16 @@ public class BlogLookupFilter implements Filter {
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
       throws ServletException, IOException {
 
-    HttpServletRequest httpRequest = (HttpServletRequest)request;
+    BlogManager.getInstance().beginRequest();
+    try {
+      lookupBlog((HttpServletRequest)request);
+      chain.doFilter(request, response);
+    } finally {
+      BlogManager.getInstance().endRequest();
+    }
+  }
+
+  private void lookupBlog(HttpServletRequest httpRequest) throws IOException {
     PebbleContext pebbleContext = PebbleContext.getInstance();
     AbstractBlog blog;
 
@@ -146,7 +155,5 @@ public class BlogLookupFilter implements Filter {
     } else {
       httpRequest.setAttribute(Constants.BLOG_TYPE, "multiblog");
     }
-
-    chain.doFilter(request, response);
   }
 }
@@ -44,6 +44,7 @@ import net.sourceforge.pebble.comparator.BlogEntryComparator;
 import net.sourceforge.pebble.comparator.BlogByLastModifiedDateComparator;
 import net.sourceforge.pebble.decorator.ContentDecoratorChain;
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.index.IndexedResponse;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -51,6 +52,7 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.jstl.core.Config;
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -122,15 +124,11 @@ public class PreProcessingFilter implements Filter {
         Collections.sort(blogEntries, new BlogEntryComparator());
         httpRequest.setAttribute(Constants.RECENT_BLOG_ENTRIES, blogEntries);
 
-        List<Response> recentApprovedResponses = b.getRecentApprovedResponses();
-        for (Response r : recentApprovedResponses) {
-          if (r instanceof Comment) {
-            b.getContentDecoratorChain().decorate(context, (Comment)r);
-          } else if (r instanceof TrackBack){
-            b.getContentDecoratorChain().decorate(context, (TrackBack)r);
-          }
-        }
-        httpRequest.setAttribute(Constants.RECENT_RESPONSES, recentApprovedResponses);
+        // summaries from the index, so that no blog entries need to be loaded
+        List<IndexedResponse> recentResponseSummaries = b.getResponseIndex().getRecentApprovedResponses(b.getRecentResponsesOnHomePage());
+        httpRequest.setAttribute(Constants.RECENT_RESPONSE_SUMMARIES, recentResponseSummaries);
+        // themes written against the responses themselves still get them, but only load them if they're used
+        httpRequest.setAttribute(Constants.RECENT_RESPONSES, new RecentResponses(b, context));
 
         httpRequest.setAttribute(Constants.CATEGORIES, b.getCategories());
         httpRequest.setAttribute(Constants.TAGS, b.getTags());
@@ -177,4 +175,45 @@ public class PreProcessingFilter implements Filter {
     	UrlRewriter.clear();
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * The most recent approved responses, decorated for display. These are
+   * only loaded (along with their blog entries) when the list is first used.
+   */
+  static class RecentResponses extends AbstractList<Response> {
+
+    private final Blog blog;
+    private final ContentDecoratorContext context;
+    private List<Response> responses;
+
+    RecentResponses(Blog blog, ContentDecoratorContext context) {
+      this.blog = blog;
+      this.context = context;
+    }
+
+    private List<Response> getResponses() {
+      if (responses == null) {
+        responses = blog.getRecentApprovedResponses();
+        for (Response r : responses) {
+          if (r instanceof Comment) {
+            blog.getContentDecoratorChain().decorate(context, (Comment)r);
+          } else if (r instanceof TrackBack) {
+            blog.getContentDecoratorChain().decorate(context, (TrackBack)r);
+          }
+        }
+      }
+
+      return responses;
+    }
+
+    public Response get(int index) {
+      return getResponses().get(index);
+    }
+
+    public int size() {
+      return getResponses().size();
+    }
+
+  }
+
+}
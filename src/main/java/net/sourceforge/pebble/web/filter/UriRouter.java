@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A precompiled table of URI routes, held as a trie of path segments so that
+ * a URI can be dispatched with a single walk along its segments. Routes are
+ * either exact (the whole URI must match) or attached to a path prefix, in
+ * which case the deepest matching prefix is tried first.
+ */
+final class UriRouter {
+
+  /**
+   * A route attached to a path prefix.
+   */
+  interface Route {
+
+    /**
+     * Gets the internal URI for the given URI.
+     *
+     * @param uri   a URI starting with the prefix this route is attached to
+     * @return  the internal URI, or null if this route doesn't apply
+     */
+    String getUri(String uri);
+
+  }
+
+  private final Map<String,String> exactRoutes = new HashMap<String,String>();
+
+  private final Node root = new Node();
+
+  private int maxDepth = 0;
+
+  /**
+   * Adds a route for a single URI.
+   *
+   * @param uri       the URI, e.g. /about.html
+   * @param target    the internal URI
+   */
+  void add(String uri, String target) {
+    exactRoutes.put(uri, target);
+  }
+
+  /**
+   * Adds a route for all URIs starting with the given path segments.
+   *
+   * @param prefix    the path, e.g. /responses/atom.xml
+   * @param route     the Route to use
+   */
+  void add(String prefix, Route route) {
+    Node node = root;
+    int depth = 0;
+    for (String segment : prefix.substring(1).split("/")) {
+      Node child = node.children.get(segment);
+      if (child == null) {
+        child = new Node();
+        node.children.put(segment, child);
+      }
+      node = child;
+      depth++;
+    }
+    node.route = route;
+    maxDepth = Math.max(maxDepth, depth);
+  }
+
+  /**
+   * Gets the internal URI for the given URI.
+   *
+   * @param uri   a URI, starting with /
+   * @return  the internal URI, or null if no route applies
+   */
+  String getUri(String uri) {
+    String target = exactRoutes.get(uri);
+    if (target != null) {
+      return target;
+    }
+
+    // walk down the trie, remembering the routes passed on the way
+    Route[] routes = new Route[maxDepth];
+    int found = 0;
+    Node node = root;
+    int start = 1;
+    int length = uri.length();
+    for (int depth = 0; depth < maxDepth && start <= length; depth++) {
+      int end = start;
+      while (end < length && uri.charAt(end) != '/' && uri.charAt(end) != '?') {
+        end++;
+      }
+
+      node = node.children.get(uri.substring(start, end));
+      if (node == null) {
+        break;
+      }
+      if (node.route != null) {
+        routes[found++] = node.route;
+      }
+
+      if (end >= length || uri.charAt(end) == '?') {
+        break;
+      }
+      start = end + 1;
+    }
+
+    for (int i = found - 1; i >= 0; i--) {
+      target = routes[i].getUri(uri);
+      if (target != null) {
+        return target;
+      }
+    }
+
+    return null;
+  }
+
+  private static final class Node {
+    private final Map<String,Node> children = new HashMap<String,Node>();
+    private Route route;
+  }
+
+}
@@ -47,24 +47,151 @@ public class UriTransformer {
   /** literal used at the start of category URIs */
   private static final String CATEGORIES = "/categories";
 
-  /** literal used at the start of category URIs, in regex form */
-  private static final String CATEGORIES_REGEX = "\\/categories\\/";
-
   /** literal used at the start of tag URIs */
   private static final String TAGS = "/tags/";
 
-  /** literal used at the start of tag URIs, in regex form */
-  private static final String TAGS_REGEX = "\\/tags\\/";
-
   /** literal used at the start of author URIs */
   private static final String AUTHORS = "/authors/";
 
-  /** literal used at the start of tag URIs, in regex form */
-  private static final String AUTHORS_REGEX = "\\/authors\\/";
-
   /** the log used by this class */
   private static Log log = LogFactory.getLog(UriTransformer.class);
 
+  /** the routes for a single blog, tried after the permalink providers */
+  private static final UriRouter BLOG_ROUTES = new UriRouter();
+
+  /** the routes for a multi-blog */
+  private static final UriRouter MULTI_BLOG_ROUTES = new UriRouter();
+
+  static {
+    UriRouter.Route help = new UriRouter.Route() {
+      public String getUri(String uri) {
+        // url matches /help/xyz.html
+        if (uri.startsWith("/help/") && uri.endsWith(".html") && isWord(uri, 6, uri.length()-5)) {
+          return "/viewHelp.secureaction?name=" + uri.substring(6, uri.length()-5);
+        }
+        return null;
+      }
+    };
+
+    BLOG_ROUTES.add("/", "/viewHomePage.action");
+    BLOG_ROUTES.add("/index.jsp", "/viewHomePage.action");
+    BLOG_ROUTES.add("/index.html", "/viewHomePage.action");
+    BLOG_ROUTES.add("/today.html", "/viewDay.action");
+    BLOG_ROUTES.add("/about.html", "/about.action");
+    BLOG_ROUTES.add("/categories", "/viewCategories.action");
+    BLOG_ROUTES.add("/categories/", "/viewCategories.action");
+    BLOG_ROUTES.add("/tags", "/viewTags.action");
+    BLOG_ROUTES.add("/tags/", "/viewTags.action");
+    BLOG_ROUTES.add("/pages", "/viewStaticPage.action?name=index");
+    BLOG_ROUTES.add("/pages/", "/viewStaticPage.action?name=index");
+    BLOG_ROUTES.add("/help", "/viewHelp.secureaction?name=index");
+    BLOG_ROUTES.add("/help/", "/viewHelp.secureaction?name=index");
+    BLOG_ROUTES.add("/responses/rss.xml", "/responseFeed.action?flavor=rss20");
+    BLOG_ROUTES.add("/help", help);
+
+    BLOG_ROUTES.add(CATEGORIES, new UriRouter.Route() {
+      public String getUri(String uri) {
+        if (uri.startsWith(CATEGORIES + "/") && isFeed(uri, CATEGORIES.length() + 1)) {
+          // URI of the form /category[/subcategories]/[rss|rdf|atom].xml
+          String categoryId = uri.substring(CATEGORIES.length(), uri.lastIndexOf("/"));
+          return "/feed.action?category=" + categoryId + "&flavor=" + getFlavor(uri);
+        } else {
+          // URI of the form /categories/category/
+          return "/viewCategory.action?category=" + stripTrailingSlash(uri.substring(CATEGORIES.length()));
+        }
+      }
+    });
+
+    BLOG_ROUTES.add("/tags", new UriRouter.Route() {
+      public String getUri(String uri) {
+        if (!uri.startsWith(TAGS)) {
+          return null;
+        } else if (isFeed(uri, TAGS.length())) {
+          // URI of the form /tags/tag/[rss|rdf|atom].xml
+          String tag = uri.substring(TAGS.length(), uri.lastIndexOf("/"));
+          return "/feed.action?tag=" + tag + "&flavor=" + getFlavor(uri);
+        } else {
+          // URI of the form /tags/tag/
+          return "/viewTag.action?tag=" + Tag.encode(stripTrailingSlash(uri.substring(TAGS.length())));
+        }
+      }
+    });
+
+    BLOG_ROUTES.add("/authors", new UriRouter.Route() {
+      public String getUri(String uri) {
+        if (!uri.startsWith(AUTHORS)) {
+          return null;
+        } else if (isFeed(uri, AUTHORS.length())) {
+          // URI of the form /authors/username/[rss|rdf|atom].xml
+          String author = uri.substring(AUTHORS.length(), uri.lastIndexOf("/"));
+          return "/feed.action?author=" + author + "&flavor=" + getFlavor(uri);
+        } else {
+          // URI of the form /authors/usename/
+          return "/aboutAuthor.action?user=" + stripTrailingSlash(uri.substring(AUTHORS.length()));
+        }
+      }
+    });
+
+    BLOG_ROUTES.add("/pages", new UriRouter.Route() {
+      public String getUri(String uri) {
+        // url matches /pages/xyz.html
+        return uri.startsWith("/pages/") ? "/viewStaticPage.action?name=" + uri.substring(7, uri.length()-5) : null;
+      }
+    });
+
+    BLOG_ROUTES.add("/images", new UriRouter.Route() {
+      public String getUri(String uri) {
+        // url matches /images/xyz.xyz
+        return uri.startsWith("/images/") ? "/file.action?type=" + FileMetaData.BLOG_IMAGE + "&name=" + uri.substring(7) : null;
+      }
+    });
+
+    BLOG_ROUTES.add("/files", new UriRouter.Route() {
+      public String getUri(String uri) {
+        // url matches /files/xyz.xyz
+        return uri.startsWith("/files/") ? "/file.action?type=" + FileMetaData.BLOG_FILE + "&name=" + uri.substring(6) : null;
+      }
+    });
+
+    BLOG_ROUTES.add("/theme", new UriRouter.Route() {
+      public String getUri(String uri) {
+        // url matches /theme/xyz.xyz
+        return uri.startsWith("/theme/") ? "/file.action?type=" + FileMetaData.THEME_FILE + "&name=" + uri.substring(6) : null;
+      }
+    });
+
+    BLOG_ROUTES.add("/responses/rss.xml", new UriRouter.Route() {
+      public String getUri(String uri) {
+        // url is for a response feed
+        if (uri.startsWith("/responses/rss.xml?entry=")) {
+          return "/responseFeed.action?flavor=rss20&" + uri.substring("/responses/rss.xml?".length());
+        }
+        return null;
+      }
+    });
+
+    BLOG_ROUTES.add("/responses/atom.xml", constant("/responseFeed.action?flavor=atom"));
+
+    BLOG_ROUTES.add("/blogentries", new UriRouter.Route() {
+      public String getUri(String uri) {
+        // view blog entries by page /blogentries/1.html
+        return uri.startsWith("/blogentries/") ? "/viewBlogEntriesByPage.action?page=" + uri.substring(13, uri.length()-5) : null;
+      }
+    });
+
+    for (UriRouter router : new UriRouter[] {BLOG_ROUTES, MULTI_BLOG_ROUTES}) {
+      router.add("/rss.xml", constant("/feed.action?flavor=rss20"));
+      router.add("/feed.xml", constant("/feed.action?flavor=rss20"));
+      router.add("/rdf.xml", constant("/feed.action?flavor=rdf"));
+      router.add("/atom.xml", constant("/feed.action?flavor=atom"));
+    }
+
+    MULTI_BLOG_ROUTES.add("/", "/viewHomePage.action");
+    MULTI_BLOG_ROUTES.add("/index.jsp", "/viewHomePage.action");
+    MULTI_BLOG_ROUTES.add("/index.html", "/viewHomePage.action");
+    MULTI_BLOG_ROUTES.add("/help", help);
+  }
+
   /**
    * Checks for URI patterns and converts them to the appropriate action.
    *
@@ -76,8 +203,6 @@ public class UriTransformer {
    */
   public String getUri(String uri, Blog blog) {
     PermalinkProvider permalinkProvider = blog.getPermalinkProvider();
-    DefaultPermalinkProvider defaultPermalinkProvider = new DefaultPermalinkProvider();
-    defaultPermalinkProvider.setBlog(permalinkProvider.getBlog());
 
     log.trace("URI before transformation : " + uri);
 
@@ -87,147 +212,19 @@ public class UriTransformer {
 
     // try to transform the URI with the permalink provider in use
     String result = getUri(uri, permalinkProvider);
-    if (result == null) {
+    if (result == null && !(permalinkProvider instanceof DefaultPermalinkProvider)) {
       // for backwards compatibility, try the default permalink provider
+      DefaultPermalinkProvider defaultPermalinkProvider = new DefaultPermalinkProvider();
+      defaultPermalinkProvider.setBlog(permalinkProvider.getBlog());
       result = getUri(uri, defaultPermalinkProvider);
     }
 
     // if the result is still null, try the other URL patterns to transform the URI
     if (result == null) {
-      if (uri.equals("/categories") || uri.equals("/categories/")) {
-        // URI of the form /categories/
-        result = "/viewCategories.action";
-      } else if (uri.matches(CATEGORIES_REGEX + ".*\\/.*xml")) {
-          // URI of the form /category[/subcategories]/[rss|rdf|atom].xml
-          int indexOfLastSlash = uri.lastIndexOf("/");
-          String categoryId = uri.substring(CATEGORIES.length(), indexOfLastSlash);
-
-          if (uri.endsWith("rdf.xml")) {
-            result = "/feed.action?category=" + categoryId + "&flavor=rdf";
-          } else if (uri.endsWith("atom.xml")) {
-            result = "/feed.action?category=" + categoryId + "&flavor=atom";
-          } else {
-            result = "/feed.action?category=" + categoryId + "&flavor=rss20";
-          }
-      } else if (uri.startsWith(CATEGORIES)) {
-        // URI of the form /categories/category/
-        String category = uri.substring(CATEGORIES.length(), uri.length());
-        if (category.endsWith("/")) {
-          category = category.substring(0, category.length()-1);
-        }
-        result = "/viewCategory.action?category=" + category;
-      } else if (uri.equals("/tags") || uri.equals("/tags/")) {
-          // URI of the form /tags/
-          result = "/viewTags.action";
-      } else if (uri.matches(TAGS_REGEX + ".*\\/.*xml")) {
-        // URI of the form /tags/tag/[rss|rdf|atom].xml
-        int indexOfLastSlash = uri.lastIndexOf("/");
-        String tag = uri.substring(TAGS.length(), indexOfLastSlash);
-
-        if (uri.endsWith("rdf.xml")) {
-          result = "/feed.action?tag=" + tag + "&flavor=rdf";
-        } else if (uri.endsWith("atom.xml")) {
-          result = "/feed.action?tag=" + tag + "&flavor=atom";
-        } else {
-          result = "/feed.action?tag=" + tag + "&flavor=rss20";
-        }
-      } else if (uri.matches(AUTHORS_REGEX + ".*\\/.*xml")) {
-        // URI of the form /authors/username/[rss|rdf|atom].xml
-        int indexOfLastSlash = uri.lastIndexOf("/");
-        String author = uri.substring(AUTHORS.length(), indexOfLastSlash);
-
-        if (uri.endsWith("rdf.xml")) {
-          result = "/feed.action?author=" + author + "&flavor=rdf";
-        } else if (uri.endsWith("atom.xml")) {
-          result = "/feed.action?author=" + author + "&flavor=atom";
-        } else {
-          result = "/feed.action?author=" + author + "&flavor=rss20";
-        }
-      } else if (uri.startsWith(TAGS)) {
-        // URI of the form /tags/tag/
-        String tag = uri.substring(TAGS.length(), uri.length());
-        if (tag.endsWith("/")) {
-          tag = tag.substring(0, tag.length()-1);
-        }
-        result = "/viewTag.action?tag=" + Tag.encode(tag);
-      } else if (uri.startsWith(AUTHORS)) {
-        // URI of the form /authors/usename/
-        String author = uri.substring(AUTHORS.length(), uri.length());
-        if (author.endsWith("/")) {
-          author = author.substring(0, author.length()-1);
-        }
-        result = "/aboutAuthor.action?user=" + author;
-      } else if (uri.equals("/pages/") || uri.equals("/pages")) {
-        result = "/viewStaticPage.action?name=index";
-      } else if (uri.startsWith("/pages/")) {
-        // url matches /pages/xyz.html
-        String name = uri.substring(7, uri.length()-5);
-
-        result = "/viewStaticPage.action?name=";
-        result += name;
-      } else if (uri.startsWith("/images/")) {
-        // url matches /images/xyz.xyz
-        String name = uri.substring(7, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.BLOG_IMAGE + "&name=";
-        result += name;
-      } else if (uri.startsWith("/files/")) {
-        // url matches /files/xyz.xyz
-        String name = uri.substring(6, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.BLOG_FILE + "&name=";
-        result += name;
-      } else if (uri.startsWith("/theme/")) {
-        // url matches /files/xyz.xyz
-        String name = uri.substring(6, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.THEME_FILE + "&name=";
-        result += name;
-      } else if (uri.matches("\\/help\\/\\w*\\.html")) {
-        // url matches /help/xyz.html
-        String name = uri.substring(6, uri.length());
-
-        result = "/viewHelp.secureaction?name=";
-        result += name.substring(0, name.length()-5);
-      } else if (uri.equals("/help") || uri.equals("/help/")) {
-        // url matches /help/
-        result = "/viewHelp.secureaction?name=index";
-      } else if (uri.equals("/responses/rss.xml")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=rss20";
-      } else if (uri.startsWith("/responses/rss.xml?entry=")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=rss20&" + uri.substring("/responses/rss.xml?".length());
-      } else if (uri.startsWith("/rss.xml")) {
-        // url matches rss.xml
-        result = "/feed.action?flavor=rss20";
-      } else if (uri.startsWith("/feed.xml")) {
-        // url matches feed.xml
-        result = "/feed.action?flavor=rss20";
-      } else if (uri.startsWith("/rdf.xml")) {
-        // url matches rdf.xml
-        result = "/feed.action?flavor=rdf";
-      } else if (uri.startsWith("/responses/atom.xml")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=atom";
-      } else if (uri.startsWith("/atom.xml")) {
-        // url matches atom.xml
-        result = "/feed.action?flavor=atom";
-      } else if (uri.equals("/today.html")) {
-        // URI of the form /today.html
-        result = "/viewDay.action";
-      } else if (uri.equals("/about.html")) {
-        // URI of the form /about.html
-        result = "/about.action";
-      } else if (uri.startsWith("/blogentries/")) {
-        // view blog entries by page /blogentries/1.html
-        String page = uri.substring(13, uri.length()-5);
-        result = "/viewBlogEntriesByPage.action?page=" + page;
-      } else if (uri.equals("/") || uri.equals("/index.jsp") || uri.equals("/index.html")) {
-          result = "/viewHomePage.action";
-      } else {
-        result = uri;
-      }
+      result = BLOG_ROUTES.getUri(uri);
+    }
+    if (result == null) {
+      result = uri;
     }
 
     log.trace("URI after transformation : " + result);
@@ -245,35 +242,14 @@ public class UriTransformer {
    *            the same)
    */
   public String getUri(String uri, MultiBlog blog) {
-    String result;
-
     log.trace("URI before transformation : " + uri);
 
     if (uri == null || uri.trim().equals("")) {
       uri = "/";
     }
 
-    if (uri.startsWith("/rss.xml")) {
-      // url matches rss.xml
-      result = "/feed.action?flavor=rss20";
-    } else if (uri.startsWith("/feed.xml")) {
-      // url matches feed.xml
-      result = "/feed.action?flavor=rss20";
-    } else if (uri.startsWith("/rdf.xml")) {
-      // url matches rdf.xml
-      result = "/feed.action?flavor=rdf";
-    } else if (uri.startsWith("/atom.xml")) {
-      // url matches atom.xml
-      result = "/feed.action?flavor=atom";
-    } else if (uri.equals("/") || uri.equals("/index.jsp") || uri.equals("/index.html")) {
-        result = "/viewHomePage.action";
-    } else if (uri.matches("\\/help\\/\\w*\\.html")) {
-      // url matches /help/xyz.html
-      String name = uri.substring(6, uri.length());
-
-      result = "/viewHelp.secureaction?name=";
-      result += name.substring(0, name.length()-5);
-    } else {
+    String result = MULTI_BLOG_ROUTES.getUri(uri);
+    if (result == null) {
       result = uri;
     }
 
@@ -282,6 +258,51 @@ public class UriTransformer {
     return result;
   }
 
+  /**
+   * Determines whether the URI is a feed below the given position, i.e. of
+   * the form .../something/[rss|rdf|atom].xml
+   */
+  private static boolean isFeed(String uri, int from) {
+    int indexOfLastSlash = uri.lastIndexOf("/");
+    return indexOfLastSlash >= from && uri.endsWith("xml") && uri.length() - 3 > indexOfLastSlash;
+  }
+
+  private static String getFlavor(String uri) {
+    if (uri.endsWith("rdf.xml")) {
+      return "rdf";
+    } else if (uri.endsWith("atom.xml")) {
+      return "atom";
+    } else {
+      return "rss20";
+    }
+  }
+
+  private static String stripTrailingSlash(String s) {
+    return s.endsWith("/") ? s.substring(0, s.length()-1) : s;
+  }
+
+  /**
+   * Determines whether the given range of a string only contains word
+   * characters, i.e. [a-zA-Z_0-9].
+   */
+  private static boolean isWord(String s, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+        return false;
+      }
+    }
+    return start <= end;
+  }
+
+  private static UriRouter.Route constant(final String target) {
+    return new UriRouter.Route() {
+      public String getUri(String uri) {
+        return target;
+      }
+    };
+  }
+
   /**
    * Checks for URI patterns and converts them to the appropriate action, using
    * the specified permalink provider.
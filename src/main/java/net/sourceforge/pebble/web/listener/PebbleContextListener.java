@@ -35,6 +35,8 @@ import net.sourceforge.pebble.Configuration;
 import net.sourceforge.pebble.PebbleContext;
 import net.sourceforge.pebble.dao.DAOFactory;
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.mail.MailQueue;
+import net.sourceforge.pebble.metrics.Metrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.context.ApplicationContext;
@@ -42,6 +44,7 @@ import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
+import java.lang.management.ManagementFactory;
 import java.util.Collection;
 
 /**
@@ -67,16 +70,25 @@ public class PebbleContextListener implements ServletContextListener {
     Configuration config = (Configuration)applicationContext.getBean("pebbleConfiguration");
 
     DAOFactory.setConfiguredFactory(config.getDaoFactory());
+    try {
+      Metrics.getInstance().registerMBeans(ManagementFactory.getPlatformMBeanServer());
+    } catch (SecurityException se) {
+      log.warn("Could not register metrics with JMX", se);
+    }
+
     PebbleContext ctx = PebbleContext.getInstance();
     ctx.setConfiguration(config);
     ctx.setWebApplicationRoot(event.getServletContext().getRealPath("/"));
     ctx.setApplicationContext(applicationContext);
 
     BlogManager.getInstance().setMultiBlog(config.isMultiBlog());
+    BlogManager.getInstance().setStartupThreads(config.getBlogStartupThreads());
+    BlogManager.getInstance().setLazyStartup(config.isLazyBlogStartup());
+    BlogManager.getInstance().setPassivationTimeout(config.getBlogPassivationTimeout() * 60L * 1000L);
     BlogManager.getInstance().startBlogs();
 
     // find those blogs with no entries and add a welcome note
-    Collection<Blog> blogs = (Collection<Blog>)BlogManager.getInstance().getBlogs();
+    Collection<Blog> blogs = BlogManager.getInstance().getStartedBlogs();
     for (Blog blog : blogs) {
       try {
         // and add a default entry, if one doesn't exist
@@ -134,6 +146,13 @@ public class PebbleContextListener implements ServletContextListener {
       }
     }
 
+    try {
+      // resume delivery of anything left in the outbox
+      MailQueue.getInstance().start();
+    } catch (Throwable t) {
+      log.warn("Could not start the mail queue - add mail.jar and activation.jar to the server classpath if you want to send e-mail", t);
+    }
+
     long endTime = System.currentTimeMillis();
     log.info("Pebble started in " + (endTime-startTime) + "ms");
   }
@@ -146,6 +165,13 @@ public class PebbleContextListener implements ServletContextListener {
   public void contextDestroyed(ServletContextEvent event) {
     log.info("Stopping Pebble");
     BlogManager.getInstance().stopBlogs();
+    try {
+      MailQueue.getInstance().stop();
+    } catch (Throwable t) {
+      // mail isn't available
+    }
+
+    Metrics.getInstance().unregisterMBeans();
 
     log.info("Pebble stopped");
   }
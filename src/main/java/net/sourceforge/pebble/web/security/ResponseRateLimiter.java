@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.security;
+
+import net.sourceforge.pebble.PluginProperties;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.event.response.IpAddressList;
+import net.sourceforge.pebble.event.response.IpAddressListener;
+import net.sourceforge.pebble.metrics.Gauge;
+import net.sourceforge.pebble.metrics.Metrics;
+import net.sourceforge.pebble.util.TokenBucketSketch;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which comments and TrackBacks can be posted from a
+ * single IP address, and from the subnet around it (/24 for IPv4, /64 for
+ * IPv6), so that a flood of spam is turned away before it reaches the
+ * domain layer. Each blog has its own limits, so a flood aimed at one blog
+ * doesn't lock its senders out of the others.
+ * <p />
+ * The limits are token buckets held in a TokenBucketSketch, so memory use
+ * is fixed however many addresses are seen. They can be set per blog
+ * through the plugin properties below. Addresses on the IpAddressListener
+ * whitelist aren't limited, and those on its blacklist get a single token
+ * refilled at a quarter of the usual rate.
+ */
+public class ResponseRateLimiter {
+
+  private static final Log log = LogFactory.getLog(ResponseRateLimiter.class);
+
+  /** the number of responses allowed per minute from an IP address */
+  public static final String RATE_KEY = "ResponseRateLimiter.perMinute";
+
+  /** the number of responses that may be sent at once from an IP address */
+  public static final String BURST_KEY = "ResponseRateLimiter.burst";
+
+  static final int DEFAULT_RATE = 6;
+  static final int DEFAULT_BURST = 10;
+
+  /** how much more a subnet is allowed than a single address */
+  static final int SUBNET_FACTOR = 4;
+
+  /** how much less a blacklisted address is allowed */
+  static final int BLACKLIST_FACTOR = 4;
+
+  private static final long ADDRESS = 1L << 56;
+  private static final long SUBNET = 2L << 56;
+
+  private static final ResponseRateLimiter instance = new ResponseRateLimiter();
+
+  private final TokenBucketSketch buckets = new TokenBucketSketch(4, 4096);
+
+  /** times are measured from here, so that they are never negative */
+  private final long origin = System.nanoTime();
+
+  /** the compiled IpAddressListener lists for each blog */
+  private final ConcurrentMap<String,Lists> lists = new ConcurrentHashMap<String,Lists>();
+
+  ResponseRateLimiter() {
+    Metrics.getInstance().gauge("rateLimit.activeBuckets", null, new Gauge() {
+      public long getValue() {
+        return buckets.getActiveCells(now());
+      }
+    });
+  }
+
+  /**
+   * Gets the singleton instance of this class.
+   *
+   * @return    a ResponseRateLimiter instance
+   */
+  public static ResponseRateLimiter getInstance() {
+    return instance;
+  }
+
+  /**
+   * Takes a token for a response from the given address.
+   *
+   * @param blog        the Blog the response is for
+   * @param ipAddress   the IP address that the response came from
+   * @return  0 if the response is allowed, otherwise the number of
+   *          milliseconds until it would be
+   */
+  public long acquire(Blog blog, String ipAddress) {
+    return TimeUnit.NANOSECONDS.toMillis(acquire(blog, ipAddress, now()));
+  }
+
+  long acquire(Blog blog, String ipAddress, long now) {
+    if (ipAddress == null || ipAddress.length() == 0) {
+      return 0;
+    }
+
+    PluginProperties props = blog.getPluginProperties();
+    int rate = getInt(props, RATE_KEY, DEFAULT_RATE);
+    int burst = getInt(props, BURST_KEY, DEFAULT_BURST);
+    if (rate <= 0 || burst <= 0) {
+      return 0;
+    }
+
+    Lists compiled = getLists(blog);
+    if (compiled.getWhitelist(props).contains(ipAddress)) {
+      return 0;
+    }
+
+    long interval = TimeUnit.MINUTES.toNanos(1) / rate;
+    int addressBurst = burst;
+    if (compiled.getBlacklist(props).contains(ipAddress)) {
+      interval *= BLACKLIST_FACTOR;
+      addressBurst = 1;
+    }
+
+    long wait = buckets.acquire(ADDRESS ^ hash(blog.getId(), ipAddress), interval, addressBurst, now);
+    if (wait > 0) {
+      Metrics.getInstance().counter("rateLimit.rejected.address", blog.getId()).increment();
+      log.debug("Rate limit reached for " + ipAddress);
+      return wait;
+    }
+
+    String subnet = getSubnet(ipAddress);
+    wait = buckets.acquire(SUBNET ^ hash(blog.getId(), subnet), interval / SUBNET_FACTOR, burst * SUBNET_FACTOR, now);
+    if (wait > 0) {
+      Metrics.getInstance().counter("rateLimit.rejected.subnet", blog.getId()).increment();
+      log.debug("Rate limit reached for subnet " + subnet);
+      return wait;
+    }
+
+    Metrics.getInstance().counter("rateLimit.allowed", blog.getId()).increment();
+    return 0;
+  }
+
+  private long now() {
+    return System.nanoTime() - origin;
+  }
+
+  private Lists getLists(Blog blog) {
+    Lists compiled = lists.get(blog.getId());
+    if (compiled == null) {
+      lists.putIfAbsent(blog.getId(), new Lists());
+      compiled = lists.get(blog.getId());
+    }
+
+    return compiled;
+  }
+
+  private static int getInt(PluginProperties props, String key, int defaultValue) {
+    String value = props.getProperty(key);
+    if (value == null || value.trim().length() == 0) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException nfe) {
+      log.warn("Ignoring invalid value for " + key + " : " + value);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Gets the subnet that an address belongs to: the /24 for IPv4, or the
+   * /64 for IPv6, however the address is written. Anything that isn't an
+   * IP address literal is its own subnet.
+   */
+  static String getSubnet(String ipAddress) {
+    if (!isAddressLiteral(ipAddress)) {
+      return ipAddress;
+    }
+
+    try {
+      // a literal is parsed without a DNS lookup
+      byte[] address = InetAddress.getByName(ipAddress).getAddress();
+      int prefixBytes = (address.length == 4) ? 3 : 8;
+      for (int i = prefixBytes; i < address.length; i++) {
+        address[i] = 0;
+      }
+
+      return InetAddress.getByAddress(address).getHostAddress() + "/" + (prefixBytes * 8);
+    } catch (UnknownHostException e) {
+      return ipAddress;
+    }
+  }
+
+  /**
+   * Determines whether a string looks like an IPv4 or IPv6 address, so that
+   * InetAddress never treats it as a host name to be looked up.
+   */
+  private static boolean isAddressLiteral(String s) {
+    boolean ipv6 = s.indexOf(':') > -1;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (!(Character.isDigit(c) || c == '.' || (ipv6 && (c == ':' || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))))) {
+        return false;
+      }
+    }
+
+    return s.length() > 0;
+  }
+
+  private static long hash(String blogId, String s) {
+    long h = 1125899906842597L;
+    for (int i = 0; i < blogId.length(); i++) {
+      h = 31 * h + blogId.charAt(i);
+    }
+    h = 31 * h + '/';
+    for (int i = 0; i < s.length(); i++) {
+      h = 31 * h + s.charAt(i);
+    }
+
+    return h;
+  }
+
+  /**
+   * The IpAddressListener whitelist and blacklist for a blog, only
+   * recompiled when the properties change.
+   */
+  private static class Lists {
+
+    private volatile IpAddressList whitelist = new IpAddressList(null);
+    private volatile IpAddressList blacklist = new IpAddressList(null);
+
+    IpAddressList getWhitelist(PluginProperties props) {
+      String list = props.getProperty(IpAddressListener.WHITELIST_KEY);
+      IpAddressList compiled = whitelist;
+      if (!compiled.isCompiledFrom(list)) {
+        compiled = new IpAddressList(list);
+        whitelist = compiled;
+      }
+
+      return compiled;
+    }
+
+    IpAddressList getBlacklist(PluginProperties props) {
+      String list = props.getProperty(IpAddressListener.BLACKLIST_KEY);
+      IpAddressList compiled = blacklist;
+      if (!compiled.isCompiledFrom(list)) {
+        compiled = new IpAddressList(list);
+        blacklist = compiled;
+      }
+
+      return compiled;
+    }
+
+  }
+
+}
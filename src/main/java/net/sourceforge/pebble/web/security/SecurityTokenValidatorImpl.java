@@ -34,6 +34,7 @@ package net.sourceforge.pebble.web.security;
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.AbstractBlog;
 import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.metrics.Metrics;
 import net.sourceforge.pebble.web.action.Action;
 import org.apache.commons.codec.binary.Base64;
 import org.springframework.stereotype.Component;
@@ -102,12 +103,11 @@ public class SecurityTokenValidatorImpl implements SecurityTokenValidator {
       }
       // We must validate the token
       String requestToken = request.getParameter(PEBBLE_SECURITY_TOKEN_PARAMETER);
-      // Compare token to cookie
-      if (token.equals(requestToken)) {
-        return true;
-      }
-      // No token, try validating if the request is signed
-      return validateSignedRequest(request);
+      // Compare token to cookie, or if there's no token, try validating if the request is signed
+      boolean valid = token.equals(requestToken) || validateSignedRequest(request);
+      // The tokens live in cookies rather than a store, so only their use is counted
+      Metrics.getInstance().counter(valid ? "xsrf.tokens.accepted" : "xsrf.tokens.rejected", null).increment();
+      return valid;
     } else {
       return true;
     }
@@ -167,6 +167,7 @@ public class SecurityTokenValidatorImpl implements SecurityTokenValidator {
       cookie.setMaxAge(-1);
       cookie.setPath(contextPath);
       response.addCookie(cookie);
+      Metrics.getInstance().counter("xsrf.tokens.added", null).increment();
     }
     // Set it as a request attribute so the security token tag can find it
     request.setAttribute(PEBBLE_SECURITY_TOKEN_PARAMETER, token);
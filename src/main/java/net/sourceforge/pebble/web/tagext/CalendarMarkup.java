@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.tagext;
+
+import net.sourceforge.pebble.util.UrlRewriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The pre-rendered markup for a calendar, stored as a sequence of literal
+ * fragments and unrewritten URLs so that it can be replayed for any request.
+ * Each instance remembers what it was rendered from, so that a stale
+ * calendar is simply rendered again.
+ */
+class CalendarMarkup {
+
+  /** the maximum number of calendars to keep, across all blogs */
+  static final int MAXIMUM_SIZE = 256;
+
+  private static final Map<String,CalendarMarkup> cache = Collections.synchronizedMap(
+      new LinkedHashMap<String,CalendarMarkup>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String,CalendarMarkup> eldest) {
+          return size() > MAXIMUM_SIZE;
+        }
+      });
+
+  /** what this markup was rendered from */
+  private final Object[] key;
+
+  /** literal markup at even indexes, URLs to be rewritten at odd indexes */
+  private final String[] parts;
+
+  private CalendarMarkup(Object[] key, String[] parts) {
+    this.key = key;
+    this.parts = parts;
+  }
+
+  /**
+   * Gets the cached markup for the given calendar, if it is still current.
+   *
+   * @param name    the name of the calendar (blog and month)
+   * @param key     identity of everything that the markup depends on
+   * @return  a CalendarMarkup instance, or null
+   */
+  static CalendarMarkup get(String name, Object[] key) {
+    CalendarMarkup markup = cache.get(name);
+    if (markup != null && sameAs(markup.key, key)) {
+      return markup;
+    }
+    return null;
+  }
+
+  static void put(String name, CalendarMarkup markup) {
+    cache.put(name, markup);
+  }
+
+  static void clear() {
+    cache.clear();
+  }
+
+  private static boolean sameAs(Object[] a, Object[] b) {
+    if (a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] == null ? b[i] != null : !a[i].equals(b[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes out the markup, rewriting URLs for the current request.
+   *
+   * @param out   the Writer to write to
+   */
+  void write(Writer out) throws IOException {
+    for (int i = 0; i < parts.length; i++) {
+      if (i % 2 == 0) {
+        out.write(parts[i]);
+      } else {
+        out.write(UrlRewriter.doRewrite(parts[i]));
+      }
+    }
+  }
+
+  /**
+   * Builds up the markup for a calendar.
+   */
+  static class Builder {
+
+    private final List<String> parts = new ArrayList<String>();
+    private final StringBuilder buf = new StringBuilder();
+
+    Builder append(String s) {
+      buf.append(s);
+      return this;
+    }
+
+    Builder appendUrl(String url) {
+      parts.add(buf.toString());
+      parts.add(url);
+      buf.setLength(0);
+      return this;
+    }
+
+    CalendarMarkup build(Object[] key) {
+      parts.add(buf.toString());
+      return new CalendarMarkup(key, parts.toArray(new String[parts.size()]));
+    }
+
+  }
+
+}
@@ -35,26 +35,25 @@ import java.io.IOException;
 import java.text.DateFormatSymbols;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Iterator;
-import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.JspTagException;
-import javax.servlet.jsp.JspWriter;
 import javax.servlet.jsp.tagext.TagSupport;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.Day;
 import net.sourceforge.pebble.domain.Month;
+import net.sourceforge.pebble.index.ArchiveIndex;
+import net.sourceforge.pebble.index.MonthArchive;
 import net.sourceforge.pebble.util.I18n;
-import net.sourceforge.pebble.util.UrlRewriter;
 
 /**
- * A custom tag that outputs a calendar control.
+ * A custom tag that outputs a calendar control. The markup for each month
+ * is cached, and only rendered again when the month's blog entries, the
+ * first month of the blog, the current day or the blog's locale change.
  *
  * @author    Simon Brown
  */
@@ -72,13 +71,50 @@ public class CalendarTag extends TagSupport {
     HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
     Blog blog = (Blog)request.getAttribute(Constants.BLOG_KEY);
     Month month = (Month)request.getAttribute(Constants.MONTHLY_BLOG);
-    Day today = blog.getBlogForToday();
     Calendar now = blog.getCalendar();
 
     if (month == null) {
-      month = today.getMonth();
+      month = blog.getBlogForMonth(now.get(Calendar.YEAR), now.get(Calendar.MONTH) + 1);
     }
 
+    Month firstMonth = blog.getBlogForFirstMonth();
+    ArchiveIndex archiveIndex = blog.getArchiveIndex();
+    MonthArchive archive = archiveIndex != null ? archiveIndex.getMonthArchive(month.getYear().getYear(), month.getMonth()) : null;
+    String todayText = I18n.getMessage(blog, "common.today");
+
+    String name = blog.getId() + "/" + month.getYear().getYear() + "/" + month.getMonth();
+    Object[] key = new Object[] {
+        archiveIndex,
+        archive,
+        firstMonth,
+        blog.getPermalinkProvider(),
+        now.get(Calendar.YEAR) * 10000 + (now.get(Calendar.MONTH) + 1) * 100 + now.get(Calendar.DAY_OF_MONTH),
+        blog.getLocale(),
+        blog.getTimeZoneId(),
+        todayText
+    };
+
+    CalendarMarkup markup = CalendarMarkup.get(name, key);
+    if (markup == null) {
+      markup = render(blog, month, firstMonth, archive, now, todayText, key);
+      CalendarMarkup.put(name, markup);
+    }
+
+    try {
+      markup.write(pageContext.getOut());
+    } catch (IOException ioe) {
+      throw new JspTagException(ioe.getMessage());
+    }
+
+    return SKIP_BODY;
+  }
+
+  /**
+   * Renders the calendar for the given month.
+   */
+  private CalendarMarkup render(Blog blog, Month month, Month firstMonth, MonthArchive archive, Calendar now, String todayText, Object[] key) {
+    Day today = blog.getBlogForDay(now.getTime());
+
     Calendar firstDayOfMonth = blog.getCalendar();
     firstDayOfMonth.setTime(month.getBlogForDay(1).getDate());
 
@@ -88,171 +124,125 @@ public class CalendarTag extends TagSupport {
     monthFormatter.setTimeZone(blog.getTimeZone());
     NumberFormat numberFormatter = NumberFormat.getIntegerInstance(blog.getLocale());
 
-    Month firstMonth = blog.getBlogForFirstMonth();
+    CalendarMarkup.Builder out = new CalendarMarkup.Builder();
+
+    out.append("<div class=\"calendar\">");
+    out.append("<table width=\"100%\">");
+    out.append("<tr>");
+    out.append("<td colspan=\"7\" align=\"center\">");
+    if (month.before(firstMonth)) {
+      out.append("<b>");
+      out.append(monthAndYearFormatter.format(month.getDate()));
+      out.append("</b>");
+    } else {
+      out.append("<b><a href=\"");
+      out.appendUrl(month.getPermalink());
+      out.append("\">");
+      out.append(monthAndYearFormatter.format(month.getDate()));
+      out.append("</a></b>");
+    }
+    out.append("</td>");
+    out.append("</tr>");
 
-    try {
-      JspWriter out = pageContext.getOut();
-
-      out.write("<div class=\"calendar\">");
-      out.write("<table width=\"100%\">");
-      out.write("<tr>");
-      out.write("<td colspan=\"7\" align=\"center\">");
-      if (month.before(firstMonth)) {
-        out.write("<b>");
-        out.write(monthAndYearFormatter.format(month.getDate()));
-        out.write("</b>");
-      } else {
-        out.write("<b><a href=\"");
-        out.write(UrlRewriter.doRewrite(month.getPermalink()));
-        out.write("\">");
-        out.write(monthAndYearFormatter.format(month.getDate()));
-        out.write("</a></b>");
-      }
-      out.write("</td>");
-      out.write("</tr>");
+    int firstDayOfWeek = now.getFirstDayOfWeek();
 
-      int firstDayOfWeek = now.getFirstDayOfWeek();
+    // write out the calendar header
+    DateFormatSymbols symbols = new DateFormatSymbols(blog.getLocale());
+    String[] days = symbols.getShortWeekdays();
+    out.append("<tr>");
+    for (int i = firstDayOfWeek; i <= 7; i++) {
+      out.append("<td class=\"calendarDayHeader\" width=\"14%\">" + days[i] + "</td>");
+    }
+    for (int i = 1; i < firstDayOfWeek; i++) {
+      out.append("<td class=\"calendarDayHeader\">" + days[i] + "</td>");
+    }
+    out.append("</tr>");
 
-      // write out the calendar header
-      DateFormatSymbols symbols = new DateFormatSymbols(blog.getLocale());
-      String[] days = symbols.getShortWeekdays();
-      out.write("<tr>");
-      for (int i = firstDayOfWeek; i <= 7; i++) {
-        out.write("<td class=\"calendarDayHeader\" width=\"14%\">" + days[i] + "</td>");
-      }
-      for (int i = 1; i < firstDayOfWeek; i++) {
-        out.write("<td class=\"calendarDayHeader\">" + days[i] + "</td>");
-      }
-      out.write("</tr>");
+    // write out the body of the calendar, padded out to complete weeks
+    int padding = (firstDayOfMonth.get(Calendar.DAY_OF_WEEK) - firstDayOfWeek + 7) % 7;
+    int lastDay = month.getLastDayInMonth();
+    int cells = padding + lastDay;
+    cells += (7 - cells % 7) % 7;
+    boolean thisMonth = now.get(Calendar.YEAR) == firstDayOfMonth.get(Calendar.YEAR) &&
+        now.get(Calendar.MONTH) == firstDayOfMonth.get(Calendar.MONTH);
 
-      // write out the body of the calendar
-      Iterator it = getDatesForCompleteWeeks(blog, month).iterator();
-      Calendar cal;
-      int count = 0;
-      while (it.hasNext()) {
-        cal = (Calendar)it.next();
-        Day daily = blog.getBlogForDay(cal.getTime());
+    for (int count = 0; count < cells; count++) {
+      int dayOfMonth = count - padding + 1;
 
-        String formattedNumber = numberFormatter.format(cal.get(Calendar.DAY_OF_MONTH));
+      if (count % 7 == 0) {
+        out.append("<tr>");
+      }
+
+      // output padding if the date to display isn't in the month
+      if (dayOfMonth < 1 || dayOfMonth > lastDay) {
+        out.append("<td class=\"calendarDay\">&nbsp;");
+      } else {
+        String formattedNumber = numberFormatter.format(dayOfMonth);
         if (formattedNumber.length() == 1) {
           formattedNumber = "&nbsp;" + formattedNumber;
         }
+        boolean hasBlogEntries = archive != null && archive.hasBlogEntries(dayOfMonth);
 
-        if (count % 7 == 0) {
-          out.write("<tr>");
-        }
-
-        // output padding if the date to display isn't in the month
-        if (cal.get(Calendar.MONTH) != firstDayOfMonth.get(Calendar.MONTH)) {
-          out.write("<td class=\"calendarDay\">&nbsp;");
-        } else if (now.get(Calendar.YEAR) == cal.get(Calendar.YEAR) &&
-          now.get(Calendar.MONTH) == cal.get(Calendar.MONTH) &&
-          now.get(Calendar.DAY_OF_MONTH) == cal.get(Calendar.DAY_OF_MONTH)) {
-          out.write("<td class=\"calendarToday\">");
-          if (daily.hasBlogEntries()) {
-            out.write("&nbsp;<a href=\"" + UrlRewriter.doRewrite(daily.getPermalink()) + "\">" + formattedNumber + "</a>&nbsp;");
-          } else {
-            out.write("&nbsp;" + formattedNumber + "&nbsp;");
-          }
+        if (thisMonth && now.get(Calendar.DAY_OF_MONTH) == dayOfMonth) {
+          out.append("<td class=\"calendarToday\">");
+        } else if (hasBlogEntries) {
+          out.append("<td class=\"calendarDayWithEntries\">");
         } else {
-          if (daily.hasBlogEntries()) {
-            out.write("<td class=\"calendarDayWithEntries\">");
-            out.write("&nbsp;<a href=\"" + UrlRewriter.doRewrite(daily.getPermalink()) + "\">" + formattedNumber + "</a>&nbsp;");
-          } else {
-            out.write("<td class=\"calendarDay\">");
-            out.write("&nbsp;" + formattedNumber + "&nbsp;");
-          }
+          out.append("<td class=\"calendarDay\">");
         }
-        out.write("</td>");
 
-        if (count % 7 == 6) {
-          out.write("</tr>");
+        if (hasBlogEntries) {
+          out.append("&nbsp;<a href=\"");
+          out.appendUrl(month.getBlogForDay(dayOfMonth).getPermalink());
+          out.append("\">" + formattedNumber + "</a>&nbsp;");
+        } else {
+          out.append("&nbsp;" + formattedNumber + "&nbsp;");
         }
-
-        count++;
       }
+      out.append("</td>");
 
-      // write out the footer of the calendar
-      Month previous = month.getPreviousMonth();
-      Month next = month.getNextMonth();
-
-      out.write("<tr>");
-      out.write("<td colspan=\"7\" align=\"center\">");
-
-      // only display the previous month link if there are blog entries
-      if (previous.before(firstMonth)) {
-        out.write(monthFormatter.format(previous.getDate()));
-      } else {
-        out.write("<a href=\"" + UrlRewriter.doRewrite(previous.getPermalink()) + "\">" + monthFormatter.format(previous.getDate()) + "</a>");
+      if (count % 7 == 6) {
+        out.append("</tr>");
       }
-
-      String todayText = I18n.getMessage(blog, "common.today");
-      out.write("&nbsp; | &nbsp;");
-      out.write("<a href=\"" + UrlRewriter.doRewrite(today.getPermalink()) + "\">" + todayText + "</a>");
-      out.write("&nbsp; | &nbsp;");
-
-      // only display the next month date if it's not in the future
-      if (next.getDate().after(now.getTime()) || next.before(firstMonth)) {
-        out.write(monthFormatter.format(next.getDate()));
-      } else {
-        out.write("<a href=\"" + UrlRewriter.doRewrite(next.getPermalink()) + "\">" + monthFormatter.format(next.getDate()) + "</a>");
-      }
-      out.write("</td>");
-      out.write("</tr>");
-
-      out.write("</table>");
-      out.write("</div>");
-    } catch (IOException ioe) {
-      throw new JspTagException(ioe.getMessage());
     }
 
-    return SKIP_BODY;
-  }
+    // write out the footer of the calendar
+    Month previous = month.getPreviousMonth();
+    Month next = month.getNextMonth();
 
-  /**
-   * Gets a list of dates that should be displayed for the given month. This
-   * method adds dates either side of the month, padding the list so that it
-   * contains a number of complete weeks. For example, if the first day of the
-   * month for the blog's locale is Monday and the given month starts on a
-   * Tuesday, this method will add in that previous Monday to present
-   * back a complete week. The same happens for the end of the month. This
-   * makes rendering easier since we just have a 7xN grid.
-   *
-   * @param blog    a Blog instance
-   * @param month   the month
-   * @return  a List of Calendar instances
-   */
-  private List getDatesForCompleteWeeks(Blog blog, Month month) {
-    List dates = new ArrayList();
-    Calendar start = blog.getCalendar();
-    start.setTime(month.getBlogForDay(1).getDate());
-    Calendar end = blog.getCalendar();
-    end.setTime(month.getBlogForDay(month.getLastDayInMonth()).getDate());
-    Calendar cal;
-
-    // put all days in month into a list
-    for (int i = 1; i <= month.getLastDayInMonth(); i++) {
-      cal = (Calendar)start.clone();
-      cal.set(Calendar.DAY_OF_MONTH, i);
-      dates.add(cal);
-    }
+    out.append("<tr>");
+    out.append("<td colspan=\"7\" align=\"center\">");
 
-    // pad out before the start of the month, until the first day of the week
-    cal = (Calendar)start.clone();
-    while (cal.get(Calendar.DAY_OF_WEEK) != cal.getFirstDayOfWeek()) {
-      cal.add(Calendar.DATE, -1);
-      dates.add(0, cal.clone());
+    // only display the previous month link if there are blog entries
+    if (previous.before(firstMonth)) {
+      out.append(monthFormatter.format(previous.getDate()));
+    } else {
+      out.append("<a href=\"");
+      out.appendUrl(previous.getPermalink());
+      out.append("\">" + monthFormatter.format(previous.getDate()) + "</a>");
     }
 
-    // pad out after month, until the last day of the week
-    cal = (Calendar)end.clone();
-    cal.add(Calendar.DATE, 1);
-    while (cal.get(Calendar.DAY_OF_WEEK) != cal.getFirstDayOfWeek()) {
-      dates.add(cal.clone());
-      cal.add(Calendar.DATE, 1);
+    out.append("&nbsp; | &nbsp;");
+    out.append("<a href=\"");
+    out.appendUrl(today.getPermalink());
+    out.append("\">" + todayText + "</a>");
+    out.append("&nbsp; | &nbsp;");
+
+    // only display the next month date if it's not in the future
+    if (next.getDate().after(now.getTime()) || next.before(firstMonth)) {
+      out.append(monthFormatter.format(next.getDate()));
+    } else {
+      out.append("<a href=\"");
+      out.appendUrl(next.getPermalink());
+      out.append("\">" + monthFormatter.format(next.getDate()) + "</a>");
     }
+    out.append("</td>");
+    out.append("</tr>");
+
+    out.append("</table>");
+    out.append("</div>");
 
-    return dates;
+    return out.build(key);
   }
 
-}
\ No newline at end of file
+}
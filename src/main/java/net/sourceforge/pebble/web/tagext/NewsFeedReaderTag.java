@@ -40,6 +40,7 @@ import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.PageContext;
 import javax.servlet.jsp.tagext.SimpleTagSupport;
 import java.io.IOException;
+import java.util.Collections;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,7 +58,11 @@ public class NewsFeedReaderTag extends SimpleTagSupport {
 
   public void doTag() throws JspException, IOException {
     NewsFeed feed = NewsFeedCache.getInstance().getFeed(url);
-    getJspContext().setAttribute("feedEntries", feed.getEntries());
+    if (feed != null) {
+      getJspContext().setAttribute("feedEntries", feed.getEntries());
+    } else {
+      getJspContext().setAttribute("feedEntries", Collections.emptyList());
+    }
   }
 
   public void setUrl(String url) {
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Represents a single byte range (inclusive at both ends) of an HTTP
+ * Range request, as described in RFC 2616 section 14.35.
+ */
+public final class ByteRange {
+
+  /** the most ranges a single request may ask for before it's served in full */
+  public static final int MAX_RANGES = 16;
+
+  private final long start;
+  private final long end;
+
+  public ByteRange(long start, long end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public long getEnd() {
+    return end;
+  }
+
+  public long getLength() {
+    return end - start + 1;
+  }
+
+  /**
+   * Gets the value of the Content-Range header for this range.
+   *
+   * @param totalLength   the length of the complete entity
+   * @return  a String like "bytes 0-499/1234"
+   */
+  public String getContentRange(long totalLength) {
+    return "bytes " + start + "-" + end + "/" + totalLength;
+  }
+
+  /**
+   * Parses the value of a Range header.
+   *
+   * @param header        the Range header value (may be null)
+   * @param totalLength   the length of the complete entity
+   * @return  null if the header is absent, syntactically invalid or asks for
+   *          more than MAX_RANGES ranges (in which case it should be ignored
+   *          and the full entity served), an empty list if none of the ranges
+   *          can be satisfied, or the satisfiable ranges in ascending order
+   *          with any overlapping or adjacent ranges merged
+   */
+  public static List<ByteRange> parse(String header, long totalLength) {
+    if (header == null) {
+      return null;
+    }
+
+    header = header.trim();
+    if (!header.startsWith("bytes=")) {
+      return null;
+    }
+
+    List<ByteRange> ranges = new ArrayList<ByteRange>();
+    String[] specs = header.substring("bytes=".length()).split(",");
+    if (specs.length > MAX_RANGES) {
+      return null;
+    }
+
+    for (String spec : specs) {
+      spec = spec.trim();
+      int dash = spec.indexOf('-');
+      if (dash == -1) {
+        return null;
+      }
+
+      long start;
+      long end;
+      try {
+        if (dash == 0) {
+          // suffix range, e.g. "-500" means the last 500 bytes
+          long suffix = Long.parseLong(spec.substring(1));
+          if (suffix <= 0) {
+            continue;
+          }
+          start = Math.max(0, totalLength - suffix);
+          end = totalLength - 1;
+        } else {
+          start = Long.parseLong(spec.substring(0, dash));
+          if (dash == spec.length() - 1) {
+            end = totalLength - 1;
+          } else {
+            end = Long.parseLong(spec.substring(dash + 1));
+            if (end < start) {
+              return null;
+            }
+            end = Math.min(end, totalLength - 1);
+          }
+        }
+      } catch (NumberFormatException nfe) {
+        return null;
+      }
+
+      if (start < totalLength && start >= 0) {
+        ranges.add(new ByteRange(start, end));
+      }
+    }
+
+    return ranges.isEmpty() ? Collections.<ByteRange>emptyList() : coalesce(ranges);
+  }
+
+  /**
+   * Sorts the given ranges and merges those that overlap or are adjacent,
+   * so that no byte is sent more than once.
+   */
+  private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+    Collections.sort(ranges, new Comparator<ByteRange>() {
+      public int compare(ByteRange r1, ByteRange r2) {
+        return r1.start < r2.start ? -1 : (r1.start == r2.start ? 0 : 1);
+      }
+    });
+
+    List<ByteRange> merged = new ArrayList<ByteRange>();
+    ByteRange current = ranges.get(0);
+    for (ByteRange range : ranges.subList(1, ranges.size())) {
+      if (range.start <= current.end + 1) {
+        current = new ByteRange(current.start, Math.max(current.end, range.end));
+      } else {
+        merged.add(current);
+        current = range;
+      }
+    }
+    merged.add(current);
+
+    return merged;
+  }
+
+}
@@ -33,21 +33,32 @@ package net.sourceforge.pebble.web.view;
 
 import net.sourceforge.pebble.util.FileUtils;
 import net.sourceforge.pebble.domain.AbstractBlog;
-import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.domain.FileMetaData;
+import net.sourceforge.pebble.web.filter.GZIPResponseWrapper;
 import net.sourceforge.pebble.Constants;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
 
 /**
  * Represents a binary view component and prepares the model for display.
+ * Files are served with a strong ETag derived from their length and last
+ * modified date, and single or multiple byte ranges are honoured. Where the
+ * container supports it (e.g. Tomcat's sendfile), the transfer is handed off
+ * to the container, otherwise the file is copied with
+ * FileChannel.transferTo().
  *
  * @author    Simon Brown
  */
@@ -56,6 +67,17 @@ public class FileView extends BinaryView {
   /** the log used by this class */
   private static Log log = LogFactory.getLog(FileView.class);
 
+  /** the request attributes used by Tomcat to signal/perform sendfile */
+  static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+  static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+  static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+  static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+  /** files smaller than this aren't worth handing off to sendfile */
+  private static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+  private static final String MULTIPART_BOUNDARY = "PEBBLE_BYTERANGE_BOUNDARY";
+
   private File file;
 
   public FileView(File file) {
@@ -85,6 +107,49 @@ public class FileView extends BinaryView {
     return file.length();
   }
 
+  /**
+   * Gets a strong entity tag for the given file, based upon its
+   * length and last modified date.
+   *
+   * @param file    a File instance
+   * @return  a quoted ETag
+   */
+  public static String getETag(File file) {
+    return "\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"";
+  }
+
+  /**
+   * Determines whether the value of an If-None-Match header matches the
+   * given entity tag. The header may be "*" or a comma separated list of
+   * tags, and weak tags are compared as described in RFC 2616 section 14.26.
+   *
+   * @param ifNoneMatch   the If-None-Match header value (may be null)
+   * @param etag          the current entity tag
+   * @return  true if the client's copy is current, false otherwise
+   */
+  public static boolean isETagMatched(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+
+    if (ifNoneMatch.trim().equals("*")) {
+      return true;
+    }
+
+    String opaqueTag = stripWeakIndicator(etag);
+    for (String tag : ifNoneMatch.split(",")) {
+      if (stripWeakIndicator(tag.trim()).equals(opaqueTag)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static String stripWeakIndicator(String etag) {
+    return etag.startsWith("W/") ? etag.substring(2) : etag;
+  }
+
   /**
    * Dispatches this view.
    *
@@ -93,25 +158,144 @@ public class FileView extends BinaryView {
    * @param context
    */
   public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
-    response.setContentLength((int)getContentLength());
+    int status = HttpServletResponse.SC_OK;
+    long length = getContentLength();
+    String etag = getETag(file);
+    // ranges don't mix with content encodings applied further up the filter chain
+    boolean wrapped = isGzipped(response);
+
+    response.setHeader("ETag", etag);
+    if (!wrapped) {
+      response.setHeader("Accept-Ranges", "bytes");
+    }
+
+    List<ByteRange> ranges = null;
+    if (!wrapped && isIfRangeSatisfied(request, etag)) {
+      ranges = ByteRange.parse(request.getHeader("Range"), length);
+    }
+
     try {
-      BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
-      BufferedOutputStream out = new BufferedOutputStream(response.getOutputStream());
-
-      byte[] buf = new byte[1024];
-      int len = in.read(buf);
-      while (len > 0) {
-          out.write(buf, 0, len);
-          len = in.read(buf);
+      if (ranges == null) {
+        setContentLength(response, length);
+        sendRange(request, response, new ByteRange(0, length - 1), !wrapped);
+      } else if (ranges.isEmpty()) {
+        status = HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+        response.setHeader("Content-Range", "bytes */" + length);
+        response.sendError(status);
+      } else if (ranges.size() == 1) {
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        ByteRange range = ranges.get(0);
+        response.setStatus(status);
+        response.setHeader("Content-Range", range.getContentRange(length));
+        setContentLength(response, range.getLength());
+        sendRange(request, response, range, true);
+      } else {
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        response.setStatus(status);
+        response.setContentType("multipart/byteranges; boundary=" + MULTIPART_BOUNDARY);
+        sendMultipleRanges(response, ranges, length);
       }
-
-      in.close();
-      out.close();
     } catch (IOException ioe) {
       log.warn(ioe);
     } finally {
       AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
-      blog.log(request, HttpServletResponse.SC_OK);
+      blog.log(request, status);
+    }
+  }
+
+  /**
+   * Determines whether a Range header should be honoured, based upon the
+   * If-Range header (which can be either an entity tag or a date).
+   */
+  private boolean isIfRangeSatisfied(HttpServletRequest request, String etag) {
+    String ifRange = request.getHeader("If-Range");
+    if (ifRange == null) {
+      return true;
+    }
+
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return ifRange.equals(etag);
+    }
+
+    try {
+      long date = request.getDateHeader("If-Range");
+      // HTTP dates have a resolution of one second
+      return date != -1 && (file.lastModified() / 1000) <= (date / 1000);
+    } catch (IllegalArgumentException iae) {
+      return false;
+    }
+  }
+
+  private boolean isGzipped(ServletResponse response) {
+    while (response instanceof ServletResponseWrapper) {
+      if (response instanceof GZIPResponseWrapper) {
+        return true;
+      }
+      response = ((ServletResponseWrapper)response).getResponse();
+    }
+    return false;
+  }
+
+  private void setContentLength(HttpServletResponse response, long length) {
+    if (length <= Integer.MAX_VALUE) {
+      response.setContentLength((int)length);
+    } else {
+      response.setHeader("Content-Length", Long.toString(length));
+    }
+  }
+
+  /**
+   * Sends a single range of the file, either via the container's sendfile
+   * support or through a channel transfer.
+   */
+  private void sendRange(HttpServletRequest request, HttpServletResponse response, ByteRange range, boolean allowSendfile) throws IOException {
+    if (allowSendfile && range.getLength() >= SENDFILE_THRESHOLD &&
+        Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+      request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getCanonicalPath());
+      request.setAttribute(SENDFILE_START_ATTRIBUTE, range.getStart());
+      request.setAttribute(SENDFILE_END_ATTRIBUTE, range.getEnd() + 1);
+      return;
+    }
+
+    OutputStream out = response.getOutputStream();
+    transfer(range, out);
+    out.flush();
+  }
+
+  private void sendMultipleRanges(HttpServletResponse response, List<ByteRange> ranges, long length) throws IOException {
+    String contentType = getContentType();
+    ServletOutputStream out = response.getOutputStream();
+    for (ByteRange range : ranges) {
+      out.print("\r\n--" + MULTIPART_BOUNDARY + "\r\n");
+      if (contentType != null) {
+        out.print("Content-Type: " + contentType + "\r\n");
+      }
+      out.print("Content-Range: " + range.getContentRange(length) + "\r\n\r\n");
+      transfer(range, out);
+    }
+    out.print("\r\n--" + MULTIPART_BOUNDARY + "--\r\n");
+    out.flush();
+  }
+
+  private void transfer(ByteRange range, OutputStream out) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      WritableByteChannel target = Channels.newChannel(out);
+      long position = range.getStart();
+      long remaining = range.getLength();
+      while (remaining > 0) {
+        long written = channel.transferTo(position, remaining, target);
+        if (written <= 0) {
+          // the file has been truncated underneath us
+          break;
+        }
+        position += written;
+        remaining -= written;
+      }
+    } finally {
+      in.close();
     }
   }
 
@@ -31,32 +31,55 @@
  */
 package net.sourceforge.pebble.web.view;
 
-import net.sourceforge.pebble.domain.FileMetaData;
-
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.util.Iterator;
-import java.util.List;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /**
  * Represents a binary view component and prepares the model for display.
+ * <br /><br />
+ * The ZIP file is streamed as the directory tree is walked, one directory
+ * listing at a time, so memory use doesn't depend on the number of files.
+ * The output is deterministic for an unchanged tree (entries are written in
+ * name order with their last modified times), which allows an interrupted
+ * download to be resumed with a byte range request. To answer those, the ZIP
+ * is spooled to a temporary file (once per version of the tree), and ranges
+ * are then served from that file rather than by regenerating the archive.
  *
  * @author    Simon Brown
  */
 public class ZipView extends BinaryView {
 
-  private List files;
+  /** where archives are spooled to answer range requests */
+  private static final File SPOOL_DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "pebble-zip");
+
+  /** the current spooled archive for each directory/prefix being zipped */
+  private static final ConcurrentMap<String,File> spools = new ConcurrentHashMap<String,File>();
+
+  private File directory;
+  private String prefix;
   private String filename;
 
-  public ZipView(List files, String filename) {
-    this.files = files;
+  /**
+   * Creates a view that zips up everything underneath the given directory.
+   *
+   * @param directory   the directory to zip
+   * @param prefix      the path to prefix to each entry name, e.g. logs/
+   * @param filename    the name of the ZIP file
+   */
+  public ZipView(File directory, String prefix, String filename) {
+    this.directory = directory;
+    this.prefix = prefix;
     this.filename = filename;
   }
 
@@ -73,6 +96,26 @@ public class ZipView extends BinaryView {
     return 0;
   }
 
+  /**
+   * Gets a strong entity tag for the ZIP file, based upon the names, sizes
+   * and last modified times of the files that it contains.
+   *
+   * @return  an entity tag
+   */
+  String getETag() {
+    final long[] hash = new long[] { 1125899906842597L };
+    walk(new FileVisitor() {
+      public boolean visit(File file, String name) {
+        hash[0] = 31 * hash[0] + name.hashCode();
+        hash[0] = 31 * hash[0] + file.length();
+        hash[0] = 31 * hash[0] + file.lastModified();
+        return true;
+      }
+    });
+
+    return "\"zip-" + Long.toHexString(hash[0]) + "\"";
+  }
+
   /**
    * Dispatches this view.
    *
@@ -82,30 +125,186 @@ public class ZipView extends BinaryView {
    */
   public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
     try {
+      String etag = getETag();
       response.setHeader("Content-Disposition", "filename=" + filename);
-      byte[] buf = new byte[1024];
-      ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream()));
-      Iterator it = files.iterator();
-      while (it.hasNext()) {
-        FileMetaData file = (FileMetaData)it.next();
-        if (file.isDirectory()) {
-          continue;
+      response.setHeader("Accept-Ranges", "bytes");
+      response.setHeader("ETag", etag);
+
+      String rangeHeader = request.getHeader("Range");
+      String ifRange = request.getHeader("If-Range");
+      if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+        File archive = spool(etag);
+        long length = archive.length();
+
+        List<ByteRange> ranges = ByteRange.parse(rangeHeader, length);
+        if (ranges != null && ranges.isEmpty()) {
+          response.setHeader("Content-Range", "bytes */" + length);
+          response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+          return;
         }
 
-        FileInputStream in = new FileInputStream(file.getFile());
-        out.putNextEntry(new ZipEntry(file.getAbsolutePath().substring(1)));
-        int len;
-        while ((len = in.read(buf)) > 0) {
-          out.write(buf, 0, len);
+        // multiple ranges aren't worth it here, so those get the whole file
+        ByteRange range = (ranges != null && ranges.size() == 1) ? ranges.get(0) : new ByteRange(0, length - 1);
+        if (ranges != null && ranges.size() == 1) {
+          response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+          response.setHeader("Content-Range", range.getContentRange(length));
         }
-        out.closeEntry();
-        in.close();
+        response.setHeader("Content-Length", String.valueOf(range.getLength()));
+        transfer(archive, range, response.getOutputStream());
+        return;
       }
 
-      out.close();
+      OutputStream out = new BufferedOutputStream(response.getOutputStream());
+      write(out);
+      out.flush();
     } catch (IOException ioe) {
       throw new ServletException(ioe);
     }
   }
 
+  /**
+   * Gets the spooled copy of the ZIP file with the given entity tag, writing
+   * it first if necessary. Older copies for the same directory are deleted.
+   */
+  File spool(String etag) throws IOException {
+    String key = prefix + "|" + directory.getAbsolutePath();
+    File archive = new File(SPOOL_DIRECTORY,
+        Integer.toHexString(key.hashCode()) + "-" + etag.replace("\"", "") + ".zip");
+
+    if (!archive.isFile()) {
+      if (!SPOOL_DIRECTORY.isDirectory() && !SPOOL_DIRECTORY.mkdirs()) {
+        throw new IOException("Can't create " + SPOOL_DIRECTORY);
+      }
+
+      // concurrent requests may spool the same archive, so each writes its own copy first
+      File tmp = File.createTempFile("zip", ".tmp", SPOOL_DIRECTORY);
+      try {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+        try {
+          write(out);
+        } finally {
+          out.close();
+        }
+        if (!tmp.renameTo(archive) && !archive.isFile()) {
+          throw new IOException("Can't spool " + archive);
+        }
+      } finally {
+        tmp.delete();
+      }
+    }
+
+    File previous = spools.put(key, archive);
+    if (previous != null && !previous.equals(archive)) {
+      previous.delete();
+    }
+
+    return archive;
+  }
+
+  private void transfer(File file, ByteRange range, OutputStream out) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      WritableByteChannel target = Channels.newChannel(out);
+      long position = range.getStart();
+      long remaining = range.getLength();
+      while (remaining > 0) {
+        long written = channel.transferTo(position, remaining, target);
+        if (written <= 0) {
+          break;
+        }
+        position += written;
+        remaining -= written;
+      }
+    } finally {
+      in.close();
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes the ZIP file to the given stream.
+   */
+  void write(OutputStream stream) throws IOException {
+    final byte[] buf = new byte[8192];
+    final ZipOutputStream out = new ZipOutputStream(stream);
+    final IOException[] exception = new IOException[1];
+    walk(new FileVisitor() {
+      public boolean visit(File file, String name) {
+        try {
+          ZipEntry entry = new ZipEntry(name);
+          entry.setTime(file.lastModified());
+          out.putNextEntry(entry);
+          FileInputStream in = new FileInputStream(file);
+          try {
+            int len;
+            while ((len = in.read(buf)) > 0) {
+              out.write(buf, 0, len);
+            }
+          } finally {
+            in.close();
+          }
+          out.closeEntry();
+          return true;
+        } catch (IOException e) {
+          exception[0] = e;
+          return false;
+        }
+      }
+    });
+
+    if (exception[0] != null) {
+      throw exception[0];
+    }
+    out.finish();
+  }
+
+  /**
+   * Walks the directory tree depth first, visiting the files in each
+   * directory (in name order) before those in its subdirectories.
+   */
+  private void walk(FileVisitor visitor) {
+    LinkedList<File> directories = new LinkedList<File>();
+    LinkedList<String> names = new LinkedList<String>();
+    directories.add(directory);
+    names.add(prefix);
+
+    while (!directories.isEmpty()) {
+      File dir = directories.removeFirst();
+      String path = names.removeFirst();
+      File[] files = dir.listFiles();
+      if (files == null) {
+        continue;
+      }
+      Arrays.sort(files);
+
+      // subdirectories go to the front of the queue, in order
+      int index = 0;
+      for (File file : files) {
+        if (file.isDirectory()) {
+          directories.add(index, file);
+          names.add(index, path + file.getName() + "/");
+          index++;
+        }
+      }
+
+      for (File file : files) {
+        if (file.isFile() && !visitor.visit(file, path + file.getName())) {
+          return;
+        }
+      }
+    }
+  }
+
+  private interface FileVisitor {
+
+    /**
+     * Visits a file.
+     *
+     * @return  true to carry on walking, false to stop
+     */
+    boolean visit(File file, String name);
+
+  }
+
 }
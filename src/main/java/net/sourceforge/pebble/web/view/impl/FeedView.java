@@ -81,7 +81,7 @@ public class FeedView extends AbstractRomeFeedView {
     return syndFeed;
   }
 
-  private SyndEntry convertBlogEntry(AbstractBlog blog, BlogEntry entry) {
+  protected SyndEntry convertBlogEntry(AbstractBlog blog, BlogEntry entry) {
     SyndEntry feedEntry = new SyndEntryImpl();
     feedEntry.setUri(generateId(blog, entry.getDate(), entry.getId()));
     feedEntry.setTitle(entry.getTitle());
@@ -143,7 +143,7 @@ public class FeedView extends AbstractRomeFeedView {
     }
   }
 
-  private void populateFeedInfo(AbstractBlog blog, SyndFeed syndFeed) {
+  protected void populateFeedInfo(AbstractBlog blog, SyndFeed syndFeed) {
     String blogUrl = blog.getUrl();
 
     Tag tag = (Tag) getModel().get("tag");
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import net.sourceforge.pebble.metrics.Counter;
+import net.sourceforge.pebble.metrics.Gauge;
+import net.sourceforge.pebble.metrics.Timer;
+import net.sourceforge.pebble.web.view.PlainTextView;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Represents the runtime metrics as plain text, one metric per line.
+ * Counters and gauges are shown as a single value; timers show the number
+ * of events and their mean, percentiles and maximum in milliseconds.
+ */
+public class MetricsView extends PlainTextView {
+
+  /**
+   * Prepares the view for presentation.
+   */
+  public void prepare() {
+    Map<?,?> metrics = (Map<?,?>)getModel().get("metrics");
+    StringBuilder buf = new StringBuilder();
+
+    for (Map.Entry<?,?> entry : metrics.entrySet()) {
+      Object metric = entry.getValue();
+      buf.append(entry.getKey());
+      buf.append(' ');
+      if (metric instanceof Counter) {
+        buf.append(((Counter)metric).getCount());
+      } else if (metric instanceof Gauge) {
+        buf.append(((Gauge)metric).getValue());
+      } else if (metric instanceof Timer) {
+        Timer timer = (Timer)metric;
+        buf.append("count=").append(timer.getCount());
+        buf.append(format(" mean", timer.getMean()));
+        buf.append(format(" p50", timer.get50thPercentile()));
+        buf.append(format(" p95", timer.get95thPercentile()));
+        buf.append(format(" p99", timer.get99thPercentile()));
+        buf.append(format(" p999", timer.get999thPercentile()));
+        buf.append(format(" max", timer.getMax()));
+      }
+      buf.append('\n');
+    }
+
+    getModel().put("text", buf.toString());
+  }
+
+  private static String format(String label, double millis) {
+    return String.format(Locale.ENGLISH, "%s=%.3fms", label, millis);
+  }
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import com.rometools.modules.content.ContentModule;
+import com.rometools.rome.feed.module.Module;
+import com.rometools.rome.feed.synd.*;
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.api.decorator.FeedDecorator;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.BlogServiceException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Writes every blog entry in a blog as an RSS 2.0 or Atom 1.0 feed, loading
+ * and writing one entry at a time so that the whole blog is never held in
+ * memory. Entries are built in the same way as the FeedView (including any
+ * feed decorators) and written with a StAX writer rather than ROME, which
+ * needs the complete feed up front. As this is an export, the content
+ * decorators aren't run, so the entries can be imported again as they were
+ * written.
+ */
+public class StreamingFeedView extends FeedView {
+
+  private static final Log log = LogFactory.getLog(StreamingFeedView.class);
+
+  private static final String CONTENT_NAMESPACE = "http://purl.org/rss/1.0/modules/content/";
+  private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+  private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+
+  /** the number of entries written between flushes */
+  private static final int FLUSH_INTERVAL = 25;
+
+  private final SimpleDateFormat rfc822Format;
+  private final SimpleDateFormat rfc3339Format;
+
+  public StreamingFeedView(FeedType feedType) {
+    super(feedType);
+
+    rfc822Format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+    rfc822Format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    rfc3339Format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    rfc3339Format.setTimeZone(TimeZone.getTimeZone("UTC"));
+  }
+
+  /**
+   * Entries are loaded as they are written, so there's nothing to prepare.
+   */
+  public void prepare() {
+  }
+
+  public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
+    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+    boolean atom = getFeedType() == FeedType.ATOM;
+
+    SyndFeed syndFeed = new SyndFeedImpl();
+    populateFeedInfo(blog, syndFeed);
+    for (FeedDecorator feedDecorator : blog.getFeedDecorators()) {
+      feedDecorator.decorate(syndFeed, blog);
+    }
+
+    try {
+      Writer out = response.getWriter();
+      XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+      writer.writeStartDocument(blog.getCharacterEncoding(), "1.0");
+      if (atom) {
+        writeAtomHeader(writer, syndFeed);
+      } else {
+        writeRssHeader(writer, syndFeed);
+      }
+
+      // the index holds the IDs most recent first
+      BlogService service = new BlogService();
+      int count = 0;
+      for (String blogEntryId : blog.getBlogEntryIndex().getBlogEntries()) {
+        BlogEntry blogEntry;
+        try {
+          blogEntry = service.getBlogEntry(blog, blogEntryId);
+        } catch (BlogServiceException e) {
+          log.error("Could not export blog entry " + blogEntryId, e);
+          continue;
+        }
+        if (blogEntry == null) {
+          continue;
+        }
+
+        SyndEntry entry = convertBlogEntry(blog, blogEntry);
+        for (FeedDecorator feedDecorator : blog.getFeedDecorators()) {
+          feedDecorator.decorate(entry, blog, blogEntry);
+        }
+
+        if (atom) {
+          writeAtomEntry(writer, entry);
+        } else {
+          writeRssItem(writer, entry);
+        }
+
+        if (++count % FLUSH_INTERVAL == 0) {
+          writer.flush();
+          out.flush();
+        }
+      }
+
+      writer.writeEndDocument();
+      writer.flush();
+      out.flush();
+    } catch (IOException e) {
+      throw new ServletException("Error generating feed", e);
+    } catch (XMLStreamException e) {
+      throw new ServletException("Error generating feed", e);
+    }
+  }
+
+  private void writeRssHeader(XMLStreamWriter writer, SyndFeed feed) throws XMLStreamException {
+    writer.writeStartElement("rss");
+    writer.writeAttribute("version", "2.0");
+    writer.writeNamespace("content", CONTENT_NAMESPACE);
+    writer.writeNamespace("dc", DC_NAMESPACE);
+    writer.writeStartElement("channel");
+    writeElement(writer, "title", feed.getTitle());
+    writeElement(writer, "link", feed.getLink());
+    writeElement(writer, "description", feed.getDescription());
+    writeElement(writer, "language", feed.getLanguage());
+    writeElement(writer, "copyright", feed.getCopyright());
+    writeElement(writer, "pubDate", formatRfc822(feed.getPublishedDate()));
+    if (feed.getImage() != null) {
+      writer.writeStartElement("image");
+      writeElement(writer, "url", feed.getImage().getUrl());
+      writeElement(writer, "title", feed.getImage().getTitle());
+      writeElement(writer, "link", feed.getImage().getLink());
+      writer.writeEndElement();
+    }
+  }
+
+  private void writeRssItem(XMLStreamWriter writer, SyndEntry entry) throws XMLStreamException {
+    writer.writeStartElement("item");
+    writeElement(writer, "title", entry.getTitle());
+    writeElement(writer, "link", entry.getLink());
+    for (SyndCategory category : entry.getCategories()) {
+      writer.writeStartElement("category");
+      if (category.getTaxonomyUri() != null) {
+        writer.writeAttribute("domain", category.getTaxonomyUri());
+      }
+      writer.writeCharacters(category.getName());
+      writer.writeEndElement();
+    }
+    for (SyndEnclosure enclosure : entry.getEnclosures()) {
+      writer.writeEmptyElement("enclosure");
+      writer.writeAttribute("url", enclosure.getUrl());
+      writer.writeAttribute("length", String.valueOf(enclosure.getLength()));
+      writer.writeAttribute("type", enclosure.getType());
+    }
+    writer.writeStartElement("guid");
+    writer.writeAttribute("isPermaLink", "false");
+    writer.writeCharacters(entry.getUri());
+    writer.writeEndElement();
+    writeElement(writer, "pubDate", formatRfc822(entry.getPublishedDate()));
+    for (String author : getAuthorNames(entry)) {
+      writeElement(writer, "dc", DC_NAMESPACE, "creator", author);
+    }
+    for (String content : getContents(entry)) {
+      writeElement(writer, "content", CONTENT_NAMESPACE, "encoded", content);
+    }
+    writer.writeEndElement();
+  }
+
+  private void writeAtomHeader(XMLStreamWriter writer, SyndFeed feed) throws XMLStreamException {
+    writer.writeStartElement("feed");
+    writer.writeDefaultNamespace(ATOM_NAMESPACE);
+    if (feed.getLanguage() != null) {
+      writer.writeAttribute("xml:lang", feed.getLanguage());
+    }
+    writeElement(writer, "title", feed.getTitle());
+    for (SyndLink link : feed.getLinks()) {
+      writeAtomLink(writer, link.getRel(), link.getHref(), link.getType(), 0);
+    }
+    writeElement(writer, "subtitle", feed.getDescription());
+    writeElement(writer, "id", feed.getUri());
+    writeElement(writer, "updated", formatRfc3339(feed.getPublishedDate()));
+    if (feed.getAuthor() != null) {
+      writer.writeStartElement("author");
+      writeElement(writer, "name", feed.getAuthor());
+      writer.writeEndElement();
+    }
+    writeElement(writer, "rights", feed.getCopyright());
+  }
+
+  private void writeAtomEntry(XMLStreamWriter writer, SyndEntry entry) throws XMLStreamException {
+    writer.writeStartElement("entry");
+    writeElement(writer, "title", entry.getTitle());
+    writeAtomLink(writer, "alternate", entry.getLink(), "text/html", 0);
+    for (SyndEnclosure enclosure : entry.getEnclosures()) {
+      writeAtomLink(writer, "enclosure", enclosure.getUrl(), enclosure.getType(), enclosure.getLength());
+    }
+    for (SyndCategory category : entry.getCategories()) {
+      writer.writeEmptyElement("category");
+      writer.writeAttribute("term", category.getName());
+      if (category.getTaxonomyUri() != null) {
+        writer.writeAttribute("scheme", category.getTaxonomyUri());
+      }
+    }
+    if (entry.getAuthors().isEmpty()) {
+      for (String author : getAuthorNames(entry)) {
+        writer.writeStartElement("author");
+        writeElement(writer, "name", author);
+        writer.writeEndElement();
+      }
+    } else {
+      for (SyndPerson person : entry.getAuthors()) {
+        writer.writeStartElement("author");
+        writeElement(writer, "name", person.getName());
+        writeElement(writer, "uri", person.getUri());
+        writer.writeEndElement();
+      }
+    }
+    writeElement(writer, "id", entry.getUri());
+    writeElement(writer, "updated", formatRfc3339(entry.getUpdatedDate()));
+    writeElement(writer, "published", formatRfc3339(entry.getPublishedDate()));
+    for (String content : getContents(entry)) {
+      writer.writeStartElement("content");
+      writer.writeAttribute("type", "html");
+      writer.writeCharacters(content);
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+  }
+
+  private void writeAtomLink(XMLStreamWriter writer, String rel, String href, String type, long length) throws XMLStreamException {
+    if (href == null) {
+      return;
+    }
+
+    writer.writeEmptyElement("link");
+    if (rel != null) {
+      writer.writeAttribute("rel", rel);
+    }
+    if (type != null) {
+      writer.writeAttribute("type", type);
+    }
+    writer.writeAttribute("href", href);
+    if (length > 0) {
+      writer.writeAttribute("length", String.valueOf(length));
+    }
+  }
+
+  private List<String> getAuthorNames(SyndEntry entry) {
+    List<String> names = new ArrayList<String>();
+    if (!entry.getAuthors().isEmpty()) {
+      for (SyndPerson person : entry.getAuthors()) {
+        names.add(person.getName());
+      }
+    } else if (entry.getAuthor() != null && entry.getAuthor().length() > 0) {
+      names.add(entry.getAuthor());
+    }
+    return names;
+  }
+
+  private List<String> getContents(SyndEntry entry) {
+    for (Module module : entry.getModules()) {
+      if (module instanceof ContentModule) {
+        return ((ContentModule)module).getEncodeds();
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  private void writeElement(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+    if (value != null) {
+      writer.writeStartElement(name);
+      writer.writeCharacters(value);
+      writer.writeEndElement();
+    }
+  }
+
+  private void writeElement(XMLStreamWriter writer, String prefix, String namespace, String name, String value) throws XMLStreamException {
+    if (value != null) {
+      writer.writeStartElement(prefix, name, namespace);
+      writer.writeCharacters(value);
+      writer.writeEndElement();
+    }
+  }
+
+  private String formatRfc822(Date date) {
+    return date == null ? null : rfc822Format.format(date);
+  }
+
+  private String formatRfc3339(Date date) {
+    return date == null ? null : rfc3339Format.format(date);
+  }
+
+}
@@ -100,7 +100,7 @@ public class BloggerAPIHandler extends AbstractAPIHandler {
         username + ", " +
         "********)");
 
-    Collection<Blog> blogs = BlogManager.getInstance().getBlogs();
+    Collection<Blog> blogs = BlogManager.getInstance().getAllBlogs();
     Vector usersBlogs = new Vector();
 
     for (Blog blog : blogs) {
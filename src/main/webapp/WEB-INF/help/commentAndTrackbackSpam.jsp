@@ -59,5 +59,30 @@
       Full details of the listeners are their configurable properties can be found in <a href="./help/commentListeners.html">Comment Listeners</a> and
       <a href="./help/trackbackListeners.html">TrackBack Listeners</a>.
     </p>
+
+    <a name="rateLimiting"></a><h3>Rate limiting</h3>
+    <p>
+      Before any listeners run, Pebble limits how quickly comments and TrackBacks can be sent from a single IP address, and from the
+      network around it (the /24 for IPv4 and the /64 for IPv6). By default, an address can send a burst of 10 responses and then 6 per minute,
+      and a network four times that. Responses over the limit are turned away with a "429 Too Many Requests" error. Addresses on the
+      <code>IpAddressListener</code> whitelist aren't limited, and those on its blacklist are limited more strictly. A comment is only
+      counted once, when it is submitted, and not again when it is confirmed.
+    </p>
+
+    <p>
+      The limits can be changed through the following <a href="./help/plugins.html">plugin properties</a>.
+    </p>
+
+    <ul>
+      <li><code>ResponseRateLimiter.perMinute</code> : the number of responses allowed per minute from an IP address, 0 to turn rate limiting off.</li>
+      <li><code>ResponseRateLimiter.burst</code> : the number of responses that may be sent at once from an IP address.</li>
+    </ul>
+
+    <p>
+      <b>Note :</b> the IP address is the one that the request arrived from. If Pebble runs behind a reverse proxy or load balancer,
+      every request appears to come from the proxy, so all of your readers share one limit and will hold each other up. Either configure
+      your servlet container to take the client address from the proxy (e.g. Tomcat's <code>RemoteIpValve</code> and the
+      <code>X-Forwarded-For</code> header), or set <code>ResponseRateLimiter.perMinute</code> to 0.
+    </p>
   </div>
 </div>
\ No newline at end of file
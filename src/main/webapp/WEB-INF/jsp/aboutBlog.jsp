@@ -76,7 +76,7 @@
 				<fmt:formatNumber value="${pebbleContext.totalMemoryInKB}"/>
 			</fmt:param>
 		</fmt:message>
-		(<a href="gc.secureaction" title="<fmt:message key="view.aboutThisBlog.runGC.long"/>"><fmt:message key="view.aboutThisBlog.runGC"/></a>)
+		(<a href="gc.secureaction" title="<fmt:message key="view.aboutThisBlog.runGC.long"/>"><fmt:message key="view.aboutThisBlog.runGC"/></a> | <a href="viewMetrics.secureaction" title="<fmt:message key="view.aboutThisBlog.metrics.long"/>"><fmt:message key="view.aboutThisBlog.metrics"/></a>)
       </td>
     </tr>
 
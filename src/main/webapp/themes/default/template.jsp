@@ -8,6 +8,7 @@
    - tags                   java.util.List<net.sourceforge.pebble.domain.Tag>
    - recentBlogEntries      java.util.List<net.sourceforge.pebble.domain.BlogEntry>
    - recentResponses        java.util.List<net.sourceforge.pebble.domain.Response>
+   - recentResponseSummaries java.util.List<net.sourceforge.pebble.index.IndexedResponse>
    - archives               java.util.List<net.sourceforge.pebble.domain.Year>
    - pluginProperties       net.sourceforge.pebble.PluginProperties
    - authenticatedUser      net.sourceforge.pebble.security.PebbleUserDetails
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.aggregator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the NewsFeedCache class, against a local stub HTTP server.
+ */
+public class NewsFeedCacheTest extends SingleBlogTestCase {
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private String baseUrl;
+  private NewsFeedCache cache;
+
+  /** path -> RSS served at that path */
+  private final Map<String, String> content = new ConcurrentHashMap<String, String>();
+  /** paths that take too long to answer */
+  private final Set<String> slow = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  /** path -> number of requests */
+  private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+  /** path -> number of conditional requests answered with a 304 */
+  private final ConcurrentMap<String, AtomicInteger> notModified = new ConcurrentHashMap<String, AtomicInteger>();
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new StubHandler());
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+    cache = new NewsFeedCache(2);
+    cache.setTimeouts(1000, 500);
+  }
+
+  protected void tearDown() throws Exception {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+
+    super.tearDown();
+  }
+
+  public void testFeedIsFetchedOnSubscription() throws Exception {
+    content.put("/a", rss("A", item("a1", "Mon, 01 Jan 2007 10:00:00 GMT"), item("a2", "Tue, 02 Jan 2007 10:00:00 GMT")));
+    cache.addSubscription(blog, baseUrl + "/a");
+    cache.awaitInitialFetches();
+
+    NewsFeed feed = cache.getFeed(baseUrl + "/a");
+    assertEquals("A", feed.getTitle());
+    assertEquals(2, feed.getEntries().size());
+
+    List<NewsFeedEntry> entries = cache.getNewsFeedEntries(blog);
+    assertEquals(2, entries.size());
+    assertEquals("http://example.com/a2", entries.get(0).getLink());
+    assertEquals("http://example.com/a1", entries.get(1).getLink());
+  }
+
+  public void testEntriesFromAllSourcesAreMerged() throws Exception {
+    content.put("/a", rss("A", item("a1", "Mon, 01 Jan 2007 10:00:00 GMT")));
+    content.put("/b", rss("B", item("b1", "Wed, 03 Jan 2007 10:00:00 GMT")));
+    cache.addSubscription(blog, baseUrl + "/a");
+    cache.addSubscription(blog, baseUrl + "/b");
+    cache.awaitInitialFetches();
+
+    List<NewsFeedEntry> entries = cache.getNewsFeedEntries(blog);
+    assertEquals(2, entries.size());
+    assertEquals("http://example.com/b1", entries.get(0).getLink());
+    assertEquals("http://example.com/a1", entries.get(1).getLink());
+  }
+
+  public void testUnchangedFeedUsesConditionalGet() throws Exception {
+    content.put("/a", rss("A", item("a1", "Mon, 01 Jan 2007 10:00:00 GMT")));
+    cache.addSubscription(blog, baseUrl + "/a");
+    cache.awaitInitialFetches();
+    List<NewsFeedEntry> entries = cache.getNewsFeedEntries(blog);
+
+    cache.refreshFeeds();
+
+    assertEquals(2, count(requests, "/a"));
+    assertEquals(1, count(notModified, "/a"));
+    // nothing changed, so the merged entries haven't been rebuilt
+    assertSame(entries, cache.getNewsFeedEntries(blog));
+  }
+
+  public void testChangedFeedIsReloaded() throws Exception {
+    content.put("/a", rss("A", item("a1", "Mon, 01 Jan 2007 10:00:00 GMT")));
+    cache.addSubscription(blog, baseUrl + "/a");
+    cache.awaitInitialFetches();
+    assertEquals(1, cache.getNewsFeedEntries(blog).size());
+
+    content.put("/a", rss("A", item("a1", "Mon, 01 Jan 2007 10:00:00 GMT"), item("a2", "Tue, 02 Jan 2007 10:00:00 GMT")));
+    cache.refreshFeeds();
+
+    assertEquals(0, count(notModified, "/a"));
+    List<NewsFeedEntry> entries = cache.getNewsFeedEntries(blog);
+    assertEquals(2, entries.size());
+    assertEquals("http://example.com/a2", entries.get(0).getLink());
+  }
+
+  public void testFailingSourceIsBackedOff() throws Exception {
+    cache.addSubscription(blog, baseUrl + "/missing");
+    cache.awaitInitialFetches();
+    assertEquals(1, count(requests, "/missing"));
+    assertTrue(cache.getFeed(baseUrl + "/missing").getEntries().isEmpty());
+
+    cache.refreshFeeds();
+    assertEquals(1, count(requests, "/missing"));
+  }
+
+  public void testSlowSourceDoesNotHoldUpOthers() throws Exception {
+    content.put("/a", rss("A", item("a1", "Mon, 01 Jan 2007 10:00:00 GMT")));
+    content.put("/b", rss("B", item("b1", "Mon, 01 Jan 2007 10:00:00 GMT")));
+    cache.addSubscription(blog, baseUrl + "/a");
+    cache.addSubscription(blog, baseUrl + "/b");
+    cache.awaitInitialFetches();
+
+    content.put("/a", rss("A", item("a1", "Mon, 01 Jan 2007 10:00:00 GMT"), item("a2", "Tue, 02 Jan 2007 10:00:00 GMT")));
+    content.put("/b", rss("B", item("b1", "Mon, 01 Jan 2007 10:00:00 GMT"), item("b2", "Tue, 02 Jan 2007 10:00:00 GMT")));
+    slow.add("/b");
+
+    long start = System.currentTimeMillis();
+    cache.refreshFeeds();
+    long elapsed = System.currentTimeMillis() - start;
+
+    assertTrue("Took " + elapsed + "ms", elapsed < 2500);
+    assertEquals(2, cache.getFeed(baseUrl + "/a").getEntries().size());
+    // the previous version of the slow feed is kept
+    assertEquals(1, cache.getFeed(baseUrl + "/b").getEntries().size());
+    assertEquals(3, cache.getNewsFeedEntries(blog).size());
+  }
+
+  public void testSubscribingDoesNotWaitForTheFeed() throws Exception {
+    content.put("/b", rss("B", item("b1", "Mon, 01 Jan 2007 10:00:00 GMT")));
+    slow.add("/b");
+
+    long start = System.currentTimeMillis();
+    cache.addSubscription(blog, baseUrl + "/b");
+    long elapsed = System.currentTimeMillis() - start;
+
+    assertTrue("Took " + elapsed + "ms", elapsed < 500);
+    assertTrue(cache.getFeed(baseUrl + "/b").getEntries().isEmpty());
+    cache.awaitInitialFetches();
+  }
+
+  public void testRemoveAllSubscriptions() throws Exception {
+    content.put("/a", rss("A", item("a1", "Mon, 01 Jan 2007 10:00:00 GMT")));
+    cache.addSubscription(blog, baseUrl + "/a");
+    cache.awaitInitialFetches();
+    cache.removeAllSubscriptions(blog);
+
+    assertTrue(cache.getNewsFeedEntries(blog).isEmpty());
+    cache.refreshFeeds();
+    assertNull(cache.getFeed(baseUrl + "/a"));
+  }
+
+  public void testSubscribingWhileRefreshingKeepsTheSource() throws Exception {
+    content.put("/a", rss("A", item("a1", "Mon, 01 Jan 2007 10:00:00 GMT")));
+    final AtomicBoolean subscribing = new AtomicBoolean(true);
+    Thread refresher = new Thread() {
+      public void run() {
+        while (subscribing.get()) {
+          cache.refreshFeeds();
+        }
+      }
+    };
+    refresher.start();
+
+    for (int i = 0; i < 50; i++) {
+      cache.addSubscription(blog, baseUrl + "/a?" + i);
+    }
+    subscribing.set(false);
+    refresher.join();
+    cache.awaitInitialFetches();
+
+    for (int i = 0; i < 50; i++) {
+      assertNotNull(cache.getFeed(baseUrl + "/a?" + i));
+    }
+  }
+
+  private int count(Map<String, AtomicInteger> counts, String path) {
+    AtomicInteger count = counts.get(path);
+    return count != null ? count.get() : 0;
+  }
+
+  private static void increment(ConcurrentMap<String, AtomicInteger> counts, String path) {
+    counts.putIfAbsent(path, new AtomicInteger());
+    counts.get(path).incrementAndGet();
+  }
+
+  private static String rss(String title, String... items) {
+    StringBuilder buf = new StringBuilder();
+    buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    buf.append("<rss version=\"2.0\"><channel>");
+    buf.append("<title>").append(title).append("</title>");
+    buf.append("<link>http://example.com/</link>");
+    buf.append("<description>").append(title).append("</description>");
+    for (String item : items) {
+      buf.append(item);
+    }
+    buf.append("</channel></rss>");
+    return buf.toString();
+  }
+
+  private static String item(String id, String date) {
+    return "<item><title>" + id + "</title><link>http://example.com/" + id + "</link>" +
+        "<description>" + id + "</description><pubDate>" + date + "</pubDate></item>";
+  }
+
+  /**
+   * Serves the RSS in the content map, with an ETag, and answers
+   * conditional requests. Slow paths never answer in time.
+   */
+  private class StubHandler implements HttpHandler {
+
+    public void handle(HttpExchange exchange) throws IOException {
+      String path = exchange.getRequestURI().getPath();
+      increment(requests, path);
+
+      if (slow.contains(path)) {
+        try {
+          Thread.sleep(3000);
+        } catch (InterruptedException ie) {
+          // carry on
+        }
+      }
+
+      String rss = content.get(path);
+      if (rss == null) {
+        exchange.sendResponseHeaders(404, -1);
+        exchange.close();
+        return;
+      }
+
+      String etag = "\"" + Integer.toHexString(rss.hashCode()) + "\"";
+      if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        increment(notModified, path);
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return;
+      }
+
+      byte[] bytes = rss.getBytes("UTF-8");
+      exchange.getResponseHeaders().set("Content-Type", "application/rss+xml; charset=UTF-8");
+      exchange.getResponseHeaders().set("ETag", etag);
+      exchange.sendResponseHeaders(200, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+    }
+
+  }
+
+}
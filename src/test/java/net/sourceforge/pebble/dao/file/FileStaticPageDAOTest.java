@@ -36,9 +36,15 @@ import net.sourceforge.pebble.dao.StaticPageDAO;
 import net.sourceforge.pebble.domain.SingleBlogTestCase;
 import net.sourceforge.pebble.domain.StaticPage;
 import net.sourceforge.pebble.util.FileUtils;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Tests for the FileStaticPageDAO class.
@@ -64,6 +70,60 @@ public class FileStaticPageDAOTest extends SingleBlogTestCase {
     Locale.setDefault(defaultLocale);
   }
 
+  public void testLockIsHeldByOneUser() throws Exception {
+    StaticPage page = new StaticPage(blog);
+    new File(blog.getRoot(), "pages").mkdirs();
+
+    login("alice");
+    assertTrue(dao.lock(page));
+    assertTrue(dao.lock(page));
+    login("bob");
+    assertFalse(dao.lock(page));
+
+    assertTrue(dao.unlock(page));
+    assertTrue(dao.lock(page));
+  }
+
+  public void testConcurrentLocksHaveOneWinner() throws Exception {
+    final StaticPage page = new StaticPage(blog);
+    new File(blog.getRoot(), "pages").mkdirs();
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger locked = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      final String username = "user" + i;
+      Thread thread = new Thread() {
+        public void run() {
+          try {
+            login(username);
+            start.await();
+            if (dao.lock(page)) {
+              locked.incrementAndGet();
+            }
+          } catch (Throwable t) {
+            failed.incrementAndGet();
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(0, failed.get());
+    assertEquals(1, locked.get());
+  }
+
+  private static void login(String username) {
+    SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(username, "password"));
+  }
+
   public void testLoadStaticPageFomFile() throws Exception {
 
     File source = new File(TEST_RESOURCE_LOCATION, "1152083300843.xml");
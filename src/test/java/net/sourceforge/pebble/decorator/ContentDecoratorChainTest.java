@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.api.decorator.DeterministicContentDecorator;
+import net.sourceforge.pebble.domain.Attachment;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.Content;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.util.html.HtmlToken;
+import net.sourceforge.pebble.util.html.HtmlVisitor;
+
+import java.util.Date;
+
+/**
+ * Tests for the ContentDecoratorChain class, and the caching of
+ * deterministic decorators.
+ */
+public class ContentDecoratorChainTest extends SingleBlogTestCase {
+
+  private ContentDecoratorChain chain;
+  private SuffixingDecorator first;
+  private RequestDependentDecorator requestDependent;
+  private SuffixingDecorator second;
+  private ContentDecoratorContext context;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    first = new SuffixingDecorator("1");
+    requestDependent = new RequestDependentDecorator();
+    second = new SuffixingDecorator("2");
+
+    chain = new ContentDecoratorChain(blog);
+    chain.add(first);
+    chain.add(requestDependent);
+    chain.add(second);
+
+    context = new ContentDecoratorContext();
+    context.setView(ContentDecoratorContext.SUMMARY_VIEW);
+    context.setMedia(ContentDecoratorContext.HTML_PAGE);
+  }
+
+  private BlogEntry createBlogEntry() {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000));
+    blogEntry.setTitle("Title");
+    blogEntry.setBody("Body");
+    blogEntry.setExcerpt("Excerpt");
+
+    return blogEntry;
+  }
+
+  public void testDeterministicDecoratorsOnlyRunOnce() {
+    BlogEntry blogEntry = createBlogEntry();
+    chain.decorate(context, blogEntry);
+    assertEquals("Body1r2", blogEntry.getBody());
+    assertEquals("Excerpt12", blogEntry.getExcerpt());
+
+    blogEntry = createBlogEntry();
+    chain.decorate(context, blogEntry);
+    assertEquals("Body1r2", blogEntry.getBody());
+    assertEquals("Excerpt12", blogEntry.getExcerpt());
+
+    assertEquals(1, first.count);
+    assertEquals(1, second.count);
+    assertEquals(2, requestDependent.count);
+  }
+
+  public void testChangedContentIsDecoratedAgain() {
+    BlogEntry blogEntry = createBlogEntry();
+    chain.decorate(context, blogEntry);
+
+    blogEntry = createBlogEntry();
+    blogEntry.setBody("New body");
+    chain.decorate(context, blogEntry);
+    assertEquals("New body1r2", blogEntry.getBody());
+    assertEquals(2, first.count);
+  }
+
+  public void testViewAndMediaAreCachedSeparately() {
+    chain.decorate(context, createBlogEntry());
+
+    context.setView(ContentDecoratorContext.DETAIL_VIEW);
+    chain.decorate(context, createBlogEntry());
+    assertEquals(2, first.count);
+
+    context.setMedia(ContentDecoratorContext.NEWS_FEED);
+    chain.decorate(context, createBlogEntry());
+    assertEquals(3, first.count);
+
+    chain.decorate(context, createBlogEntry());
+    assertEquals(3, first.count);
+  }
+
+  public void testPreviewsAreNotCached() {
+    context.setView(ContentDecoratorContext.PREVIEW);
+    chain.decorate(context, createBlogEntry());
+    chain.decorate(context, createBlogEntry());
+    assertEquals(2, first.count);
+  }
+
+  public void testInvalidate() {
+    chain.decorate(context, createBlogEntry());
+    chain.invalidate(createBlogEntry());
+    chain.decorate(context, createBlogEntry());
+    assertEquals(2, first.count);
+  }
+
+  public void testCacheClearedWhenPluginPropertiesChange() {
+    ContentDecoratorChain blogChain = blog.getContentDecoratorChain();
+    SuffixingDecorator decorator = new SuffixingDecorator("s");
+    blogChain.add(decorator);
+
+    blogChain.decorate(context, createBlogEntry());
+    blogChain.decorate(context, createBlogEntry());
+    assertEquals(1, decorator.count);
+
+    blog.getPluginProperties().setProperty("SuffixingDecorator.suffix", "x");
+    blogChain.decorate(context, createBlogEntry());
+    assertEquals(2, decorator.count);
+  }
+
+  public void testCacheClearedWhenBlogPropertiesAreStored() throws Exception {
+    ContentDecoratorChain blogChain = blog.getContentDecoratorChain();
+    SuffixingDecorator decorator = new SuffixingDecorator("s");
+    blogChain.add(decorator);
+
+    blogChain.decorate(context, createBlogEntry());
+    blog.setProperty(Blog.LANGUAGE_KEY, "de");
+    blog.storeProperties();
+    blogChain.decorate(context, createBlogEntry());
+    assertEquals(2, decorator.count);
+  }
+
+  public void testRenamedCategoryIsDecoratedAgain() {
+    Category category = new Category("/java", "Java");
+    blog.addCategory(category);
+
+    BlogEntry blogEntry = createBlogEntry();
+    blogEntry.addCategory(category);
+    chain.decorate(context, blogEntry);
+
+    category.setName("Java and the JVM");
+    blogEntry = createBlogEntry();
+    blogEntry.addCategory(category);
+    chain.decorate(context, blogEntry);
+    assertEquals(2, first.count);
+  }
+
+  public void testCommentsAreCached() {
+    BlogEntry blogEntry = createBlogEntry();
+    Comment comment = blogEntry.createComment("Title", "Comment", "Author", "", "", "", "127.0.0.1");
+    blogEntry.addComment(comment);
+    chain.decorate(context, comment);
+    assertEquals("Comment1r2", comment.getBody());
+
+    comment.setBody("Comment");
+    chain.decorate(context, comment);
+    assertEquals("Comment1r2", comment.getBody());
+    assertEquals(1, first.count);
+    assertEquals(2, requestDependent.count);
+  }
+
+  public void testHtmlRewritingDecoratorsAreCombined() {
+    RelativeUriDecorator relativeUriDecorator = new RelativeUriDecorator();
+    relativeUriDecorator.setBlog(blog);
+    chain = new ContentDecoratorChain(blog);
+    chain.add(relativeUriDecorator);
+    chain.add(new HtmlRewritingDecorator() {
+      protected HtmlVisitor getVisitor(ContentDecoratorContext context, Content content) {
+        return new HtmlVisitor() {
+          public void visit(HtmlToken token) {
+            if (token.isTag("img")) {
+              token.setAttribute("alt", token.getAttribute("src"));
+            }
+          }
+        };
+      }
+    });
+
+    BlogEntry blogEntry = createBlogEntry();
+    blogEntry.setBody("<img src=\"./images/a.png\">");
+    blogEntry.setAttachment(new Attachment("./files/a.zip", 1024, "application/zip"));
+    chain.decorate(context, blogEntry);
+    assertEquals("<img src=\"http://www.yourdomain.com/blog/images/a.png\" alt=\"http://www.yourdomain.com/blog/images/a.png\">", blogEntry.getBody());
+    assertEquals("http://www.yourdomain.com/blog/files/a.zip", blogEntry.getAttachment().getUrl());
+  }
+
+  static class SuffixingDecorator extends ContentDecoratorSupport implements DeterministicContentDecorator {
+
+    private String suffix;
+    private int count;
+
+    SuffixingDecorator(String suffix) {
+      this.suffix = suffix;
+    }
+
+    public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
+      count++;
+      blogEntry.setBody(blogEntry.getBody() + suffix);
+      blogEntry.setExcerpt(blogEntry.getExcerpt() + suffix);
+    }
+
+    public void decorate(ContentDecoratorContext context, Comment comment) {
+      count++;
+      comment.setBody(comment.getBody() + suffix);
+    }
+
+  }
+
+  static class RequestDependentDecorator extends ContentDecoratorSupport {
+
+    private int count;
+
+    public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
+      count++;
+      blogEntry.setBody(blogEntry.getBody() + "r");
+    }
+
+    public void decorate(ContentDecoratorContext context, Comment comment) {
+      count++;
+      comment.setBody(comment.getBody() + "r");
+    }
+
+  }
+
+}
@@ -989,4 +989,68 @@ public class BlogEntryTest extends SingleBlogTestCase {
     assertEquals(0, blogEntry.getNumberOfTrackBacks());
    }
 
- }
\ No newline at end of file
+   public void testResponsesOrderedNewestFirst() {
+    Comment comment1 = blogEntry.createComment("", "Body", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1", new Date(100), State.APPROVED);
+    Comment comment2 = blogEntry.createComment("", "Body", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1", new Date(300), State.APPROVED);
+    TrackBack trackBack = blogEntry.createTrackBack("Title", "Excerpt", "http://www.somedomain.com", "Some blog", "127.0.0.1", new Date(200), State.APPROVED);
+    blogEntry.addComment(comment1);
+    blogEntry.addTrackBack(trackBack);
+    comment2.setParent(comment1);
+    blogEntry.addComment(comment2);
+
+    List<Response> responses = blogEntry.getResponses();
+    assertEquals(3, responses.size());
+    assertSame(comment2, responses.get(0));
+    assertSame(trackBack, responses.get(1));
+    assertSame(comment1, responses.get(2));
+    assertEquals(3, blogEntry.getNumberOfResponses());
+
+    // changing the date of a response moves it
+    comment1.setDate(new Date(400));
+    responses = blogEntry.getResponses();
+    assertSame(comment1, responses.get(0));
+    assertSame(comment1, blogEntry.getComment(400));
+    assertNull(blogEntry.getComment(100));
+  }
+
+  public void testNumberOfResponsesByState() {
+    Comment comment = blogEntry.createComment("", "Body", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1", new Date(100), State.PENDING);
+    TrackBack trackBack = blogEntry.createTrackBack("Title", "Excerpt", "http://www.somedomain.com", "Some blog", "127.0.0.1", new Date(200), State.REJECTED);
+    blogEntry.addComment(comment);
+    blogEntry.addTrackBack(trackBack);
+
+    assertEquals(0, blogEntry.getNumberOfApprovedResponses());
+    assertEquals(1, blogEntry.getNumberOfPendingResponses());
+    assertEquals(1, blogEntry.getNumberOfRejectedResponses());
+
+    comment.setApproved();
+    assertEquals(1, blogEntry.getNumberOfApprovedResponses());
+    assertEquals(0, blogEntry.getNumberOfPendingResponses());
+
+    blogEntry.removeTrackBack(trackBack.getId());
+    assertEquals(0, blogEntry.getNumberOfRejectedResponses());
+    assertEquals(1, blogEntry.getNumberOfResponses());
+  }
+
+  public void testRemovingCommentUnindexesWholeThread() {
+    Comment comment1 = blogEntry.createComment("", "Body", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1", new Date(100), State.APPROVED);
+    Comment comment2 = blogEntry.createComment("", "Body", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1", new Date(200), State.APPROVED);
+    Comment comment3 = blogEntry.createComment("", "Body", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1", new Date(300), State.PENDING);
+    blogEntry.addComment(comment1);
+    comment2.setParent(comment1);
+    blogEntry.addComment(comment2);
+    comment3.setParent(comment2);
+    blogEntry.addComment(comment3);
+    assertSame(comment3, blogEntry.getComment(300));
+
+    blogEntry.removeComment(comment1.getId());
+    assertEquals(0, blogEntry.getNumberOfComments());
+    assertEquals(0, blogEntry.getNumberOfResponses());
+    assertEquals(0, blogEntry.getNumberOfPendingResponses());
+    assertNull(blogEntry.getComment(200));
+    assertNull(blogEntry.getComment(300));
+    assertTrue(blogEntry.getComments().isEmpty());
+  }
+
+
+}
\ No newline at end of file
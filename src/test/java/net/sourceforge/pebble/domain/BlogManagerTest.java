@@ -31,22 +31,122 @@
  */
 package net.sourceforge.pebble.domain;
 
-import junit.framework.TestCase;
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.mock.MockDAOFactory;
 
-import java.util.Collection;
-import java.util.Date;
+import java.io.File;
 
 /**
  * Tests for the BlogManager class.
  *
  * @author    Simon Brown
  */
-public class BlogManagerTest extends TestCase {
+public class BlogManagerTest extends PebbleTestCase {
 
   private BlogManager manager;
 
   protected void setUp() throws Exception {
+    super.setUp();
+
+    DAOFactory.setConfiguredFactory(new MockDAOFactory());
+    PebbleContext.getInstance().setWebApplicationRoot(TEST_BLOG_LOCATION.getAbsolutePath());
+
     this.manager = BlogManager.getInstance();
+    manager.setMultiBlog(true);
+    for (String id : new String[] {"blog1", "blog2", "blog3"}) {
+      new File(TEST_BLOG_LOCATION, "blogs/" + id).mkdirs();
+    }
+  }
+
+  protected void tearDown() throws Exception {
+    manager.stopBlogs();
+    manager.removeAllBlogs();
+    manager.setMultiBlog(false);
+    manager.setStartupThreads(1);
+    manager.setLazyStartup(false);
+    manager.setPassivationTimeout(0);
+
+    super.tearDown();
+  }
+
+  public void testStartBlogsInParallel() {
+    manager.setStartupThreads(4);
+    manager.startBlogs();
+
+    assertEquals(3, manager.getNumberOfBlogs());
+    assertEquals(3, manager.getStartedBlogs().size());
+    assertEquals("blog2", manager.getBlog("blog2").getId());
+  }
+
+  public void testLazyStartup() {
+    manager.setLazyStartup(true);
+    manager.startBlogs();
+
+    assertEquals(3, manager.getNumberOfBlogs());
+    assertTrue(manager.hasBlog("blog1"));
+    assertTrue(manager.getStartedBlogs().isEmpty());
+
+    Blog blog = manager.getBlog("blog1");
+    assertEquals("blog1", blog.getId());
+    assertSame(blog, manager.getBlog("blog1"));
+    assertEquals(1, manager.getStartedBlogs().size());
+
+    assertNull(manager.getBlog("unknown"));
+    assertFalse(manager.hasBlog("unknown"));
+
+    // aggregated views only see the started blogs, and don't start the rest
+    assertEquals(1, manager.getPublicBlogs().size());
+    assertEquals(1, manager.getBlogs().size());
+    assertEquals(1, manager.getStartedBlogs().size());
+
+    // unless explicitly asked to
+    assertEquals(3, manager.getAllBlogs().size());
+    assertEquals(3, manager.getStartedBlogs().size());
+  }
+
+  public void testIdleBlogsPassivated() throws Exception {
+    manager.setLazyStartup(true);
+    manager.setPassivationTimeout(1);
+    manager.startBlogs();
+
+    Blog blog = manager.getBlog("blog1");
+    Thread.sleep(10);
+    manager.passivateIdleBlogs();
+    assertTrue(manager.getStartedBlogs().isEmpty());
+    assertTrue(manager.hasBlog("blog1"));
+
+    // and started again when next requested
+    Blog reactivated = manager.getBlog("blog1");
+    assertNotNull(reactivated);
+    assertNotSame(blog, reactivated);
+  }
+
+  public void testEagerlyStartedBlogsPassivatedWhenNeverRequested() throws Exception {
+    manager.setPassivationTimeout(1);
+    manager.startBlogs();
+    assertEquals(3, manager.getStartedBlogs().size());
+
+    Thread.sleep(10);
+    manager.passivateIdleBlogs();
+    assertTrue(manager.getStartedBlogs().isEmpty());
+  }
+
+  public void testBlogsInUseAreNotPassivated() throws Exception {
+    manager.setLazyStartup(true);
+    manager.setPassivationTimeout(1);
+    manager.startBlogs();
+
+    manager.beginRequest();
+    Blog blog = manager.getBlog("blog1");
+    Thread.sleep(10);
+    manager.passivateIdleBlogs();
+    assertSame(blog, manager.getBlog("blog1"));
+    manager.endRequest();
+
+    Thread.sleep(10);
+    manager.passivateIdleBlogs();
+    assertTrue(manager.getStartedBlogs().isEmpty());
   }
 
   public void testGetBlogs() {
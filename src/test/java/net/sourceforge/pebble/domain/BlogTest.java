@@ -181,6 +181,41 @@ public class BlogTest extends SingleBlogTestCase {
     assertEquals(cal.get(Calendar.MONTH)+1, month.getMonth());
   }
 
+  /**
+   * Tests that the archives are only recalculated when they change.
+   */
+  public void testGetArchives() {
+    List<Year> archives = blog.getArchives();
+    assertSame(archives, blog.getArchives());
+    assertEquals(blog.getBlogForThisYear(), archives.get(0));
+
+    // an entry in an earlier year extends the archives back
+    BlogEntry blogEntry = new BlogEntry(blog);
+    Calendar cal = blog.getCalendar();
+    cal.add(Calendar.YEAR, -2);
+    blogEntry.setDate(cal.getTime());
+    blogEntry.setPublished(true);
+    blog.getBlogEntryIndex().index(blogEntry);
+
+    archives = blog.getArchives();
+    assertEquals(2, archives.size());
+    assertEquals(cal.get(Calendar.YEAR), archives.get(1).getYear());
+  }
+
+  /**
+   * Tests that the Calendar is for the blog's time zone and is independent of other calls.
+   */
+  public void testGetCalendar() {
+    Calendar cal1 = blog.getCalendar();
+    cal1.add(Calendar.YEAR, -1);
+    Calendar cal2 = blog.getCalendar();
+    assertTrue(cal2.getTimeInMillis() - cal1.getTimeInMillis() > 300L * 24 * 60 * 60 * 1000);
+    assertEquals(blog.getTimeZone(), cal2.getTimeZone());
+
+    blog.setProperty(Blog.TIMEZONE_KEY, "Asia/Tokyo");
+    assertEquals("Asia/Tokyo", blog.getCalendar().getTimeZone().getID());
+  }
+
   /**
    * Tests that we can get a Month instance.
    */
@@ -31,6 +31,8 @@
  */
 package net.sourceforge.pebble.domain;
 
+import net.sourceforge.pebble.index.DiskUsageIndex;
+
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -521,4 +523,62 @@ public class FileManagerTest extends SingleBlogTestCase {
     themeDirectory.delete();
   }
 
+  /**
+   * Tests that the current usage is kept up to date as files are changed.
+   */
+  public void testCurrentUsageIsUpdatedIncrementally() throws Exception {
+    double usage = FileManager.getCurrentUsage(blog);
+
+    fileManager.saveFile("a.txt", new byte[2048]);
+    assertEquals(usage + 2, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.copyFile("/", "a.txt", "b.txt");
+    assertEquals(usage + 4, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.renameFile("/", "b.txt", "c.txt");
+    assertEquals(usage + 4, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.saveFile("/", "a.txt", "");
+    assertEquals(usage + 2, FileManager.getCurrentUsage(blog), 0.001);
+
+    fileManager.deleteFile("/", "a.txt");
+    fileManager.deleteFile("/", "c.txt");
+    assertEquals(usage, FileManager.getCurrentUsage(blog), 0.001);
+  }
+
+  /**
+   * Tests that reconciliation picks up changes made outside of the file manager.
+   */
+  public void testCurrentUsageIsReconciledWithFilesystem() throws Exception {
+    double usage = FileManager.getCurrentUsage(blog);
+
+    File file = fileManager.getFile("/external.txt");
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    writer.write(new char[1024]);
+    writer.close();
+    assertEquals(usage, FileManager.getCurrentUsage(blog), 0.001);
+
+    blog.getDiskUsageIndex().reconcile();
+    assertEquals(usage + 1, FileManager.getCurrentUsage(blog), 0.001);
+
+    // and clean up
+    file.delete();
+  }
+
+  /**
+   * Tests that totals are only written to disk once they've been reconciled,
+   * so that partial totals are never trusted after a restart.
+   */
+  public void testUnreconciledUsageIsNotPersisted() throws Exception {
+    File indexFile = new File(blog.getIndexesDirectory(), "diskusage.index");
+    indexFile.delete();
+
+    DiskUsageIndex index = new DiskUsageIndex(blog);
+    index.adjust(FileMetaData.BLOG_FILE, 1024);
+    assertFalse(indexFile.exists());
+
+    index.getUsage();
+    assertTrue(indexFile.exists());
+  }
+
 }
@@ -32,6 +32,7 @@
 package net.sourceforge.pebble.domain;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  * Tests for the MultiBlog class.
@@ -82,4 +83,74 @@ public class MultiBlogTest extends MultiBlogTestCase {
     assertTrue(blog.getRecentBlogEntries(1).contains(blogEntry));
   }
 
+  /**
+   * Tests that entries from all public blogs are merged, most recent first,
+   * and that unpublished, removed and private entries are excluded.
+   */
+  public void testRecentBlogEntriesMergedAcrossBlogs() throws Exception {
+    BlogService service = new BlogService();
+    BlogEntry blogEntry1 = createBlogEntry(blog1, 1000);
+    BlogEntry blogEntry2 = createBlogEntry(blog2, 2000);
+    BlogEntry blogEntry3 = createBlogEntry(blog1, 3000);
+
+    List<BlogEntry> blogEntries = blog.getRecentBlogEntries(10);
+    assertEquals(3, blogEntries.size());
+    assertEquals(blogEntry3, blogEntries.get(0));
+    assertEquals(blogEntry2, blogEntries.get(1));
+    assertEquals(blogEntry1, blogEntries.get(2));
+    assertEquals(blogEntry3.getDate(), blog.getLastModified());
+
+    blogEntries = blog.getBlogEntries(1, 1);
+    assertEquals(1, blogEntries.size());
+    assertEquals(blogEntry2, blogEntries.get(0));
+
+    blogEntry3.setPublished(false);
+    service.putBlogEntry(blogEntry3);
+    assertEquals(blogEntry2.getDate(), blog.getLastModified());
+    assertEquals(2, blog.getRecentBlogEntries(10).size());
+
+    service.removeBlogEntry(blogEntry2);
+    assertEquals(blogEntry1.getDate(), blog.getLastModified());
+
+    blog1.setProperty(Blog.PRIVATE_KEY, "true");
+    assertEquals(new Date(0), blog.getLastModified());
+    assertTrue(blog.getRecentBlogEntries(10).isEmpty());
+  }
+
+  /**
+   * Tests that no more entries are taken from a blog than it shows on its
+   * own home page.
+   */
+  public void testRecentBlogEntriesLimitedPerBlog() throws Exception {
+    blog1.setProperty(Blog.RECENT_BLOG_ENTRIES_ON_HOME_PAGE_KEY, "1");
+    createBlogEntry(blog1, 1000);
+    BlogEntry blogEntry2 = createBlogEntry(blog1, 2000);
+    BlogEntry blogEntry3 = createBlogEntry(blog2, 500);
+
+    List<BlogEntry> blogEntries = blog.getRecentBlogEntries(10);
+    assertEquals(2, blogEntries.size());
+    assertEquals(blogEntry2, blogEntries.get(0));
+    assertEquals(blogEntry3, blogEntries.get(1));
+  }
+
+  /**
+   * Tests that a stopped blog is removed from the timeline.
+   */
+  public void testStoppedBlogRemoved() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(blog1, 1000);
+    blog1.stop();
+    assertEquals(new Date(0), blog.getLastModified());
+    blog1.start();
+    assertEquals(blogEntry.getDate().getTime(), blog.getLastModified().getTime());
+  }
+
+  private BlogEntry createBlogEntry(Blog b, long time) throws BlogServiceException {
+    BlogEntry blogEntry = new BlogEntry(b);
+    blogEntry.setDate(new Date(time));
+    blogEntry.setPublished(true);
+    new BlogService().putBlogEntry(blogEntry);
+
+    return blogEntry;
+  }
+
 }
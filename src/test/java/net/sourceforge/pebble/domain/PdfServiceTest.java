@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the PdfService class.
+ */
+public class PdfServiceTest extends SingleBlogTestCase {
+
+  private CountingPdfService service;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    service = new CountingPdfService();
+    blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setPublished(true);
+  }
+
+  public void testPdfIsRenderedOnceAndCached() throws Exception {
+    File pdf = service.getPdf(blogEntry);
+
+    assertTrue(pdf.isFile());
+    assertEquals(new File(blog.getRoot(), PdfService.PDF_DIRECTORY), pdf.getParentFile());
+    assertTrue(pdf.getName().startsWith(blogEntry.getId() + "-"));
+    assertTrue(pdf.getName().endsWith(".pdf"));
+    assertEquals(1, service.renders.get());
+
+    assertEquals(pdf, service.getPdf(blogEntry));
+    assertEquals(1, service.renders.get());
+  }
+
+  public void testChangedEntryReplacesStalePdf() throws Exception {
+    File pdf = service.getPdf(blogEntry);
+
+    blogEntry.setBody("Some different body");
+    File changed = service.getPdf(blogEntry);
+
+    assertFalse(pdf.equals(changed));
+    assertTrue(changed.isFile());
+    assertFalse(pdf.exists());
+    assertEquals(2, service.renders.get());
+  }
+
+  public void testRemovePdfs() throws Exception {
+    File pdf = service.getPdf(blogEntry);
+    service.removePdfs(blogEntry);
+
+    assertFalse(pdf.exists());
+  }
+
+  public void testGeneratePdfInBackground() throws Exception {
+    service.generatePdf(blogEntry);
+
+    for (int i = 0; i < 100 && service.renders.get() == 0; i++) {
+      Thread.sleep(50);
+    }
+
+    // waits for the background job rather than rendering again
+    File pdf = service.getPdf(blogEntry);
+
+    assertTrue(pdf.isFile());
+    assertEquals(1, service.renders.get());
+  }
+
+  public void testEntryWithoutTitleOrBody() throws Exception {
+    blogEntry.setTitle(null);
+    blogEntry.setSubtitle(null);
+    blogEntry.setBody(null);
+
+    assertTrue(service.getPdf(blogEntry).isFile());
+  }
+
+  public void testFailedRenderIsRetried() throws Exception {
+    service.fail = true;
+    try {
+      service.getPdf(blogEntry);
+      fail();
+    } catch (IOException ioe) {
+      // expected
+    }
+
+    service.fail = false;
+    assertTrue(service.getPdf(blogEntry).isFile());
+  }
+
+  /**
+   * Stands in for the real renderer, which is slow.
+   */
+  static class CountingPdfService extends PdfService {
+
+    final AtomicInteger renders = new AtomicInteger();
+    volatile boolean fail;
+
+    void render(String xhtml, OutputStream out) throws Exception {
+      if (fail) {
+        throw new IOException("Rendering failed");
+      }
+      out.write(xhtml.getBytes("UTF-8"));
+      renders.incrementAndGet();
+    }
+
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * Tests for the ThumbnailService class.
+ */
+public class ThumbnailServiceTest extends SingleBlogTestCase {
+
+  private ThumbnailService service;
+  private File image;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    service = ThumbnailService.getInstance();
+    File imagesDirectory = new File(blog.getImagesDirectory());
+    imagesDirectory.mkdirs();
+    image = new File(imagesDirectory, "photo.png");
+    ImageIO.write(new BufferedImage(1600, 800, BufferedImage.TYPE_INT_RGB), "png", image);
+  }
+
+  public void testIsImage() {
+    assertTrue(service.isImage(new File("photo.jpg")));
+    assertTrue(service.isImage(new File("photo.PNG")));
+    assertFalse(service.isImage(new File("document.pdf")));
+    assertFalse(service.isImage(new File("noSuffix")));
+  }
+
+  public void testGenerateThumbnail() throws Exception {
+    File thumbnail = service.generateThumbnail(image, 200);
+
+    assertNotNull(thumbnail);
+    assertEquals(new File(image.getParentFile(), ThumbnailService.THUMBNAIL_DIRECTORY), thumbnail.getParentFile());
+    assertTrue(thumbnail.getName().endsWith("-200.png"));
+
+    BufferedImage scaled = ImageIO.read(thumbnail);
+    assertEquals(200, scaled.getWidth());
+    assertEquals(100, scaled.getHeight());
+  }
+
+  public void testThumbnailIsServedOnceGenerated() throws Exception {
+    File thumbnail = service.generateThumbnail(image, 100);
+    assertEquals(thumbnail, service.getThumbnail(image, 100));
+  }
+
+  public void testThumbnailsAreKeyedBySize() throws Exception {
+    File small = service.generateThumbnail(image, 100);
+    File large = service.generateThumbnail(image, 400);
+    assertFalse(small.equals(large));
+  }
+
+  public void testLegacyThumbnailIsRemoved() throws Exception {
+    File directory = new File(image.getParentFile(), ThumbnailService.THUMBNAIL_DIRECTORY);
+    directory.mkdirs();
+    File legacy = new File(directory, image.getName());
+    ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB), "png", legacy);
+
+    service.generateThumbnail(image, 200);
+    assertFalse(legacy.exists());
+  }
+
+  public void testNoThumbnailForMissingImage() {
+    assertNull(service.getThumbnail(new File(blog.getImagesDirectory(), "missing.png"), 100));
+  }
+
+}
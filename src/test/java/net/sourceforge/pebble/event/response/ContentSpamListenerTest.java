@@ -310,4 +310,29 @@ public class ContentSpamListenerTest extends SingleBlogTestCase {
     assertEquals(4, trackBack.getSpamScore());
   }
 
+  /**
+   * Tests that invalid regexs are ignored rather than stopping the others
+   * from being checked.
+   */
+  public void testInvalidRegexIgnored() {
+    comment.setBody("Here is some junk about poker and online casinos.");
+    blog.getPluginProperties().setProperty(ContentSpamListener.REGEX_LIST_KEY, "[unclosed, poker");
+    listener.commentAdded(commentEvent);
+    assertTrue(comment.isPending());
+    assertEquals(1, comment.getSpamScore());
+  }
+
+  /**
+   * Tests that the threshold counts the matches of every regex, even
+   * where they overlap.
+   */
+  public void testThresholdCountsEachRegex() {
+    comment.setBody("Here is some junk about poker.");
+    blog.getPluginProperties().setProperty(ContentSpamListener.REGEX_LIST_KEY, "poker, pok");
+    blog.getPluginProperties().setProperty(ContentSpamListener.THRESHOLD_KEY, "1");
+    listener.commentAdded(commentEvent);
+    assertTrue(comment.isPending());
+    assertEquals(1, comment.getSpamScore());
+  }
+
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event.response;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the IpAddressList class.
+ */
+public class IpAddressListTest extends TestCase {
+
+  public void testEmptyList() {
+    assertFalse(new IpAddressList(null).contains("127.0.0.1"));
+    assertFalse(new IpAddressList("").contains("127.0.0.1"));
+    assertFalse(new IpAddressList(" , ").contains("127.0.0.1"));
+  }
+
+  public void testSingleAddresses() {
+    IpAddressList list = new IpAddressList("192.168.0.1, 127.0.0.1");
+    assertTrue(list.contains("127.0.0.1"));
+    assertTrue(list.contains("192.168.0.1"));
+    assertFalse(list.contains("192.168.0.2"));
+    assertFalse(list.contains("127.0.0.10"));
+    assertFalse(list.contains(null));
+  }
+
+  public void testCidrBlocks() {
+    IpAddressList list = new IpAddressList("10.0.0.0/8,192.168.1.128/25");
+    assertTrue(list.contains("10.0.0.0"));
+    assertTrue(list.contains("10.255.255.255"));
+    assertFalse(list.contains("11.0.0.0"));
+    assertTrue(list.contains("192.168.1.128"));
+    assertTrue(list.contains("192.168.1.255"));
+    assertFalse(list.contains("192.168.1.127"));
+  }
+
+  public void testEverything() {
+    assertTrue(new IpAddressList("0.0.0.0/0").contains("1.2.3.4"));
+  }
+
+  public void testOtherEntriesMatchedExactly() {
+    IpAddressList list = new IpAddressList("0:0:0:0:0:0:0:1,unknown,10.0.0.0/33");
+    assertTrue(list.contains("0:0:0:0:0:0:0:1"));
+    assertTrue(list.contains("unknown"));
+    assertTrue(list.contains("10.0.0.0/33"));
+    assertFalse(list.contains("10.0.0.0"));
+  }
+
+  public void testParseIPv4() {
+    assertEquals(0x7f000001L, IpAddressList.parseIPv4("127.0.0.1"));
+    assertEquals(0xffffffffL, IpAddressList.parseIPv4("255.255.255.255"));
+    assertEquals(-1, IpAddressList.parseIPv4("256.0.0.1"));
+    assertEquals(-1, IpAddressList.parseIPv4("1.2.3"));
+    assertEquals(-1, IpAddressList.parseIPv4("1.2.3.4.5"));
+    assertEquals(-1, IpAddressList.parseIPv4("1..3.4"));
+    assertEquals(-1, IpAddressList.parseIPv4(""));
+  }
+
+  public void testIsCompiledFrom() {
+    assertTrue(new IpAddressList(null).isCompiledFrom(null));
+    assertTrue(new IpAddressList("1.2.3.4").isCompiledFrom("1.2.3.4"));
+    assertFalse(new IpAddressList("1.2.3.4").isCompiledFrom("1.2.3.5"));
+  }
+
+}
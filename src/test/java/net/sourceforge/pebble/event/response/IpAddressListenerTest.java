@@ -232,4 +232,32 @@ public class IpAddressListenerTest extends SingleBlogTestCase {
     assertEquals("", blog.getPluginProperties().getProperty(IpAddressListener.WHITELIST_KEY));
   }
 
+  /**
+   * Tests a comment from an IP address that falls within a blacklisted
+   * CIDR block.
+   */
+  public void testCommentIpAddressInBlacklistedSubnet() {
+    blog.getPluginProperties().setProperty(IpAddressListener.WHITELIST_KEY, "127.0.0.1");
+    blog.getPluginProperties().setProperty(IpAddressListener.BLACKLIST_KEY, "10.0.0.1,127.0.0.0/8");
+
+    listener.commentAdded(commentEvent);
+    assertTrue(comment.isPending());
+    assertEquals(1, comment.getSpamScore());
+  }
+
+  /**
+   * Tests that changes to the lists are picked up by the same listener.
+   */
+  public void testListsRecompiledWhenChanged() {
+    blog.getPluginProperties().setProperty(IpAddressListener.WHITELIST_KEY, "127.0.0.1");
+    blog.getPluginProperties().setProperty(IpAddressListener.BLACKLIST_KEY, "");
+    listener.commentAdded(commentEvent);
+    assertTrue(comment.isApproved());
+
+    blog.getPluginProperties().setProperty(IpAddressListener.BLACKLIST_KEY, "127.0.0.1");
+    listener.commentAdded(commentEvent);
+    assertTrue(comment.isPending());
+    assertEquals(1, comment.getSpamScore());
+  }
+
 }
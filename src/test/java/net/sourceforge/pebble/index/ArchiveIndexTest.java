@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Tests for the ArchiveIndex class, as maintained by the BlogEntryIndex.
+ */
+public class ArchiveIndexTest extends SingleBlogTestCase {
+
+  private BlogEntryIndex blogEntryIndex;
+  private ArchiveIndex archiveIndex;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    blogEntryIndex = blog.getBlogEntryIndex();
+    archiveIndex = blogEntryIndex.getArchiveIndex();
+  }
+
+  private BlogEntry createBlogEntry(int year, int month, int day, int hour, boolean published) {
+    Calendar cal = blog.getCalendar();
+    cal.set(year, month - 1, day, hour, 0, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(cal.getTime());
+    blogEntry.setPublished(published);
+    return blogEntry;
+  }
+
+  public void testMonthsAreSummarisedAsEntriesAreIndexed() {
+    assertNull(archiveIndex.getMonthArchive(2010, 3));
+
+    BlogEntry blogEntry1 = createBlogEntry(2010, 3, 14, 10, true);
+    BlogEntry blogEntry2 = createBlogEntry(2010, 3, 14, 11, true);
+    BlogEntry blogEntry3 = createBlogEntry(2010, 3, 20, 10, true);
+    blogEntryIndex.index(blogEntry1);
+    blogEntryIndex.index(blogEntry2);
+    blogEntryIndex.index(blogEntry3);
+
+    MonthArchive archive = archiveIndex.getMonthArchive(2010, 3);
+    assertEquals(3, archive.getNumberOfBlogEntries());
+    assertEquals(2, archive.getNumberOfBlogEntries(14));
+    assertTrue(archive.hasBlogEntries(20));
+    assertFalse(archive.hasBlogEntries(15));
+    assertEquals(31, archive.getLastDayInMonth());
+    assertEquals(3, blog.getBlogForMonth(2010, 3).getNumberOfBlogEntries());
+
+    // the snapshot doesn't change, but is replaced
+    blogEntryIndex.unindex(blogEntry3);
+    assertEquals(3, archive.getNumberOfBlogEntries());
+    assertEquals(2, archiveIndex.getMonthArchive(2010, 3).getNumberOfBlogEntries());
+
+    blogEntryIndex.unindex(blogEntry1);
+    blogEntryIndex.unindex(blogEntry2);
+    assertNull(archiveIndex.getMonthArchive(2010, 3));
+    assertFalse(blog.getBlogForMonth(2010, 3).hasBlogEntries());
+  }
+
+  public void testUnpublishedEntriesAreNotCounted() {
+    blogEntryIndex.index(createBlogEntry(2010, 3, 14, 10, false));
+    assertNull(archiveIndex.getMonthArchive(2010, 3));
+    assertEquals(2010, blog.getBlogForFirstMonth().getYear().getYear());
+  }
+
+  public void testPreviousAndNextNavigation() {
+    blogEntryIndex.index(createBlogEntry(2009, 11, 1, 10, true));
+    blogEntryIndex.index(createBlogEntry(2010, 3, 14, 10, true));
+    blogEntryIndex.index(createBlogEntry(2010, 7, 4, 10, true));
+
+    assertEquals(2009, archiveIndex.getPreviousMonthArchive(2010, 3).getYear());
+    assertEquals(11, archiveIndex.getPreviousMonthArchive(2010, 3).getMonth());
+    assertEquals(7, archiveIndex.getNextMonthArchive(2010, 3).getMonth());
+    assertEquals(3, archiveIndex.getNextMonthArchive(2010, 1).getMonth());
+    assertNull(archiveIndex.getPreviousMonthArchive(2009, 11));
+    assertNull(archiveIndex.getNextMonthArchive(2010, 7));
+
+    List<MonthArchive> archives = archiveIndex.getMonthArchives();
+    assertEquals(3, archives.size());
+    assertEquals(7, archives.get(0).getMonth());
+    assertEquals(11, archives.get(2).getMonth());
+  }
+
+  public void testArchivesAreRebuiltWhenTheIndexIsRead() {
+    blogEntryIndex.index(createBlogEntry(2010, 3, 14, 10, true));
+    blogEntryIndex.index(createBlogEntry(2010, 3, 15, 10, true));
+
+    BlogEntryIndex reloaded = new BlogEntryIndex(blog);
+    assertEquals(2, reloaded.getArchiveIndex().getMonthArchive(2010, 3).getNumberOfBlogEntries());
+  }
+
+}
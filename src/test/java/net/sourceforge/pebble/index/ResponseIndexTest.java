@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.domain.State;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the ResponseIndex class.
+ */
+public class ResponseIndexTest extends SingleBlogTestCase {
+
+  private BlogService service;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    service = new BlogService();
+    blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A blog entry");
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+  }
+
+  private Comment addComment(String title, String body, long time, State state) throws Exception {
+    Comment comment = blogEntry.createComment(title, body, "author", "me@example.com", "http://www.example.com", "", "127.0.0.1", new Date(time), state);
+    blogEntry.addComment(comment);
+    service.putBlogEntry(blogEntry);
+
+    // new comments may have been moderated by the comment listeners
+    if (state == State.APPROVED && !comment.isApproved()) {
+      comment.setApproved();
+      service.putBlogEntry(blogEntry);
+    }
+
+    return comment;
+  }
+
+  /**
+   * Tests that the summary of a response survives being written and read.
+   */
+  public void testSummaryIsWrittenAndRead() throws Exception {
+    Comment comment = addComment("Tab\there", "Line one\nline \\two", 1200000000000L, State.PENDING);
+    comment.incrementSpamScore();
+    service.putBlogEntry(blogEntry);
+    blog.getResponseIndex().index(comment);
+
+    ResponseIndex index = new ResponseIndex(blog);
+    IndexedResponse indexedResponse = index.getResponse(comment.getGuid());
+    assertNotNull(indexedResponse);
+    assertEquals(comment.getGuid(), indexedResponse.getGuid());
+    assertEquals(blogEntry.getId(), indexedResponse.getBlogEntryId());
+    assertEquals(comment.getId(), indexedResponse.getId());
+    assertEquals(comment.getDate(), indexedResponse.getDate());
+    assertEquals("Tab\there", indexedResponse.getTitle());
+    assertEquals(comment.getTruncatedContent(), indexedResponse.getTruncatedContent());
+    assertEquals("author", indexedResponse.getSourceName());
+    assertEquals("http://www.example.com", indexedResponse.getSourceLink());
+    assertEquals("me@example.com", indexedResponse.getEmail());
+    assertEquals("127.0.0.1", indexedResponse.getIpAddress());
+    assertEquals(1, indexedResponse.getSpamScore());
+    assertEquals(comment.getPermalink(), indexedResponse.getPermalink());
+    assertTrue(indexedResponse.isComment());
+    assertTrue(indexedResponse.isPending());
+    assertTrue(indexedResponse.isBlogEntryPublished());
+    assertEquals(1, index.getNumberOfPendingResponses());
+  }
+
+  /**
+   * Tests that responses are listed newest first, and that changing the
+   * state of a response moves it between lists.
+   */
+  public void testResponsesAreOrderedNewestFirst() throws Exception {
+    Comment c1 = addComment("One", "body", 1200000000000L, State.PENDING);
+    Comment c2 = addComment("Two", "body", 1200000002000L, State.PENDING);
+    Comment c3 = addComment("Three", "body", 1200000001000L, State.PENDING);
+
+    List<IndexedResponse> pending = blog.getResponseIndex().getResponses(State.PENDING);
+    assertEquals(3, pending.size());
+    assertEquals(c2.getGuid(), pending.get(0).getGuid());
+    assertEquals(c3.getGuid(), pending.get(1).getGuid());
+    assertEquals(c1.getGuid(), pending.get(2).getGuid());
+
+    c3.setApproved();
+    service.putBlogEntry(blogEntry);
+    assertEquals(2, blog.getResponseIndex().getResponses(State.PENDING).size());
+    assertEquals(c3.getGuid(), blog.getResponseIndex().getResponses(State.APPROVED).get(0).getGuid());
+    // earlier snapshots are unaffected
+    assertEquals(3, pending.size());
+  }
+
+  /**
+   * Tests that responses to unpublished blog entries aren't recent responses.
+   */
+  public void testRecentResponsesOnlyIncludePublishedBlogEntries() throws Exception {
+    Comment comment = addComment("Title", "body", 1200000000000L, State.APPROVED);
+    assertEquals(1, blog.getResponseIndex().getRecentApprovedResponses(5).size());
+
+    blogEntry.setPublished(false);
+    service.putBlogEntry(blogEntry);
+    assertEquals(0, blog.getResponseIndex().getRecentApprovedResponses(5).size());
+    assertTrue(blog.getResponseIndex().getApprovedResponses().contains(comment.getGuid()));
+
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+    assertEquals(1, blog.getResponseIndex().getRecentApprovedResponses(5).size());
+  }
+
+  /**
+   * Tests that an index written by an older version, holding only response
+   * IDs, is upgraded when it is read.
+   */
+  public void testIndexOfIdsIsUpgraded() throws Exception {
+    Comment comment = addComment("Title", "body", 1200000000000L, State.APPROVED);
+
+    FileWriter writer = new FileWriter(new File(blog.getIndexesDirectory(), "responses-approved.index"));
+    writer.write(comment.getGuid() + "\n");
+    writer.write("c/123/456\n");
+    writer.close();
+
+    ResponseIndex index = new ResponseIndex(blog);
+    assertEquals(1, index.getNumberOfApprovedResponses());
+    assertEquals("Title", index.getResponse(comment.getGuid()).getTitle());
+  }
+
+  /**
+   * Tests that writes are deferred until the end of a batch.
+   */
+  public void testBatchDefersWrites() throws Exception {
+    File indexFile = new File(blog.getIndexesDirectory(), "responses-pending.index");
+    ResponseIndex index = blog.getResponseIndex();
+
+    index.beginBatch();
+    Comment comment = addComment("Title", "body", 1200000000000L, State.PENDING);
+    assertEquals(1, index.getNumberOfPendingResponses());
+    assertEquals(0, indexFile.length());
+
+    index.endBatch();
+    assertTrue(indexFile.length() > 0);
+    assertEquals(comment.getGuid(), new ResponseIndex(blog).getPendingResponses().get(0));
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.domain.StaticPage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the StaticPageIndex class.
+ */
+public class StaticPageIndexTest extends SingleBlogTestCase {
+
+  private StaticPageIndex index;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    this.index = new StaticPageIndex(blog);
+  }
+
+  private StaticPage createStaticPage(long time, String name) {
+    StaticPage staticPage = new StaticPage(blog);
+    staticPage.setDate(new Date(time));
+    staticPage.setName(name);
+    return staticPage;
+  }
+
+  public void testIndexAndUnindexStaticPage() {
+    StaticPage staticPage = createStaticPage(1000000000000L, "about");
+    index.index(staticPage);
+    assertTrue(index.contains("about"));
+    assertEquals(staticPage.getId(), index.getStaticPage("about"));
+    assertEquals(1, index.getNumberOfStaticPages());
+
+    index.unindex(staticPage);
+    assertFalse(index.contains("about"));
+    assertEquals(0, index.getNumberOfStaticPages());
+  }
+
+  public void testRenamedStaticPageReplacesOldName() {
+    StaticPage staticPage = createStaticPage(1000000000000L, "about");
+    index.index(staticPage);
+    staticPage.setName("about-me");
+    index.index(staticPage);
+
+    assertFalse(index.contains("about"));
+    assertEquals(staticPage.getId(), index.getStaticPage("about-me"));
+    assertEquals(Arrays.asList(staticPage.getId()), index.getStaticPages());
+  }
+
+  public void testIndexIsPersistedAndSharedThroughDisk() {
+    StaticPage about = createStaticPage(1000000000000L, "about");
+    index.index(about);
+
+    // a second instance, as if from another process
+    StaticPageIndex other = new StaticPageIndex(blog);
+    assertEquals(about.getId(), other.getStaticPage("about"));
+    StaticPage contact = createStaticPage(1000000001000L, "contact");
+    other.index(contact);
+
+    // changes from the other instance are picked up on the next write
+    index.index(createStaticPage(1000000002000L, "links"));
+    assertEquals(3, index.getNumberOfStaticPages());
+    assertEquals(contact.getId(), index.getStaticPage("contact"));
+    assertEquals(3, new StaticPageIndex(blog).getNumberOfStaticPages());
+  }
+
+  public void testStaleLockFileDoesNotBlockIndexing() throws Exception {
+    new File(blog.getIndexesDirectory(), "pages.lock").createNewFile();
+
+    long start = System.currentTimeMillis();
+    index.index(createStaticPage(1000000000000L, "about"));
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertTrue(index.contains("about"));
+  }
+
+  public void testConcurrentIndexingLosesNothing() throws Exception {
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      final int n = i;
+      threads.add(new Thread() {
+        public void run() {
+          for (int j = 0; j < 10; j++) {
+            index.index(createStaticPage(1000000000000L + (n * 10 + j) * 1000, "page" + n + "-" + j));
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(80, index.getNumberOfStaticPages());
+    assertEquals(80, new StaticPageIndex(blog).getNumberOfStaticPages());
+  }
+
+}
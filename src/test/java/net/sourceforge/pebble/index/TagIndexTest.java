@@ -33,6 +33,9 @@ package net.sourceforge.pebble.index;
 
 import net.sourceforge.pebble.domain.*;
 
+import java.util.Date;
+import java.util.List;
+
 /**
  * Tests for the TagIndex class.
  *
@@ -77,6 +80,100 @@ public class TagIndexTest extends SingleBlogTestCase {
     assertEquals(0, index.getTags().size());
   }
 
+  private BlogEntry createBlogEntry(long time, String tags) {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(time));
+    blogEntry.setTags(tags);
+    blogEntry.setPublished(true);
+    return blogEntry;
+  }
+
+  /**
+   * Tests that ranks follow the most popular tag as entries come and go.
+   */
+  public void testRanksAreMaintainedIncrementally() throws Exception {
+    BlogEntry blogEntry = null;
+    for (int i = 0; i < 10; i++) {
+      blogEntry = createBlogEntry(1000000000000L + i * 1000, i < 5 ? "java junit" : "java");
+      index.index(blogEntry);
+    }
+
+    assertEquals(10, index.getTag("java").getNumberOfBlogEntries());
+    assertEquals(10, index.getTag("java").getRank());
+    assertEquals(5, index.getTag("junit").getRank());
+
+    // java drops to 9, so the thresholds are recalculated from that
+    index.unindex(blogEntry);
+    assertEquals(9, index.getTag("java").getNumberOfBlogEntries());
+    assertEquals(10, index.getTag("java").getRank());
+    assertEquals(5, index.getTag("junit").getRank());
+    index.unindex(createBlogEntry(1000000008000L, "java"));
+    assertEquals(10, index.getTag("java").getRank());
+    assertEquals(6, index.getTag("junit").getRank());
+    assertEquals(5, index.getTag("junit").getNumberOfBlogEntries());
+  }
+
+  /**
+   * Tests that unindexing only touches the tags of the given entry.
+   */
+  public void testUnindexOnlyAffectsTheGivenBlogEntry() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry(1000000000000L, "java");
+    BlogEntry blogEntry2 = createBlogEntry(1000000001000L, "java junit");
+    index.index(blogEntry1);
+    index.index(blogEntry2);
+    assertEquals(2, index.getTags().size());
+
+    index.unindex(blogEntry2);
+    assertEquals(1, index.getTag("java").getNumberOfBlogEntries());
+    assertEquals(blogEntry1.getId(), index.getTag("java").getBlogEntries().get(0));
+    assertEquals(0, index.getTag("junit").getNumberOfBlogEntries());
+    assertEquals(1, index.getTags().size());
+
+    // unindexing again is harmless
+    index.unindex(blogEntry2);
+    assertEquals(1, index.getTag("java").getNumberOfBlogEntries());
+  }
+
+  /**
+   * Tests that the list of tags is an ordered, immutable snapshot.
+   */
+  public void testGetTagsReturnsAnImmutableSnapshot() throws Exception {
+    index.index(createBlogEntry(1000000000000L, "zebra apple"));
+    List<Tag> tags = index.getTags();
+    assertEquals("apple", tags.get(0).getName());
+    assertEquals("zebra", tags.get(1).getName());
+
+    try {
+      tags.clear();
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+
+    index.index(createBlogEntry(1000000001000L, "mango"));
+    assertEquals(2, tags.size());
+    assertEquals("mango", index.getTags().get(1).getName());
+  }
+
+  /**
+   * Tests that the counts are rebuilt when the index is read from disk.
+   */
+  public void testIndexIsReadFromDisk() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry(1000000000000L, "java");
+    BlogEntry blogEntry2 = createBlogEntry(1000000001000L, "java junit");
+    index.index(blogEntry1);
+    index.index(blogEntry2);
+
+    index = new TagIndex(blog);
+    assertEquals(2, index.getTags().size());
+    assertEquals(8, index.getTag("java").getRank());
+    assertEquals(3, index.getTag("junit").getRank());
+
+    index.unindex(blogEntry2);
+    assertEquals(0, index.getTag("junit").getNumberOfBlogEntries());
+    assertEquals(5, index.getTag("java").getRank());
+  }
+
 //  /**
 //   * Tests that category/tag statistics are updated.
 //   */
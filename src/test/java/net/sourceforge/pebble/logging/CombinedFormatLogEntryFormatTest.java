@@ -33,6 +33,9 @@ package net.sourceforge.pebble.logging;
 
 import net.sourceforge.pebble.domain.SingleBlogTestCase;
 
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
 /**
  * Tests for the CombinedFormatLogEntryFormat class.
  *
@@ -41,6 +44,7 @@ import net.sourceforge.pebble.domain.SingleBlogTestCase;
 public class CombinedFormatLogEntryFormatTest extends SingleBlogTestCase {
 
   private CombinedFormatLogEntryFormat format;
+  private SimpleDateFormat dateFormatter;
   private LogEntry logEntry;
   private LogEntry parsedLogEntry;
 
@@ -49,41 +53,43 @@ public class CombinedFormatLogEntryFormatTest extends SingleBlogTestCase {
 
     this.format = new CombinedFormatLogEntryFormat(blog);
     this.logEntry = new LogEntry();
+    this.dateFormatter = new SimpleDateFormat("[dd/MMM/yyyy:HH:mm:ss Z]", Locale.ENGLISH);
+    this.dateFormatter.setTimeZone(blog.getTimeZone());
   }
 
   public void testFormatWhenHostNotSpecified() {
     logEntry.setHost(null);
-    assertEquals("- - - " + format.dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - -", format.format(logEntry));
+    assertEquals("- - - " + dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - -", format.format(logEntry));
   }
 
   public void testFormatWhenHostSpecified() {
     logEntry.setHost("127.0.0.1");
-    assertEquals("127.0.0.1 - - " + format.dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - -", format.format(logEntry));
+    assertEquals("127.0.0.1 - - " + dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - -", format.format(logEntry));
   }
 
   public void testFormatWhenRequestSpecified() {
     logEntry.setRequest("GET /blog/index.jsp");
-    assertEquals("- - - " + format.dateFormatter.format(logEntry.getDate()) + " \"GET /blog/index.jsp\" 200 - - -", format.format(logEntry));
+    assertEquals("- - - " + dateFormatter.format(logEntry.getDate()) + " \"GET /blog/index.jsp\" 200 - - -", format.format(logEntry));
   }
 
   public void testFormatWhenRefererNotSpecified() {
     logEntry.setReferer(null);
-    assertEquals("- - - " + format.dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - -", format.format(logEntry));
+    assertEquals("- - - " + dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - -", format.format(logEntry));
   }
 
   public void testFormatWhenRefererSpecified() {
     logEntry.setReferer("http://www.google.com");
-    assertEquals("- - - " + format.dateFormatter.format(logEntry.getDate()) + " \"\" 200 - \"http://www.google.com\" -", format.format(logEntry));
+    assertEquals("- - - " + dateFormatter.format(logEntry.getDate()) + " \"\" 200 - \"http://www.google.com\" -", format.format(logEntry));
   }
 
   public void testFormatWhenAgentNotSpecified() {
     logEntry.setAgent(null);
-    assertEquals("- - - " + format.dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - -", format.format(logEntry));
+    assertEquals("- - - " + dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - -", format.format(logEntry));
   }
 
   public void testFormatWhenAgentSpecified() {
     logEntry.setAgent("Some user agent");
-    assertEquals("- - - " + format.dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - \"Some user agent\"", format.format(logEntry));
+    assertEquals("- - - " + dateFormatter.format(logEntry.getDate()) + " \"\" 200 - - \"Some user agent\"", format.format(logEntry));
   }
 
   public void testParseWhenHostNotSpecified() {
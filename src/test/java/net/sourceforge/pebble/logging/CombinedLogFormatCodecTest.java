@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Tests for the CombinedLogFormatCodec class.
+ */
+public class CombinedLogFormatCodecTest extends TestCase {
+
+  private CombinedLogFormatCodec codec;
+  private ByteBuffer buffer;
+  private List<LogEntry> decoded;
+  private CombinedLogFormatVisitor collector;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    codec = new CombinedLogFormatCodec(TimeZone.getTimeZone("America/New_York"));
+    buffer = ByteBuffer.allocate(1024);
+    decoded = new ArrayList<LogEntry>();
+    collector = new CombinedLogFormatVisitor() {
+      public void visit(CombinedLogFormatRecord record) {
+        decoded.add(record.toLogEntry());
+      }
+    };
+  }
+
+  private String encode(LogEntry entry) throws Exception {
+    buffer.clear();
+    assertTrue(codec.encode(entry, buffer));
+    return new String(buffer.array(), 0, buffer.position(), "UTF-8");
+  }
+
+  private void decode(String s, boolean endOfInput) throws Exception {
+    buffer.clear();
+    buffer.put(s.getBytes("UTF-8"));
+    buffer.flip();
+    codec.decode(buffer, collector, endOfInput);
+  }
+
+  public void testTimestampMatchesSimpleDateFormat() {
+    SimpleDateFormat sdf = new SimpleDateFormat("[dd/MMM/yyyy:HH:mm:ss Z]", Locale.ENGLISH);
+    sdf.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+
+    // walk across a daylight saving change, a year end and a leap day
+    long[] starts = { 1205042400000L, 1230767000000L, 1330473000000L };
+    for (long start : starts) {
+      for (long time = start; time < start + 3 * 60 * 60 * 1000; time += 37 * 1000) {
+        assertEquals(sdf.format(new Date(time)), new String(codec.timestamp(time)));
+      }
+    }
+  }
+
+  public void testEncodeAndDecode() throws Exception {
+    LogEntry entry = new LogEntry();
+    entry.setHost("127.0.0.1");
+    entry.setDate(new Date(971200536000L));
+    entry.setRequest("GET /blog/index.html");
+    entry.setStatusCode(404);
+    entry.setBytes(2326);
+    entry.setReferer("http://www.google.com/search?q=\u00e9t\u00e9");
+    entry.setAgent("Mozilla/4.08 [en] (Win98; I ;Nav)");
+
+    String line = encode(entry);
+    assertEquals("127.0.0.1 - - [10/Oct/2000:13:55:36 -0400] \"GET /blog/index.html\" 404 2326 " +
+        "\"http://www.google.com/search?q=\u00e9t\u00e9\" \"Mozilla/4.08 [en] (Win98; I ;Nav)\"\n", line);
+
+    buffer.flip();
+    codec.decode(buffer, collector, false);
+    assertEquals(1, decoded.size());
+    LogEntry parsed = decoded.get(0);
+    assertEquals("127.0.0.1", parsed.getHost());
+    assertEquals(971200536000L, parsed.getDate().getTime());
+    assertEquals("GET /blog/index.html", parsed.getRequest());
+    assertEquals(404, parsed.getStatusCode());
+    assertEquals(2326, parsed.getBytes());
+    assertEquals("http://www.google.com/search?q=\u00e9t\u00e9", parsed.getReferer());
+    assertEquals("Mozilla/4.08 [en] (Win98; I ;Nav)", parsed.getAgent());
+  }
+
+  public void testOptionalFieldsAreDecodedAsNull() throws Exception {
+    decode("- - - [10/Oct/2000:13:55:36 -0700] \"GET /\" 200 - - -\n", false);
+    assertEquals(1, decoded.size());
+    assertNull(decoded.get(0).getHost());
+    assertNull(decoded.get(0).getReferer());
+    assertNull(decoded.get(0).getAgent());
+    assertEquals(-1, decoded.get(0).getBytes());
+    assertEquals(971211336000L, decoded.get(0).getDate().getTime());
+  }
+
+  public void testEncodeReportsWhenBufferIsFull() {
+    LogEntry entry = new LogEntry();
+    entry.setAgent("Some user agent");
+    buffer = ByteBuffer.allocate(20);
+    buffer.put((byte)'x');
+    assertFalse(codec.encode(entry, buffer));
+    assertEquals(1, buffer.position());
+  }
+
+  public void testPartialLinesAreLeftInTheBuffer() throws Exception {
+    String line = "- - - [10/Oct/2000:13:55:36 -0700] \"GET /\" 200 - - -";
+    decode(line + "\n" + line, false);
+    assertEquals(1, decoded.size());
+    assertEquals(line.length() + 1, buffer.position());
+
+    codec.decode(buffer, collector, true);
+    assertEquals(2, decoded.size());
+    assertFalse(buffer.hasRemaining());
+  }
+
+  public void testSecondsAreReusedWithinTheSameMinute() throws Exception {
+    decode("- - - [10/Oct/2000:13:55:36 -0700] \"GET /\" 200 - - -\n" +
+        "- - - [10/Oct/2000:13:55:59 -0700] \"GET /\" 200 - - -\n" +
+        "- - - [10/Oct/2000:13:56:00 -0700] \"GET /\" 200 - - -\n", false);
+    assertEquals(971211336000L, decoded.get(0).getDate().getTime());
+    assertEquals(971211359000L, decoded.get(1).getDate().getTime());
+    assertEquals(971211360000L, decoded.get(2).getDate().getTime());
+  }
+
+  public void testMalformedLinesAreSkipped() throws Exception {
+    decode("garbage\n\n- - - [10/Oct/2000:13:55:36 -0700] \"GET /\" 200 - - -\r\n", false);
+    assertEquals(1, decoded.size());
+    assertEquals("GET /", decoded.get(0).getRequest());
+  }
+
+  public void testVisitorCanAggregateWithoutCreatingEntries() throws Exception {
+    buffer.clear();
+    buffer.put(("1.2.3.4 - - [10/Oct/2000:13:55:36 -0700] \"GET /blog/images/a.png\" 200 - - -\n" +
+        "1.2.3.4 - - [10/Oct/2000:13:55:37 -0700] \"GET /blog/index.html\" 404 - - -\n").getBytes("UTF-8"));
+    buffer.flip();
+    final int[] counts = new int[2];
+    codec.decode(buffer, new CombinedLogFormatVisitor() {
+      public void visit(CombinedLogFormatRecord record) {
+        if (record.requestUriStartsWith("/blog/images/")) {
+          counts[0]++;
+        }
+        if (record.getStatusCode() == 404) {
+          counts[1]++;
+        }
+      }
+    }, true);
+    assertEquals(1, counts[0]);
+    assertEquals(1, counts[1]);
+  }
+
+}
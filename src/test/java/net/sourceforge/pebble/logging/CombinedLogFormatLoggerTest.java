@@ -31,7 +31,9 @@
  */
 package net.sourceforge.pebble.logging;
 
+import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
 
 import java.util.Calendar;
 import java.util.Iterator;
@@ -67,4 +69,28 @@ public class CombinedLogFormatLoggerTest extends SingleBlogTestCase {
     }
   }
 
+  public void testLoggedRequestsAreReadBack() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setAttribute(Constants.EXTERNAL_URI, "/blog/index.html");
+    request.setHeader("User-Agent", "Some user agent");
+    logger.log(request, 200);
+    logger.log(request, 404);
+
+    Calendar cal = blog.getCalendar();
+    int year = cal.get(Calendar.YEAR);
+    int month = cal.get(Calendar.MONTH) + 1;
+    int day = cal.get(Calendar.DAY_OF_MONTH);
+
+    Log log = logger.getLog(year, month, day);
+    assertEquals(2, log.getTotalLogEntries());
+    Iterator<LogEntry> it = log.getLogEntries().iterator();
+    LogEntry entry = it.next();
+    assertEquals("/blog/index.html", entry.getRequestUri());
+    assertEquals(200, entry.getStatusCode());
+    assertEquals("Some user agent", entry.getAgent());
+    assertEquals(404, it.next().getStatusCode());
+
+    assertEquals(2, logger.getLogSummary(year, month, day).getTotalRequests());
+  }
+
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.mail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough of an SMTP server to test against, accepting each connection
+ * on its own thread and recording the messages it receives.
+ */
+public class FakeSmtpServer {
+
+  private final ServerSocket serverSocket;
+  private final List<Message> messages = Collections.synchronizedList(new ArrayList<Message>());
+  private final Set<String> rejectedRecipients = Collections.synchronizedSet(new HashSet<String>());
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicInteger temporaryFailures = new AtomicInteger();
+  private volatile boolean running = true;
+
+  public FakeSmtpServer() throws IOException {
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    Thread acceptor = new Thread(new Runnable() {
+      public void run() {
+        while (running) {
+          try {
+            final Socket socket = serverSocket.accept();
+            connections.incrementAndGet();
+            Thread handler = new Thread(new Runnable() {
+              public void run() {
+                handle(socket);
+              }
+            });
+            handler.setDaemon(true);
+            handler.start();
+          } catch (IOException ioe) {
+            // stopped
+          }
+        }
+      }
+    });
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public void stop() throws IOException {
+    running = false;
+    serverSocket.close();
+  }
+
+  public List<Message> getMessages() {
+    synchronized (messages) {
+      return new ArrayList<Message>(messages);
+    }
+  }
+
+  public int getConnections() {
+    return connections.get();
+  }
+
+  /**
+   * Rejects the given recipient with a permanent error.
+   */
+  public void reject(String recipient) {
+    rejectedRecipients.add(recipient);
+  }
+
+  /**
+   * Refuses the next few messages with a transient error.
+   */
+  public void failNext(int count) {
+    temporaryFailures.set(count);
+  }
+
+  private void handle(Socket socket) {
+    try {
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+      OutputStream out = socket.getOutputStream();
+      reply(out, "220 localhost ESMTP");
+
+      List<String> recipients = new ArrayList<String>();
+      String line = in.readLine();
+      while (line != null) {
+        String command = line.toUpperCase();
+        if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+          reply(out, "250 localhost");
+        } else if (command.startsWith("MAIL FROM")) {
+          if (temporaryFailures.get() > 0 && temporaryFailures.decrementAndGet() >= 0) {
+            reply(out, "451 Try again later");
+          } else {
+            recipients.clear();
+            reply(out, "250 OK");
+          }
+        } else if (command.startsWith("RCPT TO")) {
+          String recipient = line.substring(line.indexOf('<') + 1, line.lastIndexOf('>'));
+          if (rejectedRecipients.contains(recipient)) {
+            reply(out, "550 No such user");
+          } else {
+            recipients.add(recipient);
+            reply(out, "250 OK");
+          }
+        } else if (command.equals("DATA")) {
+          reply(out, "354 Go ahead");
+          StringBuilder data = new StringBuilder();
+          line = in.readLine();
+          while (line != null && !line.equals(".")) {
+            data.append(line).append("\n");
+            line = in.readLine();
+          }
+          messages.add(new Message(new ArrayList<String>(recipients), data.toString()));
+          recipients.clear();
+          reply(out, "250 OK");
+        } else if (command.equals("QUIT")) {
+          reply(out, "221 Bye");
+          break;
+        } else {
+          // RSET, NOOP and anything else
+          reply(out, "250 OK");
+        }
+        line = in.readLine();
+      }
+    } catch (IOException ioe) {
+      // the client went away
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException ioe) {
+        // ignore
+      }
+    }
+  }
+
+  private void reply(OutputStream out, String line) throws IOException {
+    out.write((line + "\r\n").getBytes("UTF-8"));
+    out.flush();
+  }
+
+  /**
+   * A message received by the server.
+   */
+  public static class Message {
+
+    private final List<String> recipients;
+    private final String data;
+
+    Message(List<String> recipients, String data) {
+      this.recipients = recipients;
+      this.data = data;
+    }
+
+    public List<String> getRecipients() {
+      return recipients;
+    }
+
+    public String getData() {
+      return data;
+    }
+
+  }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.mail;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import javax.mail.Session;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Tests for the MailQueue class, against a fake SMTP server.
+ */
+public class MailQueueTest extends SingleBlogTestCase {
+
+  private FakeSmtpServer server;
+  private File outboxDirectory;
+  private MailQueue queue;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    server = new FakeSmtpServer();
+    outboxDirectory = new File(TEST_BLOG_LOCATION, MailQueue.OUTBOX_DIRECTORY);
+  }
+
+  protected void tearDown() throws Exception {
+    if (queue != null) {
+      queue.stop();
+    }
+    server.stop();
+
+    super.tearDown();
+  }
+
+  public void testMessagesShareAConnection() throws Exception {
+    queue = createQueue(1, 0);
+    for (int i = 0; i < 10; i++) {
+      queue.send(message("Message " + i, "someone@example.com"));
+    }
+
+    waitForSent(10);
+    assertEquals(10, server.getMessages().size());
+    assertEquals(1, server.getConnections());
+    assertEquals(1, queue.getConnectionCount());
+    assertEquals(0, outboxDirectory.list().length);
+  }
+
+  public void testMessageWithSeveralRecipients() throws Exception {
+    queue = createQueue(1, 0);
+    MailMessage message = message("Hello", "a@example.com", "b@example.com");
+    message.setBcc(Arrays.asList("c@example.com"));
+    queue.send(message);
+
+    waitForSent(1);
+    List<FakeSmtpServer.Message> messages = server.getMessages();
+    assertEquals(1, messages.size());
+    assertEquals(Arrays.asList("a@example.com", "b@example.com", "c@example.com"), messages.get(0).getRecipients());
+  }
+
+  public void testPersonalizedMessage() throws Exception {
+    queue = createQueue(2, 0);
+    MailMessage message = new MailMessage("blog@example.com", "Blog",
+        Arrays.asList("a@example.com", "b@example.com", "c@example.com"), "Hello", "Opt-out: EMAIL_ADDRESS");
+    message.setPersonalizationToken("EMAIL_ADDRESS");
+    queue.send(message);
+
+    waitForSent(3);
+    Set<String> recipients = new HashSet<String>();
+    for (FakeSmtpServer.Message received : server.getMessages()) {
+      assertEquals(1, received.getRecipients().size());
+      String recipient = received.getRecipients().get(0);
+      assertTrue(received.getData().contains("Opt-out: " + recipient));
+      recipients.add(recipient);
+    }
+    assertEquals(3, recipients.size());
+  }
+
+  public void testTransientFailureIsRetried() throws Exception {
+    server.failNext(1);
+    queue = createQueue(1, 0);
+    queue.send(message("Hello", "a@example.com"));
+
+    waitForSent(1);
+    assertEquals(1, queue.getRetryCount());
+    assertEquals(1, server.getMessages().size());
+    assertEquals(0, outboxDirectory.list().length);
+  }
+
+  public void testRejectedRecipientIsDropped() throws Exception {
+    server.reject("bad@example.com");
+    queue = createQueue(1, 0);
+    MailMessage message = message("Hello", "good@example.com", "bad@example.com");
+    message.setPersonalizationToken("EMAIL_ADDRESS");
+    queue.send(message);
+
+    waitForSent(1);
+    assertEquals(1, server.getMessages().size());
+    assertEquals(Arrays.asList("good@example.com"), server.getMessages().get(0).getRecipients());
+    assertEquals(1, queue.getFailedCount());
+    assertEquals(0, queue.getRetryCount());
+  }
+
+  public void testOnlyValidRecipientsAreSentToAgain() throws Exception {
+    server.reject("bad@example.com");
+    queue = createQueue(1, 0);
+    MailMessage message = message("Hello", "good@example.com", "bad@example.com");
+    message.setBcc(Arrays.asList("other@example.com"));
+    queue.send(message);
+
+    waitForSent(1);
+    assertEquals(1, server.getMessages().size());
+    assertEquals(Arrays.asList("good@example.com", "other@example.com"), server.getMessages().get(0).getRecipients());
+    assertEquals(1, queue.getFailedCount());
+    assertEquals(0, queue.getRetryCount());
+  }
+
+  public void testUndeliverableMessageIsMovedAside() throws Exception {
+    server.failNext(MailQueue.MAXIMUM_ATTEMPTS);
+    queue = createQueue(1, 0);
+    queue.send(message("Hello", "a@example.com"));
+
+    for (int i = 0; i < 100 && queue.getFailedCount() == 0; i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(1, queue.getFailedCount());
+    assertEquals(1, new File(outboxDirectory, "failed").list().length);
+    assertTrue(server.getMessages().isEmpty());
+  }
+
+  public void testOutboxSurvivesRestart() throws Exception {
+    server.failNext(1);
+    queue = createQueue(1, 0);
+    queue.setRetryDelay(1000 * 60);
+    queue.send(message("Hello", "a@example.com"));
+
+    for (int i = 0; i < 100 && queue.getRetryCount() == 0; i++) {
+      Thread.sleep(50);
+    }
+    queue.stop();
+    assertEquals(1, outboxDirectory.list().length);
+
+    // the message isn't due for another minute, so bring that forward
+    Outbox outbox = new Outbox(outboxDirectory);
+    MailMessage message = outbox.load().get(0);
+    assertEquals(1, message.getAttempts());
+    message.setNextAttempt(0);
+    outbox.save(message);
+
+    queue = createQueue(1, 0);
+    queue.start();
+    waitForSent(1);
+    assertEquals(1, server.getMessages().size());
+  }
+
+  public void testRateLimit() throws Exception {
+    queue = createQueue(2, 20);
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 6; i++) {
+      queue.send(message("Message " + i, "someone@example.com"));
+    }
+
+    waitForSent(6);
+    // the first is sent straight away, then one every 50ms
+    assertTrue(System.currentTimeMillis() - start >= 240);
+  }
+
+  private MailQueue createQueue(int threads, double rate) {
+    MailQueue mailQueue = new MailQueue(outboxDirectory, threads, rate) {
+      Session createSession() {
+        Properties props = new Properties();
+        props.put("mail.smtp.host", "127.0.0.1");
+        props.put("mail.smtp.port", "" + server.getPort());
+        props.put("mail.smtp.connectiontimeout", "5000");
+        props.put("mail.smtp.timeout", "5000");
+        return Session.getInstance(props, null);
+      }
+    };
+    mailQueue.setRetryDelay(10);
+    return mailQueue;
+  }
+
+  private MailMessage message(String subject, String... to) {
+    List<String> recipients = new ArrayList<String>(Arrays.asList(to));
+    return new MailMessage("blog@example.com", "Blog", recipients, subject, "Body of " + subject);
+  }
+
+  private void waitForSent(int count) throws InterruptedException {
+    for (int i = 0; i < 200 && queue.getSentCount() < count; i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(count, queue.getSentCount());
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the Histogram class.
+ */
+public class HistogramTest extends TestCase {
+
+  public void testBucketsCoverEveryValueInOrder() {
+    long previousHighest = -1;
+    for (int bucket = 0; bucket < Histogram.NUMBER_OF_BUCKETS; bucket++) {
+      long highest = Histogram.highestValueIn(bucket);
+      assertEquals(bucket, Histogram.bucketFor(previousHighest + 1));
+      assertEquals(bucket, Histogram.bucketFor(highest));
+      assertTrue(highest > previousHighest);
+      previousHighest = highest;
+    }
+  }
+
+  public void testBucketsAreWithinSixPercent() {
+    for (long value = 16; value < 10000000; value = value * 3 / 2) {
+      long highest = Histogram.highestValueIn(Histogram.bucketFor(value));
+      assertTrue(highest >= value);
+      assertTrue((highest - value) <= value * 0.0625);
+    }
+  }
+
+  public void testLargeValuesGoInTheLastBucket() {
+    assertEquals(Histogram.NUMBER_OF_BUCKETS - 1, Histogram.bucketFor(Long.MAX_VALUE));
+  }
+
+  public void testEmptyHistogram() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0.0, histogram.getMean());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  public void testPercentiles() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.update(i);
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500.5, histogram.getMean());
+    assertEquals(1000, histogram.getMax());
+    assertEquals(1, histogram.getValueAtPercentile(0));
+    assertEquals(511, histogram.getValueAtPercentile(50));
+    assertEquals(959, histogram.getValueAtPercentile(95));
+    assertEquals(1000, histogram.getValueAtPercentile(100));
+  }
+
+  public void testNegativeValuesAreRecordedAsZero() {
+    Histogram histogram = new Histogram();
+    histogram.update(-5);
+    assertEquals(1, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+  }
+
+}
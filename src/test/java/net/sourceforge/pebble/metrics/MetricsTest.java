@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.metrics;
+
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+/**
+ * Tests for the Metrics class.
+ */
+public class MetricsTest extends TestCase {
+
+  private Metrics metrics;
+  private MBeanServer server;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    metrics = new Metrics();
+    server = MBeanServerFactory.newMBeanServer();
+  }
+
+  protected void tearDown() throws Exception {
+    metrics.clear();
+    super.tearDown();
+  }
+
+  public void testMetricsAreCreatedOnceAndTaggedPerBlog() {
+    Counter counter = metrics.counter("hits", "blog1");
+    assertSame(counter, metrics.counter("hits", "blog1"));
+    assertNotSame(counter, metrics.counter("hits", "blog2"));
+    assertSame(metrics.counter("hits", null), metrics.counter("hits", ""));
+
+    counter.increment();
+    counter.increment(2);
+    assertEquals(3, counter.getCount());
+    assertEquals(0, metrics.counter("hits", "blog2").getCount());
+  }
+
+  public void testGetMetricsForBlogIncludesSharedMetrics() {
+    metrics.counter("a", "blog1");
+    metrics.counter("b", "blog2");
+    metrics.timer("c", null);
+
+    assertEquals("[c, a{blog=\"blog1\"}]", metrics.getMetrics("blog1").keySet().toString());
+    assertEquals(3, metrics.getMetrics().size());
+  }
+
+  public void testTimerRecordsMilliseconds() {
+    Timer timer = metrics.timer("t", null);
+    timer.update(1500000);
+    timer.update(500000);
+    assertEquals(2, timer.getCount());
+    assertEquals(1.0, timer.getMean(), 0.001);
+    assertEquals(1.5, timer.getMax(), 0.001);
+  }
+
+  public void testMetricsAreRegisteredWithJmx() throws Exception {
+    metrics.counter("before", "blog1").increment();
+    metrics.registerMBeans(server);
+    metrics.timer("after", null).update(2000000);
+
+    assertEquals(1L, server.getAttribute(new ObjectName("net.sourceforge.pebble:type=Counter,blog=\"blog1\",name=\"before\""), "Count"));
+    assertEquals(2.0, server.getAttribute(new ObjectName("net.sourceforge.pebble:type=Timer,name=\"after\""), "Max"));
+
+    metrics.unregisterMBeans();
+    assertEquals(0, server.queryNames(new ObjectName("net.sourceforge.pebble:*"), null).size());
+  }
+
+  public void testGaugesAreReplaced() throws Exception {
+    metrics.registerMBeans(server);
+    metrics.gauge("depth", "blog1", new Gauge() {
+      public long getValue() {
+        return 1;
+      }
+    });
+    metrics.gauge("depth", "blog1", new Gauge() {
+      public long getValue() {
+        return 2;
+      }
+    });
+
+    assertEquals(2L, ((Gauge)metrics.getMetrics().get(new MetricName("depth", "blog1"))).getValue());
+    assertEquals(2L, server.getAttribute(new ObjectName("net.sourceforge.pebble:type=Gauge,blog=\"blog1\",name=\"depth\""), "Value"));
+  }
+
+}
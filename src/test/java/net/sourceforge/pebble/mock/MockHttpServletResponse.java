@@ -34,6 +34,7 @@ package net.sourceforge.pebble.mock;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -59,6 +60,7 @@ public class MockHttpServletResponse implements HttpServletResponse {
   private Properties headers = new Properties();
 
   private PrintWriter writer = new PrintWriter(new StringWriter());
+  private ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
   private String sendRedirect;
 
   public void addCookie(Cookie cookie) {
@@ -144,7 +146,15 @@ public class MockHttpServletResponse implements HttpServletResponse {
   }
 
   public ServletOutputStream getOutputStream() throws IOException {
-    return null;
+    return new ServletOutputStream() {
+      public void write(int b) throws IOException {
+        outputStream.write(b);
+      }
+    };
+  }
+
+  public byte[] getOutputStreamContent() {
+    return outputStream.toByteArray();
   }
 
   public PrintWriter getWriter() throws IOException {
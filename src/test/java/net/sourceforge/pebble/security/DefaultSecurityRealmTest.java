@@ -42,6 +42,9 @@ import org.springframework.security.authentication.encoding.PlaintextPasswordEnc
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.GrantedAuthorityImpl;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.util.*;
 
 /**
@@ -129,4 +132,88 @@ public class DefaultSecurityRealmTest extends SingleBlogTestCase {
     assertNull(user);
   }
 
+  public void testUsersAreCachedBetweenChecks() throws Exception {
+    PebbleUserDetails pud = new PebbleUserDetails("testuser", "password", "name", "emailAddress", "website", "profile", new String[]{Constants.BLOG_OWNER_ROLE}, new HashMap<String,String>(), true);
+    realm.createUser(pud);
+
+    // changes made to the returned details mustn't leak into the realm
+    PebbleUserDetails user = realm.getUser("testuser");
+    user.setName("changed");
+    assertEquals("name", realm.getUser("testuser").getName());
+    assertNotSame(user, realm.getUser("testuser"));
+
+    realm.removeUser("testuser");
+  }
+
+  public void testChangesMadeOutsideOfPebbleAreDetected() throws Exception {
+    realm.setChangeDetectionInterval(0);
+    PebbleUserDetails pud = new PebbleUserDetails("testuser", "password", "name", "emailAddress", "website", "profile", new String[]{Constants.BLOG_OWNER_ROLE}, new HashMap<String,String>(), true);
+    realm.createUser(pud);
+    assertEquals(2, realm.getUsers().size());
+
+    // edit the file by hand
+    File file = realm.getFileForUser("testuser");
+    Properties props = new Properties();
+    FileInputStream in = new FileInputStream(file);
+    props.load(in);
+    in.close();
+    props.setProperty(DefaultSecurityRealm.NAME, "a much longer name");
+    FileOutputStream out = new FileOutputStream(file);
+    props.store(out, null);
+    out.close();
+    assertEquals("a much longer name", realm.getUser("testuser").getName());
+
+    // and remove it by hand
+    file.delete();
+    assertNull(realm.getUser("testuser"));
+    assertEquals(1, realm.getUsers().size());
+  }
+
+  public void testReadersDontWaitForChangeDetection() throws Exception {
+    realm.getUsers();
+    realm.setChangeDetectionInterval(0);
+
+    final List<Thread> finished = Collections.synchronizedList(new ArrayList<Thread>());
+    Runnable reader = new Runnable() {
+      public void run() {
+        try {
+          realm.getUsers();
+          finished.add(Thread.currentThread());
+        } catch (SecurityRealmException e) {
+          // ignore, the thread won't be marked as finished
+        }
+      }
+    };
+
+    Thread t1 = new Thread(reader);
+    Thread t2 = new Thread(reader);
+    synchronized (realm) {
+      // whichever thread is checking for changes is now stuck, but the other isn't
+      t1.start();
+      t2.start();
+      long deadline = System.currentTimeMillis() + 5000;
+      while (finished.isEmpty() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, finished.size());
+    }
+
+    t1.join();
+    t2.join();
+    assertEquals(2, finished.size());
+  }
+
+  public void testGetUserForOpenId() throws Exception {
+    PebbleUserDetails pud = new PebbleUserDetails("testuser", "password", "name", "emailAddress", "website", "profile", new String[]{Constants.BLOG_OWNER_ROLE}, new HashMap<String,String>(), true);
+    realm.createUser(pud);
+
+    realm.addOpenIdToUser(realm.getUser("testuser"), "http://openid.example.com/testuser");
+    assertEquals("testuser", realm.getUserForOpenId("http://openid.example.com/testuser").getUsername());
+
+    realm.removeOpenIdFromUser(realm.getUser("testuser"), "http://openid.example.com/testuser");
+    assertNull(realm.getUserForOpenId("http://openid.example.com/testuser"));
+
+    realm.removeUser("testuser");
+  }
+
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import junit.framework.TestCase;
+import net.sourceforge.pebble.metrics.Gauge;
+import net.sourceforge.pebble.metrics.MetricName;
+import net.sourceforge.pebble.metrics.Metrics;
+
+import java.util.Map;
+
+/**
+ * Tests for the ExpiringTokenStore class.
+ */
+public class ExpiringTokenStoreTest extends TestCase {
+
+  private long now = 1000000;
+  private ExpiringTokenStore store;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    store = new TestTokenStore(1000, 5, 10);
+  }
+
+  public void testTokenIsValidUntilItExpires() {
+    store.add("a");
+    assertTrue(store.contains("a"));
+
+    now += 1000;
+    assertTrue(store.contains("a"));
+
+    now += 1;
+    assertFalse(store.contains("a"));
+
+    // expired tokens are cleared out a tick later
+    now += 100;
+    assertEquals(0, store.size());
+    assertEquals(1, store.getExpiredCount());
+  }
+
+  public void testUnknownTokensAreRejected() {
+    assertFalse(store.contains(null));
+    assertFalse(store.contains("unknown"));
+    assertEquals(2, store.getRejectedCount());
+  }
+
+  public void testRemove() {
+    store.add("a");
+    store.remove("a");
+
+    assertFalse(store.contains("a"));
+    assertEquals(0, store.size());
+    assertEquals(1, store.getRemovedCount());
+
+    // removed tokens are skipped when their slot is drained
+    now += 2000;
+    assertEquals(0, store.getExpiredCount());
+  }
+
+  public void testReaddedTokenLivesOn() {
+    store.add("a");
+    now += 600;
+    store.add("a");
+    now += 600;
+
+    assertTrue(store.contains("a"));
+    assertEquals(1, store.size());
+  }
+
+  public void testTokensExpireInOrder() {
+    store.add("a");
+    now += 500;
+    store.add("b");
+    now += 600;
+
+    assertFalse(store.contains("a"));
+    assertTrue(store.contains("b"));
+  }
+
+  public void testSizeIsCapped() {
+    for (int i = 0; i < 5; i++) {
+      store.add("t" + i);
+      now += 100;
+    }
+    store.add("t5");
+
+    assertEquals(5, store.size());
+    assertEquals(1, store.getEvictedCount());
+    assertFalse(store.contains("t0"));
+    assertTrue(store.contains("t1"));
+    assertTrue(store.contains("t5"));
+  }
+
+  public void testLongIdlePeriod() {
+    for (int i = 0; i < 5; i++) {
+      store.add("t" + i);
+    }
+
+    now += 1000000;
+    assertEquals(0, store.size());
+    assertEquals(5, store.getExpiredCount());
+  }
+
+  public void testCounters() {
+    store.add("a");
+    store.contains("a");
+    store.contains("b");
+
+    assertEquals(1, store.getAddedCount());
+    assertEquals(1, store.getAcceptedCount());
+    assertEquals(1, store.getRejectedCount());
+  }
+
+  public void testMetricsAreRegistered() {
+    store.registerMetrics("test.tokens");
+    store.add("a");
+    store.contains("a");
+    store.contains("b");
+
+    Map<MetricName,Object> metrics = Metrics.getInstance().getMetrics();
+    assertEquals(1, ((Gauge)metrics.get(new MetricName("test.tokens", null))).getValue());
+    assertEquals(1, ((Gauge)metrics.get(new MetricName("test.tokens.added", null))).getValue());
+    assertEquals(1, ((Gauge)metrics.get(new MetricName("test.tokens.accepted", null))).getValue());
+    assertEquals(1, ((Gauge)metrics.get(new MetricName("test.tokens.rejected", null))).getValue());
+    assertEquals(0, ((Gauge)metrics.get(new MetricName("test.tokens.evicted", null))).getValue());
+  }
+
+  private class TestTokenStore extends ExpiringTokenStore {
+
+    TestTokenStore(long timeToLive, int maximumSize, int ticks) {
+      super(timeToLive, maximumSize, ticks);
+    }
+
+    long currentTimeMillis() {
+      return now;
+    }
+
+  }
+
+}
@@ -33,6 +33,8 @@ package net.sourceforge.pebble.util;
 
 import junit.framework.TestCase;
 
+import java.io.File;
+
 /**
  * Tests for the utilities in the FileUtils class.
  *
@@ -51,4 +53,20 @@ public class FileUtilsTest extends TestCase {
     assertNull(FileUtils.getContentType("somefile"));
   }
 
+  public void testWriteAtomicallyReplacesExistingFile() throws Exception {
+    File directory = new File(System.getProperty("java.io.tmpdir"), "pebble-fileutils-" + System.currentTimeMillis());
+    directory.mkdirs();
+    try {
+      File file = new File(directory, "test.properties");
+      FileUtils.writeAtomically(file, "one".getBytes("UTF-8"));
+      FileUtils.writeAtomically(file, "two".getBytes("UTF-8"));
+
+      assertEquals("two", org.apache.commons.io.FileUtils.readFileToString(file, "UTF-8"));
+      // no temporary or backup files are left behind
+      assertEquals(1, directory.list().length);
+    } finally {
+      FileUtils.deleteFile(directory);
+    }
+  }
+
 }
@@ -82,6 +82,7 @@ public class StringUtilsTest extends TestCase {
     assertEquals("see contracts as &quot;fly-by-night&quot; sorts", StringUtils.transformToHTMLSubset("see contracts as &amp;quot;fly-by-night&amp;quot; sorts"));
     assertEquals("Here is a <sup> tag", StringUtils.transformToHTMLSubset("Here is a &lt;sup&gt; tag"));
     assertEquals("Here is a <sub> tag", StringUtils.transformToHTMLSubset("Here is a &lt;sub&gt; tag"));
+    assertEquals("<b>, <br /> and <a href=\"http://www.google.com\">link</a>", StringUtils.transformToHTMLSubset("&lt;B&gt;, &lt;BR/&gt; and &lt;a href=&quot;http://www.google.com&quot;&gt;link&lt;/A&gt;"));
     // validating URL schemes
     assertEquals("Here is a <a href=\"https://www.google.com\">link</a> to Google", StringUtils.transformToHTMLSubset("Here is a &lt;a href=&quot;https://www.google.com&quot;&gt;link&lt;/a&gt; to Google"));
     assertEquals("Here is a <a href=\"ftp://www.google.com\">link</a> to Google", StringUtils.transformToHTMLSubset("Here is a &lt;a href=&quot;ftp://www.google.com&quot;&gt;link&lt;/a&gt; to Google"));
@@ -127,6 +128,8 @@ public class StringUtilsTest extends TestCase {
     assertEquals("some text", StringUtils.stripScriptTags("some <script >alert(1)</script >text"));
     assertEquals("some text", StringUtils.stripScriptTags("some <script language=\"JavaScript\">alert(1)</script >text"));
     assertEquals("some text", StringUtils.stripScriptTags("some <script src=\"something.js\"/>text"));
+    assertEquals("some text", StringUtils.stripScriptTags("some <SCRIPT>\nalert(1);\n</SCRIPT>text"));
+    assertEquals("1 < 2", StringUtils.stripScriptTags("1 < 2"));
   }
 
 
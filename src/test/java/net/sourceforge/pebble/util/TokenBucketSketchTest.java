@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the TokenBucketSketch class.
+ */
+public class TokenBucketSketchTest extends TestCase {
+
+  private TokenBucketSketch sketch = new TokenBucketSketch(4, 1024);
+
+  public void testBurstIsAllowedThenLimited() {
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, sketch.acquire(1, 100, 5, 1000));
+    }
+
+    // the bucket is empty, and the next token is due after one interval
+    assertEquals(100, sketch.acquire(1, 100, 5, 1000));
+    assertEquals(40, sketch.acquire(1, 100, 5, 1060));
+    assertEquals(0, sketch.acquire(1, 100, 5, 1100));
+    assertTrue(sketch.acquire(1, 100, 5, 1100) > 0);
+  }
+
+  public void testBucketRefillsOverTime() {
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, sketch.acquire(1, 100, 3, 0));
+    }
+    assertTrue(sketch.acquire(1, 100, 3, 0) > 0);
+
+    // long after, the bucket is full again but no fuller
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, sketch.acquire(1, 100, 3, 100000));
+    }
+    assertTrue(sketch.acquire(1, 100, 3, 100000) > 0);
+  }
+
+  public void testKeysAreLimitedIndependently() {
+    assertEquals(0, sketch.acquire(1, 100, 1, 0));
+    assertTrue(sketch.acquire(1, 100, 1, 0) > 0);
+
+    for (long key = 2; key < 50; key++) {
+      assertEquals(0, sketch.acquire(key, 100, 1, 0));
+    }
+  }
+
+  public void testActiveCells() {
+    assertEquals(0, sketch.getActiveCells(0));
+    sketch.acquire(1, 100, 1, 0);
+    sketch.acquire(2, 100, 1, 0);
+    assertEquals(2, sketch.getActiveCells(0));
+    assertEquals(0, sketch.getActiveCells(100));
+  }
+
+}
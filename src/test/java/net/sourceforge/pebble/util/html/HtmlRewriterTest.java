@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.html;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the HtmlTokenizer and HtmlRewriter classes.
+ */
+public class HtmlRewriterTest extends TestCase {
+
+  private List<String> tokenize(String html) {
+    List<String> tokens = new ArrayList<String>();
+    HtmlTokenizer tokenizer = new HtmlTokenizer(html.toCharArray());
+    HtmlToken token = tokenizer.getToken();
+    while (tokenizer.next()) {
+      tokens.add(token.getType() + ":" + token.getText());
+    }
+
+    return tokens;
+  }
+
+  public void testTokenize() {
+    assertEquals(Arrays.asList("1:<p class=\"x\">", "0:Some ", "1:<b>", "0:text", "2:</b>", "3:<!-- comment -->", "1:<br/>", "2:</p>"),
+        tokenize("<p class=\"x\">Some <b>text</b><!-- comment --><br/></p>"));
+  }
+
+  public void testStrayAngleBracketsAreText() {
+    assertEquals(Arrays.asList("0:a < b and c ", "0:<d e"), tokenize("a < b and c <d e"));
+    assertEquals(Arrays.asList("0:1 < 2"), tokenize("1 < 2"));
+    assertEquals(Arrays.asList("0:<a href=\"unclosed"), tokenize("<a href=\"unclosed"));
+  }
+
+  public void testScriptContentIsText() {
+    assertEquals(Arrays.asList("1:<script>", "0:if (a <b) {}", "2:</script>"),
+        tokenize("<script>if (a <b) {}</script>"));
+  }
+
+  public void testAttributes() {
+    HtmlTokenizer tokenizer = new HtmlTokenizer("<A HREF='x.html' title=\"A 'title'\" checked target=_blank>".toCharArray());
+    assertTrue(tokenizer.next());
+    HtmlToken token = tokenizer.getToken();
+    assertTrue(token.isStartTag());
+    assertTrue(token.isTag("a"));
+    assertEquals("x.html", token.getAttribute("href"));
+    assertEquals("A 'title'", token.getAttribute("title"));
+    assertEquals("", token.getAttribute("checked"));
+    assertEquals("_blank", token.getAttribute("target"));
+    assertNull(token.getAttribute("rel"));
+    assertTrue(token.attributeStartsWith("href", "x."));
+    assertFalse(tokenizer.next());
+  }
+
+  public void testUnchangedHtmlIsReturnedAsIs() {
+    String html = "<p>Some <a href=\"x\">text</a></p>";
+    assertSame(html, HtmlRewriter.rewrite(html, new HtmlVisitor() {
+      public void visit(HtmlToken token) {
+      }
+    }));
+  }
+
+  public void testSetAttribute() {
+    HtmlVisitor visitor = new HtmlVisitor() {
+      public void visit(HtmlToken token) {
+        if (token.isStartTag() && token.isTag("a")) {
+          token.setAttribute("href", "y");
+          token.setAttribute("rel", "nofollow");
+        }
+      }
+    };
+
+    assertEquals("<p><a href=\"y\" rel=\"nofollow\">x</a></p>", HtmlRewriter.rewrite("<p><a href=\"x\">x</a></p>", visitor));
+    assertEquals("<a href='y' rel=\"nofollow\">", HtmlRewriter.rewrite("<a href='x'>", visitor));
+    assertEquals("<a href=\"y\" rel=\"nofollow\">", HtmlRewriter.rewrite("<a href=x>", visitor));
+    assertEquals("<a href=\"y\" rel=\"nofollow\"/>", HtmlRewriter.rewrite("<a/>", visitor));
+  }
+
+  public void testVisitorsAreAppliedInOrder() {
+    HtmlVisitor first = new HtmlVisitor() {
+      public void visit(HtmlToken token) {
+        if (token.isStartTag()) {
+          token.setAttribute("class", "first");
+        }
+      }
+    };
+    HtmlVisitor second = new HtmlVisitor() {
+      public void visit(HtmlToken token) {
+        if (token.isStartTag()) {
+          token.setAttribute("class", token.getAttribute("class") + " second");
+        } else if (token.isText()) {
+          token.replaceWith(token.getText().toUpperCase());
+        }
+      }
+    };
+
+    assertEquals("<p class=\"first second\">TEXT</p>", HtmlRewriter.rewrite("<p>text</p>", Arrays.asList(first, second)));
+  }
+
+  public void testRemove() {
+    HtmlVisitor visitor = new HtmlVisitor() {
+      public void visit(HtmlToken token) {
+        if (token.isTag("b")) {
+          token.remove();
+        }
+      }
+    };
+
+    assertEquals("Some text.", HtmlRewriter.rewrite("Some <b>text</b>.", visitor));
+  }
+
+  public void testNullAndEmpty() {
+    HtmlVisitor visitor = new HtmlVisitor() {
+      public void visit(HtmlToken token) {
+        token.remove();
+      }
+    };
+
+    assertNull(HtmlRewriter.rewrite(null, visitor));
+    assertEquals("", HtmlRewriter.rewrite("", visitor));
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.importer;
+
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.file.FileDAOFactory;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogServiceException;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.index.IndexedTag;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the BulkImporter class.
+ */
+public class BulkImporterTest extends SingleBlogTestCase {
+
+  private BulkImporter importer;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    DAOFactory.setConfiguredFactory(new FileDAOFactory());
+    importer = new BulkImporter(blog);
+    importer.setThreads(4);
+    importer.setCheckpointInterval(5);
+  }
+
+  public void testImportBlogEntries() throws Exception {
+    final AtomicInteger stored = new AtomicInteger();
+    final AtomicInteger reindexed = new AtomicInteger(-1);
+    importer.setProgressListener(new ImportProgressListener() {
+      public void blogEntryStored(BlogEntry blogEntry, int count) {
+        stored.incrementAndGet();
+      }
+
+      public void reindexing(int count, int skipped) {
+        reindexed.set(count);
+      }
+    });
+
+    assertEquals(50, importer.importBlogEntries(new TestSource(50, -1)));
+    assertEquals(50, stored.get());
+    assertEquals(50, reindexed.get());
+    assertEquals(50, blog.getNumberOfBlogEntries());
+    assertEquals(50, ((IndexedTag)blog.getTagIndex().getTags().get(0)).getNumberOfBlogEntries());
+    assertFalse(importer.getCheckpointFile().exists());
+
+    BlogEntry blogEntry = blog.getBlogEntries().get(0);
+    assertTrue(blogEntry.isPersistent());
+    assertFalse(blogEntry.hasEvents());
+  }
+
+  public void testEntriesWithTheSameDateGetDifferentIds() throws Exception {
+    importer.importBlogEntries(new TestSource(10, -1) {
+      Date getDate(int i) {
+        return new Date(1000000000000L);
+      }
+    });
+
+    assertEquals(10, blog.getNumberOfBlogEntries());
+    assertTrue(blog.getBlogEntryIndex().getBlogEntries().contains("1000000000000"));
+    assertTrue(blog.getBlogEntryIndex().getBlogEntries().contains("1000000000009"));
+  }
+
+  public void testResumeAfterFailure() throws Exception {
+    try {
+      importer.importBlogEntries(new TestSource(40, 23));
+      fail();
+    } catch (BlogServiceException e) {
+      // expected
+    }
+
+    assertTrue(importer.getCheckpointFile().exists());
+    Properties checkpoint = new Properties();
+    FileInputStream in = new FileInputStream(importer.getCheckpointFile());
+    try {
+      checkpoint.load(in);
+    } finally {
+      in.close();
+    }
+    int resumeFrom = Integer.parseInt(checkpoint.getProperty("entries"));
+    assertTrue(resumeFrom > 0 && resumeFrom <= 23);
+
+    final AtomicInteger skipped = new AtomicInteger();
+    importer.setProgressListener(new ImportProgressListener() {
+      public void blogEntryStored(BlogEntry blogEntry, int count) {
+      }
+
+      public void reindexing(int count, int skippedCount) {
+        skipped.set(skippedCount);
+      }
+    });
+    assertEquals(40 - resumeFrom, importer.importBlogEntries(new TestSource(40, -1)));
+    assertEquals(resumeFrom, skipped.get());
+    assertEquals(40, blog.getNumberOfBlogEntries());
+    assertFalse(importer.getCheckpointFile().exists());
+  }
+
+  public void testCheckpointFromAnotherSourceIsIgnored() throws Exception {
+    try {
+      importer.importBlogEntries(new TestSource(20, 12));
+      fail();
+    } catch (BlogServiceException e) {
+      // expected
+    }
+
+    TestSource other = new TestSource(5, -1) {
+      public String getName() {
+        return "other";
+      }
+    };
+    assertEquals(5, importer.importBlogEntries(other));
+  }
+
+  /**
+   * Creates a number of entries, failing when it reaches a given one.
+   */
+  private class TestSource implements BlogEntrySource {
+
+    private final int size;
+    private final int failAt;
+    private int next;
+
+    TestSource(int size, int failAt) {
+      this.size = size;
+      this.failAt = failAt;
+    }
+
+    Date getDate(int i) {
+      return new Date(1100000000000L + (i * 60000L));
+    }
+
+    public String getName() {
+      return "test";
+    }
+
+    public BlogEntry nextBlogEntry() throws Exception {
+      if (next == failAt) {
+        throw new IOException("Broken export at entry " + next);
+      } else if (next == size) {
+        return null;
+      }
+
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setTitle("Entry " + next);
+      blogEntry.setBody("Body of entry " + next);
+      blogEntry.setTags("bulk");
+      blogEntry.setDate(getDate(next));
+      blogEntry.setPublished(true);
+      next++;
+
+      return blogEntry;
+    }
+
+    public void close() {
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.importer;
+
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.file.FileDAOFactory;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.domain.State;
+import net.sourceforge.pebble.domain.TrackBack;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Tests for the WordPressImporter class.
+ */
+public class WordPressImporterTest extends SingleBlogTestCase {
+
+  private File source;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    DAOFactory.setConfiguredFactory(new FileDAOFactory());
+    blog.setProperty(Blog.TIMEZONE_KEY, "Europe/London");
+    source = new File(TEST_RESOURCE_LOCATION, "wp_testcases/export.xml");
+  }
+
+  public void testImport() throws Exception {
+    BulkImporter importer = new BulkImporter(blog);
+    assertEquals(2, importer.importBlogEntries(new WordPressImporter(blog, source)));
+
+    // the page and the post in the trash are skipped
+    List<BlogEntry> blogEntries = blog.getBlogEntries();
+    assertEquals(2, blogEntries.size());
+
+    BlogEntry draft = blogEntries.get(0);
+    assertEquals("Draft", draft.getTitle());
+    assertFalse(draft.isPublished());
+    assertEquals("1170331200000", draft.getId());
+    assertEquals("<p>Not finished</p>", draft.getBody());
+    assertFalse(draft.isCommentsEnabled());
+    assertTrue(draft.isTrackBacksEnabled());
+
+    BlogEntry post = blogEntries.get(1);
+    assertEquals("First post", post.getTitle());
+    assertEquals("1167645600000", post.getId());
+    assertTrue(post.isPublished());
+    assertEquals("simon", post.getAuthor());
+    assertEquals("<p>First paragraph,<br />\nsecond line.</p>\n<p>Second paragraph.</p>", post.getBody());
+    assertEquals("An excerpt", post.getExcerpt());
+    assertTrue(post.isCommentsEnabled());
+    assertFalse(post.isTrackBacksEnabled());
+    assertEquals("open-source pebble", post.getTags());
+
+    // both posts share the one category
+    assertEquals(1, post.getCategories().size());
+    assertEquals("/java", post.getCategories().iterator().next().getId());
+    assertEquals("Java", blog.getCategory("/java").getName());
+    assertSame(blog.getCategory("/java"), draft.getCategories().iterator().next());
+
+    // the trashed comment is skipped
+    List<Comment> comments = post.getComments();
+    assertEquals(2, comments.size());
+    Comment alice = comments.get(0);
+    assertEquals("Alice", alice.getAuthor());
+    assertEquals("alice@example.com", alice.getEmail());
+    assertEquals("http://alice.example.com", alice.getWebsite());
+    assertEquals(State.APPROVED, alice.getState());
+    Comment bob = comments.get(1);
+    assertEquals("Bob", bob.getAuthor());
+    assertEquals(State.PENDING, bob.getState());
+    assertSame(alice, bob.getParent());
+
+    List<TrackBack> trackBacks = post.getTrackBacks();
+    assertEquals(1, trackBacks.size());
+    assertEquals("Another blog", trackBacks.get(0).getBlogName());
+    assertEquals("http://another.example.com/post", trackBacks.get(0).getUrl());
+    assertEquals("Linked to this", trackBacks.get(0).getExcerpt());
+  }
+
+  public void testParagraphsAreAdded() {
+    assertEquals("One line", WordPressImporter.autop("One line"));
+    assertEquals("<p>One</p>\n<p>Two</p>", WordPressImporter.autop("One\r\n\r\nTwo\n"));
+    assertEquals("<p>Own</p>\n\n<p>paragraphs</p>", WordPressImporter.autop("<p>Own</p>\n\n<p>paragraphs</p>"));
+    assertEquals("", WordPressImporter.autop(null));
+  }
+
+}
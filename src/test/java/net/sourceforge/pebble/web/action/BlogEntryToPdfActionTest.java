@@ -38,6 +38,7 @@ import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.PdfView;
 import net.sourceforge.pebble.web.view.BinaryView;
 import net.sourceforge.pebble.web.view.NotFoundView;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 
 
 /**
@@ -105,4 +106,15 @@ public class BlogEntryToPdfActionTest extends SingleBlogActionTestCase {
 	assertEquals("application/pdf", pdfView.getContentType());
 
   }
+
+  public void testCachedPdfIsNotModified() throws Exception {
+	request.setParameter("entry", publishedEntry.getId());
+    action.process(request, response);
+    String etag = response.getHeader("ETag");
+    assertNotNull(etag);
+
+    request.setHeader("If-None-Match", etag);
+    View view = action.process(request, response);
+    assertTrue(view instanceof NotModifiedView);
+  }
 }
\ No newline at end of file
@@ -35,6 +35,11 @@ import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.BlogService;
 import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.State;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 /**
  * Tests for the ManageResponsesAction class.
@@ -58,4 +63,42 @@ public class ManageResponsesActionTest extends SecureActionTestCase {
     assertEquals(Constants.BLOG_CONTRIBUTOR_ROLE, roles[0]);
   }
 
+  /**
+   * Tests that responses spread across blog entries can be moderated together.
+   */
+  public void testBulkApproveAndRemove() throws Exception {
+    BlogService service = new BlogService();
+    List<String> guids = new ArrayList<String>();
+    for (int i = 0; i < 2; i++) {
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setDate(new Date(1200000000000L + (i * 60000L)));
+      service.putBlogEntry(blogEntry);
+      for (int j = 0; j < 3; j++) {
+        Comment comment = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1", new Date(1200000100000L + (i * 1000L) + j), State.PENDING);
+        blogEntry.addComment(comment);
+        guids.add(comment.getGuid());
+      }
+      service.putBlogEntry(blogEntry);
+      for (Comment comment : blogEntry.getComments()) {
+        comment.setPending();
+      }
+      service.putBlogEntry(blogEntry);
+    }
+    assertEquals(6, blog.getNumberOfPendingResponses());
+
+    request.setParameter("response", guids.subList(0, 4).toArray(new String[4]));
+    request.setParameter("submit", "Approve");
+    action.process(request, response);
+    assertEquals(2, blog.getNumberOfPendingResponses());
+    assertEquals(4, blog.getNumberOfApprovedResponses());
+    assertTrue(service.getResponse(blog, guids.get(3)).isApproved());
+    assertTrue(service.getResponse(blog, guids.get(4)).isPending());
+
+    request.setParameter("response", guids.subList(4, 6).toArray(new String[2]));
+    request.setParameter("submit", "Remove");
+    action.process(request, response);
+    assertEquals(0, blog.getNumberOfPendingResponses());
+    assertNull(service.getResponse(blog, guids.get(5)));
+  }
+
 }
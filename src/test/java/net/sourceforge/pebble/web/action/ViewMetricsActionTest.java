@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.action;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.BlogManager;
+import net.sourceforge.pebble.metrics.Metrics;
+import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.MetricsView;
+
+/**
+ * Tests for the ViewMetricsAction class.
+ */
+public class ViewMetricsActionTest extends SecureActionTestCase {
+
+  protected void setUp() throws Exception {
+    action = new ViewMetricsAction();
+
+    super.setUp();
+    Metrics.getInstance().clear();
+  }
+
+  protected void tearDown() throws Exception {
+    Metrics.getInstance().clear();
+
+    super.tearDown();
+  }
+
+  public void testProcessShowsMetricsForThisBlogOnly() throws Exception {
+    Metrics.getInstance().counter("contentCache.hits", blog.getId()).increment(3);
+    Metrics.getInstance().counter("contentCache.hits", "someOtherBlog").increment();
+    Metrics.getInstance().timer("search.query", blog.getId()).update(2500000);
+    Metrics.getInstance().counter("shared", null).increment();
+
+    View view = action.process(request, response);
+    assertTrue(view instanceof MetricsView);
+
+    view.setModel(model);
+    view.prepare();
+    String text = (String)model.get("text");
+    assertEquals(
+        "shared 1\n" +
+        "contentCache.hits{blog=\"default\"} 3\n" +
+        "search.query{blog=\"default\"} count=1 mean=2.500ms p50=2.500ms p95=2.500ms p99=2.500ms p999=2.500ms max=2.500ms\n",
+        text);
+  }
+
+  public void testOnlyBlogOwnersHaveAccess() {
+    request.setAttribute(Constants.BLOG_KEY, blog);
+    String roles[] = action.getRoles(request);
+    assertEquals(2, roles.length);
+    assertEquals(Constants.BLOG_ADMIN_ROLE, roles[0]);
+    assertEquals(Constants.BLOG_OWNER_ROLE, roles[1]);
+  }
+
+  public void testOnlyBlogAdminsHaveAccessToAllBlogs() {
+    request.setAttribute(Constants.BLOG_KEY, BlogManager.getInstance().getMultiBlog());
+    String roles[] = action.getRoles(request);
+    assertEquals(1, roles.length);
+    assertEquals(Constants.BLOG_ADMIN_ROLE, roles[0]);
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the UriRouter class.
+ */
+public class UriRouterTest extends TestCase {
+
+  private UriRouter router;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    router = new UriRouter();
+    router.add("/a", "exact-a");
+    router.add("/a", new UriRouter.Route() {
+      public String getUri(String uri) {
+        return "a:" + uri;
+      }
+    });
+    router.add("/a/b", new UriRouter.Route() {
+      public String getUri(String uri) {
+        return uri.endsWith(".html") ? "b:" + uri : null;
+      }
+    });
+  }
+
+  public void testExactRouteTakesPrecedence() {
+    assertEquals("exact-a", router.getUri("/a"));
+  }
+
+  public void testDeepestRouteTriedFirst() {
+    assertEquals("b:/a/b/c.html", router.getUri("/a/b/c.html"));
+    assertEquals("a:/a/b/c.xml", router.getUri("/a/b/c.xml"));
+    assertEquals("a:/a/c", router.getUri("/a/c"));
+  }
+
+  public void testQueryStringEndsWalk() {
+    assertEquals("a:/a?b/c.html", router.getUri("/a?b/c.html"));
+  }
+
+  public void testNoRoute() {
+    assertNull(router.getUri("/"));
+    assertNull(router.getUri("/ab"));
+    assertNull(router.getUri("/b/a"));
+  }
+
+}
@@ -231,4 +231,18 @@ public class UriTransformerTest extends SingleBlogTestCase {
     assertEquals("/about.action", transformer.getUri("/about.html", blog));
   }
 
+  public void testUrisThatFallThroughAreReturnedUnchanged() throws Exception {
+    assertEquals("/help/sub/page.html", transformer.getUri("/help/sub/page.html", blog));
+    assertEquals("/help/bad-name.html", transformer.getUri("/help/bad-name.html", blog));
+    assertEquals("/images", transformer.getUri("/images", blog));
+    assertEquals("/authors", transformer.getUri("/authors", blog));
+    assertEquals("/unknown/page.html", transformer.getUri("/unknown/page.html", blog));
+    assertEquals("/responses/rss.xml?other=1", transformer.getUri("/responses/rss.xml?other=1", blog));
+  }
+
+  public void testFeedUrlsWithQueryString() throws Exception {
+    assertEquals("/feed.action?flavor=rss20", transformer.getUri("/rss.xml?x=1", blog));
+    assertEquals("/responseFeed.action?flavor=atom", transformer.getUri("/responses/atom.xml?x=1", blog));
+  }
+
 }
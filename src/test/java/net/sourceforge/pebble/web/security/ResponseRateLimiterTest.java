@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.security;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.event.response.IpAddressListener;
+import net.sourceforge.pebble.metrics.Metrics;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the ResponseRateLimiter class.
+ */
+public class ResponseRateLimiterTest extends SingleBlogTestCase {
+
+  private ResponseRateLimiter limiter;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    limiter = new ResponseRateLimiter();
+    blog.getPluginProperties().setProperty(ResponseRateLimiter.RATE_KEY, "6");
+    blog.getPluginProperties().setProperty(ResponseRateLimiter.BURST_KEY, "3");
+  }
+
+  public void testAddressIsLimitedAfterBurst() {
+    long rejected = Metrics.getInstance().counter("rateLimit.rejected.address", blog.getId()).getCount();
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, limiter.acquire(blog, "10.0.0.1", 0));
+    }
+
+    // 6 per minute, so the next is allowed in 10 seconds
+    assertEquals(TimeUnit.SECONDS.toNanos(10), limiter.acquire(blog, "10.0.0.1", 0));
+    assertEquals(0, limiter.acquire(blog, "10.0.0.1", TimeUnit.SECONDS.toNanos(10)));
+
+    // other addresses are unaffected
+    assertEquals(0, limiter.acquire(blog, "10.0.1.1", 0));
+    assertEquals(rejected + 1, Metrics.getInstance().counter("rateLimit.rejected.address", blog.getId()).getCount());
+  }
+
+  public void testSubnetIsLimited() {
+    // each address is within its own limit, but the /24 isn't
+    int allowed = 0;
+    for (int i = 1; i <= 20; i++) {
+      if (limiter.acquire(blog, "192.168.5." + i, 0) == 0) {
+        allowed++;
+      }
+    }
+
+    assertEquals(3 * ResponseRateLimiter.SUBNET_FACTOR, allowed);
+    assertEquals(0, limiter.acquire(blog, "192.168.6.1", 0));
+  }
+
+  public void testBlogsAreLimitedSeparately() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, limiter.acquire(blog, "10.0.0.1", 0));
+    }
+    assertTrue(limiter.acquire(blog, "10.0.0.1", 0) > 0);
+
+    Blog otherBlog = new Blog(new File(TEST_BLOG_LOCATION, "blogs/other").getAbsolutePath());
+    otherBlog.setId("other");
+    otherBlog.getPluginProperties().setProperty(ResponseRateLimiter.BURST_KEY, "3");
+    assertEquals(0, limiter.acquire(otherBlog, "10.0.0.1", 0));
+  }
+
+  public void testWhitelistedAddressesAreNotLimited() {
+    blog.getPluginProperties().setProperty(IpAddressListener.WHITELIST_KEY, "10.0.0.0/8");
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, limiter.acquire(blog, "10.0.0.1", 0));
+    }
+  }
+
+  public void testBlacklistedAddressesAreLimitedMoreStrictly() {
+    blog.getPluginProperties().setProperty(IpAddressListener.BLACKLIST_KEY, "127.0.0.1");
+    assertEquals(0, limiter.acquire(blog, "127.0.0.1", 0));
+    assertEquals(TimeUnit.SECONDS.toNanos(40), limiter.acquire(blog, "127.0.0.1", 0));
+  }
+
+  public void testLimitingCanBeTurnedOff() {
+    blog.getPluginProperties().setProperty(ResponseRateLimiter.RATE_KEY, "0");
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, limiter.acquire(blog, "10.0.0.1", 0));
+    }
+  }
+
+  public void testSubnet() {
+    assertEquals("192.168.5.0/24", ResponseRateLimiter.getSubnet("192.168.5.20"));
+    assertEquals("2001:db8:85a3:8d3:0:0:0:0/64", ResponseRateLimiter.getSubnet("2001:db8:85a3:8d3:1319:8a2e:370:7348"));
+    // however the address is written
+    assertEquals("2001:db8:0:0:0:0:0:0/64", ResponseRateLimiter.getSubnet("2001:DB8::1"));
+    assertEquals("2001:db8:0:0:0:0:0:0/64", ResponseRateLimiter.getSubnet("2001:0db8:0000:0000:ffff::2"));
+    assertEquals("0:0:0:0:0:0:0:0/64", ResponseRateLimiter.getSubnet("::1"));
+    assertEquals("192.168.5.0/24", ResponseRateLimiter.getSubnet("::ffff:192.168.5.20"));
+    // host names are never looked up
+    assertEquals("unknown", ResponseRateLimiter.getSubnet("unknown"));
+  }
+
+}
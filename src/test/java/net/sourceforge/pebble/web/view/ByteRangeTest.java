@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Tests for the ByteRange class.
+ */
+public class ByteRangeTest extends TestCase {
+
+  public void testNoHeader() {
+    assertNull(ByteRange.parse(null, 100));
+  }
+
+  public void testInvalidHeadersAreIgnored() {
+    assertNull(ByteRange.parse("items=0-10", 100));
+    assertNull(ByteRange.parse("bytes=abc", 100));
+    assertNull(ByteRange.parse("bytes=10-5", 100));
+  }
+
+  public void testExplicitRange() {
+    List<ByteRange> ranges = ByteRange.parse("bytes=0-49", 100);
+    assertEquals(1, ranges.size());
+    assertEquals(0, ranges.get(0).getStart());
+    assertEquals(49, ranges.get(0).getEnd());
+    assertEquals(50, ranges.get(0).getLength());
+    assertEquals("bytes 0-49/100", ranges.get(0).getContentRange(100));
+  }
+
+  public void testOpenEndedAndSuffixRanges() {
+    List<ByteRange> ranges = ByteRange.parse("bytes=90-", 100);
+    assertEquals(1, ranges.size());
+    assertEquals(90, ranges.get(0).getStart());
+    assertEquals(99, ranges.get(0).getEnd());
+
+    ranges = ByteRange.parse("bytes=-5", 100);
+    assertEquals(1, ranges.size());
+    assertEquals(95, ranges.get(0).getStart());
+    assertEquals(99, ranges.get(0).getEnd());
+  }
+
+  public void testEndIsClampedToLength() {
+    List<ByteRange> ranges = ByteRange.parse("bytes=50-500", 100);
+    assertEquals(99, ranges.get(0).getEnd());
+  }
+
+  public void testUnsatisfiableRanges() {
+    assertTrue(ByteRange.parse("bytes=100-", 100).isEmpty());
+    assertTrue(ByteRange.parse("bytes=-0", 100).isEmpty());
+  }
+
+  public void testOverlappingAndAdjacentRangesAreMerged() {
+    List<ByteRange> ranges = ByteRange.parse("bytes=50-59, 0-9, 5-19, 20-29, 55-", 100);
+    assertEquals(2, ranges.size());
+    assertEquals(0, ranges.get(0).getStart());
+    assertEquals(29, ranges.get(0).getEnd());
+    assertEquals(50, ranges.get(1).getStart());
+    assertEquals(99, ranges.get(1).getEnd());
+  }
+
+  public void testTooManyRangesAreIgnored() {
+    StringBuilder header = new StringBuilder("bytes=0-0");
+    for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+      header.append(",0-").append(i);
+    }
+    assertNull(ByteRange.parse(header.toString(), 100));
+  }
+
+}
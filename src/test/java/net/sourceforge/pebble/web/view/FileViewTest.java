@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+import net.sourceforge.pebble.web.model.Model;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * Tests for the FileView class.
+ */
+public class FileViewTest extends SingleBlogTestCase {
+
+  private File file;
+  private FileView view;
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    file = new File(blog.getFilesDirectory(), "test.txt");
+    file.getParentFile().mkdirs();
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("0123456789abcdefghij".getBytes("ASCII"));
+    out.close();
+
+    view = new FileView(file);
+    Model model = new Model();
+    model.put(Constants.BLOG_KEY, blog);
+    view.setModel(model);
+
+    request = new MockHttpServletRequest();
+    request.setAttribute(Constants.EXTERNAL_URI, "/files/test.txt");
+    response = new MockHttpServletResponse();
+  }
+
+  public void testFullFileServedWithoutRangeHeader() throws Exception {
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("0123456789abcdefghij", new String(response.getOutputStreamContent(), "ASCII"));
+    assertEquals(FileView.getETag(file), response.getHeader("ETag"));
+    assertEquals("bytes", response.getHeader("Accept-Ranges"));
+  }
+
+  public void testSingleRange() throws Exception {
+    request.setHeader("Range", "bytes=5-9");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 5-9/20", response.getHeader("Content-Range"));
+    assertEquals("56789", new String(response.getOutputStreamContent(), "ASCII"));
+  }
+
+  public void testSuffixRange() throws Exception {
+    request.setHeader("Range", "bytes=-3");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 17-19/20", response.getHeader("Content-Range"));
+    assertEquals("hij", new String(response.getOutputStreamContent(), "ASCII"));
+  }
+
+  public void testMultipleRanges() throws Exception {
+    request.setHeader("Range", "bytes=0-1,18-");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertTrue(response.getContentType().startsWith("multipart/byteranges"));
+    String body = new String(response.getOutputStreamContent(), "ASCII");
+    assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+    assertTrue(body.contains("Content-Range: bytes 18-19/20\r\n\r\nij\r\n"));
+  }
+
+  public void testOverlappingRangesAreSentAsOne() throws Exception {
+    request.setHeader("Range", "bytes=0-4,2-6,0-4,7-9");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 0-9/20", response.getHeader("Content-Range"));
+    assertEquals("0123456789", new String(response.getOutputStreamContent(), "ASCII"));
+  }
+
+  public void testETagMatching() {
+    String etag = FileView.getETag(file);
+    assertFalse(FileView.isETagMatched(null, etag));
+    assertTrue(FileView.isETagMatched(etag, etag));
+    assertTrue(FileView.isETagMatched("*", etag));
+    assertTrue(FileView.isETagMatched("\"abc\", " + etag, etag));
+    assertTrue(FileView.isETagMatched("W/" + etag, etag));
+    assertFalse(FileView.isETagMatched("\"abc\", W/\"def\"", etag));
+  }
+
+  public void testUnsatisfiableRange() throws Exception {
+    request.setHeader("Range", "bytes=100-200");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+    assertEquals("bytes */20", response.getHeader("Content-Range"));
+  }
+
+  public void testRangeIgnoredWhenIfRangeDoesNotMatch() throws Exception {
+    request.setHeader("Range", "bytes=5-9");
+    request.setHeader("If-Range", "\"some-other-etag\"");
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals(20, response.getOutputStreamContent().length);
+  }
+
+  public void testRangeHonouredWhenIfRangeMatches() throws Exception {
+    request.setHeader("Range", "bytes=5-9");
+    request.setHeader("If-Range", FileView.getETag(file));
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("56789", new String(response.getOutputStreamContent(), "ASCII"));
+  }
+
+  public void testContainerSendfileUsedWhenSupported() throws Exception {
+    byte[] data = new byte[64 * 1024];
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(data);
+    out.close();
+
+    request.setAttribute(FileView.SENDFILE_SUPPORT_ATTRIBUTE, Boolean.TRUE);
+    view.dispatch(request, response, null);
+
+    assertEquals(file.getCanonicalPath(), request.getAttribute(FileView.SENDFILE_FILENAME_ATTRIBUTE));
+    assertEquals(0L, request.getAttribute(FileView.SENDFILE_START_ATTRIBUTE));
+    assertEquals((long)data.length, request.getAttribute(FileView.SENDFILE_END_ATTRIBUTE));
+    assertEquals(0, response.getOutputStreamContent().length);
+  }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Tests for the ZipView class.
+ */
+public class ZipViewTest extends SingleBlogTestCase {
+
+  private File directory;
+  private ZipView view;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    directory = new File(blog.getFilesDirectory());
+    new File(directory, "sub").mkdirs();
+    write(new File(directory, "b.txt"), "bbbbbbbbbbbbbbbbbbbbbbbb");
+    write(new File(directory, "a.txt"), "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+    write(new File(directory, "sub/c.txt"), "cccccccccccccccccccccccc");
+
+    view = new ZipView(directory, "files/", "export.zip");
+  }
+
+  public void testZipContainsAllFilesInOrder() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    view.dispatch(new MockHttpServletRequest(), response, null);
+
+    assertEquals("bytes", response.getHeader("Accept-Ranges"));
+    assertEquals(view.getETag(), response.getHeader("ETag"));
+    assertEquals(Arrays.asList("files/a.txt", "files/b.txt", "files/sub/c.txt"), getEntryNames(response.getOutputStreamContent()));
+  }
+
+  public void testRangeRequest() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    view.dispatch(new MockHttpServletRequest(), response, null);
+    byte[] whole = response.getOutputStreamContent();
+
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setHeader("Range", "bytes=10-");
+    request.setHeader("If-Range", view.getETag());
+    response = new MockHttpServletResponse();
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 10-" + (whole.length - 1) + "/" + whole.length, response.getHeader("Content-Range"));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(whole, 10, whole.length), response.getOutputStreamContent()));
+
+    request.setHeader("Range", "bytes=5-20");
+    response = new MockHttpServletResponse();
+    view.dispatch(request, response, null);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(whole, 5, 21), response.getOutputStreamContent()));
+  }
+
+  public void testArchiveIsSpooledOncePerVersion() throws Exception {
+    File archive = view.spool(view.getETag());
+    assertTrue(archive.isFile());
+    long lastModified = archive.lastModified();
+    Thread.sleep(1000);
+    assertEquals(archive, view.spool(view.getETag()));
+    assertEquals(lastModified, archive.lastModified());
+
+    // a new version of the tree replaces the old spooled archive
+    write(new File(directory, "d.txt"), "dddd");
+    File newArchive = view.spool(view.getETag());
+    assertFalse(archive.equals(newArchive));
+    assertFalse(archive.exists());
+    newArchive.delete();
+  }
+
+  public void testRangeIgnoredWhenFilesHaveChanged() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setHeader("Range", "bytes=10-");
+    request.setHeader("If-Range", "\"zip-stale\"");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    view.dispatch(request, response, null);
+
+    assertNull(response.getHeader("Content-Range"));
+    assertEquals(3, getEntryNames(response.getOutputStreamContent()).size());
+  }
+
+  public void testUnsatisfiableRange() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setHeader("Range", "bytes=100000-");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    view.dispatch(request, response, null);
+
+    assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+  }
+
+  private List<String> getEntryNames(byte[] zip) throws Exception {
+    List<String> names = new ArrayList<String>();
+    ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip));
+    ZipEntry entry = in.getNextEntry();
+    while (entry != null) {
+      names.add(entry.getName());
+      entry = in.getNextEntry();
+    }
+    in.close();
+    return names;
+  }
+
+  private void write(File file, String content) throws Exception {
+    FileWriter writer = new FileWriter(file);
+    writer.write(content);
+    writer.close();
+  }
+
+}
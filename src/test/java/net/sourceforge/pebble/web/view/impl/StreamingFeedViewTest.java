@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+import net.sourceforge.pebble.web.model.Model;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Date;
+
+/**
+ * Tests for the StreamingFeedView class.
+ */
+public class StreamingFeedViewTest extends SingleBlogTestCase {
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    BlogService service = new BlogService();
+    for (int i = 1; i <= 3; i++) {
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setTitle("Title " + i);
+      blogEntry.setBody("<p>Body " + i + " & more</p><img src=\"./images/" + i + ".png\" />");
+      blogEntry.setAuthor("author");
+      blogEntry.setDate(new Date(i * 1000L));
+      blogEntry.setPublished(true);
+      service.putBlogEntry(blogEntry);
+    }
+  }
+
+  protected void tearDown() throws Exception {
+    // the content cache outlives the blog, so don't let these entries leak into the next test
+    BlogService service = new BlogService();
+    for (String blogEntryId : blog.getBlogEntryIndex().getBlogEntries()) {
+      ContentCache.getInstance().removeBlogEntry(service.getBlogEntry(blog, blogEntryId));
+    }
+
+    super.tearDown();
+  }
+
+  public void testRss() throws Exception {
+    Document document = dispatch(AbstractRomeFeedView.FeedType.RSS);
+    NodeList items = document.getElementsByTagName("item");
+    assertEquals(3, items.getLength());
+    assertEquals("My blog", document.getElementsByTagName("title").item(0).getTextContent());
+
+    // most recent first
+    assertEquals("Title 3", document.getElementsByTagName("title").item(1).getTextContent());
+    // exports aren't decorated, so relative URIs are left as they are
+    assertEquals("<p>Body 3 & more</p><img src=\"./images/3.png\" />", document.getElementsByTagNameNS("http://purl.org/rss/1.0/modules/content/", "encoded").item(0).getTextContent());
+    assertEquals("tag:www.yourdomain.com,1970-01-01:default/3000", document.getElementsByTagName("guid").item(0).getTextContent());
+  }
+
+  public void testAtom() throws Exception {
+    Document document = dispatch(AbstractRomeFeedView.FeedType.ATOM);
+    assertEquals("http://www.w3.org/2005/Atom", document.getDocumentElement().getNamespaceURI());
+    NodeList entries = document.getElementsByTagName("entry");
+    assertEquals(3, entries.getLength());
+    assertEquals("1970-01-01T00:00:03Z", document.getElementsByTagName("published").item(0).getTextContent());
+  }
+
+  private Document dispatch(AbstractRomeFeedView.FeedType feedType) throws Exception {
+    StreamingFeedView view = new StreamingFeedView(feedType);
+    Model model = new Model();
+    model.put(Constants.BLOG_KEY, blog);
+    view.setModel(model);
+    view.prepare();
+
+    StringWriter writer = new StringWriter();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    response.setWriter(new PrintWriter(writer));
+    view.dispatch(new MockHttpServletRequest(), response, null);
+
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new InputSource(new StringReader(writer.toString())));
+  }
+
+}